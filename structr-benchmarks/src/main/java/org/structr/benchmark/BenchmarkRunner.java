@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the given pattern with allocation profiling
+ * and writes the results as JSON, so that runs can be compared over time.
+ *
+ * Usage: BenchmarkRunner [include pattern] [result file]
+ *
+ * @author Christian Morgner
+ */
+public class BenchmarkRunner {
+
+	public static void main(final String[] args) throws RunnerException {
+
+		final String includes = args.length > 0 ? args[0] : ".*";
+		final String results  = args.length > 1 ? args[1] : "benchmark-results.json";
+
+		final Options options = new OptionsBuilder()
+			.include(includes)
+			.addProfiler(GCProfiler.class)
+			.resultFormat(ResultFormatType.JSON)
+			.result(results)
+			.build();
+
+		new Runner(options).run();
+	}
+}
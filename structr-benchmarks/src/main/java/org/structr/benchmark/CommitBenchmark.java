@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+
+/**
+ * Benchmarks TransactionCommand.commitTx with transactions that create or
+ * modify a given number of nodes. Node creation includes UUID allocation
+ * and index updates.
+ *
+ * @author Christian Morgner
+ */
+public class CommitBenchmark extends StructrBenchmark {
+
+	@Param({ "1", "100" })
+	public int batchSize;
+
+	private final List<NodeInterface> items = new ArrayList<>();
+	private final Random random             = new Random(42);
+	private int counter                     = 0;
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<batchSize; i++) {
+				items.add(createItem(counter++, random));
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void createAndCommit() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<batchSize; i++) {
+				createItem(counter++, random);
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void modifyAndCommit() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (final NodeInterface item : items) {
+				item.setProperty(scoreKey, random.nextInt(100000));
+			}
+
+			tx.success();
+		}
+	}
+}
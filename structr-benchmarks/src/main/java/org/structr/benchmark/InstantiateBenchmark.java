@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.LinkedList;
+import java.util.List;
+import org.neo4j.graphdb.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+
+/**
+ * Benchmarks NodeFactory.instantiate on a set of raw database nodes.
+ *
+ * @author Christian Morgner
+ */
+public class InstantiateBenchmark extends StructrBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int nodeCount;
+
+	private final List<Node> nodes = new LinkedList<>();
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		createItems(nodeCount);
+
+		try (final Tx tx = app.tx()) {
+
+			for (final Object item : app.nodeQuery(itemType).getAsList()) {
+				nodes.add(((NodeInterface) item).getNode());
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public void instantiate(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final NodeFactory factory = new NodeFactory(securityContext);
+
+			for (final Node node : nodes) {
+				blackhole.consume(factory.instantiate(node));
+			}
+
+			tx.success();
+		}
+	}
+}
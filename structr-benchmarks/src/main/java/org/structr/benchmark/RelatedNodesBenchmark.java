@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.Random;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.infra.Blackhole;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.ManyEndpoint;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.relationship.Groups;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+
+/**
+ * Benchmarks reading a relationship collection from a node with many
+ * relationships of the same relationship type that point to nodes of
+ * different types. Only one in ten of the related nodes is a group
+ * member, the others are BenchmarkItems.
+ *
+ * @author Christian Morgner
+ */
+public class RelatedNodesBenchmark extends StructrBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int relationshipCount;
+
+	private final Groups relation = new Groups();
+	private Group group           = null;
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		final RelationshipType relType = DynamicRelationshipType.withName(relation.name());
+		final Random random            = new Random(relationshipCount);
+		int created                    = 0;
+
+		try (final Tx tx = app.tx()) {
+
+			group = app.create(Group.class, new NodeAttribute(AbstractNode.name, "hub"));
+			tx.success();
+		}
+
+		while (created < relationshipCount) {
+
+			try (final Tx tx = app.tx()) {
+
+				final Node hub = group.getNode();
+
+				for (int i=0; i<COMMIT_COUNT && created < relationshipCount; i++) {
+
+					final NodeInterface other;
+
+					if (created % 10 == 0) {
+
+						other = app.create(Group.class, new NodeAttribute(AbstractNode.name, "member" + created));
+
+					} else {
+
+						other = createItem(created, random);
+					}
+
+					hub.createRelationshipTo(other.getNode(), relType);
+					created++;
+				}
+
+				tx.success();
+			}
+		}
+	}
+
+	@Benchmark
+	public void relatedNodes(final Blackhole blackhole) throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final ManyEndpoint<Principal> endpoint = relation.getTarget();
+
+			for (final Principal member : endpoint.get(securityContext, group, null)) {
+				blackhole.consume(member);
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public int filteredRelationships() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final ManyEndpoint<Principal> endpoint = relation.getTarget();
+			int count                              = 0;
+
+			// checks visibility, i.e. instantiates each node of the desired type
+			for (final Object rel : endpoint.getMultiple(securityContext, group.getNode(), relation, Direction.OUTGOING, relation.getTargetType(), null)) {
+				count++;
+			}
+
+			tx.success();
+
+			return count;
+		}
+	}
+}
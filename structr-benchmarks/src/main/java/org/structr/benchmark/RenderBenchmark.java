@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.AsyncBuffer;
+import org.structr.web.common.RenderContext;
+import org.structr.web.common.RenderFragmentCache;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+
+/**
+ * Benchmarks DOMNode.render on a page with the given number of sections.
+ * Every second section contains a template expression, so the page mixes
+ * cacheable and dynamic fragments.
+ *
+ * @author Christian Morgner
+ */
+public class RenderBenchmark extends StructrBenchmark {
+
+	@Param({ "10", "100" })
+	public int sectionCount;
+
+	@Param({ "true", "false" })
+	public boolean fragmentCache;
+
+	private Page page = null;
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		RenderFragmentCache.setEnabled(fragmentCache);
+
+		try (final Tx tx = app.tx()) {
+
+			page = Page.createNewPage(securityContext, "benchmark");
+
+			final DOMNode html = (DOMNode) page.createElement("html");
+			final DOMNode head = (DOMNode) page.createElement("head");
+			final DOMNode body = (DOMNode) page.createElement("body");
+			final DOMNode title = (DOMNode) page.createElement("title");
+
+			page.appendChild(html);
+			html.appendChild(head);
+			html.appendChild(body);
+			head.appendChild(title);
+			title.appendChild(page.createTextNode("${page.name}"));
+
+			for (int i=0; i<sectionCount; i++) {
+
+				final DOMNode div = (DOMNode) page.createElement("div");
+				final DOMNode h2  = (DOMNode) page.createElement("h2");
+				final DOMNode p   = (DOMNode) page.createElement("p");
+
+				body.appendChild(div);
+				div.appendChild(h2);
+				div.appendChild(p);
+
+				h2.appendChild(page.createTextNode("Section " + i));
+				p.appendChild(page.createTextNode(i % 2 == 0 ? "Static paragraph " + i : "${this.id}"));
+			}
+
+			tx.success();
+		}
+	}
+
+	@Benchmark
+	public String render() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final RenderContext renderContext = new RenderContext();
+			final AsyncBuffer buffer          = new AsyncBuffer();
+
+			renderContext.setBuffer(buffer);
+			page.render(securityContext, renderContext, 0);
+
+			tx.success();
+
+			return StringUtils.join(buffer.getQueue(), "");
+		}
+	}
+}
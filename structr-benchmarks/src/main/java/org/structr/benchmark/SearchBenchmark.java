@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+
+/**
+ * Benchmarks for SearchCommand: exact property search, a sorted page from
+ * the middle of the result set and an unfiltered type query.
+ *
+ * @author Christian Morgner
+ */
+public class SearchBenchmark extends StructrBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int nodeCount;
+
+	@Override
+	protected void seed() throws FrameworkException {
+		createItems(nodeCount);
+	}
+
+	@Benchmark
+	public int searchByProperty() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final int size = app.nodeQuery(itemType).and(categoryKey, "category3").getResult().size();
+
+			tx.success();
+
+			return size;
+		}
+	}
+
+	@Benchmark
+	public int searchSortedPage() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final int size = app.nodeQuery(itemType).sort(scoreKey).page(5).pageSize(20).getResult().size();
+
+			tx.success();
+
+			return size;
+		}
+	}
+
+	@Benchmark
+	public NodeInterface searchByName() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final NodeInterface node = (NodeInterface) app.nodeQuery(itemType).andName("item" + (nodeCount / 2)).getFirst();
+
+			tx.success();
+
+			return node;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.structr.common.PropertyView;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Result;
+import org.structr.core.StaticValue;
+import org.structr.core.graph.Tx;
+import org.structr.rest.serialization.StreamingJsonWriter;
+import org.structr.rest.serialization.StreamingWriter;
+
+/**
+ * Benchmarks StreamingWriter.stream (JSON output), serializing a result of BenchmarkItem
+ * nodes into a discarding writer.
+ *
+ * @author Christian Morgner
+ */
+public class SerializeBenchmark extends StructrBenchmark {
+
+	@Param({ "100", "1000" })
+	public int nodeCount;
+
+	private StreamingWriter writer = null;
+	private List items             = null;
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		createItems(nodeCount);
+
+		try (final Tx tx = app.tx()) {
+
+			items = app.nodeQuery(itemType).getAsList();
+			tx.success();
+		}
+
+		writer = new StreamingJsonWriter(new StaticValue<>(PropertyView.Public), false, 3);
+	}
+
+	@Benchmark
+	public void stream() throws FrameworkException, IOException {
+
+		try (final Tx tx = app.tx()) {
+
+			writer.stream(securityContext, new NullWriter(), new Result(items, items.size(), true, false), "http://localhost/structr/rest");
+
+			tx.success();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.structr.common.SecurityContext;
+import org.structr.common.StructrConf;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.StringProperty;
+import org.structr.module.JarConfigurationProvider;
+
+/**
+ * Base class for all benchmarks that need a running Structr instance. Each
+ * trial boots the service layer on an embedded Neo4j database in a fresh
+ * temporary directory, creates the synthetic <code>BenchmarkItem</code> type
+ * and lets the subclass seed its data. All benchmarks run in superuser
+ * context.
+ *
+ * @author Christian Morgner
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public abstract class StructrBenchmark {
+
+	protected static final int COMMIT_COUNT = 1000;
+	protected static final int CATEGORIES   = 10;
+
+	protected SecurityContext securityContext = null;
+	protected PropertyKey<Integer> scoreKey   = null;
+	protected PropertyKey<String> categoryKey = null;
+	protected Class itemType                  = null;
+	protected App app                         = null;
+	private String basePath                   = null;
+
+	@Setup(Level.Trial)
+	public void startServices() throws Exception {
+
+		final StructrConf config = Services.getBaseConfiguration();
+
+		basePath = System.getProperty("java.io.tmpdir") + "/structr-benchmark-" + System.currentTimeMillis();
+
+		config.setProperty(Services.CONFIGURED_SERVICES, "NodeService LogService SchemaService");
+		config.setProperty(Services.CONFIGURATION, JarConfigurationProvider.class.getName());
+		config.setProperty(Services.TMP_PATH, System.getProperty("java.io.tmpdir"));
+		config.setProperty(Services.BASE_PATH, basePath);
+		config.setProperty(Services.DATABASE_PATH, basePath + "/db");
+		config.setProperty(Services.FILES_PATH, basePath + "/files");
+		config.setProperty(Services.LOG_DATABASE_PATH, basePath + "/logDb.dat");
+		config.setProperty(Services.SUPERUSER_USERNAME, "superadmin");
+		config.setProperty(Services.SUPERUSER_PASSWORD, "benchmark");
+
+		final Services services = Services.getInstance(config);
+
+		// wait for service layer to be initialized
+		while (!services.isInitialized()) {
+			Thread.sleep(100);
+		}
+
+		securityContext = SecurityContext.getSuperUserInstance();
+		app             = StructrApp.getInstance(securityContext);
+
+		createSchema();
+		seed();
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServices() throws Exception {
+
+		Services.getInstance().shutdown();
+
+		FileUtils.deleteQuietly(new File(basePath));
+	}
+
+	/**
+	 * Creates the benchmark data. Called once per trial, after the
+	 * service layer and the schema have been initialized.
+	 *
+	 * @throws FrameworkException
+	 */
+	protected abstract void seed() throws FrameworkException;
+
+	/**
+	 * Creates the given number of BenchmarkItem nodes with deterministic
+	 * names, categories and scores, committing every COMMIT_COUNT nodes.
+	 *
+	 * @param count
+	 * @throws FrameworkException
+	 */
+	protected void createItems(final int count) throws FrameworkException {
+
+		final Random random = new Random(count);
+		int created         = 0;
+
+		while (created < count) {
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<COMMIT_COUNT && created < count; i++) {
+
+					createItem(created++, random);
+				}
+
+				tx.success();
+			}
+		}
+	}
+
+	protected NodeInterface createItem(final int index, final Random random) throws FrameworkException {
+
+		return app.create(itemType,
+			new NodeAttribute(AbstractNode.name, "item" + index),
+			new NodeAttribute(categoryKey, "category" + (index % CATEGORIES)),
+			new NodeAttribute(scoreKey, random.nextInt(100000))
+		);
+	}
+
+	// ----- private methods -----
+	private void createSchema() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			final SchemaNode schemaNode = app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "BenchmarkItem"));
+
+			schemaNode.setProperty(new StringProperty("_score"), "Integer");
+			schemaNode.setProperty(new StringProperty("_category"), "String");
+
+			tx.success();
+		}
+
+		itemType    = StructrApp.getConfiguration().getNodeEntityClass("BenchmarkItem");
+		scoreKey    = StructrApp.getConfiguration().getPropertyKeyForJSONName(itemType, "score");
+		categoryKey = StructrApp.getConfiguration().getPropertyKeyForJSONName(itemType, "category");
+	}
+}
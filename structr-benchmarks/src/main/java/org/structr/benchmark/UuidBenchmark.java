@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.benchmark;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.structr.common.UuidGenerator;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+
+/**
+ * Benchmarks node creation in batches with UuidGenerator against the former
+ * scheme of a producer thread that fills a bounded queue which is polled by
+ * the consumers. The id is passed to CreateNodeCommand, so both variants
+ * run the same create and commit path, including the id that the command
+ * generates before it sets the given one.
+ *
+ * @author Christian Morgner
+ */
+@Threads(4)
+public class UuidBenchmark extends StructrBenchmark {
+
+	@Param({ "uuidGenerator", "producerQueue" })
+	public String idGeneration;
+
+	@Param({ "100" })
+	public int batchSize;
+
+	private final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(1000);
+	private final AtomicInteger counter                = new AtomicInteger();
+	private final Random random                        = new Random(42);
+	private Thread producer                            = null;
+
+	@Override
+	protected void seed() throws FrameworkException {
+
+		if ("producerQueue".equals(idGeneration)) {
+
+			producer = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+
+					try {
+						while (true) {
+
+							uuidQueue.put(StringUtils.replace(UUID.randomUUID().toString(), "-", ""));
+						}
+
+					} catch (InterruptedException iex) { }
+				}
+
+			}, "UuidProducerThread");
+
+			producer.setDaemon(true);
+			producer.start();
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void stopProducer() {
+
+		if (producer != null) {
+			producer.interrupt();
+		}
+	}
+
+	@Benchmark
+	public void createBatch() throws FrameworkException {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<batchSize; i++) {
+
+				final int index = counter.incrementAndGet();
+
+				app.create(itemType,
+					new NodeAttribute(GraphObject.id, nextUuid()),
+					new NodeAttribute(AbstractNode.name, "item" + index),
+					new NodeAttribute(categoryKey, "category" + (index % CATEGORIES)),
+					new NodeAttribute(scoreKey, random.nextInt(100000))
+				);
+			}
+
+			tx.success();
+		}
+	}
+
+	// ----- private methods -----
+	private String nextUuid() {
+
+		if (producer != null) {
+
+			String uuid = null;
+
+			do {
+
+				uuid = uuidQueue.poll();
+
+			} while (uuid == null);
+
+			return uuid;
+		}
+
+		return UuidGenerator.nextUuid();
+	}
+}
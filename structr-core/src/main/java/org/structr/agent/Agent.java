@@ -21,10 +21,7 @@ package org.structr.agent;
 
 //~--- JDK imports ------------------------------------------------------------
 
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -35,155 +32,114 @@ import org.structr.core.graph.Tx;
 //~--- classes ----------------------------------------------------------------
 
 /**
- * Abstract base class for all agents.
+ * Abstract base class for all agents. An agent takes the tasks of its
+ * supported task type from the {@link AgentService} and stops when no
+ * more tasks arrive within the configured keep-alive time.
  *
  * @author Christian Morgner
  */
 public abstract class Agent extends Thread implements StatusInfo {
 
 	public static final String AVERAGE_EXECUTION_TIME = "average_execution_time";
+	public static final String AVERAGE_WAIT_TIME      = "average_wait_time";
+	public static final String PROCESSED_TASKS        = "processed_tasks";
 	public static final String EXECUTION_STATUS       = "execution_status";
-	public static final String MAX_QUEUE_SIZE         = "max_queue_size";
 	private static final Logger logger                = Logger.getLogger(Agent.class.getName());
 
 	//~--- fields ---------------------------------------------------------
 
 	private final AtomicBoolean acceptingTasks = new AtomicBoolean(true);
-	private AgentService agentService          = null;
-	private long averageExecutionTime          = 0;
-	private Task currentTask                   = null;
-	private long lastStartTime                 = 0;
-	private int maxAgents                      = 4;
-	private int maxQueueSize                   = 10;
 	private final AtomicBoolean suspended      = new AtomicBoolean(false);
-	private final Queue<Task> taskQueue        = new ConcurrentLinkedQueue<>();
+	private AgentService agentService          = null;
+	private volatile long averageExecutionTime = 0;
+	private volatile long averageWaitTime      = 0;
+	private volatile long processedTasks       = 0;
+	private volatile Task currentTask          = null;
 
 	//~--- methods --------------------------------------------------------
 
 	@Override
 	public final void run() {
 
-		agentService.notifyAgentStart(this);
-
-		do {
-
-			while (suspended.get()) {
+		while (true) {
 
-				Thread.yield();
+			waitWhileSuspended();
 
+			if (!acceptingTasks.get()) {
+				break;
 			}
 
-			synchronized (taskQueue) {
-
-				currentTask = taskQueue.poll();
+			final AgentService.ScheduledTask next = agentService.nextTask(this);
+			if (next == null) {
 
+				// no more tasks, quit.
+				break;
 			}
 
-			if (currentTask != null) {
-
-				lastStartTime = System.nanoTime();
-
-				ReturnValue ret = null;
-
-				// only execute process if Service layer is ready
-				// (and not shutting down right now)
-				if (Services.getInstance().isInitialized()) {
+			final long waitTime  = next.started();
+			final long startTime = System.nanoTime();
+			ReturnValue ret      = null;
 
-					if (createEnclosingTransaction()) {
+			currentTask = next.getTask();
 
-						try (final Tx tx = StructrApp.getInstance().tx()) {
+			// only execute process if Service layer is ready
+			// (and not shutting down right now)
+			if (Services.getInstance().isInitialized()) {
 
-							ret = processTask(currentTask);
-							tx.success();
+				if (createEnclosingTransaction()) {
 
-						} catch (Throwable t) {
+					try (final Tx tx = StructrApp.getInstance().tx()) {
 
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
-							t.printStackTrace();
-						}
-						
-					} else {
+						ret = processTask(currentTask);
+						tx.success();
 
-						try {
+					} catch (Throwable t) {
 
-							ret = processTask(currentTask);
-
-						} catch (Throwable t) {
-
-							// someone killed us or the task processing failed..
-							// Log this!!
-							logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
-							t.printStackTrace();
-						}
+						// someone killed us or the task processing failed..
+						// Log this!!
+						logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
+						t.printStackTrace();
 					}
-				}
-
-				if (ret != null) {
 
-					// handle return value
-					switch (ret) {
+				} else {
 
-						case Success :
-						case Abort :
+					try {
 
-							// task finished, nothing to do in these cases
-							break;
+						ret = processTask(currentTask);
 
-						case Retry :
-
-							// TODO: schedule task for re-execution
-							break;
+					} catch (Throwable t) {
 
+						// someone killed us or the task processing failed..
+						// Log this!!
+						logger.log(Level.SEVERE, "Processing task {0} failed. Maybe someone killed us?", currentTask.getType());
+						t.printStackTrace();
 					}
 				}
+			}
 
-				long endTime = System.nanoTime();
-
-				// calc. average execution time
-				averageExecutionTime += endTime;
-				averageExecutionTime /= 2;
+			final long executionTime = System.nanoTime() - startTime;
 
-			} else {
+			// calc. average execution and wait time
+			averageExecutionTime = processedTasks > 0 ? (averageExecutionTime + executionTime) / 2 : executionTime;
+			averageWaitTime      = processedTasks > 0 ? (averageWaitTime + waitTime) / 2 : waitTime;
+			currentTask          = null;
 
-				// queue is empty, quit.
-				acceptingTasks.set(false);
-			}
+			processedTasks++;
 
-		} while (acceptingTasks.get());
+			// handles retries
+			agentService.taskFinished(next, ret, executionTime);
+		}
 
 		// call beforeShutdown to allow agents to clean up
 		beforeShutdown();
 		agentService.notifyAgentStop(this);
 	}
 
-	public final boolean assignTask(Task task) {
-
-		// TODO: do type check here
-		if (canHandleMore() && acceptingTasks.get()) {
-
-			synchronized (taskQueue) {
-
-				taskQueue.add(task);
-
-			}
-
-			return (true);
-
-		}
-
-		return (false);
-	}
-
 	public final void killAgent() {
 
 		// stop accepting tasks
 		acceptingTasks.set(false);
 
-		// clear queue
-		taskQueue.clear();
-
 		// interrupt running process..
 		// not sure if this works... see Thread.interrupt()'s description!
 		// may not work if the processTask method itself catches the interrupt..
@@ -198,8 +154,13 @@ public abstract class Agent extends Thread implements StatusInfo {
 
 	public final void resumeAgent() {
 
-		acceptingTasks.set(true);
-		suspended.set(false);
+		synchronized (suspended) {
+
+			acceptingTasks.set(true);
+			suspended.set(false);
+
+			suspended.notifyAll();
+		}
 	}
 
 	protected void beforeShutdown() {
@@ -210,47 +171,22 @@ public abstract class Agent extends Thread implements StatusInfo {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private boolean canHandleMore() {
+	private void waitWhileSuspended() {
 
-//              return (taskQueue.isEmpty());
-		int size = 0;
+		synchronized (suspended) {
 
-		synchronized (taskQueue) {
-
-			// FIXME: size may not be a constant time operation! slow?
-			size = taskQueue.size();
-		}
-
-		// queue is empty, assume new agent
-		if (size == 0) {
-
-			return (true);
-
-		}
-
-		long actualExecutionTime = System.nanoTime() - lastStartTime;
-
-		// calculate thresholds for queue size adaption
-		long upperThreshold = averageExecutionTime + (averageExecutionTime / 2);
-		long lowerThreshold = averageExecutionTime - (averageExecutionTime / 2);
-
-		if ((actualExecutionTime > upperThreshold) && (maxQueueSize > 2)) {
-
-			// FIXME
-			maxQueueSize -= 2;
+			while (suspended.get()) {
 
-			// do not take the next task
-			return (false);
-		} else if ((actualExecutionTime < lowerThreshold) && (maxQueueSize < 200)) {
+				try {
+					suspended.wait();
 
-			// FIXME
-			maxQueueSize += 2;
+				} catch (InterruptedException iex) {
 
-			// can take the next task
-			return (true);
+					// killed while suspended
+					return;
+				}
+			}
 		}
-
-		return (size < maxQueueSize);
 	}
 
 	// </editor-fold>
@@ -269,25 +205,37 @@ public abstract class Agent extends Thread implements StatusInfo {
 		return (currentTask);
 	}
 
+	/**
+	 * Returns the tasks that are waiting for an agent of this type.
+	 * @return
+	 */
 	public final List<Task> getTaskQueue() {
+		return (agentService.getTaskQueue(getSupportedTaskType()));
+	}
 
-		List<Task> ret = new LinkedList<Task>();
-
-		ret.addAll(taskQueue);
-
-		return (ret);
+	/**
+	 * Returns the average execution time in nanoseconds.
+	 * @return
+	 */
+	public final long getAverageExecutionTime() {
+		return (averageExecutionTime);
 	}
 
-	public final int getMaxQueueSize() {
-		return (maxQueueSize);
+	/**
+	 * Returns the average time in nanoseconds the tasks of this agent
+	 * waited in the queue.
+	 * @return
+	 */
+	public final long getAverageWaitTime() {
+		return (averageWaitTime);
 	}
 
-	public final long getAverageExecutionTime() {
-		return (averageExecutionTime);
+	public final long getProcessedTasks() {
+		return (processedTasks);
 	}
 
 	public int getMaxAgents() {
-		return (maxAgents);
+		return (agentService.getMaxAgents(getSupportedTaskType()));
 	}
 
 	// ----- interface StatusInfo -----
@@ -298,13 +246,21 @@ public abstract class Agent extends Thread implements StatusInfo {
 
 			return (getAverageExecutionTime());
 
-		} else if (key.equals(MAX_QUEUE_SIZE)) {
+		} else if (key.equals(AVERAGE_WAIT_TIME)) {
+
+			return (getAverageWaitTime());
 
-			return (getMaxQueueSize());
+		} else if (key.equals(PROCESSED_TASKS)) {
+
+			return (getProcessedTasks());
 
 		} else if (key.equals(EXECUTION_STATUS)) {
 
-			// TODO.
+			if (isSuspended()) {
+				return "suspended";
+			}
+
+			return (currentTask != null ? "running" : "idle");
 		}
 
 		return (null);
@@ -338,9 +294,6 @@ public abstract class Agent extends Thread implements StatusInfo {
 		this.setDaemon(false);
 
 		this.agentService = service;
-
-		// initialize lastStartTime
-		lastStartTime = System.nanoTime();
 	}
 
 	// </editor-fold>
@@ -24,17 +24,35 @@ import org.structr.core.Services;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.StructrConf;
@@ -45,20 +63,50 @@ import org.structr.schema.ConfigurationProvider;
 /**
  * The agent service main class.
  *
+ * Tasks are queued per task type, ordered by their priority. Agents are
+ * started on demand (up to a configurable number per task type) and take
+ * their tasks from the queue of their task type, so there is no polling
+ * involved. Delayed tasks and tasks that are to be retried wait in a
+ * {@link DelayQueue} that is drained by the service thread.
+ *
+ * Configuration:
+ *
+ * AgentService.threads              - max. number of agents per task type (default 4)
+ * AgentService.threads.[TaskType]   - max. number of agents for a given task type
+ * AgentService.priority.[TaskType]  - thread priority of the agents for a given task type
+ * AgentService.retries              - max. number of retries for tasks that return {@link ReturnValue#Retry} (default 3)
+ * AgentService.backoff              - initial retry delay in milliseconds, doubled on each retry (default 1000)
+ * AgentService.keepAlive            - time in milliseconds an idle agent waits for new tasks (default 5000)
+ * AgentService.store                - file to store pending serializable tasks in on shutdown
+ *
  * @author Christian Morgner
  */
 public class AgentService extends Thread implements RunnableService {
 
 	private static final Logger logger = Logger.getLogger(AgentService.class.getName());
 
+	public static final String THREADS    = "AgentService.threads";
+	public static final String PRIORITY   = "AgentService.priority";
+	public static final String RETRIES    = "AgentService.retries";
+	public static final String BACKOFF    = "AgentService.backoff";
+	public static final String KEEP_ALIVE = "AgentService.keepAlive";
+	public static final String STORE      = "AgentService.store";
+
 	//~--- fields ---------------------------------------------------------
 
-	private int maxAgents                               = 4;    // TODO: make configurable
 	private final Map<Class, List<Agent>> runningAgents = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Map<Class, Class> agentClassCache     = new ConcurrentHashMap<>(10, 0.9f, 8);
-	private final Queue<Task> taskQueue                 = new ConcurrentLinkedQueue<>();
+	private final Map<Class, TaskQueue> taskQueues      = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final DelayQueue<ScheduledTask> delayQueue  = new DelayQueue<>();
+	private final AtomicLong sequence                   = new AtomicLong();
+	private StructrConf config                          = null;
 	private Set<Class> supportedCommands                = null;
-	private boolean run                                 = false;
+	private File storeFile                              = null;
+	private int maxAgents                               = 4;
+	private int maxRetries                              = 3;
+	private long backoff                                = 1000L;
+	private long keepAlive                              = 5000L;
+	private volatile boolean run                        = false;
 
 	//~--- constructors ---------------------------------------------------
 
@@ -72,12 +120,29 @@ public class AgentService extends Thread implements RunnableService {
 	//~--- methods --------------------------------------------------------
 
 	public void processTask(Task task) {
+		submitTask(task);
+	}
 
-		synchronized (taskQueue) {
+	/**
+	 * Hands the given task over for processing and returns a future that
+	 * completes with the final return value of the task, i.e. after all
+	 * retries. The value is null if the task failed with an exception,
+	 * the future fails with an ExecutionException if there is no agent
+	 * for the task type.
+	 *
+	 * @param task
+	 * @return a future for the result of the task
+	 */
+	public Future<ReturnValue> submitTask(final Task task) {
 
-			taskQueue.add(task);
-			logger.log(Level.FINE, "Task {0} added to task queue", task);
-		}
+		final long delay        = Math.max(0L, task.getDelay(TimeUnit.MILLISECONDS));
+		final TaskFuture future = new TaskFuture();
+
+		schedule(new ScheduledTask(task, future, sequence.incrementAndGet(), 0, System.currentTimeMillis() + delay));
+
+		logger.log(Level.FINE, "Task {0} added to task queue", task);
+
+		return future;
 	}
 
 	public Agent findAgentForTask(Task task) {
@@ -88,7 +153,7 @@ public class AgentService extends Thread implements RunnableService {
 
 			for (Agent agent : agents) {
 
-				if (agent.getTaskQueue().contains(task)) {
+				if (task.equals(agent.getCurrentTask())) {
 					return (agent);
 				}
 			}
@@ -100,36 +165,35 @@ public class AgentService extends Thread implements RunnableService {
 	@Override
 	public void run() {
 
-		logger.log(Level.INFO, "AgentService started");
-
-		while (run) {
+		final Services servicesInstance = Services.getInstance();
 
-			Task nextTask = taskQueue.poll();
-			if (nextTask != null) {
+		// wait for service layer to be initialized
+		while (run && !servicesInstance.isInitialized()) {
+			try { Thread.sleep(100); } catch(InterruptedException iex) { }
+		}
 
-				assignNextAgentForTask(nextTask);
-			}
+		logger.log(Level.INFO, "AgentService started");
 
-			// let others act
-			try { Thread.sleep(10); } catch(Throwable ignore) {}
-		}
-	}
+		restoreTasks();
 
-	public void notifyAgentStart(Agent agent) {
+		while (run) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+			try {
+				// move delayed tasks to their queue when they are due
+				enqueue(delayQueue.take());
 
-		synchronized (agents) {
-			agents.add(agent);
+			} catch (InterruptedException iex) {
+				// stopService() interrupts us
+			}
 		}
 	}
 
 	public void notifyAgentStop(Agent agent) {
 
-		List<Agent> agents = getRunningAgentsForTask(agent.getSupportedTaskType());
+		final TaskQueue taskQueue = getQueue(agent.getSupportedTaskType());
 
-		synchronized (agents) {
-			agents.remove(agent);
+		synchronized (taskQueue) {
+			taskQueue.agents.remove(agent);
 		}
 	}
 
@@ -151,7 +215,17 @@ public class AgentService extends Thread implements RunnableService {
 	}
 
 	@Override
-	public void initialize(final StructrConf config) {}
+	public void initialize(final StructrConf config) {
+
+		final String basePath = config.getProperty(Services.BASE_PATH, "");
+
+		this.config     = config;
+		this.maxAgents  = parseInt(config.getProperty(THREADS),    maxAgents);
+		this.maxRetries = parseInt(config.getProperty(RETRIES),    maxRetries);
+		this.backoff    = parseInt(config.getProperty(BACKOFF),    (int)backoff);
+		this.keepAlive  = parseInt(config.getProperty(KEEP_ALIVE), (int)keepAlive);
+		this.storeFile  = new File(config.getProperty(STORE, basePath.isEmpty() ? "agent-tasks.dat" : basePath + "/agent-tasks.dat"));
+	}
 
 	@Override
 	public void initialized() {}
@@ -168,7 +242,11 @@ public class AgentService extends Thread implements RunnableService {
 
 	@Override
 	public void stopService() {
+
 		run = false;
+		this.interrupt();
+
+		storeTasks();
 	}
 
 	@Override
@@ -178,52 +256,144 @@ public class AgentService extends Thread implements RunnableService {
 
 	// </editor-fold>
 
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-	private void assignNextAgentForTask(Task nextTask) {
+	// <editor-fold defaultstate="collapsed" desc="package-private methods">
+	/**
+	 * Returns the next task for the given agent, waiting at most the
+	 * configured keep-alive time. Returns null and unregisters the
+	 * agent if no task arrived in that time, in which case the agent
+	 * must stop.
+	 *
+	 * @param agent
+	 * @return the next task or null
+	 */
+	ScheduledTask nextTask(final Agent agent) {
 
-		Class taskClass    = nextTask.getClass();
-		List<Agent> agents = getRunningAgentsForTask(taskClass);
+		final TaskQueue taskQueue = getQueue(agent.getSupportedTaskType());
+		ScheduledTask next        = null;
+		boolean interrupted       = false;
 
-		// need to synchronize on agents
-		synchronized (agents) {
+		synchronized (taskQueue) {
+			taskQueue.idle++;
+		}
 
-			// find next free agent (agents should be sorted by load, so one
-			// of the first should do..
-			for (Agent agent : agents) {
+		try {
+			next = taskQueue.queue.poll(keepAlive, TimeUnit.MILLISECONDS);
 
-				if (agent.assignTask(nextTask)) {
+		} catch (InterruptedException iex) {
+			interrupted = true;
+		}
 
-					// ok, task is assigned
-					logger.log(Level.FINE, "Task assigned to agent {0}", agent.getName());
+		// decide under the lock so that enqueue() never relies
+		// on an agent that is about to stop
+		synchronized (taskQueue) {
 
-					return;
-				}
+			taskQueue.idle--;
+
+			if (next == null && !interrupted) {
+				next = taskQueue.queue.poll();
+			}
+
+			if (next == null) {
+				taskQueue.agents.remove(agent);
 			}
 		}
 
-		// FIXME: find better solution for hard limit here!
-		if (agents.size() < maxAgents) {
+		if (next != null) {
+			taskQueue.waitTime.addAndGet(next.started());
+			taskQueue.started.incrementAndGet();
+		}
+
+		return next;
+	}
 
-			// if we get here, task was not assigned to any agent, need to
-			// create a new one.
-			Agent agent = createAgent(nextTask);
+	void taskFinished(final ScheduledTask task, final ReturnValue returnValue, final long runTime) {
 
-			if ((agent != null) && agent.assignTask(nextTask)) {
-				agent.start();
-			} else {
+		final TaskQueue taskQueue = getQueue(task.getTask().getClass());
 
-				// re-add task..
-				synchronized (taskQueue) {
-					taskQueue.add(nextTask);
+		taskQueue.runTime.addAndGet(runTime);
+
+		if (returnValue == null) {
+
+			taskQueue.failed.incrementAndGet();
+			task.getFuture().complete(null);
+			return;
+		}
+
+		switch (returnValue) {
+
+			case Success :
+			case Abort :
+
+				taskQueue.completed.incrementAndGet();
+				task.getFuture().complete(returnValue);
+				break;
+
+			case Retry :
+
+				if (task.getAttempt() < maxRetries) {
+
+					final long delay = backoff << Math.min(task.getAttempt(), 20);
+
+					logger.log(Level.FINE, "Scheduling task {0} for retry in {1} ms", new Object[] { task.getTask(), delay });
+
+					taskQueue.retried.incrementAndGet();
+					delayQueue.add(new ScheduledTask(task.getTask(), task.getFuture(), task.getSequence(), task.getAttempt() + 1, System.currentTimeMillis() + delay));
+
+				} else {
+
+					logger.log(Level.WARNING, "Task {0} failed after {1} retries, giving up.", new Object[] { task.getTask(), task.getAttempt() });
+					taskQueue.failed.incrementAndGet();
+					task.getFuture().complete(returnValue);
 				}
-			}
+				break;
+		}
+	}
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="private methods">
+	private void schedule(final ScheduledTask task) {
+
+		if (task.getDelay(TimeUnit.MILLISECONDS) > 0) {
+
+			delayQueue.add(task);
+
 		} else {
 
-			logger.log(Level.FINE, "Overall agents limit reached, re-queueing task");
+			enqueue(task);
+		}
+	}
+
+	private void enqueue(final ScheduledTask task) {
+
+		final TaskQueue taskQueue = getQueue(task.getTask().getClass());
+
+		task.enqueued();
+
+		synchronized (taskQueue) {
+
+			taskQueue.queue.add(task);
+
+			// start a new agent if all existing agents are busy
+			if (taskQueue.idle < taskQueue.queue.size() && taskQueue.agents.size() < taskQueue.maxAgents) {
+
+				final Agent agent = createAgent(task.getTask());
+				if (agent != null) {
+
+					agent.setPriority(taskQueue.priority);
+					taskQueue.agents.add(agent);
+					agent.start();
 
-			// re-add task..
-			synchronized (taskQueue) {
-				taskQueue.add(nextTask);
+					logger.log(Level.FINE, "Started agent {0} for task type {1}", new Object[] { agent.getName(), taskQueue.name });
+
+				} else if (taskQueue.agents.isEmpty()) {
+
+					logger.log(Level.WARNING, "No agent found for task type {0}", taskQueue.name);
+
+					// reject the task, nobody would ever complete its future
+					taskQueue.queue.remove(task);
+					taskQueue.failed.incrementAndGet();
+					task.getFuture().fail(new IllegalStateException("No agent found for task type " + taskQueue.name));
+				}
 			}
 		}
 	}
@@ -302,6 +472,153 @@ public class AgentService extends Thread implements RunnableService {
 		return (agent);
 	}
 
+	/**
+	 * Writes all pending tasks that implement {@link Serializable} to the
+	 * task store so they can be resumed after a restart. Tasks that are
+	 * not serializable remain in their queue and are processed by the
+	 * running agents.
+	 */
+	private synchronized void storeTasks() {
+
+		final List<ScheduledTask> pending = new ArrayList<>();
+
+		// DelayQueue.drainTo() only returns expired elements
+		for (final ScheduledTask task : delayQueue.toArray(new ScheduledTask[0])) {
+
+			if (delayQueue.remove(task)) {
+				pending.add(task);
+			}
+		}
+
+		for (final TaskQueue taskQueue : taskQueues.values()) {
+
+			final Iterator<ScheduledTask> it = taskQueue.queue.iterator();
+			while (it.hasNext()) {
+
+				final ScheduledTask task = it.next();
+				if (task.getTask() instanceof Serializable) {
+
+					pending.add(task);
+					it.remove();
+				}
+			}
+		}
+
+		final ArrayList<Task> tasks = new ArrayList<>();
+
+		for (final ScheduledTask task : pending) {
+
+			// the task will not be processed in this run
+			task.getFuture().complete(null);
+
+			if (task.getTask() instanceof Serializable) {
+
+				tasks.add(task.getTask());
+
+			} else {
+
+				logger.log(Level.WARNING, "Dropping delayed task {0}, it is not serializable.", task.getTask());
+			}
+		}
+
+		if (tasks.isEmpty() || storeFile == null) {
+			return;
+		}
+
+		try (final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(storeFile))) {
+
+			oos.writeObject(tasks);
+
+			logger.log(Level.INFO, "Stored {0} pending tasks in {1}", new Object[] { tasks.size(), storeFile });
+
+		} catch (IOException ioex) {
+
+			logger.log(Level.WARNING, "Unable to store pending tasks: {0}", ioex.getMessage());
+		}
+	}
+
+	private synchronized void restoreTasks() {
+
+		// service was stopped before it was able to start
+		if (!run || storeFile == null || !storeFile.exists()) {
+			return;
+		}
+
+		List<Task> tasks = null;
+
+		try (final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(storeFile))) {
+
+			tasks = (List<Task>)ois.readObject();
+
+		} catch (IOException | ClassNotFoundException | ClassCastException ex) {
+
+			logger.log(Level.WARNING, "Unable to restore pending tasks from {0}: {1}", new Object[] { storeFile, ex.getMessage() });
+		}
+
+		storeFile.delete();
+
+		if (tasks != null) {
+
+			logger.log(Level.INFO, "Restoring {0} pending tasks", tasks.size());
+
+			for (final Task task : tasks) {
+				processTask(task);
+			}
+		}
+	}
+
+	private TaskQueue getQueue(final Class taskClass) {
+
+		TaskQueue taskQueue = taskQueues.get(taskClass);
+		if (taskQueue == null) {
+
+			synchronized (taskQueues) {
+
+				taskQueue = taskQueues.get(taskClass);
+				if (taskQueue == null) {
+
+					final String name = taskClass.getSimpleName();
+
+					taskQueue = new TaskQueue(
+						name,
+						getRunningAgentsForTask(taskClass),
+						parseInt(getConfigurationValue(THREADS + "." + name), maxAgents),
+						Math.min(Thread.MAX_PRIORITY, Math.max(Thread.MIN_PRIORITY, parseInt(getConfigurationValue(PRIORITY + "." + name), Thread.NORM_PRIORITY)))
+					);
+
+					taskQueues.put(taskClass, taskQueue);
+				}
+			}
+		}
+
+		return taskQueue;
+	}
+
+	private String getConfigurationValue(final String key) {
+
+		if (config != null) {
+			return config.getProperty(key);
+		}
+
+		return null;
+	}
+
+	private int parseInt(final String value, final int defaultValue) {
+
+		if (value != null) {
+
+			try {
+				return Integer.parseInt(value.trim());
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid configuration value {0}, using default of {1}", new Object[] { value, defaultValue });
+			}
+		}
+
+		return defaultValue;
+	}
+
 	// </editor-fold>
 
 	//~--- get methods ----------------------------------------------------
@@ -311,7 +628,78 @@ public class AgentService extends Thread implements RunnableService {
 	 * @return
 	 */
 	public Collection<Task> getTaskQueue() {
-		return (taskQueue);
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final TaskQueue taskQueue : taskQueues.values()) {
+
+			for (final ScheduledTask task : taskQueue.queue) {
+				tasks.add(task.getTask());
+			}
+		}
+
+		for (final ScheduledTask task : delayQueue) {
+			tasks.add(task.getTask());
+		}
+
+		return (tasks);
+	}
+
+	/**
+	 * Returns the remaining tasks of the given type.
+	 * @param taskClass
+	 * @return
+	 */
+	public List<Task> getTaskQueue(final Class taskClass) {
+
+		final List<Task> tasks = new LinkedList<>();
+
+		for (final ScheduledTask task : getQueue(taskClass).queue) {
+			tasks.add(task.getTask());
+		}
+
+		return (tasks);
+	}
+
+	/**
+	 * Returns queue depth, wait time and run time metrics for each
+	 * task type. Times are averages in milliseconds.
+	 *
+	 * @return a map of task type name to metrics
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
+
+		for (final Entry<Class, TaskQueue> entry : taskQueues.entrySet()) {
+
+			final TaskQueue taskQueue       = entry.getValue();
+			final Map<String, Object> stats = new LinkedHashMap<>();
+			final long started              = taskQueue.started.get();
+			final long finished             = taskQueue.completed.get() + taskQueue.failed.get() + taskQueue.retried.get();
+			int delayed                     = 0;
+
+			for (final ScheduledTask task : delayQueue) {
+
+				if (entry.getKey().equals(task.getTask().getClass())) {
+					delayed++;
+				}
+			}
+
+			stats.put("queued",          taskQueue.queue.size());
+			stats.put("delayed",         delayed);
+			stats.put("agents",          taskQueue.agents.size());
+			stats.put("maxAgents",       taskQueue.maxAgents);
+			stats.put("completed",       taskQueue.completed.get());
+			stats.put("failed",          taskQueue.failed.get());
+			stats.put("retried",         taskQueue.retried.get());
+			stats.put("averageWaitTime", started  > 0 ? TimeUnit.NANOSECONDS.toMillis(taskQueue.waitTime.get() / started)  : 0L);
+			stats.put("averageRunTime",  finished > 0 ? TimeUnit.NANOSECONDS.toMillis(taskQueue.runTime.get()  / finished) : 0L);
+
+			statistics.put(taskQueue.name, stats);
+		}
+
+		return statistics;
 	}
 
 	/**
@@ -322,6 +710,10 @@ public class AgentService extends Thread implements RunnableService {
 		return (runningAgents);
 	}
 
+	public int getMaxAgents(final Class taskClass) {
+		return getQueue(taskClass).maxAgents;
+	}
+
 	private List<Agent> getRunningAgentsForTask(Class taskClass) {
 
 		List<Agent> agents = runningAgents.get(taskClass);
@@ -342,4 +734,177 @@ public class AgentService extends Thread implements RunnableService {
 		return (this.run);
 	}
 
+	// ----- nested classes -----
+	/**
+	 * The queue of a single task type, ordered by task priority.
+	 */
+	private static class TaskQueue {
+
+		private static final Comparator<ScheduledTask> PRIORITY_ORDER = new Comparator<ScheduledTask>() {
+
+			@Override
+			public int compare(final ScheduledTask t1, final ScheduledTask t2) {
+
+				final int p1 = t1.getTask().priority();
+				final int p2 = t2.getTask().priority();
+
+				if (p1 != p2) {
+					return p1 > p2 ? -1 : 1;
+				}
+
+				return Long.compare(t1.getSequence(), t2.getSequence());
+			}
+		};
+
+		private final PriorityBlockingQueue<ScheduledTask> queue = new PriorityBlockingQueue<>(11, PRIORITY_ORDER);
+		private final AtomicLong completed                       = new AtomicLong();
+		private final AtomicLong failed                          = new AtomicLong();
+		private final AtomicLong retried                         = new AtomicLong();
+		private final AtomicLong started                         = new AtomicLong();
+		private final AtomicLong waitTime                        = new AtomicLong();
+		private final AtomicLong runTime                         = new AtomicLong();
+		private List<Agent> agents                               = null;
+		private String name                                      = null;
+		private int maxAgents                                    = 0;
+		private int priority                                     = 0;
+		private int idle                                         = 0;
+
+		public TaskQueue(final String name, final List<Agent> agents, final int maxAgents, final int priority) {
+
+			this.name      = name;
+			this.agents    = agents;
+			this.maxAgents = Math.max(1, maxAgents);
+			this.priority  = priority;
+		}
+	}
+
+	/**
+	 * A task together with its scheduling information.
+	 */
+	static class ScheduledTask implements Delayed {
+
+		private TaskFuture future  = null;
+		private Task task          = null;
+		private long sequence      = 0L;
+		private int attempt        = 0;
+		private long dueTime       = 0L;
+		private long enqueuedTime  = 0L;
+
+		public ScheduledTask(final Task task, final TaskFuture future, final long sequence, final int attempt, final long dueTime) {
+
+			this.task     = task;
+			this.future   = future;
+			this.sequence = sequence;
+			this.attempt  = attempt;
+			this.dueTime  = dueTime;
+		}
+
+		public Task getTask() {
+			return task;
+		}
+
+		public TaskFuture getFuture() {
+			return future;
+		}
+
+		public long getSequence() {
+			return sequence;
+		}
+
+		public int getAttempt() {
+			return attempt;
+		}
+
+		public void enqueued() {
+			enqueuedTime = System.nanoTime();
+		}
+
+		/**
+		 * Returns the time in nanoseconds this task has waited in its queue.
+		 */
+		public long started() {
+			return System.nanoTime() - enqueuedTime;
+		}
+
+		@Override
+		public long getDelay(final TimeUnit unit) {
+			return unit.convert(dueTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(final Delayed other) {
+
+			final ScheduledTask otherTask = (ScheduledTask)other;
+
+			if (dueTime != otherTask.dueTime) {
+				return dueTime < otherTask.dueTime ? -1 : 1;
+			}
+
+			return Long.compare(sequence, otherTask.sequence);
+		}
+	}
+
+	/**
+	 * The result of a submitted task.
+	 */
+	private static class TaskFuture implements Future<ReturnValue> {
+
+		private final CountDownLatch done  = new CountDownLatch(1);
+		private volatile ReturnValue value = null;
+		private volatile Throwable cause   = null;
+
+		public void complete(final ReturnValue value) {
+
+			this.value = value;
+			done.countDown();
+		}
+
+		public void fail(final Throwable cause) {
+
+			this.cause = cause;
+			done.countDown();
+		}
+
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public ReturnValue get() throws InterruptedException, ExecutionException {
+
+			done.await();
+
+			return getValue();
+		}
+
+		@Override
+		public ReturnValue get(final long timeout, final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+
+			if (!done.await(timeout, unit)) {
+				throw new TimeoutException();
+			}
+
+			return getValue();
+		}
+
+		private ReturnValue getValue() throws ExecutionException {
+
+			if (cause != null) {
+				throw new ExecutionException(cause);
+			}
+
+			return value;
+		}
+	}
 }
@@ -19,6 +19,7 @@
 package org.structr.agent;
 
 import java.util.Collection;
+import java.util.Map;
 
 /**
  * Returns a Collection of the currently remaining {@link Task}s
@@ -37,4 +38,21 @@ public class ListTasksCommand extends AgentServiceCommand {
 
 		return null;
 	}
+
+	/**
+	 * Returns queue depth, wait time and run time metrics for each
+	 * task type, see {@link AgentService#getStatistics()}.
+	 *
+	 * @return a map of task type name to metrics
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
+
+		AgentService agentService = (AgentService)arguments.get("agentService");
+		if(agentService != null) {
+
+			return agentService.getStatistics();
+		}
+
+		return null;
+	}
 }
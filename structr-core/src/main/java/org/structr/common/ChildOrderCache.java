@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.collections.map.LRUMap;
+import org.structr.core.graph.TransactionCommand;
+
+/**
+ * Caches the order of the child relationships of tree nodes, so that the
+ * children of a node don't need to be sorted by their position on every
+ * access.
+ *
+ * For each parent node, the ids of all of its child relationships are stored
+ * with their index in the sorted list of children, in ascending order. The
+ * order is computed from the database relationships, so it is the same for
+ * all users, and each user's children are filtered against it.
+ *
+ * Entries are invalidated from the {@link org.structr.core.graph.ModificationQueue}
+ * when child relationships are created, deleted or repositioned.
+ *
+ * @author Christian Morgner
+ */
+public class ChildOrderCache {
+
+	private static final int MAX_NODES                         = 10000;
+
+	private static final Map<Long, Map<Long, Integer>> orders  = Collections.synchronizedMap(new LRUMap(MAX_NODES));
+	private static final AtomicLong generation                 = new AtomicLong(0);
+
+	/**
+	 * Returns the cached order of the child relationships of the node with
+	 * the given id, or null if the order is not cached.
+	 *
+	 * @param nodeId
+	 * @return a map from relationship id to index in ascending order, or null
+	 */
+	public static Map<Long, Integer> get(final long nodeId) {
+		return orders.get(nodeId);
+	}
+
+	/**
+	 * Returns the current generation of this cache, which must be passed
+	 * to {@link #store} along with an order computed after this call.
+	 *
+	 * @return the current generation
+	 */
+	public static long getGeneration() {
+		return generation.get();
+	}
+
+	public static void store(final long nodeId, final Map<Long, Integer> order, final long startGeneration) {
+
+		if (!isCacheable(nodeId)) {
+			return;
+		}
+
+		synchronized (orders) {
+
+			// do not store results computed before an invalidation
+			if (generation.get() != startGeneration) {
+				return;
+			}
+
+			orders.put(nodeId, Collections.unmodifiableMap(order));
+		}
+	}
+
+	public static void invalidateNode(final long nodeId) {
+
+		generation.incrementAndGet();
+		orders.remove(nodeId);
+	}
+
+	public static void clear() {
+
+		generation.incrementAndGet();
+		orders.clear();
+	}
+
+	// ----- private methods -----
+	/**
+	 * An order computed inside a transaction that has modified the children
+	 * of the node must not be visible to other threads before commit.
+	 */
+	private static boolean isCacheable(final long nodeId) {
+		return !TransactionCommand.hasChildOrderModifications(nodeId);
+	}
+}
@@ -151,11 +151,16 @@ public class PagingHelper {
 
 		if (pageSize > 0 && pageSize < Integer.MAX_VALUE) {
 
-			int pageCount = getPageCount(result.getRawResultCount(), pageSize);
+			// the result count of a lazy result is not known
+			// before it is streamed, see StreamingWriter
+			if (!result.isLazy()) {
 
-			if (pageCount > 0) {
+				int pageCount = getPageCount(result.getRawResultCount(), pageSize);
 
-				result.setPageCount(pageCount);
+				if (pageCount > 0) {
+
+					result.setPageCount(pageCount);
+				}
 			}
 
 			result.setPage(page);
@@ -169,7 +174,7 @@ public class PagingHelper {
 
 	//~--- get methods ----------------------------------------------------
 
-	private static int getPageCount(int resultCount, int pageSize) {
+	public static int getPageCount(int resultCount, int pageSize) {
 
 		return (int) Math.rint(Math.ceil((double) resultCount / (double) pageSize));
 
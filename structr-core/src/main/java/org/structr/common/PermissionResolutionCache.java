@@ -0,0 +1,315 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.collections.map.LRUMap;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.Security;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+
+/**
+ * Caches the effective permissions of principals on nodes.
+ *
+ * For each principal, the transitive group membership is flattened into a
+ * set of node ids. For each (node, principal) pair, the permissions granted
+ * by the incoming SECURITY relationships of the node to the principal or
+ * any of its groups are stored as a bitset of {@link Permission} ordinals.
+ *
+ * Entries are invalidated from the {@link org.structr.core.graph.ModificationQueue}
+ * when security relationships, ownership or group membership change.
+ *
+ * @author Christian Morgner
+ */
+public class PermissionResolutionCache {
+
+	private static final int MAX_PRINCIPALS                    = 10000;
+	private static final int MAX_NODES                         = 100000;
+	private static final int ALL_PERMISSIONS                   = -1;
+
+	private static final Map<Long, Membership> memberships     = Collections.synchronizedMap(new LRUMap(MAX_PRINCIPALS));
+	private static final Map<Long, Map<Long, Integer>> grants  = Collections.synchronizedMap(new LRUMap(MAX_NODES));
+	private static final AtomicLong generation                 = new AtomicLong(0);
+	private static final AtomicLong hits                       = new AtomicLong(0);
+	private static final AtomicLong misses                     = new AtomicLong(0);
+
+	/**
+	 * Returns true if the given permission is granted to the given principal
+	 * (or any of its groups) on the given node. Ownership and superuser
+	 * status are not considered here, see {@link SecurityContext#isAllowed}.
+	 *
+	 * @param node
+	 * @param permission
+	 * @param principal
+	 * @return whether the permission is granted
+	 */
+	public static boolean isGranted(final NodeInterface node, final Permission permission, final Principal principal) {
+		return (getPermissions(node, principal) & mask(permission)) != 0;
+	}
+
+	/**
+	 * Resolves the permissions of the given principal for all given nodes
+	 * at once, so that subsequent checks on any of the nodes are served
+	 * from the cache.
+	 *
+	 * @param nodes
+	 * @param principal
+	 */
+	public static void resolve(final Iterable<? extends NodeInterface> nodes, final Principal principal) {
+
+		final Membership membership = getMembership(principal);
+
+		for (final NodeInterface node : nodes) {
+
+			if (node != null && lookup(node.getId(), principal.getId()) == null) {
+
+				resolve(node, principal, membership);
+			}
+		}
+	}
+
+	/**
+	 * Returns the ids of all groups the given principal is a member of,
+	 * including transitive memberships.
+	 *
+	 * @param principal
+	 * @return the group ids
+	 */
+	public static Set<Long> getAncestorIds(final Principal principal) {
+		return getMembership(principal).ancestors;
+	}
+
+	/**
+	 * Returns the ids of the groups the given principal is a direct member of.
+	 *
+	 * @param principal
+	 * @return the group ids
+	 */
+	public static Set<Long> getParentIds(final Principal principal) {
+		return getMembership(principal).parents;
+	}
+
+	public static void invalidateNode(final long nodeId) {
+
+		generation.incrementAndGet();
+		grants.remove(nodeId);
+	}
+
+	public static void invalidateMemberships() {
+
+		generation.incrementAndGet();
+		memberships.clear();
+		grants.clear();
+	}
+
+	public static void clear() {
+		invalidateMemberships();
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	// ----- private methods -----
+	private static int getPermissions(final NodeInterface node, final Principal principal) {
+
+		final Integer cached = lookup(node.getId(), principal.getId());
+		if (cached != null) {
+
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		misses.incrementAndGet();
+
+		return resolve(node, principal, getMembership(principal));
+	}
+
+	private static Integer lookup(final long nodeId, final long principalId) {
+
+		final Map<Long, Integer> principals = grants.get(nodeId);
+		if (principals != null) {
+
+			return principals.get(principalId);
+		}
+
+		return null;
+	}
+
+	private static int resolve(final NodeInterface node, final Principal principal, final Membership membership) {
+
+		final long startGeneration = generation.get();
+		final long nodeId          = node.getId();
+		int permissions            = 0;
+
+		if (membership.ancestors.contains(nodeId)) {
+
+			// principals have full control over their groups
+			permissions = ALL_PERMISSIONS;
+
+		} else {
+
+			final Node dbNode = node.getNode();
+			if (dbNode != null) {
+
+				for (final Relationship rel : dbNode.getRelationships(RelType.SECURITY, Direction.INCOMING)) {
+
+					final long sourceId = rel.getStartNode().getId();
+					if (sourceId == membership.principalId || membership.ancestors.contains(sourceId)) {
+
+						permissions |= parse(rel);
+					}
+				}
+			}
+		}
+
+		store(nodeId, membership.principalId, permissions, startGeneration);
+
+		return permissions;
+	}
+
+	private static Membership getMembership(final Principal principal) {
+
+		final long principalId = principal.getId();
+		Membership membership  = memberships.get(principalId);
+
+		if (membership == null) {
+
+			final long startGeneration   = generation.get();
+			final Set<Long> parents      = new HashSet<>();
+			final Set<Long> ancestors    = new HashSet<>();
+			final LinkedList<Principal> queue = new LinkedList<>();
+
+			for (final Principal parent : principal.getParents()) {
+
+				parents.add(parent.getId());
+				queue.add(parent);
+			}
+
+			// breadth-first traversal of the group hierarchy, the
+			// ancestors set protects against membership cycles
+			while (!queue.isEmpty()) {
+
+				final Principal current = queue.removeFirst();
+				if (ancestors.add(current.getId())) {
+
+					queue.addAll(current.getParents());
+				}
+			}
+
+			membership = new Membership(principalId, parents, ancestors);
+
+			if (isCacheable() && generation.get() == startGeneration) {
+				memberships.put(principalId, membership);
+			}
+		}
+
+		return membership;
+	}
+
+	private static void store(final long nodeId, final long principalId, final int permissions, final long startGeneration) {
+
+		if (!isCacheable()) {
+			return;
+		}
+
+		synchronized (grants) {
+
+			// do not store results computed before an invalidation
+			if (generation.get() != startGeneration) {
+				return;
+			}
+
+			Map<Long, Integer> principals = grants.get(nodeId);
+			if (principals == null) {
+
+				principals = new ConcurrentHashMap<>();
+				grants.put(nodeId, principals);
+			}
+
+			principals.put(principalId, permissions);
+		}
+	}
+
+	/**
+	 * Results computed inside a transaction that has modified security
+	 * information must not be visible to other threads before commit.
+	 */
+	private static boolean isCacheable() {
+		return !TransactionCommand.hasSecurityModifications();
+	}
+
+	private static int parse(final Relationship rel) {
+
+		int permissions = 0;
+
+		if (rel.hasProperty(Security.allowed.dbName())) {
+
+			final Object value = rel.getProperty(Security.allowed.dbName());
+			if (value instanceof String[]) {
+
+				for (final String name : (String[])value) {
+
+					for (final Permission permission : Permission.values()) {
+
+						if (permission.name().equals(name)) {
+
+							permissions |= mask(permission);
+						}
+					}
+				}
+			}
+		}
+
+		return permissions;
+	}
+
+	private static int mask(final Permission permission) {
+		return 1 << permission.ordinal();
+	}
+
+	// ----- nested classes -----
+	private static class Membership {
+
+		private Set<Long> ancestors = null;
+		private Set<Long> parents   = null;
+		private long principalId    = -1L;
+
+		public Membership(final long principalId, final Set<Long> parents, final Set<Long> ancestors) {
+
+			this.principalId = principalId;
+			this.parents     = Collections.unmodifiableSet(parents);
+			this.ancestors   = Collections.unmodifiableSet(ancestors);
+		}
+	}
+}
@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -386,7 +387,7 @@ public class SecurityContext {
 		Principal owner = node.getOwnerNode();
 
 		// owner is always allowed to do anything with its nodes
-		if (user.equals(node) || user.equals(owner) || user.getParents().contains(owner)) {
+		if (user.equals(node) || user.equals(owner) || (owner != null && PermissionResolutionCache.getParentIds(user).contains(owner.getId()))) {
 
 			return true;
 		}
@@ -395,6 +396,34 @@ public class SecurityContext {
 
 	}
 
+	/**
+	 * Returns the readable nodes of the given collection. The permissions
+	 * of the current user are resolved for the whole collection at once.
+	 *
+	 * @param nodes
+	 * @param includeDeletedAndHidden
+	 * @param publicOnly
+	 * @return the readable nodes
+	 */
+	public <T extends NodeInterface> List<T> filterReadable(final List<T> nodes, final boolean includeDeletedAndHidden, final boolean publicOnly) {
+
+		final List<T> readable = new LinkedList<>();
+		final Principal user   = getUser(false);
+
+		if (user != null && !(user instanceof SuperUser)) {
+			PermissionResolutionCache.resolve(nodes, user);
+		}
+
+		for (final T node : nodes) {
+
+			if (isReadable(node, includeDeletedAndHidden, publicOnly)) {
+				readable.add(node);
+			}
+		}
+
+		return readable;
+	}
+
 	public boolean isVisible(AccessControllable node) {
 
 		switch (accessMode) {
@@ -517,7 +546,7 @@ public class SecurityContext {
 			Principal owner = node.getOwnerNode();
 
 			// owner is always allowed to do anything with its nodes
-			if (user.equals(node) || user.equals(owner) || user.getParents().contains(owner)) {
+			if (user.equals(node) || user.equals(owner) || (owner != null && PermissionResolutionCache.getParentIds(user).contains(owner.getId()))) {
 
 				return true;
 			}
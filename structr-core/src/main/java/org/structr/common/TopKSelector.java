@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.core.GraphObject;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Selects the first <code>limit</code> elements of a sequence of graph
+ * objects in the order defined by a sort key, without sorting the whole
+ * sequence. The sort value of each object is read only once, and the
+ * order of elements with equal sort values is preserved, so the result
+ * is identical to sorting the whole list with a {@link GraphObjectComparator}.
+ *
+ * @author Christian Morgner
+ */
+public class TopKSelector {
+
+	private static final Logger logger = Logger.getLogger(TopKSelector.class.getName());
+
+	private PriorityQueue<Entry> heap = null;
+	private Comparator<Entry> order   = null;
+	private PropertyKey sortKey       = null;
+	private int limit                 = 0;
+	private int count                 = 0;
+
+	public TopKSelector(final PropertyKey sortKey, final boolean sortDescending, final int limit) {
+
+		this.order   = new EntryComparator(sortDescending);
+		this.heap    = new PriorityQueue<>(Math.max(1, Math.min(limit, 1024)), Collections.reverseOrder(order));
+		this.sortKey = sortKey;
+		this.limit   = limit;
+	}
+
+	public void add(final GraphObject obj) {
+
+		if (limit <= 0) {
+			return;
+		}
+
+		final Entry entry = new Entry(obj, getComparableProperty(obj), count++);
+
+		if (heap.size() < limit) {
+
+			heap.add(entry);
+
+		} else if (order.compare(entry, heap.peek()) < 0) {
+
+			// new entry ranks before the last of the current selection
+			heap.poll();
+			heap.add(entry);
+		}
+	}
+
+	/**
+	 * @return the number of objects that were added to this selector
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * @return the selected objects in sort order
+	 */
+	public List<GraphObject> getResults() {
+
+		final List<Entry> entries     = new ArrayList<>(heap);
+		final List<GraphObject> result = new ArrayList<>(entries.size());
+
+		Collections.sort(entries, order);
+
+		for (final Entry entry : entries) {
+			result.add(entry.obj);
+		}
+
+		return result;
+	}
+
+	// ----- private methods -----
+	private Comparable getComparableProperty(final GraphObject obj) {
+
+		try {
+			return obj.getComparableProperty(sortKey);
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to read sort property {0} of {1}: {2}", new Object[] { sortKey, obj, t.getMessage() } );
+		}
+
+		return null;
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private GraphObject obj   = null;
+		private Comparable value  = null;
+		private int position      = 0;
+
+		public Entry(final GraphObject obj, final Comparable value, final int position) {
+
+			this.obj      = obj;
+			this.value    = value;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * Compares entries like {@link GraphObjectComparator} does, using the
+	 * insertion position to break ties.
+	 */
+	private static class EntryComparator implements Comparator<Entry> {
+
+		private boolean desc = false;
+
+		public EntryComparator(final boolean desc) {
+			this.desc = desc;
+		}
+
+		@Override
+		public int compare(final Entry e1, final Entry e2) {
+
+			final int result = compareValues(e1.value, e2.value);
+			if (result != 0) {
+
+				return result;
+			}
+
+			return Integer.compare(e1.position, e2.position);
+		}
+
+		private int compareValues(final Comparable c1, final Comparable c2) {
+
+			if (c1 == null || c2 == null) {
+
+				if (c1 == null && c2 == null) {
+
+					return 0;
+
+				} else if (c1 == null) {
+
+					return desc ? -1 : 1;
+
+				} else {
+
+					return desc ? 1 : -1;
+				}
+			}
+
+			try {
+				return desc ? c2.compareTo(c1) : c1.compareTo(c2);
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Cannot compare values {0} and {1}: {2}", new Object[] { c1, c2, t.getMessage() } );
+			}
+
+			return 0;
+		}
+	}
+}
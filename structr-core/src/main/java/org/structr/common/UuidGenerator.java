@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.security.SecureRandom;
+
+/**
+ * Generates random (version 4) UUIDs in their 32 character hex form, i.e.
+ * without dashes. Each thread uses its own SecureRandom instance and its
+ * own buffers, so ids are generated on the calling thread without
+ * contention and without intermediate objects besides the result string.
+ *
+ * @author Christian Morgner
+ */
+public class UuidGenerator {
+
+	private static final char[] HEX                      = "0123456789abcdef".toCharArray();
+	private static final ThreadLocal<UuidGenerator> local = new ThreadLocal<UuidGenerator>() {
+
+		@Override
+		protected UuidGenerator initialValue() {
+			return new UuidGenerator();
+		}
+	};
+
+	private final SecureRandom random = new SecureRandom();
+	private final byte[] bytes        = new byte[16];
+	private final char[] chars        = new char[32];
+
+	private UuidGenerator() {}
+
+	/**
+	 * Returns a new random UUID without dashes, in the same format as
+	 * <code>UUID.randomUUID().toString().replace("-", "")</code>.
+	 *
+	 * @return a 32 character lowercase hex string
+	 */
+	public static String nextUuid() {
+		return local.get().next();
+	}
+
+	// ----- private methods -----
+	private String next() {
+
+		random.nextBytes(bytes);
+
+		// version 4, IETF variant
+		bytes[6] = (byte)((bytes[6] & 0x0f) | 0x40);
+		bytes[8] = (byte)((bytes[8] & 0x3f) | 0x80);
+
+		for (int i=0; i<16; i++) {
+
+			final int b = bytes[i];
+
+			chars[i << 1]       = HEX[(b >> 4) & 0x0f];
+			chars[(i << 1) + 1] = HEX[b & 0x0f];
+		}
+
+		return new String(chars);
+	}
+}
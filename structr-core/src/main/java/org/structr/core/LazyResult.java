@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A result whose elements are created one at a time while it is being
+ * iterated, so that large results can be streamed with bounded memory.
+ * Calling {@link #getResults()} before the result has been streamed
+ * materializes all elements, which keeps existing callers working.
+ *
+ * A lazy result owns its source, which is released when the result count
+ * has been determined, or when {@link #close()} is called. Both must happen
+ * in the transaction the result was created in.
+ *
+ * @author Christian Morgner
+ */
+public class LazyResult<T extends GraphObject> extends Result<T> {
+
+	private Source<T> source     = null;
+	private boolean streamed     = false;
+	private boolean materialized = false;
+	private boolean counted      = false;
+
+	public LazyResult(final Source<T> source, final boolean isCollection, final boolean isPrimitiveArray) {
+
+		super((List<T>)null, null, isCollection, isPrimitiveArray);
+
+		// result count is not known yet
+		setRawResultCount(null);
+
+		this.source = source;
+	}
+
+	@Override
+	public List<T> getResults() {
+
+		if (!materialized) {
+
+			if (streamed) {
+				throw new IllegalStateException("Lazy result was already streamed");
+			}
+
+			final List<T> list = new ArrayList<>();
+			for (final T obj : source) {
+
+				list.add(obj);
+			}
+
+			materialized = true;
+
+			setResults(list);
+			setRawResultCount(source.getResultCount());
+
+			// all elements are in memory now
+			source.close();
+		}
+
+		return super.getResults();
+	}
+
+	@Override
+	public Iterable<T> getIterable() {
+
+		if (materialized) {
+			return super.getResults();
+		}
+
+		streamed = true;
+
+		return source;
+	}
+
+	@Override
+	public boolean isLazy() {
+		return !materialized;
+	}
+
+	@Override
+	public boolean isEmpty() {
+
+		if (streamed && !materialized) {
+			throw new IllegalStateException("Lazy result was already streamed");
+		}
+
+		return super.isEmpty();
+	}
+
+	/**
+	 * Returns the overall result count. For a streamed result, this
+	 * method must be called after the iteration has finished.
+	 *
+	 * @return the overall result count
+	 */
+	@Override
+	public Integer getRawResultCount() {
+
+		if (!streamed) {
+
+			// materialize to get an accurate count
+			getResults();
+
+		} else if (!materialized && !counted) {
+
+			setRawResultCount(source.getResultCount());
+			counted = true;
+
+			// the iteration has finished
+			source.close();
+		}
+
+		return super.getRawResultCount();
+	}
+
+	@Override
+	public void close() {
+		source.close();
+	}
+
+	/**
+	 * The source of a lazy result. It can be iterated only once.
+	 */
+	public interface Source<T> extends Iterable<T> {
+
+		/**
+		 * Returns the overall result count, which may require the
+		 * source to examine the elements that were not iterated.
+		 *
+		 * @return the overall result count
+		 */
+		public int getResultCount();
+
+		/**
+		 * Releases the resources held by this source. Calling this
+		 * method more than once has no effect.
+		 */
+		public void close();
+	}
+}
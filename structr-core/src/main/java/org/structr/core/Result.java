@@ -73,17 +73,53 @@ public class Result<T extends GraphObject> {
 	}
 
 	public T get(final int i) {
-		return results.get(i);
+		return getResults().get(i);
 	}
 	
 	public boolean isEmpty() {
-		return results == null || results.isEmpty();
+
+		final List<T> list = getResults();
+
+		return list == null || list.isEmpty();
 	}
 	
 	public List<T> getResults() {
 		return results;
 	}
 
+	/**
+	 * Returns the elements of this result for a single iteration. The
+	 * default implementation returns the materialized result list.
+	 *
+	 * @return the elements of this result
+	 */
+	public Iterable<T> getIterable() {
+		return getResults();
+	}
+
+	/**
+	 * Indicates whether the elements of this result are created while
+	 * iterating over {@link #getIterable()}, so that the result count is
+	 * only known afterwards.
+	 *
+	 * @return whether this result is lazy
+	 */
+	public boolean isLazy() {
+		return false;
+	}
+
+	/**
+	 * Releases the resources this result holds on to, e.g. the index hits
+	 * of a lazy result. Must be called in the transaction the result was
+	 * created in. The default implementation does nothing.
+	 */
+	public void close() {
+	}
+
+	protected void setResults(final List<T> results) {
+		this.results = results;
+	}
+
 	public void setQueryTime(final String queryTime) {
 		this.queryTime = queryTime;
 	}
@@ -178,7 +214,7 @@ public class Result<T extends GraphObject> {
 	}
 	
 	public int size() {
-		return !isEmpty() ? results.size() : 0;
+		return !isEmpty() ? getResults().size() : 0;
 	}
 	
 	public void setHasPartialContent(boolean hasPartialContent) {
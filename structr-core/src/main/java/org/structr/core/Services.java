@@ -75,6 +75,7 @@ public class Services {
 	public static final String FILES_PATH                    = "files.path";
 	public static final String DATA_EXCHANGE_PATH            = "data.exchange.path";
 	public static final String LOG_DATABASE_PATH             = "log.database.path";
+	public static final String SCHEMA_CACHE_PATH             = "schema.cache.path";
 	public static final String FOREIGN_TYPE                  = "foreign.type.key";
 	public static final String NEO4J_SHELL_ENABLED           = "neo4j.shell.enabled";
 	public static final String NEO4J_SHELL_PORT              = "neo4j.shell.port";
@@ -555,6 +556,7 @@ public class Services {
 			baseConf.setProperty(DATABASE_PATH,             System.getProperty("user.dir").concat("/db"));
 			baseConf.setProperty(FILES_PATH,                System.getProperty("user.dir").concat("/files"));
 			baseConf.setProperty(LOG_DATABASE_PATH,         System.getProperty("user.dir").concat("/logDb.dat"));
+			baseConf.setProperty(SCHEMA_CACHE_PATH,         System.getProperty("user.dir").concat("/schema"));
 
 			baseConf.setProperty(SMTP_HOST,                 "localhost");
 			baseConf.setProperty(SMTP_PORT,                 "25");
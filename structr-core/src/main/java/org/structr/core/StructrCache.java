@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core;
+
+/**
+ * A cache of database contents that is not maintained by a transaction
+ * listener alone. Implementations must be registered in {@link
+ * org.structr.core.graph.TransactionCommand}, so that they are cleared when
+ * the database is modified without notifications, e.g. by a bulk import.
+ *
+ * @author Christian Morgner
+ */
+public interface StructrCache {
+
+	public void clearCache();
+}
@@ -19,18 +19,28 @@
 package org.structr.core.entity;
 
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.helpers.Function;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.helpers.collection.Iterables;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipFactory;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 
@@ -57,7 +67,126 @@ public abstract class AbstractEndpoint {
 		return Iterables.filter(new OtherNodeTypeFilter(securityContext, dbNode, otherNodeType, predicate), dbNode.getRelationships(direction, relationshipType));
 	}
 
+	/**
+	 * Returns the nodes on the other side of the relationships with the given
+	 * type and direction. Relationships to nodes of other types are filtered
+	 * by the raw type property, each accepted node is instantiated once.
+	 *
+	 * @param securityContext the security context
+	 * @param dbNode the node
+	 * @param relationshipType the relationship type
+	 * @param direction the direction
+	 * @param otherNodeType the type of the node on the other side
+	 * @param predicate an optional predicate for the related nodes
+	 *
+	 * @return the related nodes
+	 */
+	public <T extends NodeInterface> Iterable<T> getRelatedNodes(final SecurityContext securityContext, final Node dbNode, final RelationshipType relationshipType, final Direction direction, final Class otherNodeType, final Predicate<GraphObject> predicate) {
+
+		final NodeFactory<T> nodeFactory  = new NodeFactory<>(securityContext);
+		final Iterable<Relationship> rels = Iterables.filter(new OtherNodeTypeFilter(securityContext, dbNode, otherNodeType, null, false), dbNode.getRelationships(direction, relationshipType));
+
+		return Iterables.filter(new Predicate<T>() {
+
+			@Override
+			public boolean accept(final T node) {
+
+				// instantiation returns null for nodes that are not visible
+				return node != null && (predicate == null || predicate.accept(node));
+			}
+
+		}, Iterables.map(nodeFactory, Iterables.map(new Function<Relationship, Node>() {
+
+			@Override
+			public Node apply(final Relationship from) {
+				return from.getOtherNode(dbNode);
+			}
+
+		}, rels)));
+	}
+
 	// ----- protected methods -----
+	/**
+	 * Collects the relationships of the given type and direction in a single
+	 * pass, mapped by the database id of the node on the other side.
+	 *
+	 * @param securityContext the security context
+	 * @param dbNode the node
+	 * @param relationshipType the relationship type
+	 * @param direction the direction
+	 * @param otherNodeType the type of the node on the other side
+	 *
+	 * @return a map of other node id to relationships
+	 */
+	protected Map<Long, List<Relationship>> getRelationshipMap(final SecurityContext securityContext, final Node dbNode, final RelationshipType relationshipType, final Direction direction, final Class otherNodeType) {
+
+		final Map<Long, List<Relationship>> map = new LinkedHashMap<>();
+
+		for (final Relationship rel : getMultiple(securityContext, dbNode, relationshipType, direction, otherNodeType, null)) {
+
+			final Long otherNodeId  = rel.getOtherNode(dbNode).getId();
+			List<Relationship> rels = map.get(otherNodeId);
+
+			if (rels == null) {
+
+				rels = new LinkedList<>();
+				map.put(otherNodeId, rels);
+			}
+
+			rels.add(rel);
+		}
+
+		return map;
+	}
+
+	/**
+	 * Maps the given nodes by their database id, ignoring null elements
+	 * and duplicates.
+	 *
+	 * @param collection the nodes
+	 *
+	 * @return a map of node id to node
+	 */
+	protected <T extends NodeInterface> Map<Long, T> getNodeMap(final Iterable<T> collection) {
+
+		final Map<Long, T> map = new LinkedHashMap<>();
+
+		if (collection != null) {
+
+			for (final T node : collection) {
+
+				if (node != null) {
+					map.put(node.getId(), node);
+				}
+			}
+		}
+
+		return map;
+	}
+
+	/**
+	 * Deletes all relationships in the given map, only the deleted
+	 * relationships are instantiated.
+	 *
+	 * @param securityContext the security context
+	 * @param relationshipMap the relationships to delete
+	 *
+	 * @throws FrameworkException
+	 */
+	protected void deleteRelationships(final SecurityContext securityContext, final Map<Long, List<Relationship>> relationshipMap) throws FrameworkException {
+
+		final RelationshipFactory factory = new RelationshipFactory(securityContext);
+		final App app                     = StructrApp.getInstance(securityContext);
+
+		for (final List<Relationship> rels : relationshipMap.values()) {
+
+			for (final Relationship rel : rels) {
+
+				app.delete(factory.instantiate(rel));
+			}
+		}
+	}
+
 	/**
 	 * Loads a PropertyMap from the current security context that was previously stored
 	 * there by one of the Notions that was executed before this relationship creation.
@@ -39,6 +39,7 @@ import org.neo4j.graphdb.index.Index;
 import org.structr.common.AccessControllable;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.Permission;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.common.ValidationHelper;
@@ -54,10 +55,12 @@ import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.relationship.PrincipalOwnsNode;
+import org.structr.core.graph.IndexChangeSet;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.NodeRelationshipStatisticsCommand;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.RelationshipFactory;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.schema.SchemaHelper;
@@ -759,24 +762,9 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable
 			return true;
 		}
 
-		Security r = getSecurityRelationship(principal);
-
-		if ((r != null) && r.isAllowed(permission)) {
-
-			return true;
-		}
-
-		// Now check possible parent principals
-		for (Principal parent : principal.getParents()) {
-
-			if (isGranted(permission, parent)) {
-
-				return true;
-			}
-
-		}
-
-		return false;
+		// check security relationships of the principal and all its
+		// (transitive) parent principals, see PermissionResolutionCache
+		return PermissionResolutionCache.isGranted(this, permission, principal);
 
 	}
 
@@ -1002,23 +990,21 @@ public abstract class AbstractNode implements NodeInterface, AccessControllable
 	@Override
 	public void removeFromIndex() {
 
-		for (Index<Node> index : Services.getInstance().getService(NodeService.class).getNodeIndices()) {
+		final IndexChangeSet changeSet = TransactionCommand.getIndexChangeSet();
 
-			synchronized (index) {
+		for (Index<Node> index : Services.getInstance().getService(NodeService.class).getNodeIndices()) {
 
-				index.remove(dbNode);
-			}
+			changeSet.remove(index, dbNode);
 		}
 	}
 
 	public void removeFromIndex(PropertyKey key) {
 
-		for (Index<Node> index : Services.getInstance().getService(NodeService.class).getNodeIndices()) {
+		final IndexChangeSet changeSet = TransactionCommand.getIndexChangeSet();
 
-			synchronized (index) {
+		for (Index<Node> index : Services.getInstance().getService(NodeService.class).getNodeIndices()) {
 
-				index.remove(dbNode, key.dbName());
-			}
+			changeSet.remove(index, dbNode, key.dbName());
 		}
 	}
 
@@ -49,9 +49,11 @@ import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.IndexChangeSet;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.IntProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
@@ -602,23 +604,21 @@ public abstract class AbstractRelationship<S extends NodeInterface, T extends No
 	@Override
 	public void removeFromIndex() {
 
-		for (Index<Relationship> index : Services.getInstance().getService(NodeService.class).getRelationshipIndices()) {
+		final IndexChangeSet changeSet = TransactionCommand.getIndexChangeSet();
 
-			synchronized (index) {
+		for (Index<Relationship> index : Services.getInstance().getService(NodeService.class).getRelationshipIndices()) {
 
-				index.remove(dbRelationship);
-			}
+			changeSet.remove(index, dbRelationship);
 		}
 	}
 
 	public void removeFromIndex(PropertyKey key) {
 
-		for (Index<Relationship> index : Services.getInstance().getService(NodeService.class).getRelationshipIndices()) {
+		final IndexChangeSet changeSet = TransactionCommand.getIndexChangeSet();
 
-			synchronized (index) {
+		for (Index<Relationship> index : Services.getInstance().getService(NodeService.class).getRelationshipIndices()) {
 
-				index.remove(dbRelationship, key.dbName());
-			}
+			changeSet.remove(index, dbRelationship, key.dbName());
 		}
 	}
 
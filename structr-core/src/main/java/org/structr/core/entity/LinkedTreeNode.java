@@ -19,17 +19,24 @@
 package org.structr.core.entity;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.helpers.collection.Iterables;
+import org.structr.common.ChildOrderCache;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.relationship.AbstractChildren;
 import org.structr.core.entity.relationship.AbstractListSiblings;
+import org.structr.core.graph.RelationshipFactory;
 import org.structr.core.graph.RelationshipInterface;
 import org.structr.core.property.PropertyMap;
 
@@ -40,6 +47,13 @@ import org.structr.core.property.PropertyMap;
  */
 public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends AbstractListSiblings<T, T>, T extends LinkedTreeNode> extends LinkedListNode<S, T> {
 
+	/**
+	 * The initial distance between the positions of two children when the
+	 * children are renumbered. Inserts between two children only write the
+	 * new relationship as long as there is room between their positions.
+	 */
+	private static final long POSITION_GAP = 1024;
+
 	public abstract Class<R> getChildLinkType();
 
 	public T treeGetParent() {
@@ -55,27 +69,21 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 
 	public void treeAppendChild(final T childElement) throws FrameworkException {
 
-		final T lastChild = treeGetLastChild();
-
-		PropertyMap properties = new PropertyMap();
-		properties.put(AbstractChildren.position, treeGetChildCount());
+		final List<Relationship> rels = getSortedChildRelationships(getNode());
+		final T lastChild             = treeGetLastChild();
 
 		// create child relationship
-		linkNodes(getChildLinkType(), (T) LinkedTreeNode.this, childElement, properties);
+		treeInsertAt(rels, rels.size(), childElement);
 
 		// add new node to linked list
 		if (lastChild != null) {
 			LinkedTreeNode.super.listInsertAfter(lastChild, childElement);
 		}
-		
-		ensureCorrectChildPositions();
 	}
 
 	public void treeInsertBefore(final T newChild, final T refChild) throws FrameworkException {
 
-		List<R> rels = treeGetChildRelationships();
-		boolean found = false;
-		int position = 0;
+		final List<Relationship> rels = getSortedChildRelationships(getNode());
 
 		// when there are no child rels, this is an append operation
 		if (rels.isEmpty()) {
@@ -89,42 +97,22 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 			return;
 		}
 
-		for (R rel : rels) {
-
-			T node = rel.getTargetNode();
-			if (node.equals(refChild)) {
-
-				// will be used only once here..
-				PropertyMap properties = new PropertyMap();
-				properties.put(AbstractChildren.position, position);
-
-				linkNodes(getChildLinkType(), (T) LinkedTreeNode.this, newChild, properties);
-
-				found = true;
-
-				position++;
-			}
-
-			rel.setProperty(AbstractChildren.position, position);
-
-			position++;
-		}
+		final int index = treeGetIndex(rels, refChild);
 
 		// if child is not found, raise an exception
-		if (!found) {
+		if (index < 0) {
 			throw new FrameworkException(404, "Referenced child is not a child of parent node.");
 		}
 
+		treeInsertAt(rels, index, newChild);
+
 		// insert new node in linked list
 		LinkedTreeNode.super.listInsertBefore(refChild, newChild);
-		
-		ensureCorrectChildPositions();
 	}
 
 	public void treeInsertAfter(final T newChild, final T refChild) throws FrameworkException {
 
-		List<R> rels = treeGetChildRelationships();
-		int position = 0;
+		final List<Relationship> rels = getSortedChildRelationships(getNode());
 
 		// when there are no child rels, this is an append operation
 		if (rels.isEmpty()) {
@@ -133,30 +121,17 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 			return;
 		}
 
-		for (R rel : rels) {
+		final int index = treeGetIndex(rels, refChild);
 
-			T node = rel.getTargetNode();
-
-			rel.setProperty(AbstractChildren.position, position);
-			position++;
-
-			if (node.equals(refChild)) {
-
-				// will be used only once here..
-				PropertyMap properties = new PropertyMap();
-				properties.put(AbstractChildren.position, position);
-
-				linkNodes(getChildLinkType(), (T) LinkedTreeNode.this, newChild, properties);
-
-				position++;
-			}
+		// if child is not found, raise an exception
+		if (index < 0) {
+			throw new FrameworkException(404, "Referenced child is not a child of parent node.");
 		}
 
+		treeInsertAt(rels, index + 1, newChild);
+
 		// insert new node in linked list
 		LinkedTreeNode.super.listInsertAfter(refChild, newChild);
-		
-		ensureCorrectChildPositions();
-
 	}
 
 	public void treeRemoveChild(final T childToRemove) throws FrameworkException {
@@ -164,31 +139,29 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 		// remove element from linked list
 		LinkedTreeNode.super.listRemove(childToRemove);
 
+		// the positions of the remaining children stay in order,
+		// so there is no need to renumber them
 		unlinkNodes(getChildLinkType(), (T) LinkedTreeNode.this, childToRemove);
-
-		ensureCorrectChildPositions();
-
 	}
 
 	public void treeReplaceChild(final T newChild, final T oldChild) throws FrameworkException {
 
 		// save old position
-		int oldPosition = treeGetChildPosition(oldChild);
+		final R oldRel         = (R) oldChild.getIncomingRelationship(getChildLinkType());
+		final Long oldPosition = oldRel != null ? getPosition(oldRel.getRelationship()) : null;
 
 		// remove old node
 		unlinkNodes(getChildLinkType(), (T) LinkedTreeNode.this, oldChild);
 
 		// insert new node with position from old node
 		PropertyMap properties = new PropertyMap();
-		properties.put(AbstractChildren.position, oldPosition);
+		properties.put(AbstractChildren.position, oldPosition != null ? oldPosition.intValue() : 0);
 
 		linkNodes(getChildLinkType(), (T) LinkedTreeNode.this, newChild, properties);
 
 		// replace element in linked list as well
 		LinkedTreeNode.super.listInsertBefore(oldChild, newChild);
 		LinkedTreeNode.super.listRemove(oldChild);
-		
-		ensureCorrectChildPositions();
 	}
 
 	public T treeGetFirstChild() {
@@ -197,39 +170,54 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 
 	public T treeGetLastChild() {
 
-		int last = treeGetChildCount() - 1;
-		if (last >= 0) {
+		final List<R> rels = treeGetChildRelationships();
+		if (!rels.isEmpty()) {
 
-			return treeGetChild(last);
+			return (T) rels.get(rels.size() - 1).getTargetNode();
 		}
 
 		return null;
 	}
 
+	/**
+	 * Returns the child at the given index, or null if there is no such
+	 * child.
+	 *
+	 * @param position the index of the child
+	 * @return the child or null
+	 */
 	public T treeGetChild(final int position) {
 
-		for (R rel : getOutgoingRelationships(getChildLinkType())) {
-
-			Integer pos = rel.getProperty(AbstractChildren.position);
+		final List<R> rels = treeGetChildRelationships();
+		if (position >= 0 && position < rels.size()) {
 
-			if (pos != null && pos == position) {
-
-				return (T) rel.getTargetNode();
-			}
+			return (T) rels.get(position).getTargetNode();
 		}
 
 		return null;
 	}
 
+	/**
+	 * Returns the index of the given child in the list of children of its
+	 * parent. The index does not necessarily match the position property
+	 * of the child relationship, since positions can be sparse. Children
+	 * that are not visible in the current security context are counted as
+	 * well, so the index is the same for all users.
+	 *
+	 * @param child
+	 * @return the index of the child
+	 */
 	public int treeGetChildPosition(final T child) {
 
-		final R rel = child.getIncomingRelationship(getChildLinkType());
+		final R rel = (R) child.getIncomingRelationship(getChildLinkType());
 		if (rel != null) {
 
-			Integer pos = rel.getProperty(AbstractChildren.position);
-			if (pos != null) {
+			final Relationship dbRelationship = rel.getRelationship();
+			final Integer index               = getChildOrder(dbRelationship.getStartNode()).get(dbRelationship.getId());
 
-				return pos;
+			if (index != null) {
+
+				return index;
 			}
 		}
 
@@ -252,50 +240,212 @@ public abstract class LinkedTreeNode<R extends AbstractChildren<T, T>, S extends
 		return (int) Iterables.count(getOutgoingRelationships(getChildLinkType()));
 	}
 
+	/**
+	 * Returns the child relationships of this node that are visible in the
+	 * current security context, sorted by position.
+	 *
+	 * @return the child relationships
+	 */
 	public List<R> treeGetChildRelationships() {
 
-		// fetch all relationships
-		List<R> childRels = Iterables.toList(getOutgoingRelationships(getChildLinkType()));
+		final Map<Long, R> visibleRels = new LinkedHashMap<>();
+		final List<R> childRels        = new ArrayList<>();
 
-		// sort relationships by position
-		Collections.sort(childRels, new Comparator<R>() {
+		// fetch all visible relationships
+		for (final R rel : getOutgoingRelationships(getChildLinkType())) {
+			visibleRels.put(rel.getId(), rel);
+		}
 
-			@Override
-			public int compare(R o1, R o2) {
+		// the order contains the ids of all child relationships in ascending order
+		for (final Long id : treeGetChildOrder().keySet()) {
+
+			final R rel = visibleRels.remove(id);
+			if (rel != null) {
+
+				childRels.add(rel);
+			}
+		}
+
+		// relationships that are missing in the order were created concurrently
+		childRels.addAll(visibleRels.values());
+
+		return childRels;
+	}
+
+	/**
+	 * Returns a map from child relationship id to the index of the child
+	 * in the list of all children of this node, in ascending order. The
+	 * order is independent of the current security context.
+	 *
+	 * @return the child order
+	 */
+	public Map<Long, Integer> treeGetChildOrder() {
+		return getChildOrder(getNode());
+	}
+
+	// ----- private methods -----
+	/**
+	 * Links the given child to this node at the given index of the given
+	 * list of child relationships. If there is room between the positions
+	 * of the neighbouring children, only the new relationship is written.
+	 * Otherwise, the positions of all children are spread out again, so
+	 * that subsequent inserts find enough room.
+	 */
+	private void treeInsertAt(final List<Relationship> rels, final int index, final T newChild) throws FrameworkException {
+
+		final int size = rels.size();
+		Long position  = null;
+
+		if (size == 0) {
+
+			position = 0L;
+
+		} else if (index == size) {
+
+			// append after the last child, leaving room for inserts
+			final Long last = getPosition(rels.get(size - 1));
+			if (last != null && last < Integer.MAX_VALUE) {
 
-				Integer pos1 = o1.getProperty(AbstractChildren.position);
-				Integer pos2 = o2.getProperty(AbstractChildren.position);
+				position = Math.min(last + POSITION_GAP, Integer.MAX_VALUE);
+			}
+
+		} else {
+
+			final Long upper = getPosition(rels.get(index));
+			final Long lower = index > 0 ? getPosition(rels.get(index - 1)) : (upper != null ? Math.max(upper - POSITION_GAP, Integer.MIN_VALUE) : null);
+
+			if (lower != null && upper != null && upper - lower > 1) {
+
+				position = lower + (upper - lower) / 2;
+			}
+		}
+
+		if (position == null) {
 
-				if (pos1 != null && pos2 != null) {
+			// no room left, renumber all children, including the ones
+			// that are not visible in the current security context
+			final RelationshipFactory<R> factory = new RelationshipFactory<>(securityContext);
+			final long gap                       = Math.max(1, Math.min(POSITION_GAP, Integer.MAX_VALUE / (size + 1)));
 
-					return pos1.compareTo(pos2);
+			for (int i=0; i<size; i++) {
+
+				final Relationship rel = rels.get(i);
+				final long newValue    = (i < index ? i : i + 1) * gap;
+				final Long oldValue    = getPosition(rel);
+
+				if (oldValue == null || oldValue != newValue) {
+					factory.instantiate(rel).setProperty(AbstractChildren.position, (int) newValue);
 				}
+			}
+
+			position = index * gap;
+		}
+
+		PropertyMap properties = new PropertyMap();
+		properties.put(AbstractChildren.position, position.intValue());
 
-				return 0;
+		linkNodes(getChildLinkType(), (T) LinkedTreeNode.this, newChild, properties);
+	}
+
+	private int treeGetIndex(final List<Relationship> rels, final T child) {
+
+		if (child != null) {
+
+			final long childId = child.getId();
+			final int size     = rels.size();
+
+			for (int i=0; i<size; i++) {
+
+				if (rels.get(i).getEndNode().getId() == childId) {
+					return i;
+				}
 			}
+		}
 
-		});
+		return -1;
+	}
 
-		return childRels;
+	/**
+	 * Returns the order of the children of the given node, from the
+	 * {@link ChildOrderCache} if possible.
+	 */
+	private Map<Long, Integer> getChildOrder(final Node parentNode) {
+
+		final Map<Long, Integer> cached = ChildOrderCache.get(parentNode.getId());
+		if (cached != null) {
+
+			return cached;
+		}
+
+		final long startGeneration     = ChildOrderCache.getGeneration();
+		final Map<Long, Integer> order = new LinkedHashMap<>();
+		int index                      = 0;
+
+		for (final Relationship rel : getSortedChildRelationships(parentNode)) {
+
+			order.put(rel.getId(), index++);
+		}
+
+		ChildOrderCache.store(parentNode.getId(), order, startGeneration);
+
+		return order;
 	}
 
 	/**
-	 * Ensures that the position attributes of the AbstractChildren of this
-	 * node are correct. Please note that this method needs to run in the
-	 * same transaction as any modifiying operation that changes the order
-	 * of child nodes, and therefore this method does _not_ create its own
-	 * transaction. However, it will not raise a NotInTransactionException
-	 * when called outside of modifying operations, because each setProperty
-	 * call creates its own transaction.
+	 * Returns the child relationships of the given node sorted by position.
+	 * The relationships are not filtered by visibility, so the order is the
+	 * same for all users. Relationships without position are sorted to the
+	 * end, in the order they were returned by the database.
 	 */
-	private void ensureCorrectChildPositions() throws FrameworkException {
+	private List<Relationship> getSortedChildRelationships(final Node parentNode) {
+
+		final Relation template       = getRelationshipForType((Class) getChildLinkType());
+		final List<Relationship> rels = Iterables.toList(Iterables.filter(new OtherNodeTypeFilter(securityContext, parentNode, template.getTargetType(), null, false), parentNode.getRelationships(Direction.OUTGOING, template)));
+		final int size                = rels.size();
+		final long[] positions        = new long[size];
+		final Integer[] indexes       = new Integer[size];
+
+		// read each position only once
+		for (int i=0; i<size; i++) {
+
+			final Long position = getPosition(rels.get(i));
+
+			positions[i] = position != null ? position : Long.MAX_VALUE;
+			indexes[i]   = i;
+		}
+
+		// sort relationships by position
+		Arrays.sort(indexes, new Comparator<Integer>() {
 
-		List<R> childRels = treeGetChildRelationships();
-		int position = 0;
+			@Override
+			public int compare(final Integer o1, final Integer o2) {
+
+				final long pos1 = positions[o1];
+				final long pos2 = positions[o2];
+
+				return pos1 < pos2 ? -1 : (pos1 > pos2 ? 1 : 0);
+			}
 
-		for (R childRel : childRels) {
-			childRel.setProperty(AbstractChildren.position, position++);
+		});
+
+		final List<Relationship> sortedRels = new ArrayList<>(size);
+		for (final Integer index : indexes) {
+
+			sortedRels.add(rels.get(index));
 		}
+
+		return sortedRels;
+	}
+
+	private Long getPosition(final Relationship rel) {
+
+		final Object position = rel.getProperty(AbstractChildren.position.dbName(), null);
+		if (position instanceof Number) {
+
+			return ((Number) position).longValue();
+		}
+
+		return null;
 	}
 
 	private void unlinkNodes(final Class<R> linkType, final T startNode, final T endNode) throws FrameworkException {
@@ -18,20 +18,18 @@
  */
 package org.structr.core.entity;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.helpers.Function;
 import org.neo4j.helpers.Predicate;
-import org.neo4j.helpers.collection.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
-import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 
 /**
@@ -48,63 +46,72 @@ public class ManyEndpoint<T extends NodeInterface> extends AbstractEndpoint impl
 
 	@Override
 	public Iterable<T> get(final SecurityContext securityContext, final NodeInterface node, final Predicate<GraphObject> predicate) {
-		
-		final NodeFactory<T> nodeFactory  = new NodeFactory<>(securityContext);
-		final Iterable<Relationship> rels = getRawSource(securityContext, node.getNode(), predicate);
-		
-		if (rels != null) {
-			
-			return Iterables.map(nodeFactory, Iterables.map(new Function<Relationship, Node>() {
-
-				@Override
-				public Node apply(Relationship from) {
-					return from.getEndNode();
-				}
-				
-			}, rels));
-		}
-		
-		return null;
+		return getRelatedNodes(securityContext, node.getNode(), relation, Direction.OUTGOING, relation.getTargetType(), predicate);
 	}
 
 	@Override
 	public void set(final SecurityContext securityContext, final NodeInterface sourceNode, final Iterable<T> collection) throws FrameworkException {
 
-		final App app            = StructrApp.getInstance(securityContext);
-		final Set<T> toBeDeleted = new LinkedHashSet<>(Iterables.toList(get(securityContext, sourceNode, null)));
-		final Set<T> toBeCreated = new LinkedHashSet<>();
+		final Map<Long, List<Relationship>> toBeDeleted = getRelationshipMap(securityContext, sourceNode.getNode(), relation, Direction.OUTGOING, relation.getTargetType());
+		final Map<Long, T> toBeCreated                  = getNodeMap(collection);
 
-		if (collection != null) {
-			Iterables.addAll(toBeCreated, collection);
-		}
+		// intersection needs no change
+		for (final Iterator<Long> it = toBeCreated.keySet().iterator(); it.hasNext();) {
 
-		// create intersection of both sets
-		final Set<T> intersection = new LinkedHashSet<>(toBeCreated);
-		intersection.retainAll(toBeDeleted);
+			if (toBeDeleted.remove(it.next()) != null) {
+				it.remove();
+			}
+		}
 
-		// intersection needs no change
-		toBeCreated.removeAll(intersection);
-		toBeDeleted.removeAll(intersection);
-		
 		// remove existing relationships
-		for (T targetNode : toBeDeleted) {
+		deleteRelationships(securityContext, toBeDeleted);
 
-			for (AbstractRelationship rel : sourceNode.getOutgoingRelationships()) {
+		// create new relationships
+		create(securityContext, sourceNode, toBeCreated.values());
+	}
 
-				final String relTypeName    = rel.getRelType().name();
-				final String desiredRelType = relation.name();
-				
-				if (relTypeName.equals(desiredRelType) && rel.getTargetNode().equals(targetNode)) {
+	/**
+	 * Adds the given nodes to the collection, nodes that are already
+	 * contained in the collection are ignored.
+	 *
+	 * @param securityContext
+	 * @param sourceNode
+	 * @param collection
+	 * @throws FrameworkException
+	 */
+	public void add(final SecurityContext securityContext, final NodeInterface sourceNode, final Iterable<T> collection) throws FrameworkException {
 
-					app.delete(rel);
-				}
+		final Map<Long, List<Relationship>> existing = getRelationshipMap(securityContext, sourceNode.getNode(), relation, Direction.OUTGOING, relation.getTargetType());
+		final Map<Long, T> toBeCreated               = getNodeMap(collection);
 
-			}
-		}
-		
-		// test: obtain properties from notion
-		// create new relationships
-		for (T targetNode : toBeCreated) {
+		toBeCreated.keySet().removeAll(existing.keySet());
+
+		create(securityContext, sourceNode, toBeCreated.values());
+	}
+
+	/**
+	 * Removes the given nodes from the collection.
+	 *
+	 * @param securityContext
+	 * @param sourceNode
+	 * @param collection
+	 * @throws FrameworkException
+	 */
+	public void remove(final SecurityContext securityContext, final NodeInterface sourceNode, final Iterable<T> collection) throws FrameworkException {
+
+		final Map<Long, List<Relationship>> toBeDeleted = getRelationshipMap(securityContext, sourceNode.getNode(), relation, Direction.OUTGOING, relation.getTargetType());
+
+		toBeDeleted.keySet().retainAll(getNodeMap(collection).keySet());
+
+		deleteRelationships(securityContext, toBeDeleted);
+	}
+
+	// ----- private methods -----
+	private void create(final SecurityContext securityContext, final NodeInterface sourceNode, final Iterable<T> collection) throws FrameworkException {
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		for (final T targetNode : collection) {
 
 			relation.ensureCardinality(securityContext, sourceNode, targetNode);
 
@@ -18,20 +18,18 @@
  */
 package org.structr.core.entity;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
-import org.neo4j.helpers.Function;
 import org.neo4j.helpers.Predicate;
-import org.neo4j.helpers.collection.Iterables;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
-import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 
 /**
@@ -48,65 +46,75 @@ public class ManyStartpoint<S extends NodeInterface> extends AbstractEndpoint im
 	
 	@Override
 	public Iterable<S> get(final SecurityContext securityContext, final NodeInterface node, final Predicate<GraphObject> predicate) {
-		
-		final NodeFactory<S> nodeFactory  = new NodeFactory<>(securityContext);
-		final Iterable<Relationship> rels = getRawSource(securityContext, node.getNode(), predicate);
-		
-		if (rels != null) {
-			
-			return Iterables.map(nodeFactory, Iterables.map(new Function<Relationship, Node>() {
-
-				@Override
-				public Node apply(Relationship from) {
-					return from.getStartNode();
-				}
-				
-			}, rels));
-		}
-		
-		return null;
+		return getRelatedNodes(securityContext, node.getNode(), relation, Direction.INCOMING, relation.getSourceType(), predicate);
 	}
 
 	@Override
 	public void set(final SecurityContext securityContext, final NodeInterface targetNode, final Iterable<S> collection) throws FrameworkException {
 
-		final App app            = StructrApp.getInstance(securityContext);
-		final Set<S> toBeDeleted = new LinkedHashSet<>(Iterables.toList(get(securityContext, targetNode, null)));
-		final Set<S> toBeCreated = new LinkedHashSet<>();
+		final Map<Long, List<Relationship>> toBeDeleted = getRelationshipMap(securityContext, targetNode.getNode(), relation, Direction.INCOMING, relation.getSourceType());
+		final Map<Long, S> toBeCreated                  = getNodeMap(collection);
 
-		if (collection != null) {
-			Iterables.addAll(toBeCreated, collection);
-		}
+		// intersection needs no change
+		for (final Iterator<Long> it = toBeCreated.keySet().iterator(); it.hasNext();) {
 
-		// create intersection of both sets
-		final Set<S> intersection = new LinkedHashSet<>(toBeCreated);
-		intersection.retainAll(toBeDeleted);
+			if (toBeDeleted.remove(it.next()) != null) {
+				it.remove();
+			}
+		}
 
-		// intersection needs no change
-		toBeCreated.removeAll(intersection);
-		toBeDeleted.removeAll(intersection);
-		
 		// remove existing relationships
-		for (S sourceNode : toBeDeleted) {
+		deleteRelationships(securityContext, toBeDeleted);
 
-			for (AbstractRelationship rel : targetNode.getIncomingRelationships()) {
+		// create new relationships
+		create(securityContext, targetNode, toBeCreated.values());
+	}
 
-				final String relTypeName    = rel.getRelType().name();
-				final String desiredRelType = relation.name();
-				
-				if (relTypeName.equals(desiredRelType) && rel.getSourceNode().equals(sourceNode)) {
+	/**
+	 * Adds the given nodes to the collection, nodes that are already
+	 * contained in the collection are ignored.
+	 *
+	 * @param securityContext
+	 * @param targetNode
+	 * @param collection
+	 * @throws FrameworkException
+	 */
+	public void add(final SecurityContext securityContext, final NodeInterface targetNode, final Iterable<S> collection) throws FrameworkException {
 
-					app.delete(rel);
-				}
+		final Map<Long, List<Relationship>> existing = getRelationshipMap(securityContext, targetNode.getNode(), relation, Direction.INCOMING, relation.getSourceType());
+		final Map<Long, S> toBeCreated               = getNodeMap(collection);
 
-			}
-		}
-		
-		// create new relationships
-		for (S sourceNode : toBeCreated) {
+		toBeCreated.keySet().removeAll(existing.keySet());
+
+		create(securityContext, targetNode, toBeCreated.values());
+	}
+
+	/**
+	 * Removes the given nodes from the collection.
+	 *
+	 * @param securityContext
+	 * @param targetNode
+	 * @param collection
+	 * @throws FrameworkException
+	 */
+	public void remove(final SecurityContext securityContext, final NodeInterface targetNode, final Iterable<S> collection) throws FrameworkException {
+
+		final Map<Long, List<Relationship>> toBeDeleted = getRelationshipMap(securityContext, targetNode.getNode(), relation, Direction.INCOMING, relation.getSourceType());
+
+		toBeDeleted.keySet().retainAll(getNodeMap(collection).keySet());
+
+		deleteRelationships(securityContext, toBeDeleted);
+	}
+
+	// ----- private methods -----
+	private void create(final SecurityContext securityContext, final NodeInterface targetNode, final Iterable<S> collection) throws FrameworkException {
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		for (final S sourceNode : collection) {
 
 			relation.ensureCardinality(securityContext, sourceNode, targetNode);
-			
+
 			app.create(sourceNode, targetNode, relation.getClass(), getNotionProperties(securityContext, relation.getClass(), sourceNode.getUuid()));
 		}
 	}
@@ -18,56 +18,115 @@
  */
 package org.structr.core.entity;
 
+import java.util.Set;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.helpers.Predicate;
+import org.structr.common.FactoryDefinition;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
+import org.structr.schema.ConfigurationProvider;
 
 /**
+ * Accepts relationships whose other node is of the desired type. The type
+ * is checked on the raw type property of the node first, so nodes of other
+ * types are never instantiated.
  *
  * @author Christian Morgner
  */
 public class OtherNodeTypeFilter implements Predicate<Relationship> {
 
 	private Predicate<GraphObject> nodePredicate = null;
+	private FactoryDefinition factoryDefinition  = null;
+	private Set<String> desiredTypeNames         = null;
 	private NodeFactory nodeFactory              = null;
 	private Node thisNode                        = null;
 	private Class desiredType                    = null;
+	private String typePropertyName              = null;
+	private boolean instantiate                  = true;
 
 	public OtherNodeTypeFilter(final SecurityContext securityContext, final Node thisNode, final Class desiredType) {
 		this(securityContext, thisNode, desiredType, null);
 	}
 
 	public OtherNodeTypeFilter(final SecurityContext securityContext, final Node thisNode, final Class desiredType, final Predicate<GraphObject> nodePredicate) {
+		this(securityContext, thisNode, desiredType, nodePredicate, true);
+	}
+
+	/**
+	 * Creates a new filter. If instantiate is false, only the type of the
+	 * other node is checked, the node is neither instantiated nor checked
+	 * for visibility, and the node predicate is ignored.
+	 *
+	 * @param securityContext
+	 * @param thisNode
+	 * @param desiredType
+	 * @param nodePredicate
+	 * @param instantiate
+	 */
+	public OtherNodeTypeFilter(final SecurityContext securityContext, final Node thisNode, final Class desiredType, final Predicate<GraphObject> nodePredicate, final boolean instantiate) {
+
+		final ConfigurationProvider config = StructrApp.getConfiguration();
 
-		this.nodePredicate = nodePredicate;
-		this.nodeFactory   = new NodeFactory(securityContext);
-		this.desiredType   = desiredType;
-		this.thisNode      = thisNode;
+		this.factoryDefinition = config.getFactoryDefinition();
+		this.desiredTypeNames  = config.getAssignableNodeTypeNames(desiredType);
+		this.typePropertyName  = GraphObject.type.dbName();
+		this.nodePredicate     = nodePredicate;
+		this.nodeFactory       = new NodeFactory(securityContext);
+		this.desiredType       = desiredType;
+		this.thisNode          = thisNode;
+		this.instantiate       = instantiate;
 	}
 
 	@Override
 	public boolean accept(final Relationship item) {
 
-		try {
-			final NodeInterface otherNode = nodeFactory.instantiate(item.getOtherNode(thisNode));
+		final Node node = item.getOtherNode(thisNode);
 
-			// check predicate if exists
-			if (otherNode != null && (nodePredicate == null || nodePredicate.accept(otherNode))) {
+		if (hasDesiredType(node)) {
 
-				final Class otherNodeType = otherNode.getClass();
-
-				return desiredType.isAssignableFrom(otherNodeType);
+			if (!instantiate) {
+				return true;
 			}
 
-		} catch (FrameworkException fex) {
-			fex.printStackTrace();
+			try {
+				final NodeInterface otherNode = nodeFactory.instantiate(node);
+
+				// check predicate if exists
+				return otherNode != null && (nodePredicate == null || nodePredicate.accept(otherNode));
+
+			} catch (FrameworkException fex) {
+				fex.printStackTrace();
+			}
 		}
 
 		return false;
 	}
+
+	// ----- private methods -----
+	private boolean hasDesiredType(final Node node) {
+
+		final Object typeName = node.getProperty(typePropertyName, null);
+		if (typeName != null) {
+
+			final String name = typeName.toString();
+			if (desiredTypeNames.contains(name)) {
+
+				return true;
+			}
+
+			// all registered types are contained in the set
+			if (StructrApp.getConfiguration().getNodeEntities().containsKey(name)) {
+
+				return false;
+			}
+		}
+
+		// unknown type, let the factory definition decide
+		return desiredType.isAssignableFrom(factoryDefinition.determineNodeType(node));
+	}
 }
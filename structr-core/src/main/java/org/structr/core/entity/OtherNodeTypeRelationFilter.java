@@ -20,10 +20,9 @@ package org.structr.core.entity;
 
 import org.neo4j.graphdb.Node;
 import org.neo4j.helpers.Predicate;
+import org.structr.common.FactoryDefinition;
 import org.structr.common.SecurityContext;
-import org.structr.common.error.FrameworkException;
-import org.structr.core.graph.NodeFactory;
-import org.structr.core.graph.NodeInterface;
+import org.structr.core.app.StructrApp;
 
 /**
  *
@@ -31,30 +30,23 @@ import org.structr.core.graph.NodeInterface;
  */
 public class OtherNodeTypeRelationFilter implements Predicate<Relation> {
 
-	private NodeFactory nodeFactory = null;
-	private Node thisNode           = null;
-	private Class desiredType       = null;
+	private FactoryDefinition factoryDefinition = null;
+	private Node thisNode                       = null;
+	private Class desiredType                   = null;
 
 	public OtherNodeTypeRelationFilter(final SecurityContext securityContext, final Node thisNode, final Class desiredType) {
 
-		this.nodeFactory = new NodeFactory(SecurityContext.getSuperUserInstance());
-		this.desiredType = desiredType;
-		this.thisNode    = thisNode;
+		this.factoryDefinition = StructrApp.getConfiguration().getFactoryDefinition();
+		this.desiredType       = desiredType;
+		this.thisNode          = thisNode;
 	}
 
 	@Override
 	public boolean accept(final Relation rel) {
 
-		try {
-			final NodeInterface otherNode = nodeFactory.instantiate(rel.getRelationship().getOtherNode(thisNode));
-			final Class otherNodeType     = otherNode.getClass();
+		// determine the type of the other node without instantiating it
+		final Class otherNodeType = factoryDefinition.determineNodeType(rel.getRelationship().getOtherNode(thisNode));
 
-			return desiredType.isAssignableFrom(otherNodeType) || otherNodeType.isAssignableFrom(desiredType);
-
-		} catch (FrameworkException fex) {
-			fex.printStackTrace();
-		}
-
-		return false;
+		return desiredType.isAssignableFrom(otherNodeType) || otherNodeType.isAssignableFrom(desiredType);
 	}
 }
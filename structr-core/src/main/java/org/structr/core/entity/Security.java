@@ -36,6 +36,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.ArrayProperty;
 import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
@@ -156,8 +157,13 @@ public class Security extends ManyToMany<Principal, NodeInterface> {
 
 	public void setAllowed(final String[] allowed) {
 
+		final Object previousValue = dbRelationship.getProperty(Security.allowed.dbName(), null);
+
 		dbRelationship.setProperty(Security.allowed.dbName(), allowed);
 
+		// register the change so that cached permissions are invalidated
+		TransactionCommand.relationshipModified(this, Security.allowed, previousValue, allowed);
+
 	}
 
 	public String[] getPermissions() {
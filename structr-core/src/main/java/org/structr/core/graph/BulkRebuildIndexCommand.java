@@ -18,20 +18,38 @@
  */
 package org.structr.core.graph;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.helpers.collection.Iterables;
-import org.neo4j.tooling.GlobalGraphOperations;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
 import org.structr.common.SecurityContext;
 import org.structr.common.StructrAndSpatialPredicate;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
-import org.structr.core.Result;
+import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
@@ -43,165 +61,606 @@ import org.structr.schema.SchemaHelper;
  *
  * Use 'type' argument for node type, and 'relType' for relationship type.
  *
+ * The id space of the database is split into ranges of 'rangeSize' ids
+ * which are processed by 'threads' worker threads in parallel, each of
+ * them committing 'batchSize' ids per transaction. Finished ranges are
+ * recorded in a checkpoint file in the database directory, so an
+ * interrupted rebuild with the same arguments continues where it left
+ * off unless 'resume' is set to false.
+ *
  * @author Axel Morgner
  */
-public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand, TransactionPostProcess {
+public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand, MaintenanceProgress, TransactionPostProcess {
 
 	private static final Logger logger = Logger.getLogger(BulkRebuildIndexCommand.class.getName());
 
+	public static final String THREADS         = "BulkRebuildIndexCommand.threads";
+	public static final String BATCH_SIZE      = "BulkRebuildIndexCommand.batchSize";
+	public static final String RANGE_SIZE      = "BulkRebuildIndexCommand.rangeSize";
+	public static final String CHECKPOINT_FILE = "rebuild-index.checkpoint";
+
+	private static final Progress progress     = new Progress();
+
 	//~--- methods --------------------------------------------------------
 	@Override
 	public void execute(Map<String, Object> attributes) throws FrameworkException {
 
-		final String mode                      = (String) attributes.get("mode");
-		final String entityType                = (String) attributes.get("type");
-		final String relType                   = (String) attributes.get("relType");
-		final GraphDatabaseService graphDb     = (GraphDatabaseService) arguments.get("graphDb");
-		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
-		final NodeFactory nodeFactory          = new NodeFactory(superUserContext);
-		final RelationshipFactory relFactory   = new RelationshipFactory(superUserContext);
+		final String mode                  = (String) attributes.get("mode");
+		final String entityType            = (String) attributes.get("type");
+		final String relType               = (String) attributes.get("relType");
+		final GraphDatabaseService graphDb = (GraphDatabaseService) arguments.get("graphDb");
+		final int threads                  = getIntValue(attributes, "threads", THREADS, Runtime.getRuntime().availableProcessors());
+		final int batchSize                = getIntValue(attributes, "batchSize", BATCH_SIZE, 1000);
+		final int rangeSize                = getIntValue(attributes, "rangeSize", RANGE_SIZE, 100000);
+		final boolean resume               = !"false".equals(String.valueOf(attributes.get("resume")));
 
 		Class type = null;
 		if (entityType != null) {
 
 			type = SchemaHelper.getEntityClassForRawType(entityType);
 		}
-		// final Result<AbstractNode> result = StructrApp.getInstance(securityContext).command(SearchNodeCommand.class).execute(true, false, Search.andExactType(type.getSimpleName()));
 
-		if (mode == null || "nodesOnly".equals(mode)) {
+		if (!progress.start()) {
+			throw new FrameworkException(409, "Index rebuild already running");
+		}
 
-			final List<AbstractNode> nodes = new LinkedList<>();
+		try {
 
-			// instantiate all nodes in a single list
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+			final Checkpoint checkpoint = new Checkpoint(getCheckpointFile(), mode + "|" + entityType + "|" + relType + "|" + rangeSize, resume);
 
-				final Result<AbstractNode> result = nodeFactory.instantiateAll(Iterables.filter(new StructrAndSpatialPredicate(true, false, false), GlobalGraphOperations.at(graphDb).getAllNodes()));
-				for (AbstractNode node : result.getResults()) {
+			if (mode == null || "nodesOnly".equals(mode)) {
 
-					if (type == null || node.getClass().equals(type)) {
+				if (type == null) {
 
-						nodes.add(node);
-					}
+					logger.log(Level.INFO, "Node type not set or no entity class found. Starting (re-)indexing all nodes");
+
+				} else {
 
+					logger.log(Level.INFO, "Starting (re-)indexing all nodes of type {0}", new Object[]{type.getSimpleName()});
 				}
 
-				tx.success();
+				final long count = rebuild(graphDb, new NodeRebuild(type), checkpoint, threads, batchSize, rangeSize);
+
+				logger.log(Level.INFO, "Done with (re-)indexing {0} nodes", count);
 			}
 
-			if (type == null) {
+			if (mode == null || "relsOnly".equals(mode)) {
 
-				logger.log(Level.INFO, "Node type not set or no entity class found. Starting (re-)indexing all nodes");
+				if (relType == null) {
 
-			} else {
+					logger.log(Level.INFO, "Relationship type not set, starting (re-)indexing all relationships");
 
-				logger.log(Level.INFO, "Starting (re-)indexing all nodes of type {0}", new Object[]{type.getSimpleName()});
+				} else {
+
+					logger.log(Level.INFO, "Starting (re-)indexing all relationships of type {0}", new Object[]{relType});
+				}
+
+				final long count = rebuild(graphDb, new RelationshipRebuild(relType), checkpoint, threads, batchSize, rangeSize);
+
+				logger.log(Level.INFO, "Done with (re-)indexing {0} relationships", count);
 			}
 
-			long count = bulkGraphOperation(securityContext, nodes, 100, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
+			if (checkpoint.isComplete()) {
+				checkpoint.delete();
+			}
+
+		} finally {
+
+			progress.finish();
+		}
+	}
+
+	// ----- interface MaintenanceProgress -----
+	@Override
+	public Map<String, Object> getProgress() {
+		return progress.toMap();
+	}
+
+	// ----- interface TransactionPostProcess -----
+	@Override
+	public boolean execute(SecurityContext securityContext, ErrorBuffer errorBuffer) throws FrameworkException {
+
+		execute(Collections.EMPTY_MAP);
+
+		return true;
+	}
+
+	@Override
+	public boolean requiresEnclosingTransaction() {
+		return false;
+	}
+
+	// ----- private methods -----
+	private long rebuild(final GraphDatabaseService graphDb, final Rebuild rebuild, final Checkpoint checkpoint, final int threads, final int batchSize, final int rangeSize) {
+
+		final long highestId              = rebuild.getHighestId(graphDb);
+		final int rangeCount              = (int)(highestId / rangeSize) + 1;
+		final Queue<Integer> ranges       = new ConcurrentLinkedQueue<>();
+		final List<Callable<Object>> jobs = new LinkedList<>();
+		final AtomicLong count            = new AtomicLong();
+
+		for (int i=0; i<rangeCount; i++) {
+
+			if (!checkpoint.isDone(rebuild.getName(), i)) {
+				ranges.add(i);
+			}
+		}
+
+		checkpoint.begin(rebuild.getName(), rangeCount);
+		progress.phase(rebuild.getName(), rangeCount, rangeCount - ranges.size(), highestId + 1);
+
+		if (ranges.size() < rangeCount) {
+			logger.log(Level.INFO, "Resuming (re-)indexing of {0}, {1} of {2} ranges already done", new Object[] { rebuild.getName(), rangeCount - ranges.size(), rangeCount });
+		}
+
+		for (int i=0; i<Math.max(1, threads); i++) {
+
+			jobs.add(new Callable<Object>() {
 
 				@Override
-				public void handleGraphObject(SecurityContext securityContext, AbstractNode node) {
-
-					try {
-						// Set type to update labels
-						final String type = node.getProperty(NodeInterface.type);
-						node.setProperty(NodeInterface.type, null);
-						node.setProperty(NodeInterface.type, type);
-					} catch (FrameworkException ex) {
-						ex.printStackTrace();
+				public Object call() throws Exception {
+
+					Integer range = null;
+
+					while ((range = ranges.poll()) != null) {
+
+						final long start = (long)range * rangeSize;
+						final long end   = Math.min(start + rangeSize, highestId + 1);
+						boolean success  = true;
+
+						for (long batchStart = start; batchStart < end; batchStart += batchSize) {
+
+							final long batchEnd = Math.min(batchStart + batchSize, end);
+							long batchCount     = 0;
+
+							try (final Tx tx = StructrApp.getInstance().tx()) {
+
+								for (long id = batchStart; id < batchEnd; id++) {
+
+									if (rebuild.rebuild(graphDb, id)) {
+										batchCount++;
+									}
+								}
+
+								tx.success();
+
+								// count only what has been committed
+								count.addAndGet(batchCount);
+								progress.indexed(batchCount);
+
+							} catch (Throwable t) {
+
+								logger.log(Level.WARNING, "Unable to index {0} with ids {1} to {2}: {3}", new Object[] { rebuild.getName(), batchStart, batchEnd - 1, t.getMessage() });
+								success = false;
+							}
+
+							progress.processed(batchEnd - batchStart);
+						}
+
+						if (success) {
+							checkpoint.done(rebuild.getName(), range);
+						}
+
+						progress.rangeDone();
 					}
-					node.updateInIndex();
 
+					return null;
 				}
+			});
+		}
 
-				@Override
-				public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractNode node) {
+		final ExecutorService executor = Executors.newFixedThreadPool(jobs.size());
+		try {
+
+			executor.invokeAll(jobs);
+
+		} catch (InterruptedException iex) {
+
+			logger.log(Level.WARNING, "Interrupted while (re-)indexing {0}", rebuild.getName());
+			Thread.currentThread().interrupt();
+
+		} finally {
+
+			executor.shutdownNow();
+		}
+
+		return count.get();
+	}
+
+	private int getIntValue(final Map<String, Object> attributes, final String key, final String configKey, final int defaultValue) {
+
+		Object value = attributes.get(key);
+		if (value == null && configKey != null) {
+
+			value = Services.getInstance().getConfigurationValue(configKey);
+		}
+
+		if (value instanceof Number) {
+			return Math.max(1, ((Number)value).intValue());
+		}
+
+		if (value != null) {
+
+			try {
+				return Math.max(1, Integer.parseInt(value.toString().trim()));
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value {0} for {1}, using default of {2}", new Object[] { value, key, defaultValue });
+			}
+		}
+
+		return defaultValue;
+	}
+
+	private File getCheckpointFile() {
+
+		final String databasePath = Services.getInstance().getConfigurationValue(Services.DATABASE_PATH);
+		if (databasePath != null) {
+
+			return new File(databasePath, CHECKPOINT_FILE);
+		}
+
+		return new File(CHECKPOINT_FILE);
+	}
+
+	// ----- nested classes -----
+	private static abstract class Rebuild {
+
+		protected final StructrAndSpatialPredicate predicate = new StructrAndSpatialPredicate(true, false, false);
+		protected final SecurityContext superUserContext     = SecurityContext.getSuperUserInstance();
+
+		public abstract String getName();
+		public abstract long getHighestId(final GraphDatabaseService graphDb);
+		public abstract boolean rebuild(final GraphDatabaseService graphDb, final long id);
+	}
+
+	private static class NodeRebuild extends Rebuild {
+
+		private Class type = null;
+
+		public NodeRebuild(final Class type) {
+			this.type = type;
+		}
+
+		@Override
+		public String getName() {
+			return "nodes";
+		}
+
+		@Override
+		public long getHighestId(final GraphDatabaseService graphDb) {
+			return NodeServiceCommand.getHighestId(graphDb, Node.class);
+		}
+
+		@Override
+		public boolean rebuild(final GraphDatabaseService graphDb, final long id) {
+
+			final Node dbNode;
+
+			try {
+				dbNode = graphDb.getNodeById(id);
 
-					logger.log(Level.WARNING, "Unable to index node {0}: {1}", new Object[]{node, t.getMessage()});
+			} catch (NotFoundException nfex) {
+				return false;
+			}
+
+			if (!predicate.accept(dbNode)) {
+				return false;
+			}
+
+			AbstractNode node = null;
 
+			try {
+				node = new NodeFactory<AbstractNode>(superUserContext).instantiate(dbNode);
+				if (node == null || (type != null && !node.getClass().equals(type))) {
+					return false;
 				}
 
-				@Override
-				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+				// Set type to update labels
+				final String nodeType = node.getProperty(NodeInterface.type);
+				node.setProperty(NodeInterface.type, null);
+				node.setProperty(NodeInterface.type, nodeType);
+
+				node.updateInIndex();
+
+				return true;
+
+			} catch (Throwable t) {
+
+				logger.log(Level.WARNING, "Unable to index node {0}: {1}", new Object[]{node != null ? node : id, t.getMessage()});
+			}
+
+			return false;
+		}
+	}
+
+	private static class RelationshipRebuild extends Rebuild {
 
-					logger.log(Level.WARNING, "Unable to index node: {0}", t.getMessage());
+		private String relType = null;
+
+		public RelationshipRebuild(final String relType) {
+			this.relType = relType;
+		}
+
+		@Override
+		public String getName() {
+			return "relationships";
+		}
+
+		@Override
+		public long getHighestId(final GraphDatabaseService graphDb) {
+			return NodeServiceCommand.getHighestId(graphDb, Relationship.class);
+		}
+
+		@Override
+		public boolean rebuild(final GraphDatabaseService graphDb, final long id) {
+
+			final Relationship dbRelationship;
+
+			try {
+				dbRelationship = graphDb.getRelationshipById(id);
+
+			} catch (NotFoundException nfex) {
+				return false;
+			}
+
+			if (!predicate.accept(dbRelationship)) {
+				return false;
+			}
 
+			AbstractRelationship rel = null;
+
+			try {
+				rel = new RelationshipFactory<AbstractRelationship>(superUserContext).instantiate(dbRelationship);
+				if (rel == null || (relType != null && !relType.equals(rel.getType()))) {
+					return false;
 				}
 
-			});
+				rel.updateInIndex();
+
+				return true;
+
+			} catch (Throwable t) {
 
-			logger.log(Level.INFO, "Done with (re-)indexing {0} nodes", count);
+				logger.log(Level.WARNING, "Unable to index relationship {0}: {1}", new Object[]{rel != null ? rel : id, t.getMessage()});
+			}
+
+			return false;
 		}
+	}
 
-		if (mode == null || "relsOnly".equals(mode)) {
+	/**
+	 * Persistent record of the id ranges that have already been indexed.
+	 */
+	private static class Checkpoint {
 
-			final List<AbstractRelationship> rels = new LinkedList<>();
-			long count                            = 0;
+		private final Map<String, BitSet> done      = new LinkedHashMap<>();
+		private final Map<String, Integer> counts   = new LinkedHashMap<>();
+		private File file                           = null;
+		private String signature                    = null;
 
-			// instantiate all relationships in a single list
-			try (final Tx tx = StructrApp.getInstance().tx()) {
+		public Checkpoint(final File file, final String signature, final boolean resume) {
 
-				final List<AbstractRelationship> unfilteredRels = relFactory.instantiate(Iterables.filter(new StructrAndSpatialPredicate(true, false, false), GlobalGraphOperations.at(graphDb).getAllRelationships()));
-				for (AbstractRelationship rel : unfilteredRels) {
+			this.file      = file;
+			this.signature = signature;
 
-					if (relType == null || rel.getType().equals(relType)) {
+			if (resume && file.exists()) {
+				load();
+			}
+		}
 
-						rels.add(rel);
-					}
+		public synchronized boolean isDone(final String name, final int range) {
+
+			final BitSet bits = done.get(name);
+			return bits != null && bits.get(range);
+		}
+
+		public synchronized void begin(final String name, final int rangeCount) {
+
+			counts.put(name, rangeCount);
+
+			if (!done.containsKey(name)) {
+				done.put(name, new BitSet());
+			}
+		}
+
+		public synchronized void done(final String name, final int range) {
+
+			done.get(name).set(range);
+			save();
+		}
+
+		public synchronized boolean isComplete() {
+
+			for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+
+				if (done.get(entry.getKey()).cardinality() < entry.getValue()) {
+					return false;
 				}
 			}
 
-			if (relType == null) {
+			return true;
+		}
+
+		public synchronized void delete() {
+			file.delete();
+		}
 
-				logger.log(Level.INFO, "Relationship type not set, starting (re-)indexing all relationships");
+		private void load() {
 
-			} else {
+			final Properties properties = new Properties();
 
-				logger.log(Level.INFO, "Starting (re-)indexing all relationships of type {0}", new Object[]{relType});
+			try (final InputStream is = new FileInputStream(file)) {
 
+				properties.load(is);
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read checkpoint file {0}: {1}", new Object[] { file, ioex.getMessage() });
+				return;
 			}
 
-			count = bulkGraphOperation(securityContext, rels, 100, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
+			if (!signature.equals(properties.getProperty("signature"))) {
 
-				@Override
-				public void handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
+				logger.log(Level.INFO, "Ignoring checkpoint file {0}, it belongs to a different rebuild", file);
+				return;
+			}
+
+			for (final String name : properties.stringPropertyNames()) {
+
+				if (!"signature".equals(name)) {
+
+					final BitSet bits = new BitSet();
 
-					rel.updateInIndex();
+					for (final String range : properties.getProperty(name).split(",")) {
 
+						if (!range.isEmpty()) {
+
+							try {
+								bits.set(Integer.parseInt(range));
+
+							} catch (NumberFormatException nfex) {
+								// ignore
+							}
+						}
+					}
+
+					done.put(name, bits);
 				}
+			}
+		}
 
-				@Override
-				public void handleThrowable(SecurityContext securityContext, Throwable t, AbstractRelationship rel) {
+		private void save() {
+
+			final Properties properties = new Properties();
+
+			properties.setProperty("signature", signature);
+
+			for (final Map.Entry<String, BitSet> entry : done.entrySet()) {
 
-					logger.log(Level.WARNING, "Unable to index relationship {0}: {1}", new Object[]{rel, t.getMessage()});
+				final StringBuilder buf = new StringBuilder();
+				final BitSet bits       = entry.getValue();
+
+				for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i+1)) {
+
+					if (buf.length() > 0) {
+						buf.append(",");
+					}
 
+					buf.append(i);
 				}
 
-				@Override
-				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
+				properties.setProperty(entry.getKey(), buf.toString());
+			}
+
+			final File tmp = new File(file.getAbsolutePath() + ".tmp");
 
-					logger.log(Level.WARNING, "Unable to index relationship: {0}", t.getMessage());
+			try {
 
+				try (final OutputStream os = new FileOutputStream(tmp)) {
+					properties.store(os, "BulkRebuildIndexCommand checkpoint");
 				}
 
-			});
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
 
-			logger.log(Level.INFO, "Done with (re-)indexing {0} relationships", count);
-		}
+			} catch (IOException ioex) {
 
+				logger.log(Level.WARNING, "Unable to write checkpoint file {0}: {1}", new Object[] { file, ioex.getMessage() });
+			}
+		}
 	}
 
-	// ----- interface TransactionPostProcess -----
-	@Override
-	public boolean execute(SecurityContext securityContext, ErrorBuffer errorBuffer) throws FrameworkException {
+	/**
+	 * Progress of the currently running (or last) rebuild.
+	 */
+	private static class Progress {
+
+		private boolean running       = false;
+		private String phase          = null;
+		private int rangeCount        = 0;
+		private int rangesDone        = 0;
+		private long totalIds         = 0;
+		private long processedIds     = 0;
+		private long skippedIds       = 0;
+		private long indexed          = 0;
+		private long startTime        = 0L;
+		private long phaseStartTime   = 0L;
+		private long endTime          = 0L;
+
+		public synchronized boolean start() {
+
+			if (running) {
+				return false;
+			}
 
-		execute(Collections.EMPTY_MAP);
+			running        = true;
+			phase          = null;
+			rangeCount     = 0;
+			rangesDone     = 0;
+			totalIds       = 0;
+			processedIds   = 0;
+			skippedIds     = 0;
+			indexed        = 0;
+			startTime      = System.currentTimeMillis();
+			phaseStartTime = startTime;
+			endTime        = 0L;
+
+			return true;
+		}
 
-		return true;
-	}
+		public synchronized void phase(final String phase, final int rangeCount, final int rangesDone, final long totalIds) {
 
-	@Override
-	public boolean requiresEnclosingTransaction() {
-		return false;
+			this.phase          = phase;
+			this.rangeCount     = rangeCount;
+			this.rangesDone     = rangesDone;
+			this.totalIds       = totalIds;
+			this.processedIds   = 0;
+			this.skippedIds     = Math.min(totalIds, (long)rangesDone * (totalIds / Math.max(1, rangeCount)));
+			this.phaseStartTime = System.currentTimeMillis();
+		}
+
+		public synchronized void processed(final long count) {
+			processedIds += count;
+		}
+
+		public synchronized void indexed(final long count) {
+			indexed += count;
+		}
+
+		public synchronized void rangeDone() {
+			rangesDone++;
+		}
+
+		public synchronized void finish() {
+
+			running = false;
+			endTime = System.currentTimeMillis();
+		}
+
+		public synchronized Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+			final long now                = running ? System.currentTimeMillis() : endTime;
+			final long phaseTime          = Math.max(1, now - phaseStartTime);
+			final long remaining          = Math.max(0, totalIds - skippedIds - processedIds);
+			final double rate             = (processedIds * 1000.0) / phaseTime;
+
+			map.put("running",    running);
+			map.put("phase",      phase);
+			map.put("ranges",     rangeCount);
+			map.put("rangesDone", rangesDone);
+			map.put("total",      totalIds);
+			map.put("processed",  processedIds + skippedIds);
+			map.put("indexed",    indexed);
+			map.put("elapsed",    startTime > 0 ? now - startTime : 0L);
+			map.put("rate",       Math.round(rate));
+
+			if (running && rate > 0) {
+				map.put("eta", Math.round((remaining * 1000.0) / rate));
+			}
+
+			return map;
+		}
 	}
 }
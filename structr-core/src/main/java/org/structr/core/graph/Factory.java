@@ -18,8 +18,11 @@
  */
 package org.structr.core.graph;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.graphdb.index.IndexHits;
@@ -30,6 +33,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.common.error.IdNotFoundToken;
 import org.structr.core.Adapter;
 import org.structr.core.GraphObject;
+import org.structr.core.LazyResult;
 import org.structr.core.Result;
 import org.structr.core.app.StructrApp;
 import org.structr.schema.SchemaHelper;
@@ -52,6 +56,12 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 	 */
 	public static final int RESULT_COUNT_ACCURATE_LIMIT	= 5000;
 
+	/**
+	 * Number of nodes whose readability is checked at once when a page or
+	 * list is instantiated.
+	 */
+	public static final int INSTANTIATION_BATCH_SIZE	= 100;
+
 	// encapsulates all criteria for node creation
 	protected FactoryDefinition factoryDefinition = StructrApp.getConfiguration().getFactoryDefinition();
 	protected FactoryProfile factoryProfile       = null;
@@ -79,6 +89,17 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		factoryProfile = new FactoryProfile(securityContext, includeDeletedAndHidden, publicOnly, pageSize, page, offsetId);
 	}
 
+	/**
+	 * Makes {@link #instantiate(IndexHits)} return a {@link LazyResult}
+	 * that instantiates the objects of the requested page while it is
+	 * iterated.
+	 *
+	 * @param lazy
+	 */
+	public void setLazy(final boolean lazy) {
+		factoryProfile.setLazy(lazy);
+	}
+
 	public abstract T instantiate(final S obj) throws FrameworkException;
 
 	public abstract T instantiateWithType(final S obj, final Class<T> type, boolean isCreation) throws FrameworkException;
@@ -116,6 +137,16 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		if (input != null) {
 
+			final int pageSize = factoryProfile.getPageSize();
+			final int page     = factoryProfile.getPage();
+
+			if (factoryProfile.isLazy() && factoryProfile.getOffsetId() == null && page > 0) {
+
+				final int offset = pageSize == Integer.MAX_VALUE ? 0 : (page - 1) * pageSize;
+
+				return new LazyResult(new IndexHitsSource(input, offset, pageSize), true, false);
+			}
+
 			if (factoryProfile.getOffsetId() != null) {
 
 				return resultWithOffsetId(input);
@@ -143,15 +174,14 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		List<T> nodes = new LinkedList<>();
 
-		if ((input != null) && input.iterator().hasNext()) {
+		if (input != null) {
 
-			for (S node : input) {
+			final Iterator<S> iterator = input.iterator();
+			final List<S> batch        = new ArrayList<>(INSTANTIATION_BATCH_SIZE);
 
-				T n = instantiate(node);
-				if (n != null) {
+			while (nextBatch(iterator, batch)) {
 
-					nodes.add(n);
-				}
+				nodes.addAll(instantiateBatch(batch));
 			}
 		}
 
@@ -177,6 +207,29 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		return adapt(from);
 	}
 
+	/**
+	 * Instantiates the given database objects and returns the ones that
+	 * are readable in the given security context, in the same order.
+	 *
+	 * @param batch
+	 * @return the readable objects
+	 */
+	protected List<T> instantiateBatch(final List<S> batch) throws FrameworkException {
+
+		final List<T> objects = new LinkedList<>();
+
+		for (final S obj : batch) {
+
+			final T n = instantiate(obj);
+			if (n != null) {
+
+				objects.add(n);
+			}
+		}
+
+		return objects;
+	}
+
 	protected Class<T> getClassForName(final String rawType) {
 		return SchemaHelper.getEntityClassForRawType(rawType);
 	}
@@ -355,11 +408,14 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		// In case of superuser or in public context, don't check the overall result count
 		boolean dontCheckCount  = securityContext.isSuperUser() || securityContext.getUser(false) == null;
 
-		for (S node : input) {
+		final Iterator<S> iterator = input.iterator();
+		final List<S> batch        = new ArrayList<>(INSTANTIATION_BATCH_SIZE);
+		boolean done               = false;
 
-			T n = instantiate(node);
+		// readability is checked for a batch of nodes at once
+		while (!done && nextBatch(iterator, batch)) {
 
-			if (n != null) {
+			for (T n : instantiateBatch(batch)) {
 
 				overallCount++;
 
@@ -373,6 +429,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 						if (dontCheckCount) {
 							overallCount = overallResultCount;
+							done = true;
 							break;
 						}
 
@@ -402,6 +459,23 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 	}
 
+	/**
+	 * Fills the given list with the next batch of objects from the given
+	 * iterator.
+	 *
+	 * @return whether the batch contains any objects
+	 */
+	private boolean nextBatch(final Iterator<S> iterator, final List<S> batch) {
+
+		batch.clear();
+
+		while (iterator.hasNext() && batch.size() < INSTANTIATION_BATCH_SIZE) {
+			batch.add(iterator.next());
+		}
+
+		return !batch.isEmpty();
+	}
+
 	//~--- inner classes --------------------------------------------------
 
 	protected class FactoryProfile {
@@ -412,6 +486,7 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 		private int pageSize                    = DEFAULT_PAGE_SIZE;
 		private int page                        = DEFAULT_PAGE;
 		private SecurityContext securityContext = null;
+		private boolean lazy                    = false;
 
 		//~--- constructors -------------------------------------------
 
@@ -555,6 +630,160 @@ public abstract class Factory<S, T extends GraphObject> implements Adapter<S, T>
 
 		}
 
+		/**
+		 * @return whether index results are instantiated lazily
+		 */
+		public boolean isLazy() {
+
+			return lazy;
+
+		}
+
+		/**
+		 * @param lazy the lazy flag to set
+		 */
+		public void setLazy(boolean lazy) {
+
+			this.lazy = lazy;
+
+		}
+
+	}
+
+	/**
+	 * Instantiates the objects of a page of index hits one at a time
+	 * while it is iterated.
+	 */
+	private class IndexHitsSource implements LazyResult.Source<T> {
+
+		private IndexHits<S> input        = null;
+		private boolean dontCheckCount    = false;
+		private boolean iterated          = false;
+		private boolean closed            = false;
+		private Integer resultCount       = null;
+		private int overallResultCount    = 0;
+		private int overallCount          = 0;
+		private int position              = 0;
+		private int offset                = 0;
+		private int pageSize              = 0;
+
+		public IndexHitsSource(final IndexHits<S> input, final int offset, final int pageSize) {
+
+			final SecurityContext securityContext = factoryProfile.getSecurityContext();
+
+			// FIXME: IndexHits#size() may be inaccurate!
+			this.overallResultCount = input.size();
+			this.dontCheckCount     = securityContext.isSuperUser() || securityContext.getUser(false) == null;
+			this.input              = input;
+			this.offset             = offset;
+			this.pageSize           = pageSize;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+
+			if (iterated) {
+				throw new IllegalStateException("Index hits can only be iterated once");
+			}
+
+			iterated = true;
+
+			return new Iterator<T>() {
+
+				private T next    = null;
+				private int count = 0;
+
+				@Override
+				public boolean hasNext() {
+
+					while (next == null && count < pageSize && !closed && input.hasNext()) {
+
+						final T n = adapt(input.next());
+						if (n != null) {
+
+							overallCount++;
+
+							if (++position > offset) {
+								next = n;
+							}
+						}
+					}
+
+					return next != null;
+				}
+
+				@Override
+				public T next() {
+
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+
+					final T current = next;
+
+					next = null;
+					count++;
+
+					return current;
+				}
+
+				@Override
+				public void remove() {
+					throw new UnsupportedOperationException("Removal not supported.");
+				}
+			};
+		}
+
+		@Override
+		public int getResultCount() {
+
+			if (resultCount == null) {
+
+				resultCount = countResults();
+			}
+
+			return resultCount;
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				closed = true;
+				input.close();
+			}
+		}
+
+		private int countResults() {
+
+			if (closed) {
+				throw new IllegalStateException("Index hits were already closed");
+			}
+
+			if (input.hasNext() && dontCheckCount) {
+
+				return overallResultCount;
+			}
+
+			// count the remaining objects like page() does
+			while (input.hasNext()) {
+
+				if (overallCount >= RESULT_COUNT_ACCURATE_LIMIT) {
+
+					// The overall count may be inaccurate
+					return overallResultCount;
+				}
+
+				if (adapt(input.next()) != null) {
+					overallCount++;
+				}
+			}
+
+			// We've run completely through the iterator,
+			// so the overall count from here is accurate.
+			return overallCount;
+		}
 	}
 
 	// </editor-fold>
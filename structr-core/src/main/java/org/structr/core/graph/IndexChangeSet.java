@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.neo4j.gis.spatial.indexprovider.LayerNodeIndex;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.index.Index;
+
+/**
+ * Collects the index modifications of a single transaction and applies
+ * them in one pass at commit time, grouped per index and per entity.
+ *
+ * Repeated updates of the same key collapse into a single remove / add
+ * pair, and removing an entity from an index discards all pending
+ * updates for that entity. Since the legacy Lucene indexes take part in
+ * the neo4j transaction, concurrent transactions do not need to share a
+ * monitor to write to them.
+ *
+ * @author Christian Morgner
+ */
+public class IndexChangeSet {
+
+	private static final Logger logger          = Logger.getLogger(IndexChangeSet.class.getName());
+	private static final AtomicLong recorded    = new AtomicLong(0);
+	private static final AtomicLong applied     = new AtomicLong(0);
+
+	private final Map<Index, Map<PropertyContainer, EntityChanges>> changes = new LinkedHashMap<>();
+	private boolean immediate                                               = false;
+
+	public IndexChangeSet() {
+		this(false);
+	}
+
+	/**
+	 * Creates a new change set. An immediate change set applies every
+	 * modification right away, which is used outside of transactions.
+	 *
+	 * @param immediate
+	 */
+	public IndexChangeSet(final boolean immediate) {
+		this.immediate = immediate;
+	}
+
+	/**
+	 * Records an update of the given key. A <code>null</code> value
+	 * removes the key from the index without adding a new value.
+	 *
+	 * @param index
+	 * @param entity
+	 * @param key
+	 * @param value
+	 */
+	public <T extends PropertyContainer> void update(final Index<T> index, final T entity, final String key, final Object value) {
+
+		getChanges(index, entity).keys.put(key, value);
+		recorded.incrementAndGet();
+
+		if (immediate) {
+			apply();
+		}
+	}
+
+	public <T extends PropertyContainer> void remove(final Index<T> index, final T entity, final String key) {
+		update(index, entity, key, null);
+	}
+
+	public <T extends PropertyContainer> void remove(final Index<T> index, final T entity) {
+
+		final EntityChanges entityChanges = getChanges(index, entity);
+
+		// pending updates are obsolete now
+		entityChanges.keys.clear();
+		entityChanges.removeAll = true;
+
+		recorded.incrementAndGet();
+
+		if (immediate) {
+			apply();
+		}
+	}
+
+	/**
+	 * Applies all pending modifications and clears this change set.
+	 *
+	 * @return the number of index operations that were executed
+	 */
+	public int apply() {
+
+		int count = 0;
+
+		for (final Iterator<Entry<Index, Map<PropertyContainer, EntityChanges>>> it = changes.entrySet().iterator(); it.hasNext();) {
+
+			final Entry<Index, Map<PropertyContainer, EntityChanges>> entry = it.next();
+			final Index index                                               = entry.getKey();
+
+			// the spatial layer index maintains a shared tree structure
+			// in the graph, so writes to it are still serialized
+			if (index instanceof LayerNodeIndex) {
+
+				synchronized (index) {
+
+					count += apply(index, entry.getValue());
+				}
+
+			} else {
+
+				count += apply(index, entry.getValue());
+			}
+
+			it.remove();
+		}
+
+		applied.addAndGet(count);
+
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	public void clear() {
+		changes.clear();
+	}
+
+	public static long getRecordedChanges() {
+		return recorded.get();
+	}
+
+	public static long getAppliedOperations() {
+		return applied.get();
+	}
+
+	// ----- private methods -----
+	private int apply(final Index index, final Map<PropertyContainer, EntityChanges> entities) {
+
+		int count = 0;
+
+		for (final Entry<PropertyContainer, EntityChanges> entry : entities.entrySet()) {
+
+			final PropertyContainer entity      = entry.getKey();
+			final EntityChanges entityChanges   = entry.getValue();
+
+			if (entityChanges.removeAll) {
+
+				try {
+					index.remove(entity);
+					count++;
+
+				} catch (Throwable t) {
+
+					logger.log(Level.INFO, "Unable to remove {0} from index: {1}", new Object[] { entity, t } );
+				}
+			}
+
+			for (final Entry<String, Object> keyEntry : entityChanges.keys.entrySet()) {
+
+				final String key   = keyEntry.getKey();
+				final Object value = keyEntry.getValue();
+
+				try {
+
+					// entity was removed completely before, no need to remove the key again
+					if (!entityChanges.removeAll) {
+
+						index.remove(entity, key);
+						count++;
+					}
+
+					if (value != null) {
+
+						index.add(entity, key, value);
+						count++;
+					}
+
+				} catch (Throwable t) {
+
+					logger.log(Level.INFO, "Unable to index property with dbName {0} and value {1} on {2}: {3}", new Object[] { key, value, entity, t } );
+				}
+			}
+		}
+
+		return count;
+	}
+
+	private EntityChanges getChanges(final Index index, final PropertyContainer entity) {
+
+		Map<PropertyContainer, EntityChanges> entities = changes.get(index);
+		if (entities == null) {
+
+			entities = new LinkedHashMap<>();
+			changes.put(index, entities);
+		}
+
+		EntityChanges entityChanges = entities.get(entity);
+		if (entityChanges == null) {
+
+			entityChanges = new EntityChanges();
+			entities.put(entity, entityChanges);
+		}
+
+		return entityChanges;
+	}
+
+	private static class EntityChanges {
+
+		private final Map<String, Object> keys = new LinkedHashMap<>();
+		private boolean removeAll              = false;
+	}
+}
@@ -18,6 +18,7 @@
  */
 package org.structr.core.graph;
 
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -25,15 +26,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.structr.common.ChildOrderCache;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.Security;
+import org.structr.core.entity.relationship.AbstractChildren;
 import org.structr.core.property.PropertyKey;
 
 /**
@@ -50,6 +59,10 @@ public class ModificationQueue {
 	private final Map<String, TransactionPostProcess> postProcesses                         = new LinkedHashMap<>();
 	private final Set<String> alreadyPropagated                                             = new LinkedHashSet<>();
 	private final Set<String> synchronizationKeys                                           = new TreeSet<>();
+	private final Map<String, String> synchronizationValues                                 = new TreeMap<>();
+	private final Set<Long> securityModifiedNodes                                           = new LinkedHashSet<>();
+	private final Set<Long> childOrderModifiedNodes                                         = new LinkedHashSet<>();
+	private boolean membershipModified                                                      = false;
 
 	/**
 	 * Returns a set containing the different entity types of
@@ -61,6 +74,18 @@ public class ModificationQueue {
 		return synchronizationKeys;
 	}
 
+	/**
+	 * Returns the property values that need to be protected during
+	 * validation, mapped to their synchronization key. The type is not
+	 * part of the value key because uniqueness validators may check
+	 * a whole type hierarchy.
+	 *
+	 * @return a map of value keys to synchronization keys
+	 */
+	public Map<String, String> getSynchronizationValues() {
+		return synchronizationValues;
+	}
+
 	public boolean doInnerCallbacks(final SecurityContext securityContext, final ErrorBuffer errorBuffer) throws FrameworkException {
 
 		long t0                  = System.currentTimeMillis();
@@ -150,6 +175,58 @@ public class ModificationQueue {
 		modificationEvents.clear();
 	}
 
+	/**
+	 * Returns true if this queue contains changes to security relationships,
+	 * ownership or group membership.
+	 *
+	 * @return whether security information was modified
+	 */
+	public boolean hasSecurityModifications() {
+		return membershipModified || !securityModifiedNodes.isEmpty();
+	}
+
+	/**
+	 * Invalidates the cached permissions of all nodes whose security
+	 * information was modified in this queue. Called after the transaction
+	 * is finished, so that no other thread can cache the old state.
+	 */
+	public void invalidatePermissions() {
+
+		if (membershipModified) {
+
+			PermissionResolutionCache.invalidateMemberships();
+
+		} else {
+
+			for (final Long nodeId : securityModifiedNodes) {
+				PermissionResolutionCache.invalidateNode(nodeId);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this queue contains changes to the child relationships
+	 * of the node with the given id.
+	 *
+	 * @param nodeId
+	 * @return whether the order of the children was modified
+	 */
+	public boolean hasChildOrderModifications(final long nodeId) {
+		return childOrderModifiedNodes.contains(nodeId);
+	}
+
+	/**
+	 * Invalidates the cached child order of all nodes whose children were
+	 * modified in this queue. Called after the transaction is finished, so
+	 * that no other thread can cache the old state.
+	 */
+	public void invalidateChildOrder() {
+
+		for (final Long nodeId : childOrderModifiedNodes) {
+			ChildOrderCache.invalidateNode(nodeId);
+		}
+	}
+
 	public void create(NodeInterface node) {
 		getState(node).create();
 
@@ -160,6 +237,7 @@ public class ModificationQueue {
 
 		getState(relationship).create();
 
+		modifyChildOrder(relationship);
 		modifyEndNodes(relationship.getSourceNode(), relationship.getTargetNode(), relationship.getRelType());
 
 		// FIXME
@@ -171,10 +249,12 @@ public class ModificationQueue {
 
 	public void modifyOwner(NodeInterface node) {
 		getState(node).modifyOwner();
+		modifyPermissions(node);
 	}
 
 	public void modifySecurity(NodeInterface node) {
 		getState(node).modifySecurity();
+		modifyPermissions(node);
 	}
 
 	public void modifyLocation(NodeInterface node) {
@@ -185,15 +265,30 @@ public class ModificationQueue {
 		getState(node).modify(key, previousValue, newValue);
 
 		if (key != null&& key.requiresSynchronization()) {
-			synchronizationKeys.add(node.getClass().getSimpleName().concat(".").concat(key.getSynchronizationKey()));
+			addSynchronizationKey(node.getClass().getSimpleName(), key, newValue);
 		}
 	}
 
 	public void modify(RelationshipInterface relationship, PropertyKey key, Object previousValue, Object newValue) {
 		getState(relationship).modify(key, previousValue, newValue);
 
+		if (relationship instanceof Security) {
+
+			// use the database node, the target node wrapper
+			// is null if it is not visible to the current user
+			final Relationship dbRelationship = relationship.getRelationship();
+			if (dbRelationship != null) {
+
+				modifyPermissions(dbRelationship.getEndNode().getId());
+			}
+		}
+
+		if (AbstractChildren.position.equals(key)) {
+			modifyChildOrder(relationship);
+		}
+
 		if (key != null && key.requiresSynchronization()) {
-			synchronizationKeys.add(relationship.getClass().getSimpleName().concat(".").concat(key.getSynchronizationKey()));
+			addSynchronizationKey(relationship.getClass().getSimpleName(), key, newValue);
 		}
 	}
 
@@ -214,15 +309,33 @@ public class ModificationQueue {
 
 	public void delete(NodeInterface node) {
 		getState(node).delete(false);
+
+		if (node instanceof Principal) {
+			modifyMembership();
+		}
+
+		modifyPermissions(node);
 	}
 
 	public void delete(RelationshipInterface relationship, boolean passive) {
 
 		getState(relationship).delete(passive);
 
+		modifyChildOrder(relationship);
 		modifyEndNodes(relationship.getSourceNode(), relationship.getTargetNode(), relationship.getRelType());
 	}
 
+	public boolean isCreated(final NodeInterface node) {
+
+		final GraphObjectModificationState state = modifications.get(hash(node));
+
+		return state != null && state.isCreated();
+	}
+
+	public boolean isModified(final NodeInterface node) {
+		return modifications.containsKey(hash(node));
+	}
+
 	public List<ModificationEvent> getModificationEvents() {
 		return modificationEvents;
 	}
@@ -241,6 +354,8 @@ public class ModificationQueue {
 		// only modify if nodes are accessible
 		if (startNode != null && endNode != null) {
 
+			invalidatePermissions(startNode, endNode, relType);
+
 			if (RelType.OWNS.equals(relType)) {
 
 				modifyOwner(startNode);
@@ -267,6 +382,91 @@ public class ModificationQueue {
 		}
 	}
 
+	private void invalidatePermissions(final NodeInterface startNode, final NodeInterface endNode, final RelationshipType relType) {
+
+		if (relType != null) {
+
+			final String name = relType.name();
+
+			if (RelType.SECURITY.name().equals(name) || RelType.OWNS.name().equals(name)) {
+
+				modifyPermissions(endNode);
+
+			} else if (startNode instanceof Group && endNode instanceof Principal) {
+
+				// group membership
+				modifyMembership();
+			}
+		}
+	}
+
+	private void modifyPermissions(final NodeInterface node) {
+
+		if (node != null) {
+
+			modifyPermissions(node.getId());
+		}
+	}
+
+	private void modifyPermissions(final long nodeId) {
+
+		securityModifiedNodes.add(nodeId);
+
+		// invalidate immediately as well, results resolved inside this
+		// transaction are not cached, see PermissionResolutionCache
+		PermissionResolutionCache.invalidateNode(nodeId);
+	}
+
+	private void modifyChildOrder(final RelationshipInterface relationship) {
+
+		if (relationship instanceof AbstractChildren) {
+
+			// use the database node, the source node wrapper
+			// is null if it is not visible to the current user
+			final Relationship dbRelationship = relationship.getRelationship();
+			if (dbRelationship != null) {
+
+				final long nodeId = dbRelationship.getStartNode().getId();
+
+				childOrderModifiedNodes.add(nodeId);
+
+				// invalidate immediately as well, results resolved inside this
+				// transaction are not cached, see ChildOrderCache
+				ChildOrderCache.invalidateNode(nodeId);
+			}
+		}
+	}
+
+	private void modifyMembership() {
+
+		membershipModified = true;
+		PermissionResolutionCache.invalidateMemberships();
+	}
+
+	private void addSynchronizationKey(final String type, final PropertyKey key, final Object value) {
+
+		final String synchronizationKey = type.concat(".").concat(key.getSynchronizationKey());
+
+		synchronizationKeys.add(synchronizationKey);
+
+		// values are compared case-insensitively, which is at least as
+		// strict as every uniqueness validator
+		synchronizationValues.put(key.getSynchronizationKey().concat("=").concat(valueKey(value)), synchronizationKey);
+	}
+
+	private String valueKey(final Object value) {
+
+		if (value == null) {
+			return "";
+		}
+
+		if (value instanceof Object[]) {
+			return Arrays.deepToString((Object[])value).toLowerCase();
+		}
+
+		return value.toString().toLowerCase();
+	}
+
 	private GraphObjectModificationState getState(NodeInterface node) {
 		return getState(node, false);
 	}
@@ -18,68 +18,263 @@
  */
 package org.structr.core.graph;
 
-import java.util.LinkedHashSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
+ * Protects the validation phase of concurrent transactions. Locks can be
+ * acquired per synchronization key (type and property), or per value of
+ * a property, in which case the values are mapped onto a fixed number of
+ * lock stripes. Locks are always acquired in a deterministic order, so
+ * two transactions can not deadlock each other.
+ *
  * @author Christian Morgner
  */
 public class MultiSemaphore {
 
 	private static final Logger logger = Logger.getLogger(MultiSemaphore.class.getName());
-	
-	private Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<String, Semaphore>();
-	
+	public static final int STRIPE_COUNT = 1024;
+
+	private final ConcurrentHashMap<String, Semaphore> semaphoreMap     = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, LockStatistics> statistics  = new ConcurrentHashMap<>();
+	private final Semaphore[] stripes                                   = new Semaphore[STRIPE_COUNT];
+
+	public MultiSemaphore() {
+
+		for (int i=0; i<STRIPE_COUNT; i++) {
+			stripes[i] = new Semaphore(1, true);
+		}
+	}
+
+	/**
+	 * Acquires one permit for each of the given synchronization keys.
+	 *
+	 * @param types
+	 * @throws InterruptedException
+	 */
 	public void acquire(final Set<String> types) throws InterruptedException {
-	
+
 		if (types != null && !types.isEmpty()) {
-			
-//			logger.log(Level.INFO, "Acquiring permit(s) for {0}", types);
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.acquire();
+			final List<Semaphore> acquired = new LinkedList<>();
+
+			try {
+
+				for (final String type : new TreeSet<>(types)) {
+
+					final Semaphore semaphore = getSemaphore(type);
+
+					acquire(semaphore, type);
+					acquired.add(semaphore);
+				}
+
+			} catch (InterruptedException iex) {
+
+				release(acquired);
+				throw iex;
 			}
 		}
 	}
-	
+
 	public void release(final Set<String> types) {
 
 		if (types != null && !types.isEmpty()) {
-			
-//			logger.log(Level.INFO, "Releasing permit(s) for {0}", types);
 
-			for (Semaphore semaphore : getSemaphores(types)) {
-				semaphore.release();
+			for (final String type : types) {
+
+				final Semaphore semaphore = semaphoreMap.get(type);
+				if (semaphore != null) {
+
+					semaphore.release();
+				}
 			}
 		}
 	}
-	
-	private Set<Semaphore> getSemaphores(final Set<String> types) {
-		
-		Set<Semaphore> semaphores = new LinkedHashSet<Semaphore>();
-		
-		if (types != null) {
-			
-			for (String type : types) {
-
-				if (type != null) {
-					
-					Semaphore semaphore = semaphoreMap.get(type);
-					if (semaphore == null) {
-
-						semaphore = new Semaphore(1, true);
-						semaphoreMap.put(type, semaphore);
-					}
-
-					semaphores.add(semaphore);
+
+	/**
+	 * Acquires the lock stripes for the given values. The keys of the
+	 * map identify the locked values, the map values are used to record
+	 * the contention statistics.
+	 *
+	 * @param values map of value keys to statistics keys
+	 * @return the acquired stripes, to be released with {@link #releaseStripes}
+	 * @throws InterruptedException
+	 */
+	public Set<Integer> acquireValues(final Map<String, String> values) throws InterruptedException {
+
+		final Map<Integer, String> stripeKeys = new TreeMap<>();
+
+		if (values != null) {
+
+			for (final Entry<String, String> entry : values.entrySet()) {
+
+				final Integer stripe = getStripe(entry.getKey());
+				if (!stripeKeys.containsKey(stripe)) {
+
+					stripeKeys.put(stripe, entry.getValue());
 				}
 			}
 		}
-		
-		return semaphores;
+
+		final List<Semaphore> acquired = new LinkedList<>();
+
+		try {
+
+			// TreeMap iterates in ascending stripe order
+			for (final Entry<Integer, String> entry : stripeKeys.entrySet()) {
+
+				final Semaphore semaphore = stripes[entry.getKey()];
+
+				acquire(semaphore, entry.getValue());
+				acquired.add(semaphore);
+			}
+
+		} catch (InterruptedException iex) {
+
+			release(acquired);
+			throw iex;
+		}
+
+		return stripeKeys.keySet();
+	}
+
+	public void releaseStripes(final Set<Integer> acquiredStripes) {
+
+		if (acquiredStripes != null) {
+
+			for (final Integer stripe : acquiredStripes) {
+				stripes[stripe].release();
+			}
+		}
+	}
+
+	/**
+	 * Returns the contention statistics, keyed by synchronization key.
+	 *
+	 * @return the statistics
+	 */
+	public Map<String, LockStatistics> getStatistics() {
+		return Collections.unmodifiableMap(statistics);
+	}
+
+	public void resetStatistics() {
+		statistics.clear();
+	}
+
+	public static int getStripe(final String value) {
+
+		// spread the hash code, String.hashCode is weak in the lower bits
+		int hash = value != null ? value.hashCode() : 0;
+		hash ^= (hash >>> 16);
+
+		return (hash & 0x7fffffff) % STRIPE_COUNT;
+	}
+
+	// ----- private methods -----
+	private void acquire(final Semaphore semaphore, final String key) throws InterruptedException {
+
+		final LockStatistics stats = getStatistics(key);
+
+		if (!semaphore.tryAcquire()) {
+
+			final long start = System.nanoTime();
+
+			semaphore.acquire();
+
+			stats.contended(System.nanoTime() - start);
+		}
+
+		stats.acquired();
+	}
+
+	private void release(final List<Semaphore> semaphores) {
+
+		for (final Iterator<Semaphore> it = semaphores.iterator(); it.hasNext();) {
+			it.next().release();
+		}
+	}
+
+	private Semaphore getSemaphore(final String type) {
+
+		Semaphore semaphore = semaphoreMap.get(type);
+		if (semaphore == null) {
+
+			final Semaphore newSemaphore = new Semaphore(1, true);
+
+			semaphore = semaphoreMap.putIfAbsent(type, newSemaphore);
+			if (semaphore == null) {
+
+				semaphore = newSemaphore;
+			}
+		}
+
+		return semaphore;
+	}
+
+	private LockStatistics getStatistics(final String key) {
+
+		final String statisticsKey = key != null ? key : "";
+
+		LockStatistics stats = statistics.get(statisticsKey);
+		if (stats == null) {
+
+			final LockStatistics newStats = new LockStatistics();
+
+			stats = statistics.putIfAbsent(statisticsKey, newStats);
+			if (stats == null) {
+
+				stats = newStats;
+			}
+		}
+
+		return stats;
+	}
+
+	// ----- nested classes -----
+	public static class LockStatistics {
+
+		private final AtomicLong acquisitions = new AtomicLong(0);
+		private final AtomicLong contentions  = new AtomicLong(0);
+		private final AtomicLong waitTime     = new AtomicLong(0);
+
+		public long getAcquisitions() {
+			return acquisitions.get();
+		}
+
+		public long getContentions() {
+			return contentions.get();
+		}
+
+		/**
+		 * @return the accumulated wait time in milliseconds
+		 */
+		public long getWaitTime() {
+			return waitTime.get() / 1000000L;
+		}
+
+		@Override
+		public String toString() {
+			return "acquisitions: " + getAcquisitions() + ", contentions: " + getContentions() + ", wait time: " + getWaitTime() + " ms";
+		}
+
+		private void acquired() {
+			acquisitions.incrementAndGet();
+		}
+
+		private void contended(final long nanos) {
+			contentions.incrementAndGet();
+			waitTime.addAndGet(nanos);
+		}
 	}
 }
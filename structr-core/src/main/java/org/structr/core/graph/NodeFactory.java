@@ -66,23 +66,8 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 	@Override
 	public T instantiateWithType(final Node node, final Class<T> nodeClass, boolean isCreation) throws FrameworkException {
 
-
 		SecurityContext securityContext = factoryProfile.getSecurityContext();
-		T newNode                       = null;
-
-		try {
-			newNode = nodeClass.newInstance();
-
-		} catch (InstantiationException|IllegalAccessException itex) {
-			newNode = null;
-		}
-
-		if (newNode == null) {
-			newNode = (T)factoryDefinition.createGenericNode();
-		}
-
-		newNode.init(factoryProfile.getSecurityContext(), node, nodeClass);
-		newNode.onNodeInstantiation();
+		T newNode                       = createNode(node, nodeClass);
 
 		// check access
 		if (isCreation || securityContext.isReadable(newNode, factoryProfile.includeDeletedAndHidden(), factoryProfile.publicOnly())) {
@@ -134,6 +119,41 @@ public class NodeFactory<T extends NodeInterface & AccessControllable> extends F
 
 	}
 
+	@Override
+	protected List<T> instantiateBatch(final List<Node> batch) throws FrameworkException {
+
+		final List<T> nodes = new ArrayList<>(batch.size());
+
+		for (final Node node : batch) {
+
+			nodes.add(createNode(node, (Class<T>)factoryDefinition.determineNodeType(node)));
+		}
+
+		// resolves the permissions for the whole batch at once
+		return factoryProfile.getSecurityContext().filterReadable(nodes, factoryProfile.includeDeletedAndHidden(), factoryProfile.publicOnly());
+	}
+
+	private T createNode(final Node node, final Class<T> nodeClass) {
+
+		T newNode = null;
+
+		try {
+			newNode = nodeClass.newInstance();
+
+		} catch (InstantiationException|IllegalAccessException itex) {
+			newNode = null;
+		}
+
+		if (newNode == null) {
+			newNode = (T)factoryDefinition.createGenericNode();
+		}
+
+		newNode.init(factoryProfile.getSecurityContext(), node, nodeClass);
+		newNode.onNodeInstantiation();
+
+		return newNode;
+	}
+
 	private Result resultFromSpatialRecords(final SpatialRecordHits spatialRecordHits) throws FrameworkException {
 
 		final int pageSize                    = factoryProfile.getPageSize();
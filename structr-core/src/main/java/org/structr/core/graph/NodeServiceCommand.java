@@ -19,13 +19,18 @@
 package org.structr.core.graph;
 
 import java.util.Iterator;
-import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.apache.commons.lang3.StringUtils;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.impl.core.NodeManager;
+import org.neo4j.tooling.GlobalGraphOperations;
 import org.structr.common.SecurityContext;
+import org.structr.common.UuidGenerator;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.Command;
 import org.structr.core.GraphObject;
@@ -40,8 +45,7 @@ import org.structr.core.app.StructrApp;
  */
 public abstract class NodeServiceCommand extends Command {
 
-	private static final Logger logger                        = Logger.getLogger(NodeServiceCommand.class.getName());
-	private static final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(1000);
+	private static final Logger logger = Logger.getLogger(NodeServiceCommand.class.getName());
 
 	@Override
 	public Class getServiceClass()	{
@@ -149,43 +153,51 @@ public abstract class NodeServiceCommand extends Command {
 		}
 	}
 
-	public static String getNextUuid() {
-
-		String uuid = null;
-
-		do {
-
-			uuid = uuidQueue.poll();
-
-		} while (uuid == null);
+	/**
+	 * Returns the highest id that can be in use for nodes or relationships
+	 * (depending on the given type) in the given database. Ids of deleted
+	 * entities may be reused, so there can be gaps below this id.
+	 *
+	 * @param graphDb
+	 * @param type Node.class or Relationship.class
+	 * @return the highest possible id in use
+	 */
+	public static long getHighestId(final GraphDatabaseService graphDb, final Class<? extends PropertyContainer> type) {
 
-		return uuid;
-	}
+		if (graphDb instanceof GraphDatabaseAPI) {
 
-	// create uuid producer that fills the queue
-	static {
+			return ((GraphDatabaseAPI)graphDb).getDependencyResolver().resolveDependency(NodeManager.class).getHighestPossibleIdInUse(type);
+		}
 
-		Thread uuidProducer = new Thread(new Runnable() {
+		// fallback: full scan
+		long highestId = 0;
 
-			@Override
-			public void run() {
+		try (final Tx tx = StructrApp.getInstance().tx()) {
 
-				// please do not stop :)
-				while (true) {
+			final GlobalGraphOperations ops = GlobalGraphOperations.at(graphDb);
+			if (Node.class.equals(type)) {
 
-					try {
-						while (true) {
+				for (final Node node : ops.getAllNodes()) {
+					highestId = Math.max(highestId, node.getId());
+				}
 
-							uuidQueue.put(StringUtils.replace(UUID.randomUUID().toString(), "-", ""));
-						}
+			} else {
 
-					} catch (Throwable t) {	}
+				for (final Relationship rel : ops.getAllRelationships()) {
+					highestId = Math.max(highestId, rel.getId());
 				}
 			}
 
-		}, "UuidProducerThread");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.log(Level.WARNING, "Unable to determine highest id: {0}", fex.getMessage());
+		}
+
+		return highestId;
+	}
 
-		uuidProducer.setDaemon(true);
-		uuidProducer.start();
+	public static String getNextUuid() {
+		return UuidGenerator.nextUuid();
 	}
 }
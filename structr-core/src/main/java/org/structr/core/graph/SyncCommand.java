@@ -18,8 +18,14 @@
  */
 package org.structr.core.graph;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -28,14 +34,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -43,9 +53,22 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
@@ -54,6 +77,7 @@ import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
@@ -73,6 +97,28 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	private static final Logger logger                 = Logger.getLogger(SyncCommand.class.getName());
 	private static final String STRUCTR_ZIP_DB_NAME    = "db";
 
+	public static final String THREADS                 = "SyncCommand.threads";
+
+	// binary format
+	private static final byte[] BINARY_MAGIC           = { 'S', 'T', 'R', 'B' };
+	private static final int BINARY_VERSION            = 1;
+	private static final int BLOCK_SIZE                = 1024 * 1024;
+	private static final int BATCH_SIZE                = 10000;
+	private static final int TAG_NULL                  = 0;
+	private static final int TAG_BYTE                  = 1;
+	private static final int TAG_SHORT                 = 2;
+	private static final int TAG_INTEGER               = 3;
+	private static final int TAG_LONG                  = 4;
+	private static final int TAG_FLOAT                 = 5;
+	private static final int TAG_DOUBLE                = 6;
+	private static final int TAG_CHARACTER             = 7;
+	private static final int TAG_STRING                = 8;
+	private static final int TAG_BOOLEAN               = 9;
+	private static final int TAG_ARRAY                 = 16;
+
+	private static final Map<Class, Integer> tagMap    = new LinkedHashMap<>();
+	private static final Map<Integer, Class> arrayMap  = new LinkedHashMap<>();
+
 	private static final Map<Class, String> typeMap    = new LinkedHashMap<>();
 	private static final Map<Class, Method> methodMap  = new LinkedHashMap<>();
 	private static final Map<String, Class> classMap   = new LinkedHashMap<>();
@@ -102,6 +148,36 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		for (Entry<Class, String> entry : typeMap.entrySet()) {
 			classMap.put(entry.getValue(), entry.getKey());
 		}
+
+		// binary format: boxed and primitive types share a tag
+		tagMap.put(Byte.class,        TAG_BYTE);
+		tagMap.put(byte.class,        TAG_BYTE);
+		tagMap.put(Short.class,       TAG_SHORT);
+		tagMap.put(short.class,       TAG_SHORT);
+		tagMap.put(Integer.class,     TAG_INTEGER);
+		tagMap.put(int.class,         TAG_INTEGER);
+		tagMap.put(Long.class,        TAG_LONG);
+		tagMap.put(long.class,        TAG_LONG);
+		tagMap.put(Float.class,       TAG_FLOAT);
+		tagMap.put(float.class,       TAG_FLOAT);
+		tagMap.put(Double.class,      TAG_DOUBLE);
+		tagMap.put(double.class,      TAG_DOUBLE);
+		tagMap.put(Character.class,   TAG_CHARACTER);
+		tagMap.put(char.class,        TAG_CHARACTER);
+		tagMap.put(String.class,      TAG_STRING);
+		tagMap.put(Boolean.class,     TAG_BOOLEAN);
+		tagMap.put(boolean.class,     TAG_BOOLEAN);
+
+		// arrays are always read as primitive arrays (like neo4j stores them)
+		arrayMap.put(TAG_BYTE,        byte.class);
+		arrayMap.put(TAG_SHORT,       short.class);
+		arrayMap.put(TAG_INTEGER,     int.class);
+		arrayMap.put(TAG_LONG,        long.class);
+		arrayMap.put(TAG_FLOAT,       float.class);
+		arrayMap.put(TAG_DOUBLE,      double.class);
+		arrayMap.put(TAG_CHARACTER,   char.class);
+		arrayMap.put(TAG_STRING,      String.class);
+		arrayMap.put(TAG_BOOLEAN,     boolean.class);
 	}
 
 
@@ -152,12 +228,17 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 	@Override
 	public boolean requiresEnclosingTransaction() {
-		return true;
+
+		// export and import use their own (batched) transactions
+		return false;
 	}
 
 	// ----- static methods -----
 	/**
 	 * Exports the whole structr database to a file with the given name.
+	 * The database is read in batches of ids, each batch in its own
+	 * transaction, so the export does not need to hold the whole
+	 * database in memory.
 	 *
 	 * @param graphDb
 	 * @param fileName
@@ -166,25 +247,28 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 	 */
 	public static void exportToFile(final GraphDatabaseService graphDb, final String fileName, final boolean includeFiles) throws FrameworkException {
 
-		final App app = StructrApp.getInstance();
+		try (final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(fileName))) {
 
-		try (final Tx tx = app.tx()) {
+			// set compression
+			zos.setLevel(6);
 
-			exportToStream(
-				new FileOutputStream(fileName),
-				app.nodeQuery(NodeInterface.class).getAsList(),
-				app.relationshipQuery(RelationshipInterface.class).getAsList(),
-				null,
-				includeFiles
-			);
+			if (includeFiles) {
+				// export files first
+				exportDirectory(zos, new File("files"), "", null);
+			}
 
-			tx.success();
+			// export database
+			exportStore(zos, graphDb);
+
+			// finish ZIP file
+			zos.finish();
 
 		} catch (Throwable t) {
 
+			t.printStackTrace();
+
 			throw new FrameworkException(500, t.getMessage());
 		}
-
 	}
 
 	/**
@@ -227,7 +311,6 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 			Set<String> filesToInclude = new LinkedHashSet<>();
 			ZipOutputStream zos        = new ZipOutputStream(outputStream);
-			PrintWriter writer         = new PrintWriter(new BufferedWriter(new OutputStreamWriter(zos)));
 
 			// collect files to include in export
 			if (filePaths != null) {
@@ -247,13 +330,13 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 			}
 
 			// export database
-			exportDatabase(zos, writer, nodes, relationships);
+			exportDatabase(zos, nodes, relationships);
 
 			// finish ZIP file
 			zos.finish();
 
 			// close stream
-			writer.close();
+			zos.close();
 
 		} catch (Throwable t) {
 
@@ -286,7 +369,17 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 				if (STRUCTR_ZIP_DB_NAME.equals(entry.getName())) {
 
-					importDatabase(graphDb, securityContext, zis, doValidation);
+					final BufferedInputStream bis = new BufferedInputStream(zis);
+
+					if (isBinaryFormat(bis)) {
+
+						importBinaryDatabase(graphDb, bis, doValidation);
+
+					} else {
+
+						// text format of older versions
+						importDatabase(graphDb, securityContext, bis, doValidation);
+					}
 
 				} else {
 
@@ -300,6 +393,11 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		} catch (IOException ioex) {
 
 			ioex.printStackTrace();
+
+		} finally {
+
+			// the import bypasses the transaction listeners of the caches
+			TransactionCommand.clearCaches();
 		}
 	}
 
@@ -507,82 +605,79 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 
 	}
 
-	private static void exportDatabase(final ZipOutputStream zos, final PrintWriter writer,  final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships) throws IOException, FrameworkException {
+	private static void exportDatabase(final ZipOutputStream zos, final Iterable<? extends NodeInterface> nodes, final Iterable<? extends RelationshipInterface> relationships) throws IOException {
 
-		// start database zip entry
-		final ZipEntry dbEntry        = new ZipEntry(STRUCTR_ZIP_DB_NAME);
-		final String uuidPropertyName = GraphObject.id.dbName();
-		int nodeCount                 = 0;
-		int relCount                  = 0;
+		final DatabaseWriter writer = new DatabaseWriter(zos, getThreads());
 
-		zos.putNextEntry(dbEntry);
+		try {
 
-		for (NodeInterface nodeObject : nodes) {
+			for (NodeInterface nodeObject : nodes) {
+				writer.writeNode(nodeObject.getNode());
+			}
 
-			final Node node = nodeObject.getNode();
+			for (RelationshipInterface relObject : relationships) {
+				writer.writeRelationship(relObject.getRelationship());
+			}
 
-			// ignore non-structr nodes
-			if (node.hasProperty(GraphObject.id.dbName())) {
+		} finally {
 
-				writer.print("N");
+			writer.close();
+		}
 
-				for (String key : node.getPropertyKeys()) {
+		logger.log(Level.INFO, "Exported {0} nodes and {1} rels", new Object[] { writer.getNodeCount(), writer.getRelationshipCount() } );
+	}
 
-					serialize(writer, key);
-					serialize(writer, node.getProperty(key));
-				}
+	private static void exportStore(final ZipOutputStream zos, final GraphDatabaseService graphDb) throws IOException, FrameworkException {
 
-				// do not use platform-specific line ending here!
-				writer.print("\n");
+		final App app               = StructrApp.getInstance();
+		final DatabaseWriter writer = new DatabaseWriter(zos, getThreads());
 
-				nodeCount++;
-			}
-		}
+		try {
 
-		writer.flush();
+			final long highestNodeId = getHighestId(graphDb, Node.class);
+			for (long start = 0; start <= highestNodeId; start += BATCH_SIZE) {
 
-		for (RelationshipInterface relObject : relationships) {
+				try (final Tx tx = app.tx()) {
 
-			final Relationship rel = relObject.getRelationship();
+					for (long id = start; id < start + BATCH_SIZE && id <= highestNodeId; id++) {
 
-			// ignore non-structr nodes
-			if (rel.hasProperty(GraphObject.id.dbName())) {
+						try {
+							writer.writeNode(graphDb.getNodeById(id));
 
-				final Node startNode = rel.getStartNode();
-				final Node endNode   = rel.getEndNode();
+						} catch (NotFoundException nfex) {
+							// id not in use
+						}
+					}
 
-				if (startNode.hasProperty(uuidPropertyName) && endNode.hasProperty(uuidPropertyName)) {
+					tx.success();
+				}
+			}
 
-					String startId = (String)startNode.getProperty(uuidPropertyName);
-					String endId   = (String)endNode.getProperty(uuidPropertyName);
+			final long highestRelId = getHighestId(graphDb, Relationship.class);
+			for (long start = 0; start <= highestRelId; start += BATCH_SIZE) {
 
-					writer.print("R");
-					serialize(writer, startId);
-					serialize(writer, endId);
-					serialize(writer, rel.getType().name());
+				try (final Tx tx = app.tx()) {
 
-					for (String key : rel.getPropertyKeys()) {
+					for (long id = start; id < start + BATCH_SIZE && id <= highestRelId; id++) {
 
-						serialize(writer, key);
-						serialize(writer, rel.getProperty(key));
-					}
+						try {
+							writer.writeRelationship(graphDb.getRelationshipById(id));
 
-					// do not use platform-specific line ending here!
-					writer.print("\n");
+						} catch (NotFoundException nfex) {
+							// id not in use
+						}
+					}
 
-					relCount++;
+					tx.success();
 				}
-
 			}
 
-		}
-
-		writer.flush();
+		} finally {
 
-		// finish db entry
-		zos.closeEntry();
+			writer.close();
+		}
 
-		logger.log(Level.INFO, "Exported {0} nodes and {1} rels", new Object[] { nodeCount, relCount } );
+		logger.log(Level.INFO, "Exported {0} nodes and {1} rels", new Object[] { writer.getNodeCount(), writer.getRelationshipCount() } );
 	}
 
 	private static void importDirectory(ZipInputStream zis, ZipEntry entry) throws IOException {
@@ -624,7 +719,7 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		}
 	}
 
-	private static void importDatabase(final GraphDatabaseService graphDb, final SecurityContext securityContext, final ZipInputStream zis, boolean doValidation) throws FrameworkException, IOException {
+	private static void importDatabase(final GraphDatabaseService graphDb, final SecurityContext securityContext, final InputStream zis, boolean doValidation) throws FrameworkException, IOException {
 
 		final App app                        = StructrApp.getInstance();
 		final RelationshipFactory relFactory = new RelationshipFactory(securityContext);
@@ -776,6 +871,861 @@ public class SyncCommand extends NodeServiceCommand implements MaintenanceComman
 		logger.log(Level.INFO, "Import done in {0} s", decimalFormat.format(time));
 	}
 
+	/**
+	 * Imports a database in the binary format: nodes are created by
+	 * parallel workers in large transactions, relationships are created
+	 * by a single worker (to avoid lock contention on shared nodes) once
+	 * all nodes exist. Indexing and creation notifications are deferred
+	 * until all objects are created.
+	 */
+	private static void importBinaryDatabase(final GraphDatabaseService graphDb, final InputStream inputStream, final boolean doValidation) throws FrameworkException, IOException {
+
+		final int threads                       = getThreads();
+		final ExecutorService executor          = Executors.newFixedThreadPool(threads);
+		final ExecutorService relExecutor       = Executors.newSingleThreadExecutor();
+		final Semaphore inFlight                = new Semaphore(threads * 2);
+		final Map<String, Long> uuidMap         = new ConcurrentHashMap<>();
+		final Queue<long[]> createdNodes        = new ConcurrentLinkedQueue<>();
+		final Queue<long[]> createdRels         = new ConcurrentLinkedQueue<>();
+		final List<Future<?>> nodeBatches       = new LinkedList<>();
+		final List<Future<?>> relBatches        = new LinkedList<>();
+		final String uuidPropertyName           = GraphObject.id.dbName();
+		final String typePropertyName           = NodeInterface.type.dbName();
+		final DatabaseReader reader             = new DatabaseReader(new DataInputStream(inputStream), executor, threads);
+		List<Map<String, Object>> nodes         = new ArrayList<>();
+		List<RelationshipRecord> rels           = new ArrayList<>();
+		boolean nodesDone                       = false;
+		double t0                               = System.nanoTime();
+
+		try {
+
+			DataInputStream block = reader.nextBlock();
+			while (block != null) {
+
+				while (block.available() > 0) {
+
+					final int recordType = block.readUnsignedByte();
+
+					if (recordType == 'N') {
+
+						nodes.add(readProperties(block));
+
+						if (nodes.size() >= BATCH_SIZE) {
+
+							nodeBatches.add(submit(executor, inFlight, new NodeBatch(graphDb, nodes, uuidMap, createdNodes, uuidPropertyName, typePropertyName, doValidation)));
+							nodes = new ArrayList<>();
+						}
+
+					} else if (recordType == 'R') {
+
+						if (!nodesDone) {
+
+							// relationships need all their nodes
+							nodeBatches.add(submit(executor, inFlight, new NodeBatch(graphDb, nodes, uuidMap, createdNodes, uuidPropertyName, typePropertyName, doValidation)));
+							nodes = new ArrayList<>();
+
+							waitFor(nodeBatches);
+							nodesDone = true;
+						}
+
+						rels.add(new RelationshipRecord(readString(block), readString(block), readString(block), readProperties(block)));
+
+						if (rels.size() >= BATCH_SIZE) {
+
+							relBatches.add(submit(relExecutor, inFlight, new RelationshipBatch(graphDb, rels, uuidMap, createdRels, doValidation)));
+							rels = new ArrayList<>();
+						}
+
+					} else {
+
+						throw new IOException("Invalid record type " + recordType);
+					}
+				}
+
+				block = reader.nextBlock();
+			}
+
+			nodeBatches.add(submit(executor, inFlight, new NodeBatch(graphDb, nodes, uuidMap, createdNodes, uuidPropertyName, typePropertyName, doValidation)));
+			waitFor(nodeBatches);
+
+			relBatches.add(submit(relExecutor, inFlight, new RelationshipBatch(graphDb, rels, uuidMap, createdRels, doValidation)));
+			waitFor(relBatches);
+
+			logger.log(Level.INFO, "Imported {0} nodes, indexing..", uuidMap.size());
+
+			// deferred indexing
+			final List<Future<?>> indexBatches = new LinkedList<>();
+
+			for (final long[] ids : createdNodes) {
+				indexBatches.add(submit(executor, inFlight, new IndexBatch(graphDb, ids, true, doValidation)));
+			}
+
+			for (final long[] ids : createdRels) {
+				indexBatches.add(submit(executor, inFlight, new IndexBatch(graphDb, ids, false, doValidation)));
+			}
+
+			waitFor(indexBatches);
+
+		} finally {
+
+			executor.shutdownNow();
+			relExecutor.shutdownNow();
+		}
+
+		double t1   = System.nanoTime();
+		double time = ((t1 - t0) / 1000000000.0);
+
+		DecimalFormat decimalFormat  = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		logger.log(Level.INFO, "Import done in {0} s", decimalFormat.format(time));
+	}
+
+	private static Future<?> submit(final ExecutorService executor, final Semaphore inFlight, final Callable<Object> batch) throws FrameworkException {
+
+		// limit the number of batches held in memory
+		try {
+			inFlight.acquire();
+
+		} catch (InterruptedException iex) {
+			throw new FrameworkException(500, "Import interrupted");
+		}
+
+		return executor.submit(new Callable<Object>() {
+
+			@Override
+			public Object call() throws Exception {
+
+				try {
+					return batch.call();
+
+				} finally {
+
+					inFlight.release();
+				}
+			}
+		});
+	}
+
+	private static void waitFor(final List<Future<?>> batches) throws FrameworkException {
+
+		try {
+
+			for (final Future<?> batch : batches) {
+				batch.get();
+			}
+
+		} catch (InterruptedException iex) {
+
+			throw new FrameworkException(500, "Import interrupted");
+
+		} catch (ExecutionException eex) {
+
+			final Throwable cause = eex.getCause();
+			if (cause instanceof FrameworkException) {
+				throw (FrameworkException)cause;
+			}
+
+			throw new FrameworkException(500, cause);
+
+		} finally {
+
+			batches.clear();
+		}
+	}
+
+	private static boolean isBinaryFormat(final BufferedInputStream bis) throws IOException {
+
+		final byte[] header = new byte[BINARY_MAGIC.length + 1];
+
+		bis.mark(header.length);
+
+		final int count = IOUtils.read(bis, header);
+		if (count == header.length && Arrays.equals(BINARY_MAGIC, Arrays.copyOf(header, BINARY_MAGIC.length))) {
+
+			if (header[BINARY_MAGIC.length] != BINARY_VERSION) {
+				throw new IOException("Unsupported version " + header[BINARY_MAGIC.length] + " of binary export format");
+			}
+
+			return true;
+		}
+
+		bis.reset();
+
+		return false;
+	}
+
+	private static int getThreads() {
+
+		final String value = Services.getInstance().getConfigurationValue(THREADS);
+		if (value != null) {
+
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid value {0} for {1}", new Object[] { value, THREADS });
+			}
+		}
+
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	// ----- binary format -----
+	/**
+	 * Writes the given value to the given output in the binary export
+	 * format: a type tag followed by the (length-prefixed) value.
+	 * Arrays of boxed values are written like primitive arrays.
+	 *
+	 * @param out
+	 * @param value
+	 * @throws IOException
+	 */
+	public static void writeValue(final DataOutput out, final Object value) throws IOException {
+
+		if (value != null) {
+
+			final Class clazz = value.getClass();
+
+			if (clazz.isArray()) {
+
+				final Integer tag = tagMap.get(clazz.getComponentType());
+				if (tag != null) {
+
+					final int len = Array.getLength(value);
+
+					out.writeByte(tag | TAG_ARRAY);
+					writeVarInt(out, len);
+
+					for (int i=0; i<len; i++) {
+						writeScalar(out, tag, Array.get(value, i));
+					}
+
+					return;
+				}
+
+			} else {
+
+				final Integer tag = tagMap.get(clazz);
+				if (tag != null) {
+
+					out.writeByte(tag);
+					writeScalar(out, tag, value);
+
+					return;
+				}
+			}
+
+			logger.log(Level.WARNING, "Unable to serialize object of type {0}, type not supported", clazz);
+		}
+
+		out.writeByte(TAG_NULL);
+	}
+
+	/**
+	 * Reads a value that was written with {@link #writeValue}. Arrays are
+	 * returned as primitive arrays (or String[]).
+	 *
+	 * @param in
+	 * @return the value
+	 * @throws IOException
+	 */
+	public static Object readValue(final DataInput in) throws IOException {
+
+		final int tag = in.readUnsignedByte();
+
+		if (tag == TAG_NULL) {
+			return null;
+		}
+
+		if ((tag & TAG_ARRAY) != 0) {
+
+			final int componentTag = tag & ~TAG_ARRAY;
+			final Class component  = arrayMap.get(componentTag);
+
+			if (component == null) {
+				throw new IOException("Invalid type tag " + tag);
+			}
+
+			final int len       = readVarInt(in);
+			final Object array  = Array.newInstance(component, len);
+
+			for (int i=0; i<len; i++) {
+				Array.set(array, i, readScalar(in, componentTag));
+			}
+
+			return array;
+		}
+
+		return readScalar(in, tag);
+	}
+
+	private static void writeScalar(final DataOutput out, final int tag, final Object value) throws IOException {
+
+		switch (tag) {
+
+			case TAG_BYTE:      out.writeByte((Byte)value); break;
+			case TAG_SHORT:     out.writeShort((Short)value); break;
+			case TAG_INTEGER:   out.writeInt((Integer)value); break;
+			case TAG_LONG:      out.writeLong((Long)value); break;
+			case TAG_FLOAT:     out.writeFloat((Float)value); break;
+			case TAG_DOUBLE:    out.writeDouble((Double)value); break;
+			case TAG_CHARACTER: out.writeChar((Character)value); break;
+			case TAG_STRING:    writeString(out, (String)value); break;
+			case TAG_BOOLEAN:   out.writeBoolean((Boolean)value); break;
+		}
+	}
+
+	private static Object readScalar(final DataInput in, final int tag) throws IOException {
+
+		switch (tag) {
+
+			case TAG_BYTE:      return in.readByte();
+			case TAG_SHORT:     return in.readShort();
+			case TAG_INTEGER:   return in.readInt();
+			case TAG_LONG:      return in.readLong();
+			case TAG_FLOAT:     return in.readFloat();
+			case TAG_DOUBLE:    return in.readDouble();
+			case TAG_CHARACTER: return in.readChar();
+			case TAG_STRING:    return readString(in);
+			case TAG_BOOLEAN:   return in.readBoolean();
+		}
+
+		throw new IOException("Invalid type tag " + tag);
+	}
+
+	private static void writeString(final DataOutput out, final String value) throws IOException {
+
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(final DataInput in) throws IOException {
+
+		final byte[] bytes = new byte[readVarInt(in)];
+
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(final DataOutput out, int value) throws IOException {
+
+		while ((value & ~0x7f) != 0) {
+
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+
+		out.writeByte(value);
+	}
+
+	private static int readVarInt(final DataInput in) throws IOException {
+
+		int value = 0;
+		int shift = 0;
+		int b     = 0;
+
+		do {
+
+			if (shift > 28) {
+				throw new IOException("Invalid length field");
+			}
+
+			b      = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			shift += 7;
+
+		} while ((b & 0x80) != 0);
+
+		return value;
+	}
+
+	private static void writeProperties(final DataOutput out, final PropertyContainer propertyContainer) throws IOException {
+
+		final List<String> keys = new ArrayList<>();
+
+		for (final String key : propertyContainer.getPropertyKeys()) {
+			keys.add(key);
+		}
+
+		writeVarInt(out, keys.size());
+
+		for (final String key : keys) {
+
+			writeString(out, key);
+			writeValue(out, propertyContainer.getProperty(key));
+		}
+	}
+
+	private static Map<String, Object> readProperties(final DataInput in) throws IOException {
+
+		final Map<String, Object> properties = new LinkedHashMap<>();
+		final int count                      = readVarInt(in);
+
+		for (int i=0; i<count; i++) {
+
+			final String key   = readString(in);
+			final Object value = readValue(in);
+
+			if (value != null && key.length() > 0) {
+				properties.put(key, value);
+			}
+		}
+
+		return properties;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Writes nodes and relationships in the binary format. Records are
+	 * collected in blocks which are compressed in parallel and written
+	 * in order, each prefixed with its raw and compressed length. A block
+	 * with raw length 0 marks the end of the data.
+	 */
+	private static class DatabaseWriter {
+
+		private final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+		private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(BLOCK_SIZE + 65536);
+		private final DataOutputStream data        = new DataOutputStream(buffer);
+		private final String uuidPropertyName      = GraphObject.id.dbName();
+		private ExecutorService executor           = null;
+		private ZipOutputStream zos                = null;
+		private int threads                        = 0;
+		private long nodeCount                     = 0;
+		private long relCount                      = 0;
+
+		public DatabaseWriter(final ZipOutputStream zos, final int threads) throws IOException {
+
+			this.zos      = zos;
+			this.threads  = threads;
+			this.executor = Executors.newFixedThreadPool(threads);
+
+			// blocks are already compressed
+			zos.setLevel(Deflater.NO_COMPRESSION);
+			zos.putNextEntry(new ZipEntry(STRUCTR_ZIP_DB_NAME));
+
+			zos.write(BINARY_MAGIC);
+			zos.write(BINARY_VERSION);
+		}
+
+		public void writeNode(final Node node) throws IOException {
+
+			// ignore non-structr nodes
+			if (node.hasProperty(uuidPropertyName)) {
+
+				data.writeByte('N');
+				writeProperties(data, node);
+
+				nodeCount++;
+				endRecord();
+			}
+		}
+
+		public void writeRelationship(final Relationship rel) throws IOException {
+
+			// ignore non-structr relationships
+			if (rel.hasProperty(uuidPropertyName)) {
+
+				final Node startNode = rel.getStartNode();
+				final Node endNode   = rel.getEndNode();
+
+				if (startNode.hasProperty(uuidPropertyName) && endNode.hasProperty(uuidPropertyName)) {
+
+					data.writeByte('R');
+					writeString(data, (String)startNode.getProperty(uuidPropertyName));
+					writeString(data, (String)endNode.getProperty(uuidPropertyName));
+					writeString(data, rel.getType().name());
+					writeProperties(data, rel);
+
+					relCount++;
+					endRecord();
+				}
+			}
+		}
+
+		public void close() throws IOException {
+
+			try {
+
+				if (buffer.size() > 0) {
+					flushBlock();
+				}
+
+				while (!blocks.isEmpty()) {
+					writeBlock();
+				}
+
+				// end marker
+				new DataOutputStream(zos).writeInt(0);
+
+				zos.closeEntry();
+				zos.setLevel(6);
+
+			} finally {
+
+				executor.shutdownNow();
+			}
+		}
+
+		public long getNodeCount() {
+			return nodeCount;
+		}
+
+		public long getRelationshipCount() {
+			return relCount;
+		}
+
+		private void endRecord() throws IOException {
+
+			if (buffer.size() >= BLOCK_SIZE) {
+				flushBlock();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+
+			final byte[] raw = buffer.toByteArray();
+
+			buffer.reset();
+
+			blocks.add(executor.submit(new Callable<byte[]>() {
+
+				@Override
+				public byte[] call() throws Exception {
+					return compress(raw);
+				}
+			}));
+
+			// write finished blocks, keep all threads busy
+			while (blocks.size() > threads * 2) {
+				writeBlock();
+			}
+		}
+
+		private void writeBlock() throws IOException {
+
+			try {
+				zos.write(blocks.poll().get());
+
+			} catch (InterruptedException | ExecutionException ex) {
+
+				throw new IOException(ex);
+			}
+		}
+
+		private byte[] compress(final byte[] raw) throws IOException {
+
+			final ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+			final Deflater deflater                = new Deflater(6);
+
+			try (final DeflaterOutputStream dos = new DeflaterOutputStream(compressed, deflater)) {
+
+				dos.write(raw);
+				dos.finish();
+
+			} finally {
+
+				deflater.end();
+			}
+
+			final ByteArrayOutputStream block = new ByteArrayOutputStream(compressed.size() + 8);
+			final DataOutputStream out        = new DataOutputStream(block);
+
+			out.writeInt(raw.length);
+			out.writeInt(compressed.size());
+			compressed.writeTo(out);
+
+			return block.toByteArray();
+		}
+	}
+
+	/**
+	 * Reads the blocks written by {@link DatabaseWriter}, decompressing
+	 * the next blocks in parallel.
+	 */
+	private static class DatabaseReader {
+
+		private final Deque<Future<byte[]>> blocks = new ArrayDeque<>();
+		private ExecutorService executor           = null;
+		private DataInputStream in                 = null;
+		private boolean finished                   = false;
+		private int threads                        = 0;
+
+		public DatabaseReader(final DataInputStream in, final ExecutorService executor, final int threads) {
+
+			this.in       = in;
+			this.executor = executor;
+			this.threads  = threads;
+		}
+
+		public DataInputStream nextBlock() throws IOException {
+
+			while (!finished && blocks.size() < threads * 2) {
+
+				final int rawLength = in.readInt();
+				if (rawLength == 0) {
+
+					finished = true;
+					break;
+				}
+
+				final byte[] compressed = new byte[in.readInt()];
+				in.readFully(compressed);
+
+				blocks.add(executor.submit(new Callable<byte[]>() {
+
+					@Override
+					public byte[] call() throws Exception {
+						return decompress(compressed, rawLength);
+					}
+				}));
+			}
+
+			if (blocks.isEmpty()) {
+				return null;
+			}
+
+			try {
+				return new DataInputStream(new ByteArrayInputStream(blocks.poll().get()));
+
+			} catch (InterruptedException | ExecutionException ex) {
+
+				throw new IOException(ex);
+			}
+		}
+
+		private byte[] decompress(final byte[] compressed, final int rawLength) throws IOException {
+
+			final Inflater inflater = new Inflater();
+			final byte[] raw        = new byte[rawLength];
+			int offset              = 0;
+
+			try {
+
+				inflater.setInput(compressed);
+
+				while (offset < rawLength && !inflater.finished()) {
+
+					final int count = inflater.inflate(raw, offset, rawLength - offset);
+					if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+
+					offset += count;
+				}
+
+			} catch (DataFormatException dfex) {
+
+				throw new IOException(dfex);
+
+			} finally {
+
+				inflater.end();
+			}
+
+			if (offset != rawLength) {
+				throw new IOException("Corrupt block in binary export");
+			}
+
+			return raw;
+		}
+	}
+
+	private static class RelationshipRecord {
+
+		private Map<String, Object> properties = null;
+		private String startId                 = null;
+		private String endId                   = null;
+		private String type                    = null;
+
+		public RelationshipRecord(final String startId, final String endId, final String type, final Map<String, Object> properties) {
+
+			this.startId    = startId;
+			this.endId      = endId;
+			this.type       = type;
+			this.properties = properties;
+		}
+	}
+
+	private static class NodeBatch implements Callable<Object> {
+
+		private List<Map<String, Object>> nodes = null;
+		private Map<String, Long> uuidMap       = null;
+		private Queue<long[]> created           = null;
+		private GraphDatabaseService graphDb    = null;
+		private String uuidPropertyName         = null;
+		private String typePropertyName         = null;
+		private boolean doValidation            = true;
+
+		public NodeBatch(final GraphDatabaseService graphDb, final List<Map<String, Object>> nodes, final Map<String, Long> uuidMap, final Queue<long[]> created, final String uuidPropertyName, final String typePropertyName, final boolean doValidation) {
+
+			this.graphDb          = graphDb;
+			this.nodes            = nodes;
+			this.uuidMap          = uuidMap;
+			this.created          = created;
+			this.uuidPropertyName = uuidPropertyName;
+			this.typePropertyName = typePropertyName;
+			this.doValidation     = doValidation;
+		}
+
+		@Override
+		public Object call() throws Exception {
+
+			if (nodes.isEmpty()) {
+				return null;
+			}
+
+			final long[] ids = new long[nodes.size()];
+			int i            = 0;
+
+			try (final Tx tx = StructrApp.getInstance().tx(doValidation)) {
+
+				for (final Map<String, Object> properties : nodes) {
+
+					final Node node = graphDb.createNode();
+
+					for (final Entry<String, Object> entry : properties.entrySet()) {
+
+						final String key   = entry.getKey();
+						final Object value = entry.getValue();
+
+						node.setProperty(key, value);
+
+						// set type label
+						if (typePropertyName.equals(key)) {
+							node.addLabel(DynamicLabel.label((String)value));
+						}
+					}
+
+					final Object uuid = properties.get(uuidPropertyName);
+					if (uuid instanceof String) {
+
+						uuidMap.put((String)uuid, node.getId());
+					}
+
+					ids[i++] = node.getId();
+				}
+
+				tx.success();
+			}
+
+			created.add(ids);
+
+			return null;
+		}
+	}
+
+	private static class RelationshipBatch implements Callable<Object> {
+
+		private List<RelationshipRecord> rels = null;
+		private Map<String, Long> uuidMap     = null;
+		private Queue<long[]> created         = null;
+		private GraphDatabaseService graphDb  = null;
+		private boolean doValidation          = true;
+
+		public RelationshipBatch(final GraphDatabaseService graphDb, final List<RelationshipRecord> rels, final Map<String, Long> uuidMap, final Queue<long[]> created, final boolean doValidation) {
+
+			this.graphDb      = graphDb;
+			this.rels         = rels;
+			this.uuidMap      = uuidMap;
+			this.created      = created;
+			this.doValidation = doValidation;
+		}
+
+		@Override
+		public Object call() throws Exception {
+
+			if (rels.isEmpty()) {
+				return null;
+			}
+
+			final long[] ids = new long[rels.size()];
+			int i            = 0;
+
+			try (final Tx tx = StructrApp.getInstance().tx(doValidation)) {
+
+				for (final RelationshipRecord record : rels) {
+
+					final Long startNodeId = uuidMap.get(record.startId);
+					final Long endNodeId   = uuidMap.get(record.endId);
+
+					if (startNodeId != null && endNodeId != null) {
+
+						final Node startNode   = graphDb.getNodeById(startNodeId);
+						final Node endNode     = graphDb.getNodeById(endNodeId);
+						final Relationship rel = startNode.createRelationshipTo(endNode, DynamicRelationshipType.withName(record.type));
+
+						for (final Entry<String, Object> entry : record.properties.entrySet()) {
+							rel.setProperty(entry.getKey(), entry.getValue());
+						}
+
+						ids[i++] = rel.getId();
+					}
+				}
+
+				tx.success();
+			}
+
+			created.add(Arrays.copyOf(ids, i));
+
+			return null;
+		}
+	}
+
+	private static class IndexBatch implements Callable<Object> {
+
+		private GraphDatabaseService graphDb = null;
+		private long[] ids                   = null;
+		private boolean nodes                = true;
+		private boolean doValidation         = true;
+
+		public IndexBatch(final GraphDatabaseService graphDb, final long[] ids, final boolean nodes, final boolean doValidation) {
+
+			this.graphDb      = graphDb;
+			this.ids          = ids;
+			this.nodes        = nodes;
+			this.doValidation = doValidation;
+		}
+
+		@Override
+		public Object call() throws Exception {
+
+			final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+
+			try (final Tx tx = StructrApp.getInstance().tx(doValidation)) {
+
+				if (nodes) {
+
+					final NodeFactory nodeFactory = new NodeFactory(securityContext);
+
+					for (final long id : ids) {
+
+						final NodeInterface entity = nodeFactory.instantiate(graphDb.getNodeById(id));
+						TransactionCommand.nodeCreated(entity);
+						entity.addToIndex();
+					}
+
+				} else {
+
+					final RelationshipFactory relFactory = new RelationshipFactory(securityContext);
+
+					for (final long id : ids) {
+
+						final RelationshipInterface entity = relFactory.instantiate(graphDb.getRelationshipById(id));
+						TransactionCommand.relationshipCreated(entity);
+						entity.addToIndex();
+					}
+				}
+
+				tx.success();
+			}
+
+			return null;
+		}
+	}
+
 	private static String filter(final String source) {
 
 		// remove double newline characters
@@ -19,16 +19,21 @@
 package org.structr.core.graph;
 
 
-import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import org.neo4j.graphdb.GraphDatabaseService;
 
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.logging.Logger;
+import org.structr.common.ChildOrderCache;
+import org.structr.common.PermissionResolutionCache;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.StructrCache;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.PropertyKey;
@@ -54,13 +59,19 @@ import org.structr.core.property.PropertyKey;
 public class TransactionCommand extends NodeServiceCommand implements AutoCloseable {
 
 	private static final Logger logger                                  = Logger.getLogger(TransactionCommand.class.getName());
-	private static final Set<StructrTransactionListener> listeners      = new LinkedHashSet<>();
+	private static final Set<StructrTransactionListener> listeners      = new CopyOnWriteArraySet<>();
+	private static final Set<StructrCache> caches                       = new CopyOnWriteArraySet<>();
 	private static final ThreadLocal<ModificationQueue> queues          = new ThreadLocal<>();
 	private static final ThreadLocal<ErrorBuffer> buffers               = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionCommand> currentCommand = new ThreadLocal<>();
 	private static final ThreadLocal<TransactionReference> transactions = new ThreadLocal<>();
+	private static final ThreadLocal<IndexChangeSet> indexChanges       = new ThreadLocal<>();
 	private static final MultiSemaphore                    semaphore    = new MultiSemaphore();
 
+	public static final String VALIDATION_LOCKING                       = "TransactionCommand.validation.locking";
+	public static final String VALIDATION_LOCKING_TYPE                  = "type";
+	public static final String VALIDATION_LOCKING_VALUE                 = "value";
+
 	public TransactionCommand beginTx() {
 		
 		final GraphDatabaseService graphDb = (GraphDatabaseService) arguments.get("graphDb");
@@ -73,6 +84,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			
 			queues.set(new ModificationQueue());
 			buffers.set(new ErrorBuffer());
+			indexChanges.set(new IndexChangeSet());
 			transactions.set(tx);
 			currentCommand.set(this);
 		}
@@ -112,25 +124,42 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			}
 
 			// 2. fetch all types of entities modified in this tx
-			Set<String> synchronizationKeys = modificationQueue.getSynchronizationKeys();
+			final boolean lockTypes         = isTypeLockingEnabled();
+			Set<String> synchronizationKeys = lockTypes ? modificationQueue.getSynchronizationKeys() : null;
+			Set<Integer> lockedStripes      = null;
 
 			// we need to protect the validation and indexing part of every transaction
 			// from being entered multiple times in the presence of validators
-			// 3. acquire semaphores for each modified type
-			try { semaphore.acquire(synchronizationKeys); } catch (InterruptedException iex) { return; }
+			// 3. acquire semaphores for each modified type, or for each validated value
+			try {
+
+				if (lockTypes) {
+
+					semaphore.acquire(synchronizationKeys);
+
+				} else {
+
+					lockedStripes = semaphore.acquireValues(modificationQueue.getSynchronizationValues());
+				}
+
+			} catch (InterruptedException iex) { return; }
 
-			// finally, do validation under the protection of the semaphores for each type
+			// finally, do validation under the protection of the semaphores
 			if (!modificationQueue.doValidation(securityContext, errorBuffer, doValidation)) {
 
 				tx.failure();
 
 				// release semaphores as the transaction is now finished
 				semaphore.release(synchronizationKeys);	// careful: this can be null
+				semaphore.releaseStripes(lockedStripes);
 
 				// create error
 				throw new FrameworkException(422, errorBuffer);
 			}
 
+			// 4. write all index modifications of this transaction at once
+			flushIndexChanges();
+
 			try {
 				tx.success();
 
@@ -140,6 +169,7 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 
 			// release semaphores as the transaction is now finished
 			semaphore.release(synchronizationKeys);	// careful: this can be null
+			semaphore.releaseStripes(lockedStripes);
 		}
 	}
 	
@@ -153,8 +183,13 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 			if (tx.isToplevel()) {
 
 				modificationQueue = queues.get();
+
+				// index modifications that were made after commitTx
+				// are part of this transaction as well
+				flushIndexChanges();
 				
 				// cleanup
+				indexChanges.remove();
 				queues.remove();
 				buffers.remove();
 				currentCommand.remove();
@@ -166,6 +201,13 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 				} catch (Throwable t) {
 					t.printStackTrace();
 				}
+
+				// invalidate cached permissions and child order now that other
+				// transactions can see the modifications
+				if (modificationQueue != null) {
+					modificationQueue.invalidatePermissions();
+					modificationQueue.invalidateChildOrder();
+				}
 				
 			} else {
 				
@@ -341,11 +383,138 @@ public class TransactionCommand extends NodeServiceCommand implements AutoClosea
 		return listeners;
 	}
 	
+	public static void registerCache(final StructrCache cache) {
+		caches.add(cache);
+	}
+
+	public static void removeCache(final StructrCache cache) {
+		caches.remove(cache);
+	}
+
+	/**
+	 * Clears the permission and child order caches and all registered
+	 * caches. Must be called after the database was modified without
+	 * notifications, e.g. by a bulk import.
+	 */
+	public static void clearCaches() {
+
+		PermissionResolutionCache.clear();
+		ChildOrderCache.clear();
+
+		for (final StructrCache cache : caches) {
+			cache.clearCache();
+		}
+	}
+	
 	public static boolean inTransaction() {
 		return currentCommand.get() != null;
 	}
 
+	/**
+	 * Indicates whether the given node was created in the current
+	 * transaction, i.e. whether it is not yet visible to other threads.
+	 *
+	 * @param node
+	 * @return whether the node was created in the current transaction
+	 */
+	public static boolean isCreated(final NodeInterface node) {
+
+		final ModificationQueue modificationQueue = queues.get();
+		if (modificationQueue != null) {
+
+			return modificationQueue.isCreated(node);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Indicates whether the given node was created or modified in the
+	 * current transaction. Creating or removing a relationship modifies
+	 * both of its end nodes.
+	 *
+	 * @param node
+	 * @return whether the node was created or modified in the current transaction
+	 */
+	public static boolean isModified(final NodeInterface node) {
+
+		final ModificationQueue modificationQueue = queues.get();
+		if (modificationQueue != null) {
+
+			return modificationQueue.isModified(node);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the index change set of the current transaction. Outside of
+	 * a transaction, the returned change set applies all modifications
+	 * immediately.
+	 *
+	 * @return the index change set
+	 */
+	public static IndexChangeSet getIndexChangeSet() {
+
+		final IndexChangeSet changeSet = indexChanges.get();
+		if (changeSet != null) {
+
+			return changeSet;
+		}
+
+		return new IndexChangeSet(true);
+	}
+
+	/**
+	 * Applies the pending index modifications of the current transaction,
+	 * so that subsequent index queries in this transaction can see them.
+	 */
+	public static void flushIndexChanges() {
+
+		final IndexChangeSet changeSet = indexChanges.get();
+		if (changeSet != null && !changeSet.isEmpty()) {
+
+			changeSet.apply();
+		}
+	}
+
+	/**
+	 * Returns the wait time and contention statistics of the validation
+	 * locks, keyed by type and property.
+	 *
+	 * @return the statistics
+	 */
+	public static Map<String, MultiSemaphore.LockStatistics> getValidationLockStatistics() {
+		return semaphore.getStatistics();
+	}
+
+	public static boolean hasSecurityModifications() {
+
+		final ModificationQueue modificationQueue = queues.get();
+		if (modificationQueue != null) {
+
+			return modificationQueue.hasSecurityModifications();
+		}
+
+		return false;
+	}
+
+	public static boolean hasChildOrderModifications(final long nodeId) {
+
+		final ModificationQueue modificationQueue = queues.get();
+		if (modificationQueue != null) {
+
+			return modificationQueue.hasChildOrderModifications(nodeId);
+		}
+
+		return false;
+	}
+
 	private ModificationQueue getModificationQueue() {
 		return queues.get();
 	}
+
+	private boolean isTypeLockingEnabled() {
+		return VALIDATION_LOCKING_TYPE.equals(Services.getInstance().getConfigurationValue(VALIDATION_LOCKING, VALIDATION_LOCKING_VALUE));
+	}
 }
@@ -32,6 +32,7 @@ import org.neo4j.graphdb.index.IndexHits;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.NodeServiceCommand;
+import org.structr.core.graph.TransactionCommand;
 
 /**
  * A special command that uses a Lucene index lookup to count the number of
@@ -80,6 +81,9 @@ public class CountEntitiesCommand extends NodeServiceCommand {
 
 			long start = System.currentTimeMillis();
 
+			// make pending index modifications of this transaction visible
+			TransactionCommand.flushIndexChanges();
+
 			IndexHits hits = index.query(actualQuery);
 			for (Object hit : hits) {
 				count++;
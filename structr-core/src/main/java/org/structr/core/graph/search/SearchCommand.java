@@ -30,6 +30,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.Query;
@@ -43,6 +44,7 @@ import org.neo4j.helpers.Predicate;
 import org.neo4j.index.lucene.QueryContext;
 import org.structr.common.GraphObjectComparator;
 import org.structr.common.PagingHelper;
+import org.structr.common.TopKSelector;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.geo.GeoCodingResult;
@@ -57,6 +59,7 @@ import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.NodeServiceCommand;
 import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.schema.ConfigurationProvider;
@@ -118,6 +121,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 	private boolean exactSearch                = true;
 	private String offsetId                    = null;
 	private int pageSize                       = Integer.MAX_VALUE;
+	private boolean lazy                       = false;
 	private int page                           = 1;
 
 
@@ -242,6 +246,9 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 			QueryContext queryContext = new QueryContext(query);
 			IndexHits hits            = null;
 
+			// make pending index modifications of this transaction visible
+			TransactionCommand.flushIndexChanges();
+
 			if (sortKey != null) {
 
 				Integer sortType = sortKey.getSortType();
@@ -268,10 +275,7 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 					LayerNodeIndex spatialIndex = this.getSpatialIndex();
 					if (spatialIndex != null) {
 
-						synchronized (spatialIndex) {
-
-							hits = spatialIndex.query(LayerNodeIndex.WITHIN_DISTANCE_QUERY, params);
-						}
+						hits = spatialIndex.query(LayerNodeIndex.WITHIN_DISTANCE_QUERY, params);
 					}
 				}
 
@@ -283,24 +287,25 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 				index = getKeywordIndex();
 
-				synchronized (index) {
-
-					try {
-						hits = index.query(queryContext);
+				try {
+					hits = index.query(queryContext);
 
-					} catch (NumberFormatException nfe) {
+				} catch (NumberFormatException nfe) {
 
-						logger.log(Level.SEVERE, "Could not sort results", nfe);
+					logger.log(Level.SEVERE, "Could not sort results", nfe);
 
-						// retry without sorting
-						queryContext.sort(null);
-						hits = index.query(queryContext);
+					// retry without sorting
+					queryContext.sort(null);
+					hits = index.query(queryContext);
 
-					}
 				}
 
 				// all luecene query, do not filter results
 				filterResults = hasEmptySearchFields;
+
+				// unfiltered results can be instantiated while they are streamed
+				factory.setLazy(lazy && !filterResults);
+
 				intermediateResult = factory.instantiate(hits);
 
 			} else {
@@ -308,28 +313,31 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 				// Default: Mixed or fulltext-only search: Use fulltext index
 				index = getFulltextIndex();
 
-				synchronized (index) {
+				try {
+					hits = index.query(queryContext);
 
-					try {
-						hits = index.query(queryContext);
+				} catch (NumberFormatException nfe) {
 
-					} catch (NumberFormatException nfe) {
+					logger.log(Level.SEVERE, "Could not sort results", nfe);
 
-						logger.log(Level.SEVERE, "Could not sort results", nfe);
+					// retry without sorting
+					queryContext.sort(null);
+					hits = index.query(queryContext);
 
-						// retry without sorting
-						queryContext.sort(null);
-						hits = index.query(queryContext);
-
-					}
 				}
 
 				// all luecene query, do not filter results
 				filterResults = hasEmptySearchFields;
+
+				// unfiltered results can be instantiated while they are streamed
+				factory.setLazy(lazy && !filterResults);
+
 				intermediateResult = factory.instantiate(hits);
 			}
 
-			if (hits != null) {
+			// lazy results own their index hits and close them
+			// when they are finished, see LazyResult
+			if (hits != null && !intermediateResult.isLazy()) {
 				hits.close();
 			}
 		}
@@ -375,19 +383,24 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 //				intermediateResultSet.retainAll(mergeSources(sources));
 //			}
 
-			// Filter intermediate result
-			for (GraphObject obj : intermediateResultSet) {
+			// a positive page without offset id can be selected without sorting the whole result
+			final long selectionSize = (long)page * (long)pageSize;
+			if (page > 0 && StringUtils.isBlank(offsetId) && selectionSize < intermediateResultSet.size()) {
+
+				if (sortKey != null) {
 
-				boolean addToResult = true;
+					return selectSortedPage(intermediateResultSet, (int)selectionSize);
 
-				// check all attributes before adding a node
-				for (SearchAttribute attr : rootGroup.getSearchAttributes()) {
+				} else {
 
-					// check all search attributes
-					addToResult &= attr.includeInResult(obj);
+					return selectPage(intermediateResultSet, (int)selectionSize);
 				}
+			}
 
-				if (addToResult) {
+			// Filter intermediate result
+			for (GraphObject obj : intermediateResultSet) {
+
+				if (includeInResult(obj)) {
 
 					finalResult.add(obj);
 					resultCount++;
@@ -407,6 +420,76 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	private boolean includeInResult(final GraphObject obj) {
+
+		boolean addToResult = true;
+
+		// check all attributes before adding a node
+		for (SearchAttribute attr : rootGroup.getSearchAttributes()) {
+
+			// check all search attributes
+			addToResult &= attr.includeInResult(obj);
+		}
+
+		return addToResult;
+	}
+
+	/**
+	 * Filters the given objects and returns the requested page, keeping
+	 * only the first <code>selectionSize</code> objects in a bounded heap
+	 * instead of sorting the whole result.
+	 */
+	private Result selectSortedPage(final Set<GraphObject> intermediateResultSet, final int selectionSize) {
+
+		final TopKSelector selector = new TopKSelector(sortKey, sortDescending, selectionSize);
+
+		for (GraphObject obj : intermediateResultSet) {
+
+			if (includeInResult(obj)) {
+
+				selector.add(obj);
+			}
+		}
+
+		return new Result(PagingHelper.subList(selector.getResults(), pageSize, page, null), selector.getCount(), true, false);
+	}
+
+	/**
+	 * Filters the given objects in their original order and stops as soon
+	 * as the requested page is full and the result count has reached the
+	 * accuracy limit. The result count is extrapolated in that case.
+	 */
+	private Result selectPage(final Set<GraphObject> intermediateResultSet, final int selectionSize) {
+
+		final List<GraphObject> finalResult = new ArrayList<>(Math.min(selectionSize, 1024));
+		final int totalSize                 = intermediateResultSet.size();
+		int resultCount                     = 0;
+		int examined                        = 0;
+
+		for (GraphObject obj : intermediateResultSet) {
+
+			examined++;
+
+			if (includeInResult(obj)) {
+
+				if (resultCount < selectionSize) {
+					finalResult.add(obj);
+				}
+
+				resultCount++;
+
+				if (resultCount >= selectionSize && resultCount >= Factory.RESULT_COUNT_ACCURATE_LIMIT) {
+
+					// the overall count may be inaccurate from here
+					resultCount = (int)((long)resultCount * totalSize / examined);
+					break;
+				}
+			}
+		}
+
+		return new Result(PagingHelper.subList(finalResult, pageSize, page, null), resultCount, true, false);
+	}
+
 	private Set<GraphObject> mergeSources(List<SourceSearchAttribute> sources) {
 
 		Set<GraphObject> mergedResult = new LinkedHashSet<>();
@@ -556,6 +639,12 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		return this;
 	}
 
+	@Override
+	public org.structr.core.app.Query<T> lazy(final boolean lazy) {
+		this.lazy = lazy;
+		return this;
+	}
+
 	@Override
 	public org.structr.core.app.Query<T> offsetId(final String offsetId) {
 		this.offsetId = offsetId;
@@ -31,6 +31,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.entity.Principal;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -78,12 +79,11 @@ public class SearchUserCommand extends NodeServiceCommand {
 				final Index<Node> index = getIndexFromArguments(idx, arguments);
 				IndexHits<Node> indexHits = null;
 
-				synchronized (index) {
+				// make pending index modifications of this transaction visible
+				TransactionCommand.flushIndexChanges();
 
-					// see: http://docs.neo4j.org/chunked/milestone/indexing-create-advanced.html
-					indexHits = index.query( key.dbName(), "\"" + userNickName + "\"" );
-					
-				}
+				// see: http://docs.neo4j.org/chunked/milestone/indexing-create-advanced.html
+				indexHits = index.query( key.dbName(), "\"" + userNickName + "\"" );
 				
 				try {
 					for (final Node n : indexHits) {
@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.collections.map.LRUMap;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Bounded cache for parsed expression trees and pre-split templates, keyed
+ * by their source text. Expression trees are immutable after parsing, so a
+ * cached tree can be evaluated concurrently by any number of threads.
+ *
+ * @author Christian Morgner
+ */
+public class ExpressionCache {
+
+	private static final int MAX_EXPRESSIONS                 = 10000;
+	private static final int MAX_TEMPLATES                   = 10000;
+
+	private static final AtomicLong hits                     = new AtomicLong(0);
+	private static final AtomicLong misses                   = new AtomicLong(0);
+	private static final AtomicLong evictions                = new AtomicLong(0);
+
+	private static final Map<String, Expression> expressions = Collections.synchronizedMap(new CountingLRUMap(MAX_EXPRESSIONS));
+	private static final Map<String, Template> templates     = Collections.synchronizedMap(new CountingLRUMap(MAX_TEMPLATES));
+	private static int functionCount                         = 0;
+
+	/**
+	 * Returns the parsed expression tree for the given source, parsing
+	 * and caching it on first access. Expressions that fail to parse are
+	 * not cached, so the error is reported on every evaluation.
+	 *
+	 * @param source
+	 * @return the root expression
+	 * @throws FrameworkException
+	 */
+	public static Expression getExpression(final String source) throws FrameworkException {
+
+		checkFunctions();
+
+		Expression expression = expressions.get(source);
+		if (expression != null) {
+
+			hits.incrementAndGet();
+			return expression;
+		}
+
+		misses.incrementAndGet();
+
+		expression = Functions.parse(source);
+		expressions.put(source, expression);
+
+		return expression;
+	}
+
+	/**
+	 * Returns the pre-split form of the given template source, i.e. the
+	 * literal segments and the sources of the ${...} groups in order.
+	 *
+	 * @param source
+	 * @return the template
+	 */
+	public static Template getTemplate(final String source) {
+
+		Template template = templates.get(source);
+		if (template != null) {
+
+			hits.incrementAndGet();
+			return template;
+		}
+
+		misses.incrementAndGet();
+
+		template = new Template(source);
+		templates.put(source, template);
+
+		return template;
+	}
+
+	public static void clear() {
+
+		expressions.clear();
+		templates.clear();
+	}
+
+	public static long getHits() {
+		return hits.get();
+	}
+
+	public static long getMisses() {
+		return misses.get();
+	}
+
+	public static long getEvictions() {
+		return evictions.get();
+	}
+
+	public static int size() {
+		return expressions.size() + templates.size();
+	}
+
+	// ----- private methods -----
+	/**
+	 * Functions can be registered after an expression was parsed (e.g. by
+	 * modules initializing later), which would change the meaning of a
+	 * cached ValueExpression. Drop all cached trees in that case.
+	 */
+	private static void checkFunctions() {
+
+		final int currentFunctionCount = Functions.functions.size();
+		if (currentFunctionCount != functionCount) {
+
+			expressions.clear();
+			functionCount = currentFunctionCount;
+		}
+	}
+
+	// ----- nested classes -----
+	private static class CountingLRUMap extends LRUMap {
+
+		public CountingLRUMap(final int maxSize) {
+			super(maxSize);
+		}
+
+		@Override
+		protected boolean removeLRU(final LinkEntry entry) {
+
+			evictions.incrementAndGet();
+			return true;
+		}
+	}
+}
@@ -190,6 +190,19 @@ public class Functions {
 	}
 
 	public static Object evaluate(final SecurityContext securityContext, final ActionContext actionContext, final GraphObject entity, final String expression) throws FrameworkException {
+		return ExpressionCache.getExpression(expression).evaluate(securityContext, actionContext, entity);
+	}
+
+	/**
+	 * Parses the given expression into an expression tree. The resulting
+	 * tree is not modified by evaluation, so it can be cached and shared
+	 * between threads, see {@link ExpressionCache}.
+	 *
+	 * @param expression
+	 * @return the root of the expression tree
+	 * @throws FrameworkException
+	 */
+	public static Expression parse(final String expression) throws FrameworkException {
 
 		final String expressionWithoutNewlines = expression.replace('\n', ' ');
 		final StreamTokenizer tokenizer        = new StreamTokenizer(new StringReader(expressionWithoutNewlines));
@@ -284,7 +297,7 @@ public class Functions {
 			throw new FrameworkException(422, "Invalid expression: mismatched closing bracket after " + lastToken);
 		}
 
-		return root.evaluate(securityContext, actionContext, entity);
+		return root;
 	}
 
 	private static Expression checkReservedWords(final String word) throws FrameworkException {
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.schema.action.ActionContext;
+
+/**
+ * A template string split into literal segments and ${...} groups. The
+ * segments are located once, so rendering a template only evaluates the
+ * (cached) expressions of its groups.
+ *
+ * @author Christian Morgner
+ */
+public class Template {
+
+	private final List<String> literals = new ArrayList<>();
+	private final List<String> groups   = new ArrayList<>();
+	private String source               = null;
+
+	public Template(final String source) {
+
+		this.source = source;
+
+		int pos   = 0;
+		int start = source.indexOf("${");
+		int end   = source.indexOf("}", start);
+
+		while (start >= 0 && end >= 0) {
+
+			literals.add(source.substring(pos, start));
+			groups.add(source.substring(start+2, end));
+
+			pos   = end+1;
+			start = source.indexOf("${", end);
+			end   = source.indexOf("}", start);
+		}
+
+		// trailing literal (may be empty)
+		literals.add(source.substring(pos));
+	}
+
+	/**
+	 * @return true if this template does not contain any ${...} groups
+	 */
+	public boolean isStatic() {
+		return groups.isEmpty();
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String evaluate(final SecurityContext securityContext, final ActionContext actionContext, final GraphObject entity) throws FrameworkException {
+
+		if (groups.isEmpty()) {
+			return source;
+		}
+
+		final StringBuilder buf = new StringBuilder(source.length());
+		final int size          = groups.size();
+
+		for (int i=0; i<size; i++) {
+
+			buf.append(literals.get(i));
+
+			final Object extractedValue = Functions.evaluate(securityContext, actionContext, entity, groups.get(i));
+			if (extractedValue != null) {
+
+				buf.append(extractedValue.toString());
+			}
+		}
+
+		buf.append(literals.get(size));
+
+		return buf.toString();
+	}
+}
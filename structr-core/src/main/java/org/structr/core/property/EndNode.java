@@ -218,6 +218,32 @@ public class EndNode<S extends NodeInterface, T extends NodeInterface> extends P
 		setProperty(securityContext, obj, t);
 	}
 
+	@Override
+	public void addElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException {
+
+		// a single-valued property keeps the last element only
+		for (final T t : elements) {
+			setProperty(securityContext, obj, t);
+		}
+	}
+
+	@Override
+	public void removeElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException {
+
+		final T value = getProperty(securityContext, obj, false);
+		if (value != null) {
+
+			for (final T t : elements) {
+
+				if (value.equals(t)) {
+
+					setProperty(securityContext, obj, null);
+					break;
+				}
+			}
+		}
+	}
+
 	@Override
 	public Class<T> getTargetType() {
 		return destType;
@@ -18,6 +18,7 @@
  */
 package org.structr.core.property;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -219,11 +220,23 @@ public class EndNodes<S extends NodeInterface, T extends NodeInterface> extends
 
 	@Override
 	public void addSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException {
+		addElements(securityContext, obj, Collections.singletonList(t));
+	}
+
+	@Override
+	public void addElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException {
+
+		ManyEndpoint<T> endpoint = relation.getTarget();
 
-		List<T> list = getProperty(securityContext, obj, false);
-		list.add(t);
+		endpoint.add(securityContext, (NodeInterface)obj, elements);
+	}
+
+	@Override
+	public void removeElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException {
+
+		ManyEndpoint<T> endpoint = relation.getTarget();
 
-		setProperty(securityContext, obj, list);
+		endpoint.remove(securityContext, (NodeInterface)obj, elements);
 	}
 
 	@Override
@@ -43,10 +43,12 @@ import org.structr.core.app.Query;
 import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.IndexChangeSet;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.NodeService;
 import org.structr.core.graph.NodeService.NodeIndex;
 import org.structr.core.graph.NodeService.RelationshipIndex;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.search.PropertySearchAttribute;
 import org.structr.core.graph.search.SearchAttribute;
 
@@ -361,9 +363,21 @@ public abstract class Property<T> implements PropertyKey<T> {
 	@Override
 	public void index(GraphObject entity, Object value) {
 
+		final IndexChangeSet changeSet = TransactionCommand.getIndexChangeSet();
+		final NodeService nodeService  = Services.getInstance().getService(NodeService.class);
+		Object indexValue              = null;
+
+		if (value != null && !StringUtils.isBlank(value.toString())) {
+
+			indexValue = value;
+
+		} else if (isIndexedWhenEmpty()) {
+
+			indexValue = getValueForEmptyFields();
+		}
+
 		if (entity instanceof AbstractNode) {
 
-			NodeService nodeService = Services.getInstance().getService(NodeService.class);
 			AbstractNode node       = (AbstractNode)entity;
 			Node dbNode             = node.getNode();
 
@@ -372,35 +386,12 @@ public abstract class Property<T> implements PropertyKey<T> {
 				Index<Node> index = nodeService.getNodeIndex(indexName);
 				if (index != null) {
 
-					try {
-
-						synchronized (index) {
-
-							index.remove(dbNode, dbName);
-
-							if (value != null && !StringUtils.isBlank(value.toString())) {
-									index.add(dbNode, dbName, value);
-
-							} else if (isIndexedWhenEmpty()) {
-
-								value = getValueForEmptyFields();
-								if (value != null) {
-
-									index.add(dbNode, dbName, value);
-								}
-							}
-						}
-
-					} catch (Throwable t) {
-
-						logger.log(Level.INFO, "Unable to index property with dbName {0} and value {1} of type {2} on {3}: {4}", new Object[] { dbName, value, this.getClass().getSimpleName(), entity, t } );
-					}
+					changeSet.update(index, dbNode, dbName, indexValue);
 				}
 			}
 
 		} else {
 
-			NodeService nodeService  = Services.getInstance().getService(NodeService.class);
 			AbstractRelationship rel = (AbstractRelationship)entity;
 			Relationship dbRel       = rel.getRelationship();
 
@@ -409,30 +400,7 @@ public abstract class Property<T> implements PropertyKey<T> {
 				Index<Relationship> index = nodeService.getRelationshipIndex(indexName);
 				if (index != null) {
 
-					try {
-
-						synchronized (index) {
-
-							index.remove(dbRel, dbName);
-
-							if (value != null && !StringUtils.isBlank(value.toString())) {
-
-								index.add(dbRel, dbName, value);
-
-							} else if (isIndexedWhenEmpty()) {
-
-								value = getValueForEmptyFields();
-								if (value != null) {
-
-									index.add(dbRel, dbName, value);
-								}
-							}
-						}
-
-					} catch (Throwable t) {
-
-						logger.log(Level.INFO, "Unable to index property with dbName {0} and value {1} of type {2} on {3}: {4}", new Object[] { dbName, value, this.getClass().getSimpleName(), entity, t } );
-					}
+					changeSet.update(index, dbRel, dbName, indexValue);
 				}
 			}
 		}
@@ -39,4 +39,6 @@ public interface RelationProperty<T> {
 	public Relation getRelation();
 	
 	public void addSingleElement(final SecurityContext securityContext, final GraphObject obj, final T t) throws FrameworkException;
+	public void addElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException;
+	public void removeElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<T> elements) throws FrameworkException;
 }
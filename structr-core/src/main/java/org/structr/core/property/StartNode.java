@@ -218,6 +218,32 @@ public class StartNode<S extends NodeInterface, T extends NodeInterface> extends
 		setProperty(securityContext, obj, s);
 	}
 
+	@Override
+	public void addElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<S> elements) throws FrameworkException {
+
+		// a single-valued property keeps the last element only
+		for (final S s : elements) {
+			setProperty(securityContext, obj, s);
+		}
+	}
+
+	@Override
+	public void removeElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<S> elements) throws FrameworkException {
+
+		final S value = getProperty(securityContext, obj, false);
+		if (value != null) {
+
+			for (final S s : elements) {
+
+				if (value.equals(s)) {
+
+					setProperty(securityContext, obj, null);
+					break;
+				}
+			}
+		}
+	}
+
 	@Override
 	public Class<? extends S> getTargetType() {
 		return destType;
@@ -18,6 +18,7 @@
  */
 package org.structr.core.property;
 
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -219,11 +220,23 @@ public class StartNodes<S extends NodeInterface, T extends NodeInterface> extend
 
 	@Override
 	public void addSingleElement(final SecurityContext securityContext, final GraphObject obj, final S s) throws FrameworkException {
+		addElements(securityContext, obj, Collections.singletonList(s));
+	}
+
+	@Override
+	public void addElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<S> elements) throws FrameworkException {
+
+		ManyStartpoint<S> startpoint = relation.getSource();
 
-		List<S> list = getProperty(securityContext, obj, false);
-		list.add(s);
+		startpoint.add(securityContext, (NodeInterface)obj, elements);
+	}
+
+	@Override
+	public void removeElements(final SecurityContext securityContext, final GraphObject obj, final Iterable<S> elements) throws FrameworkException {
+
+		ManyStartpoint<S> startpoint = relation.getSource();
 
-		setProperty(securityContext, obj, list);
+		startpoint.remove(securityContext, (NodeInterface)obj, elements);
 	}
 
 	@Override
@@ -21,6 +21,7 @@ package org.structr.cron;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.concurrent.Delayed;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -46,6 +47,17 @@ public class CronEntry implements Delayed {
 	private CronField seconds = null;
 	private String name       = null;
 
+	private boolean queueOverlapping = false;
+	private boolean running          = false;
+	private int catchUp              = 0;
+	private int queuedRuns           = 0;
+	private Future<?> overdueRun     = null;
+	private long skippedRuns         = 0L;
+	private long runs                = 0L;
+	private long lastDuration        = 0L;
+	private long lateness            = 0L;
+	private long nextExecutionTime   = 0L;
+
 	//~--- constructors ---------------------------------------------------
 
 	private CronEntry(String name) {
@@ -291,7 +303,25 @@ public class CronEntry implements Delayed {
 
 	public long getDelayToNextExecutionInMillis() {
 
+		final long now = System.currentTimeMillis();
+
+		// the current second counts as well
+		return Math.max(0L, getNextExecutionTime(now - 1000L) - now);
+	}
+
+	/**
+	 * Returns the first point in time (in milliseconds, at a full second)
+	 * after the given time at which this entry is due.
+	 *
+	 * @param after
+	 * @return the next execution time
+	 */
+	public long getNextExecutionTime(final long after) {
+
 		Calendar now       = GregorianCalendar.getInstance();
+
+		now.setTimeInMillis(after - (after % 1000L) + 1000L);
+
 		int nowSeconds     = now.get(Calendar.SECOND);
 		int nowMinutes     = now.get(Calendar.MINUTE);
 		int nowHours       = now.get(Calendar.HOUR_OF_DAY);
@@ -361,7 +391,95 @@ public class CronEntry implements Delayed {
 			throw new IllegalArgumentException("Unable to determine next cron date for task " + name + ", aborting.");
 		}
 		
-		return now.getTimeInMillis() - System.currentTimeMillis();
+		return now.getTimeInMillis();
+	}
+
+	/**
+	 * Marks this entry as running. Returns false if the previous run is
+	 * still active, in which case the run is either skipped or queued,
+	 * depending on the overlap policy of this entry.
+	 *
+	 * @return whether the caller may start the run
+	 */
+	public synchronized boolean start() {
+
+		if (running && overdueRun != null && overdueRun.isDone()) {
+
+			// the overdue run has finished in the meantime
+			overdueRun = null;
+			running    = false;
+			runs++;
+		}
+
+		if (running) {
+
+			if (queueOverlapping) {
+				queuedRuns++;
+			} else {
+				skippedRuns++;
+			}
+
+			return false;
+		}
+
+		running = true;
+
+		return true;
+	}
+
+	/**
+	 * Records the end of a run. Returns true if another run was queued
+	 * in the meantime, in which case the entry stays running and the
+	 * caller should execute it again.
+	 *
+	 * @param duration the duration of the run in milliseconds
+	 * @return whether another run is pending
+	 */
+	public synchronized boolean finish(final long duration) {
+
+		lastDuration = duration;
+		runs++;
+
+		if (queuedRuns > 0) {
+
+			queuedRuns--;
+			return true;
+		}
+
+		running = false;
+
+		return false;
+	}
+
+	/**
+	 * Adds the given number of runs to be executed after the current one.
+	 *
+	 * @param count
+	 */
+	public synchronized void queue(final int count) {
+		queuedRuns += count;
+	}
+
+	/**
+	 * Records a run that did not finish in time. The entry stays running
+	 * until the given run is done, so runs that are due in the meantime
+	 * are skipped or queued, depending on the overlap policy of this entry.
+	 * Queued runs are executed by the first run that starts afterwards.
+	 *
+	 * @param run the run that is still active
+	 */
+	public synchronized void overdue(final Future<?> run) {
+		overdueRun = run;
+	}
+
+	/**
+	 * Records a run that could not be started.
+	 */
+	public synchronized void abort() {
+
+		skippedRuns += queuedRuns + 1;
+		queuedRuns   = 0;
+		running      = false;
 	}
 
 	public CronField getSeconds() {
@@ -392,6 +510,38 @@ public class CronEntry implements Delayed {
 		return name;
 	}
 
+	public boolean isQueueOverlapping() {
+		return queueOverlapping;
+	}
+
+	public int getCatchUp() {
+		return catchUp;
+	}
+
+	public synchronized boolean isRunning() {
+		return running;
+	}
+
+	public synchronized long getRuns() {
+		return runs;
+	}
+
+	public synchronized long getSkippedRuns() {
+		return skippedRuns;
+	}
+
+	public synchronized long getLastDuration() {
+		return lastDuration;
+	}
+
+	public synchronized long getLateness() {
+		return lateness;
+	}
+
+	public synchronized long getNextExecutionTime() {
+		return nextExecutionTime;
+	}
+
 	// ----- interface Delayed -----
 	@Override
 	public long getDelay(TimeUnit unit) {
@@ -432,4 +582,32 @@ public class CronEntry implements Delayed {
 	public void setName(String name) {
 		this.name = name;
 	}
+
+	/**
+	 * Sets the overlap policy: if true, a run that is due while the
+	 * previous run is still active is queued, otherwise it is skipped.
+	 *
+	 * @param queueOverlapping
+	 */
+	public void setQueueOverlapping(boolean queueOverlapping) {
+		this.queueOverlapping = queueOverlapping;
+	}
+
+	/**
+	 * Sets the max. number of missed runs that are made up for when the
+	 * service falls behind schedule, e.g. after a suspend.
+	 *
+	 * @param catchUp
+	 */
+	public void setCatchUp(int catchUp) {
+		this.catchUp = catchUp;
+	}
+
+	public synchronized void setLateness(long lateness) {
+		this.lateness = lateness;
+	}
+
+	public synchronized void setNextExecutionTime(long nextExecutionTime) {
+		this.nextExecutionTime = nextExecutionTime;
+	}
 }
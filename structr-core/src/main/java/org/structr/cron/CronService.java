@@ -18,10 +18,25 @@
  */
 package org.structr.cron;
 
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.structr.agent.AgentService;
+import org.structr.agent.ReturnValue;
 import org.structr.core.Command;
 import org.structr.core.RunnableService;
 import org.structr.core.Services;
@@ -33,6 +48,20 @@ import org.structr.core.app.StructrApp;
  * A service that keeps track of registered tasks and runs
  * them at their scheduled time.
  *
+ * The next execution time of each entry is computed in advance and
+ * scheduled on a timer thread, which hands the task over to a bounded
+ * pool of worker threads, so a long-running task does not delay the
+ * other entries.
+ *
+ * Configuration:
+ *
+ * CronService.tasks             - the list of task classes
+ * [task].cronExpression         - the cron expression of a task
+ * [task].overlap                - "skip" (default) or "queue": what happens to a run that is due while the previous run is still active
+ * [task].catchUp                - max. number of missed runs to make up for (default 0)
+ * CronService.threads           - size of the worker pool (default 4)
+ * CronService.timeout           - max. number of seconds to wait for a run, after which the worker is released and further runs are skipped or queued until it finishes (default 3600)
+ *
  * @author Christian Morgner
  */
 public class CronService extends Thread implements RunnableService {
@@ -40,13 +69,21 @@ public class CronService extends Thread implements RunnableService {
 	private static final Logger logger           = Logger.getLogger(CronService.class.getName());
 
 	public static final String   TASKS             = "CronService.tasks";
+	public static final String   THREADS           = "CronService.threads";
+	public static final String   TIMEOUT           = "CronService.timeout";
 	public static final String   EXPRESSION_SUFFIX = ".cronExpression";
+	public static final String   OVERLAP_SUFFIX    = ".overlap";
+	public static final String   CATCH_UP_SUFFIX   = ".catchUp";
 	public static final TimeUnit GRANULARITY_UNIT  = TimeUnit.SECONDS;
 	public static final long     GRANULARITY       = 1;
 	public static final int      NUM_FIELDS        = 6;
 
-	private LinkedList<CronEntry> cronEntries = new LinkedList<>();
-	private boolean doRun = false;
+	private final List<CronEntry> cronEntries = new LinkedList<>();
+	private ScheduledExecutorService timer    = null;
+	private ThreadPoolExecutor workers        = null;
+	private int threads                       = 4;
+	private int timeout                       = 3600;
+	private volatile boolean doRun            = false;
 
 	public CronService() {
 		super("CronService");
@@ -58,49 +95,74 @@ public class CronService extends Thread implements RunnableService {
 		final Services servicesInstance = Services.getInstance();
 
 		// wait for service layer to be initialized
-		while(!servicesInstance.isInitialized()) {
+		while(doRun && !servicesInstance.isInitialized()) {
 			try { Thread.sleep(1000); } catch(InterruptedException iex) { }
 		}
 
 		// sleep 5 seconds more
 		try { Thread.sleep(5000); } catch(InterruptedException iex) { }
 
-		while(doRun) {
+		final long now = System.currentTimeMillis();
 
-			// sleep for some time
-			try { Thread.sleep(GRANULARITY_UNIT.toMillis(GRANULARITY)); } catch(InterruptedException iex) { }
+		for(CronEntry entry : cronEntries) {
 
-			for(CronEntry entry : cronEntries) {
+			schedule(entry, now);
+		}
+	}
 
-				if(entry.getDelayToNextExecutionInMillis() < GRANULARITY_UNIT.toMillis(GRANULARITY)) {
+	/**
+	 * Returns the execution metrics of all cron entries.
+	 *
+	 * @return a map of task name to metrics
+	 */
+	public Map<String, Map<String, Object>> getStatistics() {
 
-					String taskClassName = entry.getName();
+		final Map<String, Map<String, Object>> statistics = new LinkedHashMap<>();
 
-					try {
-						Class taskClass = Class.forName(taskClassName);
-						Task task = (Task)taskClass.newInstance();
+		for (final CronEntry entry : cronEntries) {
 
-						logger.log(Level.FINE, "Starting task {0}", taskClassName);
-						StructrApp.getInstance().processTasks(task);
+			final Map<String, Object> stats = new LinkedHashMap<>();
 
-					} catch(Throwable t) {
-						logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskClassName, t.getMessage() } );
-					}
-				}
-			}
+			stats.put("running",       entry.isRunning());
+			stats.put("runs",          entry.getRuns());
+			stats.put("skipped",       entry.getSkippedRuns());
+			stats.put("lastDuration",  entry.getLastDuration());
+			stats.put("lateness",      entry.getLateness());
+			stats.put("nextExecution", entry.getNextExecutionTime());
+
+			statistics.put(entry.getName(), stats);
 		}
+
+		return statistics;
+	}
+
+	public List<CronEntry> getCronEntries() {
+		return cronEntries;
 	}
 
 	// ----- interface RunnableService -----
 	@Override
 	public void startService() {
-		this.doRun = true;
+
+		this.timer   = Executors.newSingleThreadScheduledExecutor(new CronThreadFactory("CronService-timer"));
+		this.workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(16, cronEntries.size() * 2)), new CronThreadFactory("CronService-worker"));
+		this.doRun   = true;
+
 		this.start();
 	}
 
 	@Override
 	public void stopService() {
+
 		this.doRun = false;
+
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+
+		if (workers != null) {
+			workers.shutdown();
+		}
 	}
 
 	@Override
@@ -133,6 +195,9 @@ public class CronService extends Thread implements RunnableService {
 
 						logger.log(Level.INFO, "Adding cron entry {0} for {1}", new Object[]{ entry, task });
 
+						entry.setQueueOverlapping("queue".equals(config.getProperty(task.concat(OVERLAP_SUFFIX), "skip")));
+						entry.setCatchUp(parseInt(config.getProperty(task.concat(CATCH_UP_SUFFIX)), 0));
+
 						cronEntries.add(entry);
 
 					} else {
@@ -146,6 +211,9 @@ public class CronService extends Thread implements RunnableService {
 				}
 			}
 		}
+
+		threads = Math.max(1, parseInt(config.getProperty(THREADS), threads));
+		timeout = Math.max(1, parseInt(config.getProperty(TIMEOUT), timeout));
 	}
 
 	@Override
@@ -156,4 +224,187 @@ public class CronService extends Thread implements RunnableService {
 		this.doRun = false;
 	}
 
+	// ----- private methods -----
+	private void schedule(final CronEntry entry, final long after) {
+
+		if (!doRun) {
+			return;
+		}
+
+		try {
+
+			final long next = entry.getNextExecutionTime(after);
+
+			entry.setNextExecutionTime(next);
+
+			timer.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					fire(entry, next);
+				}
+
+			}, Math.max(0L, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+		} catch (RejectedExecutionException rex) {
+
+			// service is shutting down
+
+		} catch (IllegalArgumentException iaex) {
+
+			logger.log(Level.WARNING, iaex.getMessage());
+		}
+	}
+
+	private void fire(final CronEntry entry, final long scheduledTime) {
+
+		final long now = System.currentTimeMillis();
+		long last      = scheduledTime;
+		int runs       = 1;
+
+		// make up for runs that were missed in the meantime (if configured)
+		for (long next = entry.getNextExecutionTime(last); next <= now && runs <= entry.getCatchUp(); next = entry.getNextExecutionTime(last)) {
+
+			last = next;
+			runs++;
+		}
+
+		entry.setLateness(now - scheduledTime);
+
+		// schedule the next run before running this one, so the
+		// schedule does not drift, and skip runs that were missed
+		schedule(entry, Math.max(now, scheduledTime));
+
+		dispatch(entry, runs - 1);
+	}
+
+	private void dispatch(final CronEntry entry, final int missedRuns) {
+
+		if (!entry.start()) {
+
+			logger.log(Level.FINE, "Previous run of task {0} still active", entry.getName());
+			return;
+		}
+
+		// missed runs are executed right after this one
+		entry.queue(missedRuns);
+
+		try {
+
+			workers.execute(new Runnable() {
+
+				@Override
+				public void run() {
+
+					boolean pending = true;
+
+					while (pending && doRun) {
+
+						final long start = System.currentTimeMillis();
+
+						if (!execute(entry)) {
+							break;
+						}
+
+						pending = entry.finish(System.currentTimeMillis() - start);
+					}
+				}
+			});
+
+		} catch (RejectedExecutionException rex) {
+
+			logger.log(Level.WARNING, "No worker available, skipping run of task {0}", entry.getName());
+			entry.abort();
+		}
+	}
+
+	/**
+	 * Runs the task of the given entry and waits for it to finish.
+	 *
+	 * @param entry
+	 * @return false if the task is still running after the timeout
+	 */
+	private boolean execute(final CronEntry entry) {
+
+		final String taskClassName = entry.getName();
+		Future<ReturnValue> future = null;
+
+		try {
+			Class taskClass = Class.forName(taskClassName);
+			Task task = (Task)taskClass.newInstance();
+
+			logger.log(Level.FINE, "Starting task {0}", taskClassName);
+
+			final AgentService agentService = StructrApp.getInstance().getService(AgentService.class);
+			if (agentService != null) {
+
+				// wait for the task to finish so that the duration
+				// and the overlap protection cover the actual run
+				future = agentService.submitTask(task);
+				future.get(timeout, TimeUnit.SECONDS);
+
+			} else {
+
+				logger.log(Level.WARNING, "Could not start task {0}: AgentService not available", taskClassName);
+			}
+
+		} catch(InterruptedException iex) {
+
+			// shutting down
+
+		} catch(TimeoutException tex) {
+
+			// agent tasks cannot be cancelled, so the entry stays running until the task is done
+			logger.log(Level.WARNING, "Task {0} still running after {1} seconds, skipping runs until it finishes", new Object[] { taskClassName, timeout } );
+			entry.overdue(future);
+
+			return false;
+
+		} catch(ExecutionException eex) {
+
+			logger.log(Level.WARNING, "Task {0} failed: {1}", new Object[] { taskClassName, eex.getCause().getMessage() } );
+
+		} catch(Throwable t) {
+			logger.log(Level.WARNING, "Could not start task {0}: {1}", new Object[] { taskClassName, t.getMessage() } );
+		}
+
+		return true;
+	}
+
+	private int parseInt(final String value, final int defaultValue) {
+
+		if (value != null) {
+
+			try {
+				return Integer.parseInt(value.trim());
+
+			} catch (NumberFormatException nfex) {
+
+				logger.log(Level.WARNING, "Invalid configuration value {0}, using default of {1}", new Object[] { value, defaultValue });
+			}
+		}
+
+		return defaultValue;
+	}
+
+	// ----- nested classes -----
+	private static class CronThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+		private String name               = null;
+
+		public CronThreadFactory(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
 }
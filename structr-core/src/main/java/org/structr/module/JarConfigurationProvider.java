@@ -35,6 +35,7 @@ import java.util.Arrays;
 import java.util.Collections;
 
 import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -83,6 +84,7 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 	private final Set<String> relationshipPackages = new LinkedHashSet<>();
 	private final Map<String, Class> combinedTypeRelationClassCache = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Map<String, Set<Class>> interfaceCache = new ConcurrentHashMap<>(10, 0.9f, 8);
+	private final Map<Class, Set<String>> assignableNodeTypeCache = new ConcurrentHashMap<>(10, 0.9f, 8);
 	private final Set<String> agentPackages = new LinkedHashSet<>();
 	private final String fileSep = System.getProperty("file.separator");
 	private final String fileSepEscaped = fileSep.replaceAll("\\\\", "\\\\\\\\");	// ....
@@ -143,6 +145,29 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 		return interfaceCache.get(simpleName);
 	}
 
+	@Override
+	public Set<String> getAssignableNodeTypeNames(final Class type) {
+
+		Set<String> typeNames = assignableNodeTypeCache.get(type);
+		if (typeNames == null) {
+
+			typeNames = new HashSet<>();
+
+			for (final Entry<String, Class<? extends NodeInterface>> entry : nodeEntityClassCache.entrySet()) {
+
+				if (type.isAssignableFrom(entry.getValue())) {
+					typeNames.add(entry.getKey());
+				}
+			}
+
+			typeNames = Collections.unmodifiableSet(typeNames);
+
+			assignableNodeTypeCache.put(type, typeNames);
+		}
+
+		return typeNames;
+	}
+
 	@Override
 	public Class getNodeEntityClass(final String name) {
 
@@ -165,6 +190,7 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 							if (!Modifier.isAbstract(nodeClass.getModifiers())) {
 
 								nodeEntityClassCache.put(name, nodeClass);
+								assignableNodeTypeCache.clear();
 
 								// first match wins
 								break;
@@ -498,6 +524,7 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 
 		nodeEntityClassCache.remove(typeName);
 		nodeEntityPackages.remove(JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE + typeName);
+		assignableNodeTypeCache.clear();
 
 		relationshipEntityClassCache.remove(typeName);
 		relationshipPackages.remove(JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE + typeName);
@@ -514,6 +541,7 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 
 		if (AbstractNode.class.isAssignableFrom(type)) {
 			nodeEntityClassCache.put(simpleName, type);
+			assignableNodeTypeCache.clear();
 			nodeEntityPackages.add(fullName.substring(0, fullName.lastIndexOf(".")));
 			globalPropertyViewMap.remove(type.getName());
 		}
@@ -53,6 +53,17 @@ public interface ConfigurationProvider {
 
 	public Set<Class> getClassesForInterface(final String simpleName);
 
+	/**
+	 * Returns the names of all registered node types that can be assigned
+	 * to the given type, including the type itself. This allows checking
+	 * the type of a database node by its raw type property without
+	 * instantiating it.
+	 *
+	 * @param type
+	 * @return the type names
+	 */
+	public Set<String> getAssignableNodeTypeNames(final Class type);
+
 
 	public void registerPropertyGroup(final Class entityClass, final PropertyKey propertyKey, final PropertyGroup propertyGroup);
 	public void registerConvertedProperty(final PropertyKey property);
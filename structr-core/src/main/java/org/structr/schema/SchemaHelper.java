@@ -26,7 +26,6 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
 import org.neo4j.graphdb.PropertyContainer;
@@ -48,6 +47,7 @@ import org.structr.core.entity.ResourceAccess;
 import org.structr.core.entity.SchemaNode;
 import org.structr.core.entity.relationship.SchemaRelationship;
 import org.structr.core.graph.NodeAttribute;
+import org.structr.core.parser.ExpressionCache;
 import org.structr.core.parser.Functions;
 import org.structr.core.property.PropertyKey;
 import org.structr.schema.action.ActionContext;
@@ -798,52 +798,9 @@ public class SchemaHelper {
 
 			value = (String) rawValue;
 
-			if (!actionContext.returnRawValue(securityContext)) {
-
-				final Map<String, String> replacements = new LinkedHashMap<>();
-
-				int start = value.indexOf("${");
-				int end   = value.indexOf("}", start);
-
-				while (start >= 0 && end >= 0) {
-
-					String group          = value.substring(start,   end+1);
-					String source         = value.substring(start+2, end);
-					Object extractedValue = Functions.evaluate(securityContext, actionContext, entity, source);
-
-					if (extractedValue == null) {
-						extractedValue = "";
-					}
-
-					String partValue = extractedValue.toString();
-					if (partValue != null) {
-
-						replacements.put(group, partValue);
-
-					} else {
-
-						// If the whole expression should be replaced, and partValue is null
-						// replace it by null to make it possible for HTML attributes to not be rendered
-						// and avoid something like ... selected="" ... which is interpreted as selected==true by
-						// all browsers
-						if (!value.equals(group)) {
-							replacements.put(group, "");
-						}
-					}
-
-					start = value.indexOf("${", end);
-					end   = value.indexOf("}", start);
-				}
-
-				// apply replacements
-				for (final Entry<String, String> entry : replacements.entrySet()) {
-
-					final String group       = entry.getKey();
-					final String replacement = entry.getValue();
-
-					value = value.replace(group, replacement);
-				}
+			if (!actionContext.returnRawValue(securityContext) && value.contains("${")) {
 
+				value = ExpressionCache.getTemplate(value).evaluate(securityContext, actionContext, entity);
 			}
 
 		} else if (rawValue instanceof Boolean) {
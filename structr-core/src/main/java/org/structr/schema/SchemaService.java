@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.structr.common.StructrConf;
@@ -38,6 +39,8 @@ import org.structr.core.Command;
 import org.structr.core.Service;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.SchemaNode;
 import org.structr.core.entity.relationship.SchemaRelationship;
 import org.structr.core.graph.Tx;
@@ -51,6 +54,7 @@ public class SchemaService implements Service {
 
 	private static final Logger logger                            = Logger.getLogger(SchemaService.class.getName());
 	private static final AtomicBoolean compiling                  = new AtomicBoolean(false);
+	private static final AtomicLong schemaVersion                 = new AtomicLong(0L);
 	private static final Map<String, String> builtinTypeMap       = new LinkedHashMap<>();
 
 	@Override
@@ -62,6 +66,16 @@ public class SchemaService implements Service {
 		reloadSchema(new ErrorBuffer());
 	}
 
+	/**
+	 * Returns a number that changes every time the schema is reloaded,
+	 * so callers can invalidate information derived from the schema.
+	 *
+	 * @return the current schema version
+	 */
+	public static long getSchemaVersion() {
+		return schemaVersion.get();
+	}
+
 	public static void registerBuiltinTypeOverride(final String type, final String fqcn) {
 		builtinTypeMap.put(type, fqcn);
 	}
@@ -82,6 +96,8 @@ public class SchemaService implements Service {
 
 				try (final Tx tx = StructrApp.getInstance().tx()) {
 
+					final long t0 = System.currentTimeMillis();
+
 					SchemaService.ensureBuiltinTypesExist();
 
 					// collect node classes
@@ -112,8 +128,22 @@ public class SchemaService implements Service {
 						dynamicViews.addAll(schemaRelationship.getViews());
 					}
 
-					// compile all classes at once and register
+					// reload types that are not (or no longer) known to the
+					// configuration provider, e.g. after a restart
+					for (final Class type : NodeExtender.getClasses().values()) {
+
+						if (!isRegistered(config, type)) {
+							NodeExtender.unloadClass(type.getName());
+						}
+					}
+
+					final long t1 = System.currentTimeMillis();
+
+					// compile changed classes and register
 					Map<String, Class> newTypes = nodeExtender.compile(errorBuffer);
+
+					final long t2 = System.currentTimeMillis();
+
 					for (final Class newType : newTypes.values()) {
 
 						config.registerEntityType(newType);
@@ -123,6 +153,8 @@ public class SchemaService implements Service {
 						try { newType.newInstance(); } catch (Throwable t) {}
 					}
 
+					logger.log(Level.INFO, "Schema reloaded, source generation: {0} ms, compilation: {1} ms, registration: {2} ms", new Object[] { t1 - t0, t2 - t1, System.currentTimeMillis() - t2 });
+
 					success = !errorBuffer.hasError();
 
 					// inject views in configuration provider
@@ -141,6 +173,9 @@ public class SchemaService implements Service {
 				}
 			}
 
+			// invalidate everything that was derived from the previous schema
+			schemaVersion.incrementAndGet();
+
 			// compiling done
 			compiling.set(false);
 		}
@@ -187,4 +222,20 @@ public class SchemaService implements Service {
 			schemaNode.setProperty(SchemaNode.isBuiltinType, true);
 		}
 	}
+
+	private static boolean isRegistered(final ConfigurationProvider config, final Class type) {
+
+		final String name = type.getSimpleName();
+
+		if (AbstractNode.class.isAssignableFrom(type)) {
+			return type.equals(config.getNodeEntities().get(name));
+		}
+
+		if (AbstractRelationship.class.isAssignableFrom(type)) {
+			return type.equals(config.getRelationshipEntities().get(name));
+		}
+
+		// helper classes are reloaded together with their entity type
+		return true;
+	}
 }
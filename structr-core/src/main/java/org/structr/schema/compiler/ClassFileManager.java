@@ -20,25 +20,32 @@ package org.structr.schema.compiler;
 
 import java.io.IOException;
 import java.security.SecureClassLoader;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.tools.FileObject;
 import javax.tools.ForwardingJavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.JavaFileObject.Kind;
 import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import org.structr.module.JarConfigurationProvider;
 
 /**
  *
  * @author Christian Morgner (christian@morgner.de)
  */
-public class ClassFileManager extends ForwardingJavaFileManager {
+public class ClassFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
 
 	/**
 	 * Instance of JavaClassObject that will store the compiled bytecode of
 	 * our class
 	 */
-	private Map<String, JavaClassObject> objects = new LinkedHashMap<>();
+	private final Map<String, JavaClassObject> objects = new ConcurrentHashMap<>();
 
 	/**
 	 * Will initialize the manager with the specified standard java file
@@ -76,6 +83,139 @@ public class ClassFileManager extends ForwardingJavaFileManager {
 		};
 	}
 
+	/**
+	 * Returns a class loader that defines the classes stored in this
+	 * manager, except for the given already loaded classes (and their
+	 * inner classes), which are returned as they are. This allows a
+	 * partial recompilation to link against unchanged dynamic types.
+	 *
+	 * @param loadedClasses the classes to reuse
+	 * @return a new class loader
+	 */
+	public ClassLoader getClassLoader(final Map<String, Class> loadedClasses) {
+
+		return new SecureClassLoader() {
+
+			@Override
+			protected Class<?> findClass(String name) throws ClassNotFoundException {
+
+				final Class loaded = loadedClasses.get(name);
+				if (loaded != null) {
+
+					return loaded;
+				}
+
+				final int pos = name.indexOf('$');
+				if (pos > 0) {
+
+					final Class outer = loadedClasses.get(name.substring(0, pos));
+					if (outer != null) {
+
+						return outer.getClassLoader().loadClass(name);
+					}
+				}
+
+				final JavaClassObject obj = objects.get(name);
+				if (obj != null) {
+
+					byte[] b = obj.getBytes();
+					return super.defineClass(name, b, 0, b.length);
+				}
+
+				throw new ClassNotFoundException(name);
+			}
+		};
+	}
+
+	/**
+	 * Stores the given byte code for the class with the given name.
+	 *
+	 * @param className the binary name of the class
+	 * @param bytes the byte code
+	 */
+	public void putClass(final String className, final byte[] bytes) {
+		objects.put(className, new JavaClassObject(className, bytes));
+	}
+
+	/**
+	 * Returns the byte code of the given top-level class and all of its
+	 * inner classes, keyed by binary name.
+	 *
+	 * @param className the binary name of the top-level class
+	 * @return the byte code, or an empty map
+	 */
+	public Map<String, byte[]> getClassBytes(final String className) {
+
+		final Map<String, byte[]> bytes = new LinkedHashMap<>();
+		final String innerPrefix        = className.concat("$");
+
+		for (final JavaClassObject obj : objects.values()) {
+
+			final String name = obj.getClassName();
+			if (name.equals(className) || name.startsWith(innerPrefix)) {
+
+				bytes.put(name, obj.getBytes());
+			}
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Removes the byte code of the given top-level class and all of its
+	 * inner classes.
+	 *
+	 * @param className the binary name of the top-level class
+	 */
+	public void removeClass(final String className) {
+
+		final String innerPrefix = className.concat("$");
+
+		for (final Iterator<String> it = objects.keySet().iterator(); it.hasNext();) {
+
+			final String name = it.next();
+			if (name.equals(className) || name.startsWith(innerPrefix)) {
+
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Makes the stored classes of the dynamic package visible to the
+	 * compiler, so unchanged types need not be compiled again.
+	 */
+	@Override
+	public Iterable<JavaFileObject> list(final Location location, final String packageName, final Set<Kind> kinds, final boolean recurse) throws IOException {
+
+		final Iterable<JavaFileObject> list = super.list(location, packageName, kinds, recurse);
+
+		if (StandardLocation.CLASS_PATH.equals(location) && JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE.equals(packageName) && kinds.contains(Kind.CLASS)) {
+
+			final List<JavaFileObject> result = new ArrayList<>();
+
+			for (final JavaFileObject obj : list) {
+				result.add(obj);
+			}
+
+			result.addAll(objects.values());
+
+			return result;
+		}
+
+		return list;
+	}
+
+	@Override
+	public String inferBinaryName(final Location location, final JavaFileObject file) {
+
+		if (file instanceof JavaClassObject) {
+			return ((JavaClassObject)file).getClassName();
+		}
+
+		return super.inferBinaryName(location, file);
+	}
+
 	/**
 	 * Gives the compiler an instance of the JavaClassObject so that the
 	 * compiler can write the byte code into it.
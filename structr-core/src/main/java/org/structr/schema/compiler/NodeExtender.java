@@ -18,15 +18,27 @@
  */
 package org.structr.schema.compiler;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.tools.Diagnostic;
@@ -36,31 +48,40 @@ import javax.tools.JavaCompiler;
 import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.ToolProvider;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.structr.common.error.DiagnosticErrorToken;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.core.Services;
 import org.structr.module.JarConfigurationProvider;
 
 /**
+ * Compiles the source code of dynamic types. Each type is identified by a
+ * key that is computed from its own source and the sources of all dynamic
+ * types it depends on, so that only changed types and their dependents are
+ * recompiled. Compiled classes are stored in the schema cache directory
+ * (see {@link Services#SCHEMA_CACHE_PATH}) under their key, so that a
+ * restart with an unchanged schema does not need the compiler at all.
  *
  * @author Christian Morgner (christian@morgner.de)
  */
 public class NodeExtender {
 
-	private static final Logger logger   = Logger.getLogger(NodeExtender.class.getName());
+	private static final Logger logger                  = Logger.getLogger(NodeExtender.class.getName());
+	private static final String CACHE_FILE_SUFFIX       = ".classes";
 
-	private static final JavaCompiler compiler       = ToolProvider.getSystemJavaCompiler();
-	private static final JavaFileManager fileManager = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
-	private static final ClassLoader classLoader     = fileManager.getClassLoader(null);
-	private static final Map<String, Class> classes  = new TreeMap<>();
+	private static final JavaCompiler compiler          = ToolProvider.getSystemJavaCompiler();
+	private static final ClassFileManager fileManager   = new ClassFileManager(compiler.getStandardFileManager(null, null, null));
+	private static final ClassLoader classLoader        = fileManager.getClassLoader((JavaFileManager.Location)null);
+	private static final Map<String, Class> classes     = new TreeMap<>();
+	private static final Map<String, String> classKeys  = new HashMap<>();
+	private static String environmentKey                = null;
 
-	private List<JavaFileObject> jfiles  = null;
-	private Set<String> fqcns            = null;
+	private Map<String, String> sources = null;
 
 	public NodeExtender() {
 
-		jfiles      = new ArrayList<>();
-		fqcns       = new LinkedHashSet<>();
+		sources = new LinkedHashMap<>();
 	}
 
 	public static ClassLoader getClassLoader() {
@@ -71,14 +92,31 @@ public class NodeExtender {
 		return classes.get(fqcn);
 	}
 
+	/**
+	 * Returns all dynamic classes that are currently loaded.
+	 *
+	 * @return a copy of the map of loaded classes
+	 */
+	public static synchronized Map<String, Class> getClasses() {
+		return new TreeMap<>(classes);
+	}
+
+	/**
+	 * Removes the given class from the set of loaded classes, so that the
+	 * next call to {@link #compile(ErrorBuffer)} loads it (and all classes
+	 * that depend on it) again, from the existing byte code if possible.
+	 *
+	 * @param fqcn the fully qualified name of the class
+	 */
+	public static synchronized void unloadClass(final String fqcn) {
+		classes.remove(fqcn);
+	}
+
 	public void addClass(final String className, final String content) throws ClassNotFoundException {
 
 		if (className != null && content != null) {
 
-			final String packageName = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE;
-
-			jfiles.add(new CharSequenceJavaFileObject(className, content));
-			fqcns.add(packageName.concat(".".concat(className)));
+			sources.put(className, content);
 
 			if ("true".equals(Services.getInstance().getConfigurationValue("NodeExtender.log"))) {
 
@@ -88,34 +126,424 @@ public class NodeExtender {
 		}
 	}
 
+	/**
+	 * Compiles and loads all classes that changed since the last call,
+	 * and all classes that depend on them. Classes are loaded from the
+	 * schema cache if possible.
+	 *
+	 * @param errorBuffer
+	 * @return the classes that were (re)loaded by this call
+	 * @throws ClassNotFoundException
+	 */
 	public synchronized Map<String, Class> compile(final ErrorBuffer errorBuffer) throws ClassNotFoundException {
 
-		final Writer errorWriter = new StringWriter();
+		final Map<String, Class> newClasses = new TreeMap<>();
+
+		if (!sources.isEmpty()) {
+
+			synchronized (NodeExtender.class) {
+
+				final String packageName                      = JarConfigurationProvider.DYNAMIC_TYPES_PACKAGE.concat(".");
+				final File cacheDirectory                     = getCacheDirectory();
+				final Map<String, Class> unchanged            = new LinkedHashMap<>();
+				final Map<String, String> newKeys             = new HashMap<>();
+				final Map<String, Map<String, byte[]>> backup = new HashMap<>();
+				final List<JavaFileObject> jfiles             = new ArrayList<>();
+				final Set<String> reload                      = new LinkedHashSet<>();
+				final Writer errorWriter                      = new StringWriter();
+				int cacheHits                                 = 0;
+
+				// 1. compute keys and dependencies
+				final long t0                             = System.currentTimeMillis();
+				final Map<String, Set<String>> dependents = new HashMap<>();
+				final Map<String, String> keys            = computeKeys(dependents);
+
+				for (final Entry<String, String> entry : keys.entrySet()) {
+
+					final String fqcn = packageName.concat(entry.getKey());
+					final String key  = entry.getValue();
+
+					if (!key.equals(classKeys.get(fqcn)) || !classes.containsKey(fqcn)) {
+
+						addWithDependents(entry.getKey(), dependents, reload);
+					}
+				}
+
+				// 2. load byte code from memory or schema cache
+				final long t1 = System.currentTimeMillis();
+
+				for (final String className : keys.keySet()) {
+
+					final String fqcn = packageName.concat(className);
+					final String key  = keys.get(className);
+
+					if (!reload.contains(className)) {
+
+						unchanged.put(fqcn, classes.get(fqcn));
+
+					} else if (!key.equals(classKeys.get(fqcn))) {
+
+						final Map<String, byte[]> cached = readCache(cacheDirectory, key);
+						if (cached != null) {
+
+							backup.put(fqcn, fileManager.getClassBytes(fqcn));
+							fileManager.removeClass(fqcn);
+
+							for (final Entry<String, byte[]> cachedClass : cached.entrySet()) {
+								fileManager.putClass(cachedClass.getKey(), cachedClass.getValue());
+							}
+
+							newKeys.put(fqcn, key);
+							cacheHits++;
+
+						} else {
+
+							jfiles.add(new CharSequenceJavaFileObject(className, sources.get(className)));
+						}
+
+					} else if (!hasCache(cacheDirectory, key)) {
+
+						// byte code is still in memory, but cache is missing
+						writeCache(cacheDirectory, key, fileManager.getClassBytes(fqcn));
+					}
+				}
+
+				// remove the byte code of classes that no longer exist, so
+				// that the compiler cannot resolve references to them
+				final Set<String> removed = new LinkedHashSet<>(classes.keySet());
+
+				removed.addAll(classKeys.keySet());
+
+				for (final String fqcn : removed) {
+
+					if (!keys.containsKey(fqcn.substring(packageName.length()))) {
+
+						backup.put(fqcn, fileManager.getClassBytes(fqcn));
+						fileManager.removeClass(fqcn);
+					}
+				}
+
+				// 3. compile the remaining classes
+				final long t2 = System.currentTimeMillis();
+
+				if (!jfiles.isEmpty()) {
+
+					logger.log(Level.INFO, "Compiling {0} dynamic entities", jfiles.size());
+
+					for (final JavaFileObject jfile : jfiles) {
+
+						final String fqcn = packageName.concat(((CharSequenceJavaFileObject)jfile).getClassName());
+
+						backup.put(fqcn, fileManager.getClassBytes(fqcn));
+						fileManager.removeClass(fqcn);
+					}
+
+					final Boolean success = compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+					if (!Boolean.TRUE.equals(success)) {
+
+						// restore previous state, nothing is loaded
+						for (final Entry<String, Map<String, byte[]>> entry : backup.entrySet()) {
 
-		if (!jfiles.isEmpty()) {
+							fileManager.removeClass(entry.getKey());
 
-			logger.log(Level.INFO, "Compiling {0} dynamic entities", jfiles.size());
+							for (final Entry<String, byte[]> previous : entry.getValue().entrySet()) {
+								fileManager.putClass(previous.getKey(), previous.getValue());
+							}
+						}
 
-			// clear classes map
-			classes.clear();
+						logger.log(Level.WARNING, "Compilation of dynamic entities failed after {0} ms", System.currentTimeMillis() - t2);
 
-			compiler.getTask(errorWriter, fileManager, new Listener(errorBuffer), null, null, jfiles).call();
+						return newClasses;
+					}
 
-			final ClassLoader loader = fileManager.getClassLoader(null);
-			for (final String fqcn : fqcns) {
+					for (final JavaFileObject jfile : jfiles) {
 
-				try {
-					classes.put(fqcn, loader.loadClass(fqcn));
+						final String className = ((CharSequenceJavaFileObject)jfile).getClassName();
+						final String fqcn      = packageName.concat(className);
+						final String key       = keys.get(className);
 
-				} catch (Throwable t) {
+						newKeys.put(fqcn, key);
+						writeCache(cacheDirectory, key, fileManager.getClassBytes(fqcn));
+					}
+				}
+
+				// 4. load classes
+				final long t3            = System.currentTimeMillis();
+				final ClassLoader loader = fileManager.getClassLoader(unchanged);
+
+				for (final String className : reload) {
+
+					final String fqcn = packageName.concat(className);
+
+					try {
+						newClasses.put(fqcn, loader.loadClass(fqcn));
+
+					} catch (Throwable t) {
 
-					logger.log(Level.WARNING, "Unable to compile dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
-					t.printStackTrace();
+						logger.log(Level.WARNING, "Unable to compile dynamic entity {0}: {1}", new Object[] { fqcn, t.toString() });
+						t.printStackTrace();
+					}
 				}
+
+				// remove classes that no longer exist
+				classes.keySet().retainAll(unchanged.keySet());
+				classes.putAll(newClasses);
+				classKeys.putAll(newKeys);
+				classKeys.keySet().retainAll(classes.keySet());
+
+				pruneCache(cacheDirectory, new LinkedHashSet<>(keys.values()));
+
+				final long t4 = System.currentTimeMillis();
+
+				logger.log(Level.INFO, "Loaded {0} of {1} dynamic entities ({2} from cache, {3} compiled), hashing: {4} ms, cache: {5} ms, compilation: {6} ms, loading: {7} ms",
+					new Object[] { newClasses.size(), keys.size(), cacheHits, jfiles.size(), t1 - t0, t2 - t1, t3 - t2, t4 - t3 }
+				);
 			}
 		}
 
-		return classes;
+		return newClasses;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Computes the key of each class, which consists of the hash of its
+	 * own source and the hashes of all classes it (transitively) depends
+	 * on. A class depends on another class if it references its name.
+	 */
+	private Map<String, String> computeKeys(final Map<String, Set<String>> dependents) {
+
+		final Map<String, Set<String>> dependencies = new HashMap<>();
+		final Map<String, String> hashes            = new HashMap<>();
+		final Map<String, String> keys              = new TreeMap<>();
+
+		for (final Entry<String, String> entry : sources.entrySet()) {
+
+			final String className = entry.getKey();
+			final Set<String> deps = new LinkedHashSet<>();
+
+			for (final String identifier : getIdentifiers(entry.getValue())) {
+
+				if (!className.equals(identifier) && sources.containsKey(identifier)) {
+
+					deps.add(identifier);
+
+					Set<String> reverse = dependents.get(identifier);
+					if (reverse == null) {
+
+						reverse = new LinkedHashSet<>();
+						dependents.put(identifier, reverse);
+					}
+
+					reverse.add(className);
+				}
+			}
+
+			dependencies.put(className, deps);
+			hashes.put(className, DigestUtils.sha1Hex(entry.getValue()));
+		}
+
+		for (final String className : sources.keySet()) {
+
+			final Set<String> closure = new TreeSet<>();
+			final StringBuilder buf   = new StringBuilder(getEnvironmentKey());
+
+			collectDependencies(className, dependencies, closure);
+
+			buf.append(className).append(hashes.get(className));
+
+			for (final String dependency : closure) {
+				buf.append(dependency).append(hashes.get(dependency));
+			}
+
+			keys.put(className, DigestUtils.sha1Hex(buf.toString()));
+		}
+
+		return keys;
+	}
+
+	private void collectDependencies(final String className, final Map<String, Set<String>> dependencies, final Set<String> closure) {
+
+		for (final String dependency : dependencies.get(className)) {
+
+			if (closure.add(dependency)) {
+				collectDependencies(dependency, dependencies, closure);
+			}
+		}
+	}
+
+	private void addWithDependents(final String className, final Map<String, Set<String>> dependents, final Set<String> result) {
+
+		if (result.add(className)) {
+
+			final Set<String> reverse = dependents.get(className);
+			if (reverse != null) {
+
+				for (final String dependent : reverse) {
+					addWithDependents(dependent, dependents, result);
+				}
+			}
+		}
+	}
+
+	private Set<String> getIdentifiers(final String source) {
+
+		final Set<String> identifiers = new LinkedHashSet<>();
+		final int length              = source.length();
+		int start                     = -1;
+
+		for (int i=0; i<length; i++) {
+
+			final char c = source.charAt(i);
+
+			if (Character.isJavaIdentifierPart(c)) {
+
+				if (start < 0) {
+					start = i;
+				}
+
+			} else if (start >= 0) {
+
+				identifiers.add(source.substring(start, i));
+				start = -1;
+			}
+		}
+
+		if (start >= 0) {
+			identifiers.add(source.substring(start));
+		}
+
+		return identifiers;
+	}
+
+	/**
+	 * Returns a key that identifies the Java runtime and the class path,
+	 * so that cached classes are not reused after an update.
+	 */
+	private static String getEnvironmentKey() {
+
+		if (environmentKey == null) {
+
+			final StringBuilder buf = new StringBuilder();
+
+			buf.append(System.getProperty("java.version"));
+
+			for (final String path : StringUtils.split(System.getProperty("java.class.path", ""), File.pathSeparatorChar)) {
+				buf.append(path).append(new File(path).lastModified());
+			}
+
+			environmentKey = DigestUtils.sha1Hex(buf.toString());
+		}
+
+		return environmentKey;
+	}
+
+	private File getCacheDirectory() {
+
+		final String path = Services.getInstance().getConfigurationValue(Services.SCHEMA_CACHE_PATH);
+		if (StringUtils.isNotBlank(path)) {
+
+			final File directory = new File(path);
+			if (directory.isDirectory() || directory.mkdirs()) {
+
+				return directory;
+			}
+
+			logger.log(Level.WARNING, "Unable to create schema cache directory {0}", path);
+		}
+
+		return null;
+	}
+
+	private boolean hasCache(final File directory, final String key) {
+		return directory == null || new File(directory, key.concat(CACHE_FILE_SUFFIX)).exists();
+	}
+
+	private Map<String, byte[]> readCache(final File directory, final String key) {
+
+		if (directory != null) {
+
+			final File file = new File(directory, key.concat(CACHE_FILE_SUFFIX));
+			if (file.exists()) {
+
+				try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+
+					final Map<String, byte[]> result = new LinkedHashMap<>();
+					final int count                  = in.readInt();
+
+					for (int i=0; i<count; i++) {
+
+						final String name  = in.readUTF();
+						final byte[] bytes = new byte[in.readInt()];
+
+						in.readFully(bytes);
+						result.put(name, bytes);
+					}
+
+					return result;
+
+				} catch (IOException ioex) {
+
+					logger.log(Level.WARNING, "Unable to read schema cache file {0}: {1}", new Object[] { file.getName(), ioex.getMessage() });
+					file.delete();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void writeCache(final File directory, final String key, final Map<String, byte[]> classBytes) {
+
+		if (directory != null && !classBytes.isEmpty()) {
+
+			final File tmpFile = new File(directory, key.concat(".tmp"));
+			final File file    = new File(directory, key.concat(CACHE_FILE_SUFFIX));
+
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+
+				out.writeInt(classBytes.size());
+
+				for (final Entry<String, byte[]> entry : classBytes.entrySet()) {
+
+					final byte[] bytes = entry.getValue();
+
+					out.writeUTF(entry.getKey());
+					out.writeInt(bytes.length);
+					out.write(bytes);
+				}
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to write schema cache file {0}: {1}", new Object[] { file.getName(), ioex.getMessage() });
+				tmpFile.delete();
+
+				return;
+			}
+
+			if (!tmpFile.renameTo(file)) {
+
+				tmpFile.delete();
+			}
+		}
+	}
+
+	private void pruneCache(final File directory, final Set<String> keys) {
+
+		if (directory != null) {
+
+			final File[] files = directory.listFiles();
+			if (files != null) {
+
+				for (final File file : files) {
+
+					final String name = file.getName();
+					if (name.endsWith(CACHE_FILE_SUFFIX) && !keys.contains(StringUtils.substringBefore(name, CACHE_FILE_SUFFIX))) {
+
+						file.delete();
+					}
+				}
+			}
+		}
 	}
 
 	private static class Listener implements DiagnosticListener<JavaFileObject> {
@@ -0,0 +1,216 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.structr.common.StructrConf;
+import org.structr.common.StructrTest;
+import org.structr.core.Services;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class AgentServiceTest extends StructrTest {
+
+	@Override
+	protected void setUp() throws Exception {
+
+		super.setUp();
+
+		TestAgent.reset();
+		TestTask.delay = 0L;
+	}
+
+	public void testConcurrencyAndRetry() {
+
+		final AgentService agentService = startAgentService(2);
+
+		try {
+
+			for (int i=0; i<20; i++) {
+				agentService.processTask(new TestTask(0, i % 5 == 0 ? 1 : 0));
+			}
+
+			assertTrue(waitForCompletion(agentService, 20));
+
+			final Map<String, Object> stats = agentService.getStatistics().get("TestTask");
+
+			assertEquals(20L, stats.get("completed"));
+			assertEquals(4L,  stats.get("retried"));
+			assertEquals(0L,  stats.get("failed"));
+			assertEquals(0,   stats.get("queued"));
+			assertEquals(20,  TestAgent.processed.size());
+			assertTrue(TestAgent.maxRunning.get() <= 2);
+
+		} finally {
+
+			agentService.stopService();
+		}
+	}
+
+	public void testPriority() {
+
+		final AgentService agentService = startAgentService(1);
+
+		try {
+
+			TestAgent.latch = new CountDownLatch(1);
+
+			// the first task blocks the only agent until all others are queued
+			agentService.processTask(new TestTask(0, 0));
+
+			final long timeout = System.currentTimeMillis() + 10000;
+			while (TestAgent.running.get() == 0 && System.currentTimeMillis() < timeout) {
+				try { Thread.sleep(10); } catch (InterruptedException iex) {}
+			}
+
+			for (final int priority : new int[] { 3, 1, 5, 2, 4 }) {
+				agentService.processTask(new TestTask(priority, 0));
+			}
+
+			TestAgent.latch.countDown();
+
+			assertTrue(waitForCompletion(agentService, 6));
+			assertEquals(Arrays.asList(0, 5, 4, 3, 2, 1), TestAgent.processed);
+
+		} finally {
+
+			agentService.stopService();
+		}
+	}
+
+	public void testStoreAndRestore() {
+
+		final File store = new File(basePath + "/agent-tasks.dat");
+
+		AgentService agentService = startAgentService(1);
+
+		try {
+
+			TestTask.delay = 3600000L;
+
+			agentService.processTask(new TestTask(0, 0));
+			agentService.processTask(new TestTask(0, 0));
+
+			assertEquals(2, agentService.getTaskQueue().size());
+
+		} finally {
+
+			agentService.stopService();
+		}
+
+		assertTrue(store.exists());
+		assertTrue(TestAgent.processed.isEmpty());
+
+		TestTask.delay = 0L;
+		agentService   = startAgentService(1);
+
+		try {
+
+			assertTrue(waitForCompletion(agentService, 2));
+			assertFalse(store.exists());
+
+		} finally {
+
+			agentService.stopService();
+		}
+	}
+
+	public void testTaskWithoutAgentFails() {
+
+		final AgentService agentService = startAgentService(1);
+
+		try {
+
+			final Future<ReturnValue> future = agentService.submitTask(new UnhandledTask());
+
+			try {
+
+				future.get(10, TimeUnit.SECONDS);
+				fail("Task without agent should fail");
+
+			} catch (ExecutionException eex) {
+
+				assertTrue(eex.getCause() instanceof IllegalStateException);
+
+			} catch (InterruptedException | TimeoutException ex) {
+
+				fail("Task without agent should fail immediately");
+			}
+
+			assertTrue(future.isDone());
+			assertEquals(0, agentService.getTaskQueue().size());
+
+		} finally {
+
+			agentService.stopService();
+		}
+	}
+
+	// ----- private methods -----
+	private AgentService startAgentService(final int threads) {
+
+		final StructrConf config        = new StructrConf(Services.getBaseConfiguration());
+		final AgentService agentService = new AgentService();
+
+		config.setProperty(AgentService.THREADS,    Integer.toString(threads));
+		config.setProperty(AgentService.BACKOFF,    "10");
+		config.setProperty(AgentService.KEEP_ALIVE, "100");
+
+		agentService.initialize(config);
+		agentService.startService();
+
+		return agentService;
+	}
+
+	private boolean waitForCompletion(final AgentService agentService, final long count) {
+
+		final long timeout = System.currentTimeMillis() + 10000;
+
+		while (System.currentTimeMillis() < timeout) {
+
+			final Map<String, Object> stats = agentService.getStatistics().get("TestTask");
+			if (stats != null && Long.valueOf(count).equals(stats.get("completed"))) {
+				return true;
+			}
+
+			try { Thread.sleep(50); } catch (InterruptedException iex) {}
+		}
+
+		return false;
+	}
+
+	// ----- nested classes -----
+	private static class UnhandledTask extends TestTask {
+
+		public UnhandledTask() {
+			super(0, 0);
+		}
+	}
+}
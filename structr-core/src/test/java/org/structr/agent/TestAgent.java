@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An agent for testing the agent service. Records the order and the
+ * concurrency of the processed tasks.
+ *
+ * @author Christian Morgner
+ */
+public class TestAgent extends Agent {
+
+	public static final List<Integer> processed  = Collections.synchronizedList(new LinkedList<Integer>());
+	public static final AtomicInteger running    = new AtomicInteger();
+	public static final AtomicInteger maxRunning = new AtomicInteger();
+	public static volatile CountDownLatch latch  = null;
+
+	public static void reset() {
+
+		processed.clear();
+		running.set(0);
+		maxRunning.set(0);
+		latch = null;
+	}
+
+	@Override
+	public Class getSupportedTaskType() {
+		return TestTask.class;
+	}
+
+	@Override
+	public boolean createEnclosingTransaction() {
+		return false;
+	}
+
+	@Override
+	public ReturnValue processTask(Task task) throws Throwable {
+
+		final int current = running.incrementAndGet();
+
+		try {
+
+			int max = maxRunning.get();
+			while (current > max && !maxRunning.compareAndSet(max, current)) {
+				max = maxRunning.get();
+			}
+
+			final CountDownLatch waitFor = latch;
+			if (waitFor != null) {
+				waitFor.await(10, TimeUnit.SECONDS);
+			}
+
+			if (((TestTask)task).shouldRetry()) {
+				return ReturnValue.Retry;
+			}
+
+			processed.add(task.priority());
+
+			return ReturnValue.Success;
+
+		} finally {
+
+			running.decrementAndGet();
+		}
+	}
+}
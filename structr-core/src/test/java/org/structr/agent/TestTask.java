@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.agent;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
+
+/**
+ * A task for testing the agent service.
+ *
+ * @author Christian Morgner
+ */
+public class TestTask implements Task, Serializable {
+
+	public static volatile long delay = 0L;
+
+	private final AtomicInteger attempts = new AtomicInteger();
+	private int priority                 = 0;
+	private int retries                  = 0;
+
+	public TestTask(final int priority, final int retries) {
+
+		this.priority = priority;
+		this.retries  = retries;
+	}
+
+	public boolean shouldRetry() {
+		return attempts.getAndIncrement() < retries;
+	}
+
+	@Override
+	public Principal getUser() {
+		return null;
+	}
+
+	@Override
+	public Set<AbstractNode> getNodes() {
+		return Collections.emptySet();
+	}
+
+	@Override
+	public int priority() {
+		return priority;
+	}
+
+	@Override
+	public Date getScheduledTime() {
+		return new Date();
+	}
+
+	@Override
+	public Date getCreationTime() {
+		return new Date();
+	}
+
+	@Override
+	public String getType() {
+		return "TestTask";
+	}
+
+	@Override
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(delay, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public int compareTo(Delayed o) {
+		return 0;
+	}
+
+	@Override
+	public Object getStatusProperty(String key) {
+		return null;
+	}
+}
@@ -20,6 +20,7 @@
 
 package org.structr.common;
 
+import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -28,6 +29,7 @@ import org.structr.core.Result;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Group;
 import org.structr.core.entity.Person;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.ResourceAccess;
@@ -402,6 +404,186 @@ public class AccessControlTest extends StructrTest {
 
 	}
 
+	public void test08GrantReadPermissionToNestedGroup() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		try {
+
+			List<TestUser> users = createTestNodes(TestUser.class, 2);
+			TestUser user1 = (TestUser) users.get(0);
+			TestUser user2 = (TestUser) users.get(1);
+			Result result = null;
+
+			final Group parent = createTestNode(Group.class);
+			final Group child  = createTestNode(Group.class);
+
+			// Let user 1 create a node
+			Class type = TestOne.class;
+			final TestOne t1 = createTestNode(TestOne.class, user1);
+
+			try (final Tx tx = app.tx()) {
+
+				// user 2 is a member of child, which is a member of parent
+				parent.addMember(child);
+				child.addMember(user2);
+
+				// Grant read permission to parent group
+				parent.grant(Permission.read, t1);
+				tx.success();
+			}
+
+			// Let user 2 search
+			SecurityContext user2Context = SecurityContext.getInstance(user2, AccessMode.Backend);
+
+			try (final Tx tx = app.tx()) {
+
+				result = StructrApp.getInstance(user2Context).nodeQuery(type).getResult();
+
+				assertEquals(1, result.size());
+				assertEquals(t1.getUuid(), result.get(0).getUuid());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// Remove child group from parent group
+				parent.removeMember(child);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				result = StructrApp.getInstance(user2Context).nodeQuery(type).getResult();
+				assertTrue(result.isEmpty());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test09ResolvePermissionsForWholePage() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		try {
+
+			final TestUser user             = createTestNodes(TestUser.class, 1).get(0);
+			final List<TestOne> nodes       = createTestNodes(TestOne.class, 250);
+			final List<TestOne> readable    = new LinkedList<>();
+			int count                       = 0;
+
+			try (final Tx tx = app.tx()) {
+
+				for (final TestOne node : nodes) {
+
+					node.setProperty(AbstractNode.name, String.format("node%03d", count));
+
+					// grant read permission on every other node
+					if (count++ % 2 == 0) {
+
+						user.grant(Permission.read, node);
+						readable.add(node);
+					}
+				}
+
+				tx.success();
+			}
+
+			final SecurityContext userContext = SecurityContext.getInstance(user, AccessMode.Backend);
+
+			PermissionResolutionCache.clear();
+
+			try (final Tx tx = app.tx()) {
+
+				final long misses   = PermissionResolutionCache.getMisses();
+				final Result result = StructrApp.getInstance(userContext).nodeQuery(TestOne.class).sort(AbstractNode.name).page(3).pageSize(20).getResult();
+
+				assertEquals(20, result.size());
+				assertEquals(125, (int) result.getRawResultCount());
+
+				for (int i=0; i<20; i++) {
+					assertEquals(readable.get(40 + i).getUuid(), result.get(i).getUuid());
+				}
+
+				// permissions are resolved batch-wise before the nodes are checked
+				assertEquals("Permissions should be resolved for the whole batch", misses, PermissionResolutionCache.getMisses());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
+	public void test10GrantAndRevokeOnExistingSecurityRelationship() {
+
+		// remove auto-generated resource access objects
+		clearResourceAccess();
+
+		try {
+
+			final TestUser user = createTestNodes(TestUser.class, 1).get(0);
+			final TestOne t1    = createTestNode(TestOne.class);
+
+			try (final Tx tx = app.tx()) {
+
+				// creates the security relationship without read permission
+				user.grant(Permission.write, t1);
+				tx.success();
+			}
+
+			final SecurityContext userContext = SecurityContext.getInstance(user, AccessMode.Backend);
+
+			try (final Tx tx = app.tx()) {
+
+				assertTrue(StructrApp.getInstance(userContext).nodeQuery(TestOne.class).getResult().isEmpty());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// modifies the existing security relationship
+				user.grant(Permission.read, t1);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final Result result = StructrApp.getInstance(userContext).nodeQuery(TestOne.class).getResult();
+
+				assertEquals("Added permission should be effective", 1, result.size());
+				assertEquals(t1.getUuid(), result.get(0).getUuid());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				user.revoke(Permission.read, t1);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertTrue("Revoked permission should be effective", StructrApp.getInstance(userContext).nodeQuery(TestOne.class).getResult().isEmpty());
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
+
 	protected <T extends AbstractNode> T createTestNode(final Class<T> type, final Principal user) throws FrameworkException {
 		return (T)createTestNode(type, new PropertyMap(), user);
 	}
@@ -48,10 +48,16 @@ import org.structr.core.entity.TestOne;
 //~--- JDK imports ------------------------------------------------------------
 
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.ResourceIterator;
+import org.neo4j.graphdb.index.IndexHits;
+import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.Tx;
 
@@ -118,6 +124,133 @@ public class PagingTest extends StructrTest {
 
       }
 
+	public void test02LazyPage() {
+
+		try {
+
+			final Class type = TestOne.class;
+			final int number = 43;
+
+			this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				final Result result = app.nodeQuery(type).sort(AbstractNode.name).page(2).pageSize(10).lazy(true).getResult();
+
+				assertTrue(result.isLazy());
+
+				int count = 0;
+				for (Object obj : result.getIterable()) {
+
+					assertNotNull(obj);
+					count++;
+				}
+
+				assertEquals(10, count);
+				assertEquals(number, result.getRawResultCount().intValue());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// calling getResults() on a lazy result materializes it
+				final Result result = app.nodeQuery(type).sort(AbstractNode.name).page(5).pageSize(10).lazy(true).getResult();
+
+				assertEquals(3, result.getResults().size());
+				assertFalse(result.isLazy());
+				assertEquals(number, result.getRawResultCount().intValue());
+			}
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
+	public void test03LazyPageLargerThanBatch() {
+
+		try {
+
+			final Class type = TestOne.class;
+			final int number = 450;
+
+			final List<TestOne> nodes = this.createTestNodes(type, number);
+
+			try (final Tx tx = app.tx()) {
+
+				// the index hits are fetched from Lucene in batches,
+				// so the page must span more than one batch
+				final Result result = app.nodeQuery(type).page(1).pageSize(400).lazy(true).getResult();
+
+				assertTrue(result.isLazy());
+
+				int count = 0;
+				for (Object obj : result.getIterable()) {
+
+					assertNotNull(obj);
+					count++;
+				}
+
+				assertEquals(400, count);
+				assertEquals(number, result.getRawResultCount().intValue());
+
+				// closing a finished result has no effect
+				result.close();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// a result that is closed before it is streamed is empty
+				final Result result = app.nodeQuery(type).page(1).pageSize(400).lazy(true).getResult();
+
+				result.close();
+
+				assertFalse(result.getIterable().iterator().hasNext());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<Node> dbNodes = new LinkedList<>();
+				for (final TestOne node : nodes) {
+
+					dbNodes.add(node.getNode());
+				}
+
+				// the lazy result owns the index hits and closes them when it is finished
+				final RecordingHits hits  = new RecordingHits(dbNodes);
+				final NodeFactory factory = new NodeFactory(securityContext, 400, 1, null);
+
+				factory.setLazy(true);
+
+				final Result result = factory.instantiate(hits);
+
+				int count = 0;
+				for (Object obj : result.getIterable()) {
+
+					assertNotNull(obj);
+					count++;
+				}
+
+				assertEquals(400, count);
+				assertFalse(hits.closed);
+
+				assertEquals(number, result.getRawResultCount().intValue());
+				assertTrue(hits.closed);
+			}
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+	}
+
 	/**
 	 * Test different pages and page sizes
 	 */
@@ -210,4 +343,68 @@ public class PagingTest extends StructrTest {
 
 		}
 	}
+
+	// ----- nested classes -----
+	/**
+	 * Index hits that record whether they were closed, and fail when they
+	 * are used afterwards.
+	 */
+	private static class RecordingHits implements IndexHits<Node> {
+
+		private Iterator<Node> iterator = null;
+		private boolean closed          = false;
+		private int size                = 0;
+
+		public RecordingHits(final List<Node> nodes) {
+
+			this.iterator = nodes.iterator();
+			this.size     = nodes.size();
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		@Override
+		public Node getSingle() {
+			throw new UnsupportedOperationException("Not supported.");
+		}
+
+		@Override
+		public float currentScore() {
+			return 0.0f;
+		}
+
+		@Override
+		public ResourceIterator<Node> iterator() {
+			return this;
+		}
+
+		@Override
+		public boolean hasNext() {
+
+			assertFalse("Index hits used after close", closed);
+
+			return iterator.hasNext();
+		}
+
+		@Override
+		public Node next() {
+
+			assertFalse("Index hits used after close", closed);
+
+			return iterator.next();
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("Not supported.");
+		}
+	}
 }
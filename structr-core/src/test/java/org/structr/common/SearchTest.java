@@ -277,4 +277,38 @@ public class SearchTest extends StructrTest {
 		}
 
 	}
+
+	public void test05SearchNameModifiedRepeatedlyInOneTransaction() {
+
+		try  {
+
+			final NodeInterface node = this.createTestNode(TestOne.class);
+
+			try (final Tx tx = app.tx()) {
+
+				node.setProperty(AbstractNode.name, "first");
+				node.setProperty(AbstractNode.name, "second");
+				node.setProperty(AbstractNode.name, "third");
+				node.setProperty(AbstractNode.name, "fourth");
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(1, app.nodeQuery(TestOne.class).andName("fourth").getResult().size());
+				assertEquals(0, app.nodeQuery(TestOne.class).andName("third").getResult().size());
+				assertEquals(0, app.nodeQuery(TestOne.class).andName("first").getResult().size());
+
+				tx.success();
+			}
+
+		} catch (FrameworkException ex) {
+
+			logger.log(Level.SEVERE, ex.toString());
+			fail("Unexpected exception");
+
+		}
+
+	}
 }
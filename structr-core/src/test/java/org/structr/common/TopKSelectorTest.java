@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import junit.framework.TestCase;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.property.IntProperty;
+import org.structr.core.property.StringProperty;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class TopKSelectorTest extends TestCase {
+
+	private static final IntProperty sortKey    = new IntProperty("sortKey");
+	private static final StringProperty nameKey = new StringProperty("name");
+
+	public void testSelectionMatchesFullSort() throws FrameworkException {
+
+		final Random random           = new Random(42);
+		final List<GraphObject> input = new ArrayList<>();
+
+		for (int i=0; i<500; i++) {
+
+			final GraphObjectMap obj = new GraphObjectMap();
+
+			// few distinct values and some nulls to check stability
+			obj.setProperty(sortKey, random.nextInt(10) == 0 ? null : random.nextInt(50));
+			obj.setProperty(nameKey, "obj" + i);
+
+			input.add(obj);
+		}
+
+		for (final boolean desc : new boolean[] { false, true }) {
+
+			final List<GraphObject> expected = new ArrayList<>(input);
+			Collections.sort(expected, new GraphObjectComparator(sortKey, desc));
+
+			for (final int limit : new int[] { 1, 20, 137, 500, 1000 }) {
+
+				final TopKSelector selector = new TopKSelector(sortKey, desc, limit);
+
+				for (final GraphObject obj : input) {
+					selector.add(obj);
+				}
+
+				assertEquals(input.size(), selector.getCount());
+				assertEquals(expected.subList(0, Math.min(limit, expected.size())), selector.getResults());
+			}
+		}
+	}
+}
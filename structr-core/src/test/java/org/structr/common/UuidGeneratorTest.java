@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class UuidGeneratorTest extends TestCase {
+
+	private static final Pattern format = Pattern.compile("[0-9a-f]{12}4[0-9a-f]{3}[89ab][0-9a-f]{15}");
+
+	public void testFormat() {
+
+		for (int i=0; i<1000; i++) {
+
+			final String uuid = UuidGenerator.nextUuid();
+
+			assertTrue("Invalid uuid " + uuid, format.matcher(uuid).matches());
+
+			// must be parseable as a version 4 UUID after re-inserting dashes
+			final UUID parsed = UUID.fromString(uuid.substring(0, 8) + "-" + uuid.substring(8, 12) + "-" + uuid.substring(12, 16) + "-" + uuid.substring(16, 20) + "-" + uuid.substring(20));
+
+			assertEquals(4, parsed.version());
+			assertEquals(2, parsed.variant());
+		}
+	}
+
+	public void testUniquenessAcrossThreads() throws Exception {
+
+		final Set<String> uuids            = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+		final ExecutorService executor     = Executors.newFixedThreadPool(8);
+		final List<Future<Integer>> counts = new ArrayList<>();
+
+		for (int t=0; t<8; t++) {
+
+			counts.add(executor.submit(new Callable<Integer>() {
+
+				@Override
+				public Integer call() throws Exception {
+
+					int duplicates = 0;
+
+					for (int i=0; i<10000; i++) {
+
+						if (!uuids.add(UuidGenerator.nextUuid())) {
+							duplicates++;
+						}
+					}
+
+					return duplicates;
+				}
+			}));
+		}
+
+		for (final Future<Integer> count : counts) {
+			assertEquals(Integer.valueOf(0), count.get());
+		}
+
+		executor.shutdown();
+
+		assertEquals(80000, uuids.size());
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.structr.common.StructrTest;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.TestOne;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class BulkRebuildIndexCommandTest extends StructrTest {
+
+	public void testParallelRebuild() {
+
+		try {
+
+			final List<TestOne> nodes = createTestNodes(TestOne.class, 50);
+
+			try (final Tx tx = app.tx()) {
+
+				int i = 0;
+				for (final TestOne node : nodes) {
+					node.setProperty(TestOne.anInt, i++);
+				}
+
+				tx.success();
+			}
+
+			final BulkRebuildIndexCommand cmd = app.command(BulkRebuildIndexCommand.class);
+			final Map<String, Object> attrs   = new LinkedHashMap<>();
+
+			attrs.put("mode",      "nodesOnly");
+			attrs.put("type",      "TestOne");
+			attrs.put("threads",   4);
+			attrs.put("batchSize", 3);
+			attrs.put("rangeSize", 10);
+
+			cmd.execute(attrs);
+
+			final Map<String, Object> progress = cmd.getProgress();
+
+			assertEquals(false, progress.get("running"));
+			assertEquals("nodes", progress.get("phase"));
+			assertEquals(50L, progress.get("indexed"));
+			assertEquals(progress.get("ranges"), progress.get("rangesDone"));
+			assertEquals(progress.get("total"), progress.get("processed"));
+
+			// checkpoint is removed after a successful rebuild
+			assertFalse(getCheckpointFile().exists());
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(50, app.nodeQuery(TestOne.class).getAsList().size());
+				assertEquals(1, app.nodeQuery(TestOne.class).and(TestOne.anInt, 17).getAsList().size());
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testResumeFromCheckpoint() {
+
+		try {
+
+			createTestNodes(TestOne.class, 30);
+
+			// pretend that the first two ranges have already been indexed
+			final Properties checkpoint = new Properties();
+			checkpoint.setProperty("signature", "nodesOnly|TestOne|null|10");
+			checkpoint.setProperty("nodes", "0,1");
+
+			try (final OutputStream os = new FileOutputStream(getCheckpointFile())) {
+				checkpoint.store(os, null);
+			}
+
+			final BulkRebuildIndexCommand cmd = app.command(BulkRebuildIndexCommand.class);
+			final Map<String, Object> attrs   = new LinkedHashMap<>();
+
+			attrs.put("mode",      "nodesOnly");
+			attrs.put("type",      "TestOne");
+			attrs.put("threads",   2);
+			attrs.put("rangeSize", 10);
+
+			cmd.execute(attrs);
+
+			final Map<String, Object> progress = cmd.getProgress();
+			final long indexed                 = (Long)progress.get("indexed");
+
+			// nodes in the first 20 ids are skipped
+			assertTrue(indexed > 0);
+			assertTrue(indexed < 30);
+			assertFalse(getCheckpointFile().exists());
+
+			// a checkpoint with a different signature is ignored
+			checkpoint.setProperty("signature", "nodesOnly|TestOne|null|1000");
+
+			try (final OutputStream os = new FileOutputStream(getCheckpointFile())) {
+				checkpoint.store(os, null);
+			}
+
+			cmd.execute(attrs);
+
+			assertEquals(30L, cmd.getProgress().get("indexed"));
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	private File getCheckpointFile() {
+		return new File(basePath + "/db", BulkRebuildIndexCommand.CHECKPOINT_FILE);
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class MultiSemaphoreTest extends TestCase {
+
+	public void testValueLocking() throws Exception {
+
+		final MultiSemaphore semaphore  = new MultiSemaphore();
+		final Map<String, String> first = Collections.singletonMap("name=test", "TestOne.name");
+		final CountDownLatch acquired   = new CountDownLatch(1);
+
+		final Set<Integer> stripes = semaphore.acquireValues(first);
+		assertEquals(1, stripes.size());
+
+		final Thread other = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+					final Set<Integer> otherStripes = semaphore.acquireValues(first);
+					acquired.countDown();
+					semaphore.releaseStripes(otherStripes);
+
+				} catch (InterruptedException iex) {}
+			}
+		});
+
+		other.start();
+
+		// the same value must block the second transaction
+		assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+		semaphore.releaseStripes(stripes);
+
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		other.join();
+
+		final MultiSemaphore.LockStatistics stats = semaphore.getStatistics().get("TestOne.name");
+		assertEquals(2, stats.getAcquisitions());
+		assertEquals(1, stats.getContentions());
+		assertTrue(stats.getWaitTime() >= 100);
+	}
+
+	public void testTypeLocking() throws Exception {
+
+		final MultiSemaphore semaphore = new MultiSemaphore();
+		final Set<String> types        = Collections.singleton("TestOne.name");
+
+		semaphore.acquire(types);
+		semaphore.release(types);
+		semaphore.acquire(types);
+		semaphore.release(types);
+
+		assertEquals(2, semaphore.getStatistics().get("TestOne.name").getAcquisitions());
+		assertEquals(0, semaphore.getStatistics().get("TestOne.name").getContentions());
+	}
+
+	public void testStripes() {
+
+		assertEquals(MultiSemaphore.getStripe("name=test"), MultiSemaphore.getStripe("name=test"));
+
+		for (int i=0; i<1000; i++) {
+
+			final int stripe = MultiSemaphore.getStripe("name=" + i);
+			assertTrue(stripe >= 0 && stripe < MultiSemaphore.STRIPE_COUNT);
+		}
+	}
+}
@@ -20,13 +20,29 @@ package org.structr.core.graph;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.lang.reflect.Array;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.structr.common.ChildOrderCache;
 import org.structr.common.StructrTest;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrCache;
+import org.structr.core.entity.SixOneManyToMany;
 import org.structr.core.entity.TestOne;
+import org.structr.core.entity.TestSix;
 
 /**
  *
@@ -165,6 +181,231 @@ public class SyncCommandTest extends StructrTest {
 		}
 	}
 
+	public void testRelationshipExportImport() {
+
+		try {
+
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+			String sourceId                          = null;
+
+			// 1. create data and export
+			try (final Tx tx = app.tx()) {
+
+				final TestSix source = createTestNode(TestSix.class);
+				sourceId             = source.getUuid();
+
+				for (int i=0; i<3; i++) {
+
+					final TestOne target = createTestNode(TestOne.class);
+					target.setProperty(TestOne.anInt, i);
+
+					createTestRelationship(source, target, SixOneManyToMany.class);
+				}
+
+				final List<NodeInterface> nodes = new LinkedList<>();
+
+				nodes.addAll(app.nodeQuery(TestSix.class).getAsList());
+				nodes.addAll(app.nodeQuery(TestOne.class).getAsList());
+
+				SyncCommand.exportToStream(
+					outputStream,
+					nodes,
+					app.relationshipQuery(SixOneManyToMany.class).getAsList(),
+					null,
+					false
+				);
+
+				tx.success();
+			}
+
+			// 2. clear database
+			try (final Tx tx = app.tx()) {
+
+				for (final TestSix test : app.nodeQuery(TestSix.class).getAsList()) {
+					app.delete(test);
+				}
+
+				for (final TestOne test : app.nodeQuery(TestOne.class).getAsList()) {
+					app.delete(test);
+				}
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("Database should not contain relationships.", 0, app.relationshipQuery(SixOneManyToMany.class).getAsList().size());
+				tx.success();
+			}
+
+			// 3. import data again
+			SyncCommand.importFromStream(
+				app.getGraphDatabaseService(),
+				securityContext,
+				new ByteArrayInputStream(outputStream.toByteArray()),
+				true
+			);
+
+			// 4. check result
+			try (final Tx tx = app.tx()) {
+
+				final List<SixOneManyToMany> rels = app.relationshipQuery(SixOneManyToMany.class).getAsList();
+
+				assertEquals("Relationships should be imported", 3, rels.size());
+				assertEquals("Nodes should be imported", 3, app.nodeQuery(TestOne.class).getResult().size());
+
+				for (final SixOneManyToMany rel : rels) {
+
+					assertEquals("Relationship should be imported with its start node", sourceId, rel.getSourceNode().getUuid());
+					assertNotNull("Relationship should be imported with its end node", rel.getTargetNode().getProperty(TestOne.anInt));
+				}
+
+				tx.success();
+			}
+
+		} catch (Throwable fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception.");
+		}
+	}
+
+	public void testImportClearsCaches() {
+
+		final AtomicInteger clearCount = new AtomicInteger();
+		final StructrCache cache       = new StructrCache() {
+
+			@Override
+			public void clearCache() {
+				clearCount.incrementAndGet();
+			}
+		};
+
+		TransactionCommand.registerCache(cache);
+
+		try {
+
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+
+			SyncCommand.exportToStream(
+				outputStream,
+				Collections.<NodeInterface>emptyList(),
+				Collections.<RelationshipInterface>emptyList(),
+				null,
+				false
+			);
+
+			ChildOrderCache.store(4711L, new HashMap<Long, Integer>(), ChildOrderCache.getGeneration());
+			assertNotNull(ChildOrderCache.get(4711L));
+
+			// the import writes to the database without notifications
+			SyncCommand.importFromStream(
+				app.getGraphDatabaseService(),
+				securityContext,
+				new ByteArrayInputStream(outputStream.toByteArray()),
+				true
+			);
+
+			assertNull("Child order cache should be cleared after import", ChildOrderCache.get(4711L));
+			assertEquals("Registered caches should be cleared after import", 1, clearCount.get());
+
+		} catch (Throwable fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception.");
+
+		} finally {
+
+			TransactionCommand.removeCache(cache);
+		}
+	}
+
+	public void testImportTextFormat() {
+
+		final String uuid1 = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+		final String uuid2 = UUID.randomUUID().toString().replaceAll("[\\-]+", "");
+
+		try {
+
+			// create an export in the text format of older versions
+			final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(1024);
+			final ZipOutputStream zos                = new ZipOutputStream(outputStream);
+			final PrintWriter writer                 = new PrintWriter(zos);
+
+			zos.putNextEntry(new ZipEntry("db"));
+
+			writeTextNode(writer, uuid1, "Test\nwith\nnewlines", 1);
+			writeTextNode(writer, uuid2, "Test", 2);
+
+			writer.flush();
+			zos.closeEntry();
+			zos.finish();
+
+			SyncCommand.importFromStream(
+				app.getGraphDatabaseService(),
+				securityContext,
+				new ByteArrayInputStream(outputStream.toByteArray()),
+				true
+			);
+
+			try (final Tx tx = app.tx()) {
+
+				final TestOne test1 = (TestOne)app.get(uuid1);
+				final TestOne test2 = (TestOne)app.get(uuid2);
+
+				assertNotNull("Node from text format should be imported", test1);
+				assertNotNull("Node from text format should be imported", test2);
+
+				assertEquals("Test\nwith\nnewlines", test1.getProperty(TestOne.aString));
+				assertEquals(Integer.valueOf(2), test2.getProperty(TestOne.anInt));
+
+				tx.success();
+			}
+
+		} catch (Throwable fex) {
+
+			fex.printStackTrace();
+
+			fail("Unexpected exception.");
+		}
+	}
+
+	public void testBinaryValues() {
+
+		final Object[] values = new Object[] {
+			Byte.MIN_VALUE, Short.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Float.MIN_VALUE, Double.MAX_VALUE,
+			'z', "", "Test with\numlauts äöü", true, false, null
+		};
+
+		for (final Object value : values) {
+			assertEquals(value, binaryRoundTrip(value));
+		}
+
+		// arrays are always read back as primitive arrays
+		assertArrayEquals(BYTE_TEST,      binaryRoundTrip(BYTE_TEST));
+		assertArrayEquals(SHORT_TEST,     binaryRoundTrip(SHORT_TEST));
+		assertArrayEquals(INTEGER_TEST,   binaryRoundTrip(INTEGER_TEST));
+		assertArrayEquals(LONG_TEST,      binaryRoundTrip(LONG_TEST));
+		assertArrayEquals(FLOAT_TEST,     binaryRoundTrip(FLOAT_TEST));
+		assertArrayEquals(DOUBLE_TEST,    binaryRoundTrip(DOUBLE_TEST));
+		assertArrayEquals(CHARACTER_TEST, binaryRoundTrip(CHARACTER_TEST));
+		assertArrayEquals(STRING_TEST,    binaryRoundTrip(STRING_TEST));
+		assertArrayEquals(BOOLEAN_TEST,   binaryRoundTrip(BOOLEAN_TEST));
+
+		assertTrue(Arrays.equals(new long[] { 1L, 2L, 3L }, (long[])binaryRoundTrip(new long[] { 1L, 2L, 3L })));
+		assertTrue(Arrays.equals(new String[0], (String[])binaryRoundTrip(new String[0])));
+
+		// long strings need more than one byte for the length
+		final StringBuilder buf = new StringBuilder();
+		for (int i=0; i<100000; i++) {
+			buf.append((char)('a' + (i % 26)));
+		}
+
+		assertEquals(buf.toString(), binaryRoundTrip(buf.toString()));
+	}
+
 	public void testSerializer() {
 
 		// 00, 01: byte[], byte
@@ -231,6 +472,44 @@ public class SyncCommandTest extends StructrTest {
 	}
 
 
+	private void writeTextNode(final PrintWriter writer, final String uuid, final String aString, final int anInt) {
+
+		writer.print("N");
+		SyncCommand.serialize(writer, GraphObject.id.dbName());
+		SyncCommand.serialize(writer, uuid);
+		SyncCommand.serialize(writer, GraphObject.type.dbName());
+		SyncCommand.serialize(writer, TestOne.class.getSimpleName());
+		SyncCommand.serialize(writer, TestOne.aString.dbName());
+		SyncCommand.serialize(writer, aString);
+		SyncCommand.serialize(writer, TestOne.anInt.dbName());
+		SyncCommand.serialize(writer, anInt);
+		writer.print("\n");
+	}
+
+	private void assertArrayEquals(final Object[] expected, final Object actual) {
+
+		assertEquals(expected.length, Array.getLength(actual));
+
+		for (int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], Array.get(actual, i));
+		}
+	}
+
+	private Object binaryRoundTrip(final Object value) {
+
+		try {
+
+			final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			SyncCommand.writeValue(new DataOutputStream(buffer), value);
+
+			return SyncCommand.readValue(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+
+		} catch (IOException ioex) {
+			throw new IllegalStateException(ioex);
+		}
+	}
+
 	private String serialize(final Object obj) {
 
 		final StringWriter buffer = new StringWriter();
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.parser;
+
+import junit.framework.TestCase;
+import org.structr.common.error.FrameworkException;
+import org.structr.schema.action.ActionContext;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class ExpressionCacheTest extends TestCase {
+
+	public void testExpressionCaching() throws FrameworkException {
+
+		ExpressionCache.clear();
+
+		final Expression first  = ExpressionCache.getExpression("concat(\"a\", \"b\")");
+		final Expression second = ExpressionCache.getExpression("concat(\"a\", \"b\")");
+
+		assertSame("Parsed expression should be cached", first, second);
+		assertTrue(ExpressionCache.getHits() > 0);
+
+		try {
+
+			ExpressionCache.getExpression("(concat(\"a\"");
+			fail("A mismatched opening bracket should throw an exception.");
+
+		} catch (FrameworkException fex) {}
+	}
+
+	public void testTemplateSplitting() throws FrameworkException {
+
+		final ActionContext ctx = new ActionContext();
+
+		assertTrue(ExpressionCache.getTemplate("no groups here").isStatic());
+		assertEquals("a1b2c", ExpressionCache.getTemplate("a${\"1\"}b${\"2\"}c").evaluate(null, ctx, null));
+		assertEquals("12", ExpressionCache.getTemplate("${\"1\"}${\"2\"}").evaluate(null, ctx, null));
+		assertEquals("x${unterminated", ExpressionCache.getTemplate("x${unterminated").evaluate(null, ctx, null));
+	}
+}
@@ -18,15 +18,21 @@
  */
 package org.structr.core.property;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 
 import org.structr.common.StructrTest;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
 import org.structr.core.converter.PropertyConverter;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.SixOneManyToMany;
 import org.structr.core.entity.TestOne;
 import org.structr.core.entity.TestSix;
+import org.structr.core.entity.TestThree;
 import org.structr.core.graph.Tx;
 
 /**
@@ -109,11 +115,170 @@ public class CollectionPropertyTest extends StructrTest {
 		
 	}
 	
+	public void testSetKeepsExistingRelationships() {
+
+		try {
+
+			final EndNodes<TestSix, TestOne> instance = (EndNodes)TestSix.manyToManyTestOnes;
+			final TestSix testSix                     = createTestNode(TestSix.class);
+			final List<TestOne> testOnes              = createTestNodes(TestOne.class, 4);
+			long relId                                = -1;
+
+			try (final Tx tx = app.tx()) {
+
+				instance.setProperty(securityContext, testSix, testOnes.subList(0, 3));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				relId = getRelationshipId(testSix, testOnes.get(1));
+
+				// replace first element, keep second and third
+				instance.setProperty(securityContext, testSix, testOnes.subList(1, 4));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<TestOne> result = instance.getProperty(securityContext, testSix, true);
+
+				assertEquals(3, result.size());
+				assertFalse(result.contains(testOnes.get(0)));
+				assertTrue(result.containsAll(testOnes.subList(1, 4)));
+
+				// relationship to an element that was not removed must not be re-created
+				assertEquals(relId, getRelationshipId(testSix, testOnes.get(1)));
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testAddAndRemoveElements() {
+
+		try {
+
+			final EndNodes<TestSix, TestOne> instance = (EndNodes)TestSix.manyToManyTestOnes;
+			final TestSix testSix                     = createTestNode(TestSix.class);
+			final List<TestOne> testOnes              = createTestNodes(TestOne.class, 4);
+
+			try (final Tx tx = app.tx()) {
+
+				instance.addElements(securityContext, testSix, testOnes.subList(0, 2));
+
+				// adding an existing element again must not create a second relationship
+				instance.addElements(securityContext, testSix, testOnes.subList(1, 3));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(3, instance.getProperty(securityContext, testSix, true).size());
+				assertEquals(3, app.relationshipQuery(SixOneManyToMany.class).getAsList().size());
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				// removing an element that is not contained is ignored
+				instance.removeElements(securityContext, testSix, Arrays.asList(testOnes.get(0), testOnes.get(3)));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<TestOne> result = instance.getProperty(securityContext, testSix, true);
+
+				assertEquals(2, result.size());
+				assertTrue(result.containsAll(testOnes.subList(1, 3)));
+			}
+
+			// the other side of the relationship
+			final StartNodes<TestSix, TestOne> reverse = (StartNodes)TestOne.manyToManyTestSixs;
+			final TestSix otherSix                     = createTestNode(TestSix.class);
+
+			try (final Tx tx = app.tx()) {
+
+				reverse.addElements(securityContext, testOnes.get(1), Arrays.asList(otherSix));
+				reverse.removeElements(securityContext, testOnes.get(1), Arrays.asList(testSix));
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<TestSix> result = reverse.getProperty(securityContext, testOnes.get(1), true);
+
+				assertEquals(1, result.size());
+				assertEquals(otherSix, result.get(0));
+
+				assertEquals(1, instance.getProperty(securityContext, testSix, true).size());
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testRelationshipsToOtherTypesAreFiltered() {
+
+		try {
+
+			final TestSix testSix            = createTestNode(TestSix.class);
+			final List<TestOne> testOnes     = createTestNodes(TestOne.class, 2);
+			final List<TestThree> testThrees = createTestNodes(TestThree.class, 3);
+
+			// both relationships have the same relationship type
+			try (final Tx tx = app.tx()) {
+
+				testSix.setProperty(TestSix.oneToManyTestOnes, testOnes);
+				testSix.setProperty(TestSix.oneToManyTestThrees, testThrees);
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals(2, testSix.getProperty(TestSix.oneToManyTestOnes).size());
+				assertEquals(3, testSix.getProperty(TestSix.oneToManyTestThrees).size());
+
+				assertTrue(testSix.getProperty(TestSix.oneToManyTestOnes).containsAll(testOnes));
+				assertTrue(testSix.getProperty(TestSix.oneToManyTestThrees).containsAll(testThrees));
+			}
+
+			final Set<String> typeNames = StructrApp.getConfiguration().getAssignableNodeTypeNames(AbstractNode.class);
+
+			assertTrue(typeNames.contains(TestOne.class.getSimpleName()));
+			assertTrue(typeNames.contains(TestThree.class.getSimpleName()));
+			assertFalse(StructrApp.getConfiguration().getAssignableNodeTypeNames(TestOne.class).contains(TestThree.class.getSimpleName()));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
 	public void testCascadingDelete() {
 		
 		
 	}
 	
+	private long getRelationshipId(final TestSix testSix, final TestOne testOne) throws FrameworkException {
+
+		for (final SixOneManyToMany rel : app.relationshipQuery(SixOneManyToMany.class).getAsList()) {
+
+			if (rel.getSourceNode().equals(testSix) && rel.getTargetNode().equals(testOne)) {
+				return rel.getId();
+			}
+		}
+
+		return -1;
+	}
+
 	/**
 	 * Test of typeName method, of class CollectionProperty.
 	 */
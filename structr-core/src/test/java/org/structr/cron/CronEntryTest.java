@@ -0,0 +1,151 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cron;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.concurrent.FutureTask;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class CronEntryTest extends TestCase {
+
+	public void testNextExecutionTime() {
+
+		final CronEntry everyTenSeconds = CronEntry.parse("test", "*/10 * * * * *");
+		final CronEntry nightly         = CronEntry.parse("test", "0 30 2 * * *");
+
+		assertEquals(time(2014, 1, 1, 12, 0, 10), everyTenSeconds.getNextExecutionTime(time(2014, 1, 1, 12, 0, 3)));
+		assertEquals(time(2014, 1, 1, 12, 0, 10), everyTenSeconds.getNextExecutionTime(time(2014, 1, 1, 12, 0, 9) + 999));
+
+		// strictly after the given time
+		assertEquals(time(2014, 1, 1, 12, 0, 20), everyTenSeconds.getNextExecutionTime(time(2014, 1, 1, 12, 0, 10)));
+
+		assertEquals(time(2014, 1, 2, 2, 30, 0), nightly.getNextExecutionTime(time(2014, 1, 1, 3, 0, 0)));
+		assertEquals(time(2014, 1, 1, 2, 30, 0), nightly.getNextExecutionTime(time(2014, 1, 1, 1, 0, 0)));
+	}
+
+	public void testSkipOverlapping() {
+
+		final CronEntry entry = CronEntry.parse("test", "* * * * * *");
+
+		assertTrue(entry.start());
+		assertFalse(entry.start());
+		assertFalse(entry.finish(10));
+		assertTrue(entry.start());
+		assertFalse(entry.finish(20));
+
+		assertEquals(2L,  entry.getRuns());
+		assertEquals(1L,  entry.getSkippedRuns());
+		assertEquals(20L, entry.getLastDuration());
+		assertFalse(entry.isRunning());
+	}
+
+	public void testQueueOverlapping() {
+
+		final CronEntry entry = CronEntry.parse("test", "* * * * * *");
+
+		entry.setQueueOverlapping(true);
+
+		assertTrue(entry.start());
+		assertFalse(entry.start());
+		assertFalse(entry.start());
+
+		// two queued runs are executed by the active worker
+		assertTrue(entry.finish(10));
+		assertTrue(entry.finish(10));
+		assertFalse(entry.finish(10));
+
+		assertEquals(3L, entry.getRuns());
+		assertEquals(0L, entry.getSkippedRuns());
+		assertFalse(entry.isRunning());
+	}
+
+	public void testSkipWhileOverdue() {
+
+		final CronEntry entry         = CronEntry.parse("test", "* * * * * *");
+		final FutureTask<Object> task = newTask();
+
+		// the run timed out, but the task is still active
+		assertTrue(entry.start());
+		entry.overdue(task);
+
+		assertFalse(entry.start());
+		assertFalse(entry.start());
+		assertTrue(entry.isRunning());
+
+		// the next run starts after the task has finished
+		task.run();
+
+		assertTrue(entry.start());
+		assertFalse(entry.finish(10));
+
+		assertEquals(2L, entry.getRuns());
+		assertEquals(2L, entry.getSkippedRuns());
+		assertFalse(entry.isRunning());
+	}
+
+	public void testQueueWhileOverdue() {
+
+		final CronEntry entry         = CronEntry.parse("test", "* * * * * *");
+		final FutureTask<Object> task = newTask();
+
+		entry.setQueueOverlapping(true);
+
+		assertTrue(entry.start());
+		entry.overdue(task);
+
+		// runs that are due while the task is active are queued, not dropped
+		assertFalse(entry.start());
+		task.run();
+
+		assertTrue(entry.start());
+		assertTrue(entry.finish(10));
+		assertFalse(entry.finish(10));
+
+		assertEquals(3L, entry.getRuns());
+		assertEquals(0L, entry.getSkippedRuns());
+		assertFalse(entry.isRunning());
+	}
+
+	// ----- private methods -----
+	private FutureTask<Object> newTask() {
+
+		return new FutureTask<>(new Runnable() {
+
+			@Override
+			public void run() {
+			}
+
+		}, null);
+	}
+
+	private long time(final int year, final int month, final int day, final int hour, final int minute, final int second) {
+
+		final Calendar cal = GregorianCalendar.getInstance();
+
+		cal.clear();
+		cal.set(year, month - 1, day, hour, minute, second);
+
+		return cal.getTimeInMillis();
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.schema.compiler;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import org.structr.common.StructrTest;
+import org.structr.common.error.ErrorBuffer;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.StringProperty;
+import org.structr.schema.SchemaService;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class NodeExtenderTest extends StructrTest {
+
+	public void testIncrementalCompilation() {
+
+		try {
+
+			SchemaNode baseNode = null;
+
+			try (final Tx tx = app.tx()) {
+
+				baseNode = app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestBase"));
+				tx.success();
+			}
+
+			final Class base = NodeExtender.getClass("org.structr.dynamic.TestBase");
+			assertNotNull(base);
+
+			try (final Tx tx = app.tx()) {
+
+				app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestDerived"), new NodeAttribute(SchemaNode.extendsClass, "org.structr.dynamic.TestBase"));
+				app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestOther"));
+				tx.success();
+			}
+
+			final Class derived = NodeExtender.getClass("org.structr.dynamic.TestDerived");
+			final Class other   = NodeExtender.getClass("org.structr.dynamic.TestOther");
+
+			// unchanged type must not be reloaded
+			assertSame(base, NodeExtender.getClass("org.structr.dynamic.TestBase"));
+			assertSame(base, derived.getSuperclass());
+
+			try (final Tx tx = app.tx()) {
+
+				baseNode.setProperty(new StringProperty("_description"), "String");
+				tx.success();
+			}
+
+			final Class newBase    = NodeExtender.getClass("org.structr.dynamic.TestBase");
+			final Class newDerived = NodeExtender.getClass("org.structr.dynamic.TestDerived");
+
+			// changed type and its dependents are reloaded, others are not
+			assertNotSame(base, newBase);
+			assertNotSame(derived, newDerived);
+			assertSame(newBase, newDerived.getSuperclass());
+			assertSame(other, NodeExtender.getClass("org.structr.dynamic.TestOther"));
+			assertSame(newBase, StructrApp.getConfiguration().getNodeEntityClass("TestBase"));
+			assertNotNull(StructrApp.getConfiguration().getPropertyKeyForJSONName(newDerived, "description", false));
+
+			// schema cache contains one entry per type
+			final String[] cacheFiles = new File(basePath + "/schema").list(new FilenameFilter() {
+
+				@Override
+				public boolean accept(File dir, String name) {
+					return name.endsWith(".classes");
+				}
+			});
+
+			assertEquals(NodeExtender.getClasses().size(), cacheFiles.length);
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testUnregisteredTypesAreReloaded() {
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestOther"));
+				tx.success();
+			}
+
+			final Class other = NodeExtender.getClass("org.structr.dynamic.TestOther");
+			assertNotNull(other);
+
+			StructrApp.getConfiguration().unregisterEntityType("TestOther");
+
+			assertTrue(SchemaService.reloadSchema(new ErrorBuffer()));
+
+			final Class reloaded = NodeExtender.getClass("org.structr.dynamic.TestOther");
+
+			assertNotSame(other, reloaded);
+			assertSame(reloaded, StructrApp.getConfiguration().getNodeEntityClass("TestOther"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testRemovedTypesAreNotResolved() {
+
+		try {
+
+			SchemaNode removedNode = null;
+
+			try (final Tx tx = app.tx()) {
+
+				removedNode = app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestRemoved"));
+				tx.success();
+			}
+
+			assertNotNull(NodeExtender.getClass("org.structr.dynamic.TestRemoved"));
+
+			try (final Tx tx = app.tx()) {
+
+				app.delete(removedNode);
+				tx.success();
+			}
+
+			assertNull(NodeExtender.getClass("org.structr.dynamic.TestRemoved"));
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// a type that extends the removed type must not compile against its old byte code
+		try (final Tx tx = app.tx()) {
+
+			app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "TestStale"), new NodeAttribute(SchemaNode.extendsClass, "org.structr.dynamic.TestRemoved"));
+			tx.success();
+
+			fail("Type that extends a removed type should not compile");
+
+		} catch (FrameworkException fex) {
+		}
+
+		assertNull(NodeExtender.getClass("org.structr.dynamic.TestStale"));
+	}
+}
@@ -111,6 +111,11 @@ public class MaintenanceParameterResource extends Resource {
 		throw new NotAllowedException();
 	}
 
+	@Override
+	public RestMethodResult doPatch(Map<String, Object> propertySet) throws FrameworkException {
+		throw new NotAllowedException();
+	}
+
 	@Override
 	public RestMethodResult doPost(Map<String, Object> propertySet) throws FrameworkException {
 		throw new NotAllowedException();
@@ -29,15 +29,22 @@ import org.structr.rest.exception.SystemException;
 
 //~--- JDK imports ------------------------------------------------------------
 
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.property.GenericProperty;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.MaintenanceProgress;
 import org.structr.core.graph.Tx;
 
 //~--- classes ----------------------------------------------------------------
@@ -68,6 +75,24 @@ public class MaintenanceResource extends Resource {
 
 	@Override
 	public Result doGet(PropertyKey sortKey, boolean sortDescending, int pageSize, int page, String offsetId) throws FrameworkException {
+
+		// long-running maintenance commands can report their progress
+		if ((securityContext != null) && isSuperUser() && this.taskOrCommand != null && MaintenanceProgress.class.isAssignableFrom(taskOrCommand)) {
+
+			final MaintenanceProgress cmd      = (MaintenanceProgress)StructrApp.getInstance(securityContext).command(taskOrCommand);
+			final List<GraphObject> resultList = new LinkedList<>();
+			final GraphObjectMap progress      = new GraphObjectMap();
+
+			for (final Entry<String, Object> entry : cmd.getProgress().entrySet()) {
+
+				progress.put(new GenericProperty(entry.getKey()), entry.getValue());
+			}
+
+			resultList.add(progress);
+
+			return new Result(resultList, resultList.size(), false, false);
+		}
+
 		throw new NotAllowedException();
 	}
 
@@ -76,6 +101,11 @@ public class MaintenanceResource extends Resource {
 		throw new NotAllowedException();
 	}
 
+	@Override
+	public RestMethodResult doPatch(Map<String, Object> propertySet) throws FrameworkException {
+		throw new NotAllowedException();
+	}
+
 	@Override
 	public RestMethodResult doPost(Map<String, Object> propertySet) throws FrameworkException {
 
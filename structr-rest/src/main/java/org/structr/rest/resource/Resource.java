@@ -18,8 +18,10 @@
  */
 package org.structr.rest.resource;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -35,22 +37,26 @@ import org.structr.common.Permission;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.JsonInput;
 import org.structr.core.Result;
 import org.structr.core.Services;
 import org.structr.core.Value;
 import org.structr.core.app.App;
 import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
+import org.structr.core.converter.PropertyConverter;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.graph.NodeFactory;
 import org.structr.core.graph.search.SearchCommand;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
+import org.structr.core.property.RelationProperty;
 import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalPathException;
 import org.structr.rest.exception.NoResultsException;
 import org.structr.rest.exception.NotAllowedException;
+import org.structr.rest.exception.NotFoundException;
 import org.structr.rest.servlet.JsonRestServlet;
 import org.structr.schema.ConfigurationProvider;
 
@@ -168,6 +174,19 @@ public abstract class Resource {
 		throw new IllegalPathException();
 	}
 
+	/**
+	 * Partially updates the object of this resource. Only resources that
+	 * represent a single object support PATCH, so the default is to reject
+	 * the request.
+	 *
+	 * @param propertySet
+	 * @return the result
+	 * @throws FrameworkException
+	 */
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+		throw new IllegalPathException();
+	}
+
 	/**
 	 *
 	 * @param propertyView
@@ -202,6 +221,100 @@ public abstract class Resource {
 	}
 
 	// ----- protected methods -----
+	/**
+	 * Partially updates the given object. Collection-valued relationship
+	 * properties can be modified incrementally by sending an object with
+	 * "add" and/or "remove" lists instead of the full collection, all
+	 * other properties are set like in {@link #doPut}.
+	 *
+	 * @param obj
+	 * @param propertySet
+	 * @return the result
+	 * @throws FrameworkException
+	 */
+	protected RestMethodResult patch(final GraphObject obj, final Map<String, Object> propertySet) throws FrameworkException {
+
+		if (obj == null) {
+			throw new NotFoundException();
+		}
+
+		final Class type                          = obj.getClass();
+		final Map<String, Object> values          = new LinkedHashMap<>();
+		final Map<RelationProperty, List> adds    = new LinkedHashMap<>();
+		final Map<RelationProperty, List> removes = new LinkedHashMap<>();
+
+		for (final Entry<String, Object> entry : propertySet.entrySet()) {
+
+			final PropertyKey key = StructrApp.getConfiguration().getPropertyKeyForJSONName(type, entry.getKey());
+			final Object value    = entry.getValue();
+
+			if (key instanceof RelationProperty && key.isCollection() && value instanceof JsonInput) {
+
+				collectOperations((RelationProperty)key, ((JsonInput)value).getAttributes(), adds, removes);
+
+			} else {
+
+				values.put(entry.getKey(), value);
+			}
+		}
+
+		final PropertyMap properties = PropertyMap.inputTypeToJavaType(securityContext, type, values);
+
+		for (final Entry<PropertyKey, Object> attr : properties.entrySet()) {
+
+			obj.setProperty(attr.getKey(), attr.getValue());
+		}
+
+		applyOperations(obj, adds, removes);
+
+		return new RestMethodResult(HttpServletResponse.SC_OK);
+	}
+
+	/**
+	 * Sorts the "add" and "remove" lists of the given operations into the
+	 * given maps.
+	 *
+	 * @param key
+	 * @param operations
+	 * @param adds
+	 * @param removes
+	 * @throws FrameworkException
+	 */
+	protected void collectOperations(final RelationProperty key, final Map<String, Object> operations, final Map<RelationProperty, List> adds, final Map<RelationProperty, List> removes) throws FrameworkException {
+
+		for (final Entry<String, Object> operation : operations.entrySet()) {
+
+			final List elements = convertElements((PropertyKey)key, operation.getValue());
+
+			switch (operation.getKey()) {
+
+				case "add":
+					adds.put(key, elements);
+					break;
+
+				case "remove":
+					removes.put(key, elements);
+					break;
+
+				default:
+					throw new FrameworkException(422, "Invalid operation " + operation.getKey() + " for property " + ((PropertyKey)key).jsonName() + ", expected add or remove");
+			}
+		}
+	}
+
+	protected void applyOperations(final GraphObject obj, final Map<RelationProperty, List> adds, final Map<RelationProperty, List> removes) throws FrameworkException {
+
+		for (final Entry<RelationProperty, List> remove : removes.entrySet()) {
+
+			remove.getKey().removeElements(securityContext, obj, remove.getValue());
+		}
+
+		for (final Entry<RelationProperty, List> add : adds.entrySet()) {
+
+			add.getKey().addElements(securityContext, obj, add.getValue());
+		}
+	}
+
 	protected PropertyKey findPropertyKey(final TypedIdResource typedIdResource, final TypeResource typeResource) {
 
 		Class sourceNodeType = typedIdResource.getTypeResource().getEntityClass();
@@ -381,6 +494,32 @@ public abstract class Resource {
 		return source;
 	}
 
+	private List convertElements(final PropertyKey key, final Object value) throws FrameworkException {
+
+		final PropertyConverter converter = key.inputConverter(securityContext);
+		final List elements               = new LinkedList<>();
+
+		if (value instanceof Collection) {
+
+			elements.addAll((Collection)value);
+
+		} else if (value != null) {
+
+			elements.add(value);
+		}
+
+		if (converter != null) {
+
+			final Object converted = converter.convert(elements);
+			if (converted instanceof List) {
+
+				return (List)converted;
+			}
+		}
+
+		return elements;
+	}
+
 	// ----- nested classes -----
 	private static class PropertyKeyProcessingOrderComparator implements Comparator<PropertyKey> {
 
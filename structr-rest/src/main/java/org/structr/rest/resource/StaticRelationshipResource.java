@@ -22,6 +22,7 @@ import java.lang.reflect.InvocationTargetException;
 import org.structr.common.PagingHelper;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -211,6 +212,42 @@ public class StaticRelationshipResource extends SortableResource {
 		return new RestMethodResult(HttpServletResponse.SC_OK);
 	}
 
+	/**
+	 * Adds elements to and/or removes elements from the collection of the
+	 * source entity, the request body is an object with "add" and/or
+	 * "remove" lists.
+	 *
+	 * @param propertySet
+	 * @return the result
+	 * @throws FrameworkException
+	 */
+	@Override
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+
+		if (propertyKey != null && propertyKey instanceof RelationProperty) {
+
+			final GraphObject sourceEntity = typedIdResource.getEntity();
+			if (sourceEntity != null) {
+
+				if (propertyKey.isReadOnly()) {
+
+					logger.log(Level.INFO, "Read-only property on {1}: {0}", new Object[]{sourceEntity.getClass(), typeResource.getRawType()});
+					return new RestMethodResult(HttpServletResponse.SC_FORBIDDEN);
+				}
+
+				final Map<RelationProperty, List> adds    = new LinkedHashMap<>();
+				final Map<RelationProperty, List> removes = new LinkedHashMap<>();
+
+				collectOperations((RelationProperty)propertyKey, propertySet, adds, removes);
+				applyOperations(sourceEntity, adds, removes);
+
+				return new RestMethodResult(HttpServletResponse.SC_OK);
+			}
+		}
+
+		throw new IllegalPathException();
+	}
+
 	@Override
 	public RestMethodResult doPost(final Map<String, Object> propertySet) throws FrameworkException {
 
@@ -169,6 +169,7 @@ public class TypeResource extends SortableResource {
 				.pageSize(pageSize)
 				.page(page)
 				.offsetId(offsetId)
+				.lazy(true)
 				.getResult();
 
 		} else {
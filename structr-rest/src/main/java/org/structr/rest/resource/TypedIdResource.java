@@ -67,6 +67,11 @@ public class TypedIdResource extends FilterableResource {
 		throw new IllegalMethodException();
 	}
 
+	@Override
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+		return patch(getEntity(), propertySet);
+	}
+
 	@Override
 	public Class getEntityClass() {
 		return typeResource.getEntityClass();
@@ -20,6 +20,7 @@ package org.structr.rest.resource;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
 import org.structr.common.SecurityContext;
@@ -30,6 +31,7 @@ import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.PropertyKey;
+import org.structr.rest.RestMethodResult;
 import org.structr.rest.exception.IllegalPathException;
 import org.structr.rest.exception.NotAllowedException;
 import org.structr.rest.exception.NotFoundException;
@@ -68,6 +70,11 @@ public class UuidResource extends FilterableResource {
 		throw new NotFoundException();
 	}
 
+	@Override
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+		return patch(getEntity(), propertySet);
+	}
+
 	@Override
 	public boolean checkAndConfigure(String part, SecurityContext securityContext, HttpServletRequest request) {
 
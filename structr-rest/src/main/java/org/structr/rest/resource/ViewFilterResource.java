@@ -95,6 +95,17 @@ public class ViewFilterResource extends WrappingResource {
 		throw new IllegalPathException();
 	}
 
+	@Override
+	public RestMethodResult doPatch(final Map<String, Object> propertySet) throws FrameworkException {
+
+		if (wrappedResource != null) {
+
+			return wrappedResource.doPatch(propertySet);
+		}
+
+		throw new IllegalPathException();
+	}
+
 	@Override
 	public void configurePropertyView(Value<String> propertyView) {
 
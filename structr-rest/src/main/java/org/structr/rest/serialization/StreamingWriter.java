@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.neo4j.helpers.Predicate;
+import org.structr.common.PagingHelper;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
 import org.structr.core.GraphObject;
@@ -106,13 +107,17 @@ public abstract class StreamingWriter {
 			writer.setIndent("   ");
 		}
 
+		// lazy collections are serialized while they are instantiated,
+		// their result count is only known after serialization
+		final boolean lazy = result.isLazy() && result.isCollection() && !result.isPrimitiveArray();
+
 		// result fields in alphabetical order
-		List<? extends GraphObject> results = result.getResults();
+		List<? extends GraphObject> results = lazy ? null : result.getResults();
 		Integer page = result.getPage();
 		Integer pageCount = result.getPageCount();
 		Integer pageSize = result.getPageSize();
 		String queryTime = result.getQueryTime();
-		Integer resultCount = result.getRawResultCount();
+		Integer resultCount = lazy ? null : result.getRawResultCount();
 		String searchString = result.getSearchString();
 		String sortKey = result.getSortKey();
 		String sortOrder = result.getSortOrder();
@@ -127,7 +132,7 @@ public abstract class StreamingWriter {
 			writer.name("page").value(page);
 		}
 
-		if (pageCount != null) {
+		if (pageCount != null && !lazy) {
 			writer.name("page_count").value(pageCount);
 		}
 
@@ -143,7 +148,29 @@ public abstract class StreamingWriter {
 			writer.name("result_count").value(resultCount);
 		}
 
-		if (results != null) {
+		if (lazy) {
+
+			writer.name("result").beginArray();
+
+			serializeCollection(writer, result.getIterable());
+
+			writer.endArray();
+
+			// the iteration is finished, so the count is available now
+			resultCount = result.getRawResultCount();
+
+			writer.name("result_count").value(resultCount);
+
+			if (pageSize != null && pageSize > 0 && pageSize < Integer.MAX_VALUE) {
+
+				pageCount = PagingHelper.getPageCount(resultCount, pageSize);
+				if (pageCount > 0) {
+
+					writer.name("page_count").value(pageCount);
+				}
+			}
+
+		} else if (results != null) {
 
 			if (results.isEmpty()) {
 
@@ -171,35 +198,19 @@ public abstract class StreamingWriter {
 					throw new IllegalStateException(result.getClass().getSimpleName() + " is not a collection resource, but result set has size " + results.size());
 				}
 
-				// keep track of serialization time
-				long startTime            = System.currentTimeMillis();
-				String localPropertyView  = propertyView.get(null);
-
 				if (result.isCollection()) {
 
 					writer.name("result").beginArray();
 
 					// serialize list of results
-					for (GraphObject graphObject : results) {
-
-						root.serialize(writer, graphObject, localPropertyView, 0);
-
-						// check for timeout
-						if (System.currentTimeMillis() > startTime + MAX_SERIALIZATION_TIME) {
-
-							logger.log(Level.SEVERE, "JSON serialization took more than {0} ms, aborted. Please review output view size or adjust timeout.", MAX_SERIALIZATION_TIME);
-
-							// TODO: create some output indicating that streaming was interrupted
-							break;
-						}
-					}
+					serializeCollection(writer, results);
 
 					writer.endArray();
 
 				} else {
 
 					writer.name("result");
-					root.serialize(writer, results.get(0), localPropertyView, 0);
+					root.serialize(writer, results.get(0), propertyView.get(null), 0);
 				}
 			}
 		}
@@ -231,6 +242,27 @@ public abstract class StreamingWriter {
 		writer.endDocument();
 	}
 
+	private void serializeCollection(final RestWriter writer, final Iterable<? extends GraphObject> results) throws IOException {
+
+		// keep track of serialization time
+		long startTime            = System.currentTimeMillis();
+		String localPropertyView  = propertyView.get(null);
+
+		for (GraphObject graphObject : results) {
+
+			root.serialize(writer, graphObject, localPropertyView, 0);
+
+			// check for timeout
+			if (System.currentTimeMillis() > startTime + MAX_SERIALIZATION_TIME) {
+
+				logger.log(Level.SEVERE, "JSON serialization took more than {0} ms, aborted. Please review output view size or adjust timeout.", MAX_SERIALIZATION_TIME);
+
+				// TODO: create some output indicating that streaming was interrupted
+				break;
+			}
+		}
+	}
+
 	private Serializer getSerializerForType(Class type) {
 
 		Class localType       = type;
@@ -26,7 +26,6 @@ import java.io.Writer;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
@@ -72,6 +71,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	//~--- fields ---------------------------------------------------------
 	private Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
 	private Value<String> propertyView = null;
+	private ResourceRouter router = null;
 
 	private static boolean removeLineBreaks = false;
 	private static boolean writeBom = false;
@@ -95,6 +95,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 		resourceMap.putAll(config.getResourceProvider().getResources());
 
 		// initialize variables
+		this.router              = new ResourceRouter(resourceMap);
 		this.propertyView        = new ThreadLocalPropertyView();
 		this.defaultPropertyView = config.getDefaultPropertyView();
 		this.defaultIdProperty   = config.getDefaultIdProperty();
@@ -132,7 +133,7 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty), defaultIdProperty);
+				resource = router.resolve(securityContext, request, propertyView, defaultIdProperty);
 				authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 
 				tx.success();
@@ -203,8 +204,17 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 						writeUtf8Bom(writer);
 					}
 
-					// gson.toJson(result, writer);
-					writeCsv(result, writer, propertyView.get(securityContext));
+					try {
+
+						// gson.toJson(result, writer);
+						writeCsv(result, writer, propertyView.get(securityContext));
+
+					} finally {
+
+						// release index hits of lazy results
+						result.close();
+					}
+
 					response.setStatus(HttpServletResponse.SC_OK);
 					writer.flush();
 					writer.close();
@@ -295,7 +305,8 @@ public class CsvServlet extends HttpServlet implements HttpServiceServlet {
 	 */
 	public static void writeCsv(final Result result, final Writer out, final String propertyView) throws IOException {
 
-		List<GraphObject> list = result.getResults();
+		// lazy results are instantiated while they are written
+		Iterable<GraphObject> list = result.getIterable();
 		boolean headerWritten = false;
 
 		for (GraphObject obj : list) {
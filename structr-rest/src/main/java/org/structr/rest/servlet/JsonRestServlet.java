@@ -113,6 +113,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	private final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
 
 	// non-final fields
+	private ResourceRouter router            = null;
 	private Value<String> propertyView       = null;
 	private ThreadLocalGson gson             = null;
 	private Writer logWriter                 = null;
@@ -141,6 +142,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		resourceMap.putAll(config.getResourceProvider().getResources());
 
 		// initialize variables
+		this.router             = new ResourceRouter(resourceMap);
 		this.propertyView       = new ThreadLocalPropertyView();
 		this.gson               = new ThreadLocalGson(config.getOutputNestingDepth());
 	}
@@ -162,6 +164,20 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	@Override
+	protected void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+
+		// HttpServlet does not dispatch PATCH requests
+		if ("PATCH".equals(request.getMethod())) {
+
+			doPatch(request, response);
+
+		} else {
+
+			super.service(request, response);
+		}
+	}
+
 	// <editor-fold defaultstate="collapsed" desc="DELETE">
 	@Override
 	protected void doDelete(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
@@ -190,7 +206,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			// isolate resource authentication
 			try (final Tx tx = app.tx()) {
 
-				resource = ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, config.getDefaultIdProperty()), config.getDefaultIdProperty());
+				resource = router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty());
 				authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 
 				tx.success();
@@ -301,9 +317,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			try (final Tx tx = app.tx()) {
 
 				resource = ResourceHelper.applyViewTransformation(request, securityContext,
-					ResourceHelper.optimizeNestedResourceChain(
-						ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView,
-							config.getDefaultIdProperty()), config.getDefaultIdProperty()), propertyView);
+					router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty()), propertyView);
 				authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 				tx.success();
 			}
@@ -333,74 +347,35 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				sortKey = StructrApp.getConfiguration().getPropertyKeyForDatabaseName(type, sortKeyName);
 			}
 
-			// isolate doGet
+			// isolate doGet and write output, lazy results are instantiated
+			// while they are written, so both share a single transaction
 			boolean retry = true;
 			while (retry) {
 
 				try (final Tx tx = app.tx()) {
-					result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
-					tx.success();
-					retry = false;
 
-				} catch (DeadlockDetectedException ddex) {
-					retry = true;
-				}
-			}
-
-			result.setIsCollection(resource.isCollectionResource());
-			result.setIsPrimitiveArray(resource.isPrimitiveArray());
-
-			PagingHelper.addPagingParameter(result, pageSize, page);
-
-			// timing..
-			double queryTimeEnd = System.nanoTime();
-
-			// store property view that will be used to render the results
-			result.setPropertyView(propertyView.get(securityContext));
-
-			// allow resource to modify result set
-			resource.postProcessResultSet(result);
-
-			DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
-			result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
+					result = resource.doGet(sortKey, sortDescending, pageSize, page, offsetId);
 
-			String accept = request.getHeader("Accept");
+					// do not retry once the output has been started
+					retry = false;
 
-			if (accept != null && accept.contains("text/html")) {
+					try {
 
-				final StreamingHtmlWriter htmlStreamer = new StreamingHtmlWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+						writeGetResult(request, response, securityContext, resource, result, pageSize, page, baseUrl, queryTimeStart);
 
-				// isolate write output
-				try (final Tx tx = app.tx()) {
+					} finally {
 
-					response.setContentType("text/html; charset=utf-8");
-
-					try (final Writer writer = response.getWriter()) {
-
-						htmlStreamer.stream(securityContext, writer, result, baseUrl);
-						writer.append("\n");    // useful newline
+						result.close();
 					}
 
 					tx.success();
-				}
 
-			} else {
-
-				final StreamingJsonWriter jsonStreamer = new StreamingJsonWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
-
-				// isolate write output
-				try (final Tx tx = app.tx()) {
-
-					response.setContentType("application/json; charset=utf-8");
-					try (final Writer writer = response.getWriter()) {
+				} catch (DeadlockDetectedException ddex) {
 
-						jsonStreamer.stream(securityContext, writer, result, baseUrl);
-						writer.append("\n");    // useful newline
+					if (!retry) {
+						throw ddex;
 					}
-
-					tx.success();
 				}
-
 			}
 
 			response.setStatus(HttpServletResponse.SC_OK);
@@ -453,6 +428,53 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
+	private void writeGetResult(final HttpServletRequest request, final HttpServletResponse response, final SecurityContext securityContext, final Resource resource, final Result result, final int pageSize, final int page, final String baseUrl, final double queryTimeStart) throws FrameworkException, IOException {
+
+		result.setIsCollection(resource.isCollectionResource());
+		result.setIsPrimitiveArray(resource.isPrimitiveArray());
+
+		PagingHelper.addPagingParameter(result, pageSize, page);
+
+		// timing..
+		double queryTimeEnd = System.nanoTime();
+
+		// store property view that will be used to render the results
+		result.setPropertyView(propertyView.get(securityContext));
+
+		// allow resource to modify result set
+		resource.postProcessResultSet(result);
+
+		DecimalFormat decimalFormat = new DecimalFormat("0.000000000", DecimalFormatSymbols.getInstance(Locale.ENGLISH));
+		result.setQueryTime(decimalFormat.format((queryTimeEnd - queryTimeStart) / 1000000000.0));
+
+		String accept = request.getHeader("Accept");
+
+		if (accept != null && accept.contains("text/html")) {
+
+			final StreamingHtmlWriter htmlStreamer = new StreamingHtmlWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+
+			response.setContentType("text/html; charset=utf-8");
+
+			try (final Writer writer = response.getWriter()) {
+
+				htmlStreamer.stream(securityContext, writer, result, baseUrl);
+				writer.append("\n");    // useful newline
+			}
+
+		} else {
+
+			final StreamingJsonWriter jsonStreamer = new StreamingJsonWriter(this.propertyView, indentJson, config.getOutputNestingDepth());
+
+			response.setContentType("application/json; charset=utf-8");
+
+			try (final Writer writer = response.getWriter()) {
+
+				jsonStreamer.stream(securityContext, writer, result, baseUrl);
+				writer.append("\n");    // useful newline
+			}
+		}
+	}
+
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="HEAD">
@@ -486,9 +508,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			try (final Tx tx = app.tx()) {
 
 				resource = ResourceHelper.applyViewTransformation(request, securityContext,
-					ResourceHelper.optimizeNestedResourceChain(
-						ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView,
-							config.getDefaultIdProperty()), config.getDefaultIdProperty()), propertyView);
+					router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty()), propertyView);
 				authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 				tx.success();
 			}
@@ -612,8 +632,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 			try (final Tx tx = app.tx()) {
 
 				resource = ResourceHelper.applyViewTransformation(request, securityContext,
-					ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView,
-						config.getDefaultIdProperty()), config.getDefaultIdProperty()), propertyView);
+					router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty()), propertyView);
 				authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 				tx.success();
 			}
@@ -730,8 +749,7 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 				try (final Tx tx = app.tx()) {
 
 					resource = ResourceHelper.applyViewTransformation(request, securityContext,
-						ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView,
-							config.getDefaultIdProperty()), config.getDefaultIdProperty()), propertyView);
+						router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty()), propertyView);
 					authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 					tx.success();
 				}
@@ -852,6 +870,55 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	@Override
 	protected void doPut(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 
+		update(request, response, "PUT", new UpdateOperation() {
+
+			@Override
+			public RestMethodResult execute(final Resource resource, final Map<String, Object> properties) throws FrameworkException {
+				return resource.doPut(properties);
+			}
+		});
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="PATCH">
+	protected void doPatch(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+
+		update(request, response, "PATCH", new UpdateOperation() {
+
+			@Override
+			public RestMethodResult execute(final Resource resource, final Map<String, Object> properties) throws FrameworkException {
+				return resource.doPatch(properties);
+			}
+		});
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="TRACE">
+	@Override
+	protected void doTrace(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+
+//		logRequest("TRACE", request);
+		response.setContentType("application/json; charset=UTF-8");
+		response.setCharacterEncoding("UTF-8");
+
+		int code = HttpServletResponse.SC_METHOD_NOT_ALLOWED;
+
+		response.setStatus(code);
+		response.getWriter().append(RestMethodResult.jsonError(code, "TRACE method not allowed"));
+	}
+
+	// </editor-fold>
+
+	// <editor-fold defaultstate="collapsed" desc="private methods">
+	/**
+	 * Authenticates and parses an update request, resolves the resource
+	 * and runs the given operation on it in a transaction that is retried
+	 * on deadlocks.
+	 */
+	private void update(final HttpServletRequest request, final HttpServletResponse response, final String method, final UpdateOperation operation) throws ServletException, IOException {
+
 		SecurityContext securityContext = null;
 		Authenticator authenticator     = null;
 		RestMethodResult result         = null;
@@ -889,18 +956,17 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 					// evaluate constraint chain
 					resource = ResourceHelper.applyViewTransformation(request, securityContext,
-						ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView,
-							config.getDefaultIdProperty()), config.getDefaultIdProperty()), propertyView);
+						router.resolve(securityContext, request, propertyView, config.getDefaultIdProperty()), propertyView);
 					authenticator.checkResourceAccess(request, resource.getResourceSignature(), propertyView.get(securityContext));
 					tx.success();
 				}
 
-				// isolate doPut
+				// isolate resource operation
 				boolean retry = true;
 				while (retry) {
 
 					try (final Tx tx = app.tx()) {
-						result = resource.doPut(properties);
+						result = operation.execute(resource, properties);
 						tx.success();
 						retry = false;
 
@@ -935,30 +1001,30 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 
 		} catch (JsonSyntaxException jsex) {
 
-			logger.log(Level.WARNING, "JsonSyntaxException in PUT", jsex);
+			logger.log(Level.WARNING, "JsonSyntaxException in " + method, jsex);
 
 			int code = HttpServletResponse.SC_BAD_REQUEST;
 
 			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + jsex.getMessage()));
+			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in " + method + ": " + jsex.getMessage()));
 
 		} catch (JsonParseException jpex) {
 
-			logger.log(Level.WARNING, "JsonParseException in PUT", jpex);
+			logger.log(Level.WARNING, "JsonParseException in " + method, jpex);
 
 			int code = HttpServletResponse.SC_BAD_REQUEST;
 
 			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + jpex.getMessage()));
+			response.getWriter().append(RestMethodResult.jsonError(code, "JsonParseException in " + method + ": " + jpex.getMessage()));
 
 		} catch (Throwable t) {
 
-			logger.log(Level.WARNING, "Exception in PUT", t);
+			logger.log(Level.WARNING, "Exception in " + method, t);
 
 			int code = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 
 			response.setStatus(code);
-			response.getWriter().append(RestMethodResult.jsonError(code, "JsonSyntaxException in PUT: " + t.getMessage()));
+			response.getWriter().append(RestMethodResult.jsonError(code, "Exception in " + method + ": " + t.getMessage()));
 
 		} finally {
 
@@ -974,26 +1040,6 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 		}
 	}
 
-	// </editor-fold>
-
-	// <editor-fold defaultstate="collapsed" desc="TRACE">
-	@Override
-	protected void doTrace(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-
-//		logRequest("TRACE", request);
-		response.setContentType("application/json; charset=UTF-8");
-		response.setCharacterEncoding("UTF-8");
-
-		int code = HttpServletResponse.SC_METHOD_NOT_ALLOWED;
-
-		response.setStatus(code);
-		response.getWriter().append(RestMethodResult.jsonError(code, "TRACE method not allowed"));
-	}
-
-	// </editor-fold>
-
-	// <editor-fold defaultstate="collapsed" desc="private methods">
-
 	private Map<String, Object> convertPropertySetToMap(JsonInput propertySet) {
 
 		if (propertySet != null) {
@@ -1005,6 +1051,11 @@ public class JsonRestServlet extends HttpServlet implements HttpServiceServlet {
 	// </editor-fold>
 
 	// <editor-fold defaultstate="collapsed" desc="nested classes">
+	private interface UpdateOperation {
+
+		public RestMethodResult execute(final Resource resource, final Map<String, Object> properties) throws FrameworkException;
+	}
+
 	private class ThreadLocalPropertyView extends ThreadLocal<String> implements Value<String> {
 
 		@Override
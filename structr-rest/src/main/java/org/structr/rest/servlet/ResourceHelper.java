@@ -69,6 +69,24 @@ public class ResourceHelper {
 	 * @throws FrameworkException 
 	 */
 	public static List<Resource> parsePath(final SecurityContext securityContext, final HttpServletRequest request, final Map<Pattern, Class<? extends Resource>> resourceMap, final Value<String> propertyView, final PropertyKey defaultIdProperty) throws FrameworkException {
+		return parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty, null);
+	}
+
+	/**
+	 * Parse the request path and match with possible resource patterns,
+	 * recording the index of the matching entry in the resource map for
+	 * each URI part (or -1 for a view) in the given list.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param resourceMap
+	 * @param propertyView
+	 * @param defaultIdProperty
+	 * @param routes the list to record the matching entries in, or null
+	 * @return
+	 * @throws FrameworkException
+	 */
+	static List<Resource> parsePath(final SecurityContext securityContext, final HttpServletRequest request, final Map<Pattern, Class<? extends Resource>> resourceMap, final Value<String> propertyView, final PropertyKey defaultIdProperty, final List<Integer> routes) throws FrameworkException {
 
 		final String path = request.getPathInfo();
 
@@ -104,16 +122,23 @@ public class ResourceHelper {
 					resource.configurePropertyView(propertyView);
 					
 					resourceChain.add(resource);
+
+					if (routes != null) {
+						routes.add(-1);
+					}
 					
 					// mark this part as successfully parsed
 					found = true;
 					
 				} else {
 
+					int route = -1;
+
 					// look for matching pattern
 					for (Map.Entry<Pattern, Class<? extends Resource>> entry : resourceMap.entrySet()) {
 
 						Pattern pattern = entry.getKey();
+						route++;
 						Matcher matcher = pattern.matcher(pathParts[i]);
 
 						if (matcher.matches()) {
@@ -148,6 +173,10 @@ public class ResourceHelper {
 									// add constraint and go on
 									resourceChain.add(resource);
 
+									if (routes != null) {
+										routes.add(route);
+									}
+
 									found = true;
 
 									// first match wins, so choose priority wisely ;)
@@ -181,6 +210,20 @@ public class ResourceHelper {
 	 * @throws FrameworkException 
 	 */
 	public static Resource optimizeNestedResourceChain(final List<Resource> resourceChain, final PropertyKey defaultIdProperty) throws FrameworkException {
+		return optimizeNestedResourceChain(resourceChain, defaultIdProperty, null);
+	}
+
+	/**
+	 * Optimize the resource chain by trying to combine two resources to a new one,
+	 * recording the position of each successful combination in the given list.
+	 *
+	 * @param resourceChain
+	 * @param defaultIdProperty
+	 * @param combinations the list to record the combinations in, or null
+	 * @return
+	 * @throws FrameworkException
+	 */
+	static Resource optimizeNestedResourceChain(final List<Resource> resourceChain, final PropertyKey defaultIdProperty, final List<Integer> combinations) throws FrameworkException {
 
 		ViewFilterResource view = null;
 		int num                 = resourceChain.size();
@@ -221,6 +264,10 @@ public class ResourceHelper {
 						// add combined constraint
 						resourceChain.add(i, combinedConstraint);
 
+						if (combinations != null) {
+							combinations.add(i);
+						}
+
 						// signal success
 						found = true;
 
@@ -235,6 +282,21 @@ public class ResourceHelper {
 
 		} while (found);
 
+		return finishResourceChain(resourceChain, view, defaultIdProperty);
+	}
+
+	/**
+	 * Combine the single remaining resource of an optimized resource chain
+	 * with the given view, if any.
+	 *
+	 * @param resourceChain
+	 * @param view
+	 * @param defaultIdProperty
+	 * @return
+	 * @throws FrameworkException
+	 */
+	static Resource finishResourceChain(final List<Resource> resourceChain, final ViewFilterResource view, final PropertyKey defaultIdProperty) throws FrameworkException {
+
 		if (resourceChain.size() == 1) {
 
 			Resource finalResource = resourceChain.get(0);
@@ -0,0 +1,368 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.servlet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletRequest;
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.Value;
+import org.structr.core.property.PropertyKey;
+import org.structr.rest.exception.NoResultsException;
+import org.structr.rest.resource.Resource;
+import org.structr.rest.resource.UuidResource;
+import org.structr.rest.resource.ViewFilterResource;
+import org.structr.schema.SchemaService;
+
+/**
+ * Resolves request paths to resources, using the resource map of a
+ * {@link org.structr.rest.ResourceProvider}. The result of parsing and
+ * optimizing the resource chain is cached as a plan for each path shape,
+ * i.e. the request path with all UUIDs replaced by a placeholder, so
+ * subsequent requests with the same shape only create and configure the
+ * resources of the plan.
+ *
+ * Plans are discarded when the schema changes, and a plan that does not
+ * apply to a request causes the path to be parsed again.
+ *
+ * @author Christian Morgner
+ */
+public class ResourceRouter {
+
+	private static final Logger logger   = Logger.getLogger(ResourceRouter.class.getName());
+	private static final Pattern LITERAL = Pattern.compile("[a-zA-Z0-9_]+");
+	private static final int MAX_PLANS   = 1000;
+
+	private final List<Class<? extends Resource>> routes        = new ArrayList<>();
+	private final List<IdRoute> idRoutes                        = new ArrayList<>();
+	private final Map<String, Plan> plans                       = Collections.synchronizedMap(new LRUMap(MAX_PLANS));
+	private Map<Pattern, Class<? extends Resource>> resourceMap = null;
+
+	public ResourceRouter(final Map<Pattern, Class<? extends Resource>> resourceMap) {
+
+		final Set<String> precedingLiterals   = new HashSet<>();
+		final List<Pattern> precedingPatterns = new ArrayList<>();
+
+		this.resourceMap = resourceMap;
+
+		for (final Map.Entry<Pattern, Class<? extends Resource>> entry : resourceMap.entrySet()) {
+
+			final Pattern pattern = entry.getKey();
+			final Class type      = entry.getValue();
+
+			// a part that matches a UUID resource, but none of the
+			// preceding patterns, can be replaced by a placeholder
+			if (UuidResource.class.isAssignableFrom(type)) {
+				idRoutes.add(new IdRoute(pattern, new HashSet<>(precedingLiterals), new ArrayList<>(precedingPatterns)));
+			}
+
+			if (LITERAL.matcher(pattern.pattern()).matches()) {
+
+				precedingLiterals.add(pattern.pattern());
+
+			} else {
+
+				precedingPatterns.add(pattern);
+			}
+
+			routes.add(type);
+		}
+	}
+
+	/**
+	 * Resolves the path of the given request to a single resource, like
+	 * {@link ResourceHelper#optimizeNestedResourceChain} does for the
+	 * result of {@link ResourceHelper#parsePath}.
+	 *
+	 * @param securityContext
+	 * @param request
+	 * @param propertyView
+	 * @param defaultIdProperty
+	 * @return the resource
+	 * @throws FrameworkException
+	 */
+	public Resource resolve(final SecurityContext securityContext, final HttpServletRequest request, final Value<String> propertyView, final PropertyKey defaultIdProperty) throws FrameworkException {
+
+		final String path = request.getPathInfo();
+
+		// intercept empty path and send 204 No Content
+		if (StringUtils.isBlank(path)) {
+
+			throw new NoResultsException();
+		}
+
+		final long version       = SchemaService.getSchemaVersion();
+		final List<String> parts = getParts(path);
+		final Set<String> views  = Services.getInstance().getConfigurationProvider().getPropertyViews();
+		final String key         = getShapeKey(parts, views);
+
+		if (key != null) {
+
+			final Plan plan = plans.get(key);
+			if (plan != null && plan.version == version) {
+
+				final Resource resource = apply(plan, parts, securityContext, request, propertyView, defaultIdProperty);
+				if (resource != null) {
+
+					return resource;
+				}
+
+				plans.remove(key);
+			}
+		}
+
+		final List<Integer> routeList       = new ArrayList<>();
+		final List<Integer> combinationList = new ArrayList<>();
+		final Resource resource             = ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, defaultIdProperty, routeList), defaultIdProperty, combinationList);
+
+		if (key != null) {
+			plans.put(key, new Plan(version, routeList, combinationList));
+		}
+
+		return resource;
+	}
+
+	/**
+	 * Discards all cached plans.
+	 */
+	public void clear() {
+		plans.clear();
+	}
+
+	// ----- private methods -----
+	/**
+	 * Splits the path like {@link ResourceHelper#parsePath} does, returns
+	 * null if the path contains parts that need to be trimmed.
+	 */
+	private List<String> getParts(final String path) {
+
+		final List<String> parts = new ArrayList<>();
+
+		for (final String part : path.split("[/]+")) {
+
+			final String trimmed = part.trim();
+			if (trimmed.length() > 0) {
+
+				if (trimmed.length() != part.length()) {
+					return null;
+				}
+
+				parts.add(part);
+			}
+		}
+
+		return parts;
+	}
+
+	private String getShapeKey(final List<String> parts, final Set<String> views) {
+
+		if (parts == null) {
+			return null;
+		}
+
+		final StringBuilder buf = new StringBuilder();
+
+		for (final String part : parts) {
+
+			buf.append("/");
+
+			// ids are represented by an empty part, which
+			// cannot occur in a request path
+			if (views.contains(part) || !isId(part)) {
+
+				buf.append(part);
+			}
+		}
+
+		return buf.toString();
+	}
+
+	private boolean isId(final String part) {
+
+		for (final IdRoute idRoute : idRoutes) {
+
+			if (idRoute.pattern.matcher(part).matches()) {
+
+				if (idRoute.precedingLiterals.contains(part)) {
+					return false;
+				}
+
+				for (final Pattern pattern : idRoute.precedingPatterns) {
+
+					if (pattern.matcher(part).matches()) {
+						return false;
+					}
+				}
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Creates the resources of the given plan, returns null if the plan
+	 * does not apply to the given parts.
+	 */
+	private Resource apply(final Plan plan, final List<String> parts, final SecurityContext securityContext, final HttpServletRequest request, final Value<String> propertyView, final PropertyKey defaultIdProperty) throws FrameworkException {
+
+		final List<Resource> resourceChain = new ArrayList<>(parts.size());
+		ViewFilterResource view            = null;
+
+		if (plan.routes.length != parts.size()) {
+			return null;
+		}
+
+		for (int i=0; i<plan.routes.length; i++) {
+
+			final String part = parts.get(i);
+			final int route   = plan.routes[i];
+
+			if (route < 0) {
+
+				final Resource resource = new ViewFilterResource();
+				resource.checkAndConfigure(part, securityContext, request);
+				resource.configureIdProperty(defaultIdProperty);
+				resource.configurePropertyView(propertyView);
+
+				resourceChain.add(resource);
+
+			} else {
+
+				Resource resource = null;
+
+				try {
+
+					resource = routes.get(route).newInstance();
+
+				} catch (Throwable t) {
+
+					logger.log(Level.WARNING, "Error instantiating resource class", t);
+					return null;
+				}
+
+				resource.setSecurityContext(securityContext);
+
+				if (!resource.checkAndConfigure(part, securityContext, request)) {
+					return null;
+				}
+
+				resource.configurePropertyView(propertyView);
+				resource.configureIdProperty(defaultIdProperty);
+
+				resourceChain.add(resource);
+			}
+		}
+
+		for (final Iterator<Resource> it = resourceChain.iterator(); it.hasNext();) {
+
+			final Resource resource = it.next();
+			if (resource instanceof ViewFilterResource) {
+
+				view = (ViewFilterResource)resource;
+				it.remove();
+			}
+		}
+
+		for (final int i : plan.combinations) {
+
+			if (i + 1 >= resourceChain.size()) {
+				return null;
+			}
+
+			final Resource firstElement  = resourceChain.get(i);
+			final Resource secondElement = resourceChain.get(i + 1);
+			Resource combinedConstraint  = null;
+
+			try {
+
+				combinedConstraint = firstElement.tryCombineWith(secondElement);
+
+			} catch (Throwable t) {
+
+				// parse again to get the original error
+				return null;
+			}
+
+			if (combinedConstraint == null) {
+				return null;
+			}
+
+			resourceChain.remove(firstElement);
+			resourceChain.remove(secondElement);
+			resourceChain.add(i, combinedConstraint);
+		}
+
+		return ResourceHelper.finishResourceChain(resourceChain, view, defaultIdProperty);
+	}
+
+	// ----- nested classes -----
+	private static class IdRoute {
+
+		private Set<String> precedingLiterals  = null;
+		private List<Pattern> precedingPatterns = null;
+		private Pattern pattern                 = null;
+
+		public IdRoute(final Pattern pattern, final Set<String> precedingLiterals, final List<Pattern> precedingPatterns) {
+
+			this.pattern           = pattern;
+			this.precedingLiterals = precedingLiterals;
+			this.precedingPatterns = precedingPatterns;
+		}
+	}
+
+	private static class Plan {
+
+		private int[] combinations = null;
+		private int[] routes       = null;
+		private long version       = 0L;
+
+		public Plan(final long version, final List<Integer> routes, final List<Integer> combinations) {
+
+			this.version      = version;
+			this.routes       = toArray(routes);
+			this.combinations = toArray(combinations);
+		}
+
+		private static int[] toArray(final List<Integer> list) {
+
+			final int[] array = new int[list.size()];
+			int i             = 0;
+
+			for (final Integer value : list) {
+				array[i++] = value;
+			}
+
+			return array;
+		}
+	}
+}
@@ -291,6 +291,7 @@ public class StructrCsvTest extends TestCase {
 		config.setProperty(Services.DATABASE_PATH, basePath + "/db");
 		config.setProperty(Services.FILES_PATH, basePath + "/files");
 		config.setProperty(Services.LOG_DATABASE_PATH, basePath + "/logDb.dat");
+		config.setProperty(Services.SCHEMA_CACHE_PATH, basePath + "/schema");
 		config.setProperty(Services.TCP_PORT, "13465");
 		config.setProperty(Services.UDP_PORT, "13466");
 		config.setProperty(Services.SUPERUSER_USERNAME, "superadmin");
@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.test;
+
+import static org.hamcrest.Matchers.*;
+import com.jayway.restassured.RestAssured;
+import org.structr.rest.common.StructrRestTest;
+import org.structr.rest.entity.TestOne;
+
+/**
+ * Requests with the same path shape must be resolved
+ * correctly from the cached resource chain plan.
+ *
+ * @author Christian Morgner
+ */
+public class ResourceRoutingTest extends StructrRestTest {
+
+	public void testSamePathShapeWithDifferentIds() {
+
+		final String base1 = createEntity("/test_twos", "{ 'name' : 'base1' }");
+		final String base2 = createEntity("/test_twos", "{ 'name' : 'base2' }");
+
+		createEntity("/test_twos/" + base1 + "/test_ones", "{ 'name' : 'one-1' }");
+		createEntity("/test_twos/" + base2 + "/test_ones", "{ 'name' : 'one-2' }");
+		createEntity("/test_twos/" + base2 + "/test_ones", "{ 'name' : 'one-3' }");
+
+		for (int i=0; i<2; i++) {
+
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(1))
+					.body("result[0]",        isEntity(TestOne.class))
+					.body("result[0].name",   equalTo("one-1"))
+				.when()
+					.get("/test_twos/" + base1 + "/test_ones");
+
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(200)
+					.body("result_count",     equalTo(2))
+				.when()
+					.get("/test_twos/" + base2 + "/test_ones");
+
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(200)
+					.body("result.name",      equalTo("base1"))
+				.when()
+					.get("/test_twos/" + base1);
+
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(200)
+					.body("result.name",      equalTo("base2"))
+				.when()
+					.get("/test_twos/" + base2 + "/public");
+
+			RestAssured
+				.given()
+					.contentType("application/json; charset=UTF-8")
+				.expect()
+					.statusCode(404)
+				.when()
+					.get("/test_twos/abc123def456abc123def456abc123de");
+		}
+	}
+}
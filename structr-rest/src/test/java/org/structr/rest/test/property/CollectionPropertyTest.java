@@ -75,6 +75,162 @@ public class CollectionPropertyTest extends StructrRestTest {
 				
 	}
 
+	public void testPatchAddAndRemove() throws Exception {
+
+		String[] testOneIds = new String[4];
+
+		for (int i=0; i<4; i++) {
+
+			String location = RestAssured.given()
+				.contentType("application/json; charset=UTF-8")
+			.expect()
+				.statusCode(201)
+			.when()
+				.post("/test_ones")
+				.getHeader("Location");
+
+			testOneIds[i] = getUuidFromLocation(location);
+		}
+
+		String location = RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'manyToManyTestOnes' : ['" + testOneIds[0] + "', '" + testOneIds[1] + "'] } ")
+		.expect()
+			.statusCode(201)
+		.when()
+			.post("/test_fives")
+			.getHeader("Location");
+
+		String testFiveId = getUuidFromLocation(location);
+
+		// PATCH adds and removes single elements, the others are kept
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'manyToManyTestOnes' : { 'add' : ['" + testOneIds[2] + "', '" + testOneIds[3] + "'], 'remove' : ['" + testOneIds[0] + "'] } } ")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+		.expect()
+			.statusCode(200)
+		.when()
+			.patch("/test_fives/" + testFiveId);
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+			.body("result.manyToManyTestOnes", hasSize(3))
+			.body("result.manyToManyTestOnes", hasItems(testOneIds[1], testOneIds[2], testOneIds[3]))
+			.body("result.manyToManyTestOnes", not(hasItem(testOneIds[0])))
+		.when()
+			.get("/test_fives/" + testFiveId);
+
+		// unknown operations are rejected
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'manyToManyTestOnes' : { 'replace' : ['" + testOneIds[0] + "'] } } ")
+		.expect()
+			.statusCode(422)
+		.when()
+			.patch("/test_fives/" + testFiveId);
+	}
+
+	public void testPatchRelatedCollection() throws Exception {
+
+		String[] testOneIds = new String[3];
+
+		for (int i=0; i<3; i++) {
+
+			String location = RestAssured.given()
+				.contentType("application/json; charset=UTF-8")
+				.body(" { 'name' : 'one" + i + "' } ")
+			.expect()
+				.statusCode(201)
+			.when()
+				.post("/test_ones")
+				.getHeader("Location");
+
+			testOneIds[i] = getUuidFromLocation(location);
+		}
+
+		String location = RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'manyToManyTestOnes' : ['" + testOneIds[0] + "', '" + testOneIds[1] + "'] } ")
+		.expect()
+			.statusCode(201)
+		.when()
+			.post("/test_fives")
+			.getHeader("Location");
+
+		String testFiveId = getUuidFromLocation(location);
+
+		// PATCH on the collection URL modifies the collection, not the related nodes
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'add' : ['" + testOneIds[2] + "'], 'remove' : ['" + testOneIds[0] + "'] } ")
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(422))
+			.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+		.expect()
+			.statusCode(200)
+		.when()
+			.patch("/test_fives/" + testFiveId + "/manyToManyTestOnes");
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+			.body("result.manyToManyTestOnes", hasSize(2))
+			.body("result.manyToManyTestOnes", hasItems(testOneIds[1], testOneIds[2]))
+		.when()
+			.get("/test_fives/" + testFiveId);
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+			.body("result.name", equalTo("one1"))
+		.when()
+			.get("/test_ones/" + testOneIds[1]);
+	}
+
+	public void testPatchOnCollectionIsRejected() throws Exception {
+
+		for (int i=0; i<2; i++) {
+
+			RestAssured.given()
+				.contentType("application/json; charset=UTF-8")
+				.body(" { 'name' : 'one" + i + "' } ")
+			.expect()
+				.statusCode(201)
+			.when()
+				.post("/test_ones");
+		}
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'name' : 'changed' } ")
+		.expect()
+			.statusCode(400)
+		.when()
+			.patch("/test_ones");
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+		.expect()
+			.statusCode(200)
+			.body("result", hasSize(2))
+			.body("result.name", not(hasItem("changed")))
+		.when()
+			.get("/test_ones");
+
+		RestAssured.given()
+			.contentType("application/json; charset=UTF-8")
+			.body(" { 'name' : 'changed' } ")
+		.expect()
+			.statusCode(403)
+		.when()
+			.patch("/maintenance/rebuildIndex");
+	}
+
 	public void testOneToMany() throws Exception {
 		
 
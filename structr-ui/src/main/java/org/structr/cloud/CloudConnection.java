@@ -25,12 +25,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.net.Socket;
 import java.security.InvalidKeyException;
+import java.util.Collections;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -40,6 +41,8 @@ import javax.crypto.CipherInputStream;
 import javax.crypto.CipherOutputStream;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.structr.cloud.message.Ack;
+import org.structr.cloud.message.Checkpoint;
 import org.structr.cloud.message.DataContainer;
 import org.structr.cloud.message.FileNodeChunk;
 import org.structr.cloud.message.FileNodeDataContainer;
@@ -64,6 +67,7 @@ import org.structr.core.graph.RelationshipInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyMap;
 import org.structr.dynamic.File;
+import org.structr.rest.service.HttpService;
 import org.structr.web.entity.Folder;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.Page;
@@ -80,12 +84,15 @@ public class CloudConnection<T> extends Thread {
 	// containers
 	private final Map<String, FileNodeDataContainer> fileMap = new LinkedHashMap<>();
 	private final Map<String, String> idMap = new LinkedHashMap<>();
-	private final Map<String, Object> data = new LinkedHashMap<>();
+	private final Map<String, Object> data = Collections.synchronizedMap(new LinkedHashMap<String, Object>());
 
 	// private fields
-	private final Set<String> localMessageIds = new LinkedHashSet<>();
-	private final Set<String> remoteMessageIds = new LinkedHashSet<>();
+	private final Set<String> localMessageIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 	private App app = StructrApp.getInstance();
+	private volatile int checkpoint = 0;
+	private int commitInterval = 0;
+	private int windowSize = 0;
+	private int storedCount = 0;
 	private long transmissionAbortTime = 0L;
 	private ExportContext context = null;
 	private boolean authenticated = false;
@@ -107,6 +114,9 @@ public class CloudConnection<T> extends Thread {
 		this.socket = socket;
 		this.context = context;
 
+		this.windowSize     = Math.max(1, HttpService.parseInt(Services.getBaseConfiguration().getProperty(CloudService.WINDOW_SIZE), CloudService.LIVE_PACKET_COUNT));
+		this.commitInterval = HttpService.parseInt(Services.getBaseConfiguration().getProperty(CloudService.COMMIT_INTERVAL), 1000);
+
 		this.setDaemon(true);
 
 		logger.log(Level.INFO, "New connection from {0}", socket.getRemoteSocketAddress());
@@ -128,7 +138,7 @@ public class CloudConnection<T> extends Thread {
 				// password hash afterwards.
 				setEncryptionKey("StructrInitialEncryptionKey", 128);
 
-				sender = new Sender(this, new ObjectOutputStream(new GZIPOutputStream(new CipherOutputStream(new BufferedOutputStream(socket.getOutputStream()), encrypter), true)));
+				sender = new Sender(this, new ObjectOutputStream(new GZIPOutputStream(new CipherOutputStream(new BufferedOutputStream(socket.getOutputStream()), encrypter), true)), windowSize);
 				receiver = new Receiver(this, new ObjectInputStream(new GZIPInputStream(new CipherInputStream(new BufferedInputStream(socket.getInputStream()), decrypter))));
 
 				receiver.start();
@@ -154,18 +164,20 @@ public class CloudConnection<T> extends Thread {
 				if (request != null) {
 
 					// inform sender that a message has arrived
-					sender.messageReceived();
+					sender.messageReceived(request);
 
 					// refresh transmission timeout
 					refreshTransmissionTimeout();
 
-					// mark as "received"
-					remoteMessageIds.add(request.getId());
-
 					if (wasSentFromHere(request)) {
 
 						request.onResponse(this, context);
 
+						// an acknowledgement completes the exchange
+						if (request instanceof Ack) {
+							localMessageIds.remove(request.getId());
+						}
+
 					} else {
 
 						request.onRequest(this, context);
@@ -195,13 +207,20 @@ public class CloudConnection<T> extends Thread {
 
 	public void send(final Message message) throws IOException, FrameworkException {
 
-		sender.send(message);
+		// register ID before sending, the response might arrive
+		// before we get here again (acks and checkpoints are never
+		// answered, so their IDs would never be removed)
+		if (!(message instanceof Ack) && !(message instanceof Checkpoint)) {
+			localMessageIds.add(message.getId());
+		}
+
+		// throttle all threads except the connection thread itself,
+		// which must never block because it drains the receiver
+		sender.send(message, Thread.currentThread() != this);
 
 		if (CloudService.DEBUG) {
 			System.out.println(message);
 		}
-
-		localMessageIds.add(message.getId());
 	}
 
 	/**
@@ -272,6 +291,41 @@ public class CloudConnection<T> extends Thread {
 		}
 	}
 
+	/**
+	 * Waits until a value with the given key has been stored by a message
+	 * that arrived on this connection.
+	 *
+	 * @param key
+	 * @return the value
+	 * @throws FrameworkException
+	 */
+	public Object waitForValue(final String key) throws FrameworkException {
+
+		transmissionAbortTime = System.currentTimeMillis() + CloudService.DEFAULT_TIMEOUT;
+
+		Object value = data.get(key);
+		while (value == null) {
+
+			if (errorMessage != null) {
+				throw new FrameworkException(errorCode, errorMessage);
+			}
+
+			if (System.currentTimeMillis() > transmissionAbortTime) {
+
+				throw new FrameworkException(504, "Timeout while waiting for response.");
+			}
+
+			try {
+				Thread.sleep(10);
+			} catch (Throwable t) {
+			}
+
+			value = data.get(key);
+		}
+
+		return value;
+	}
+
 	public void waitForClose(int timeout) throws FrameworkException {
 
 		final long abortTime = System.currentTimeMillis() + CloudService.DEFAULT_TIMEOUT;
@@ -322,7 +376,25 @@ public class CloudConnection<T> extends Thread {
 		return app;
 	}
 
-	public NodeInterface storeNode(final DataContainer receivedData) throws FrameworkException {
+	public NodeInterface storeNode(final DataContainer receivedData) throws IOException, FrameworkException {
+
+		final NodeInterface node = createOrUpdateNode(receivedData);
+
+		entityStored();
+
+		return node;
+	}
+
+	public RelationshipInterface storeRelationship(final DataContainer receivedData) throws IOException, FrameworkException {
+
+		final RelationshipInterface relationship = createOrUpdateRelationship(receivedData);
+
+		entityStored();
+
+		return relationship;
+	}
+
+	private NodeInterface createOrUpdateNode(final DataContainer receivedData) throws FrameworkException {
 
 		final NodeDataContainer receivedNodeData = (NodeDataContainer) receivedData;
 		final PropertyMap properties = PropertyMap.databaseTypeToJavaType(SecurityContext.getSuperUserInstance(), receivedNodeData.getType(), receivedNodeData.getProperties());
@@ -348,7 +420,7 @@ public class CloudConnection<T> extends Thread {
 		return newOrExistingNode;
 	}
 
-	public RelationshipInterface storeRelationship(final DataContainer receivedData) throws FrameworkException {
+	private RelationshipInterface createOrUpdateRelationship(final DataContainer receivedData) throws FrameworkException {
 
 		final RelationshipDataContainer receivedRelationshipData = (RelationshipDataContainer) receivedData;
 		final String sourceStartNodeId = receivedRelationshipData.getSourceStartNodeId();
@@ -459,6 +531,31 @@ public class CloudConnection<T> extends Thread {
 		data.clear();
 	}
 
+	/**
+	 * Commits the current transaction every <code>commitInterval</code> entities
+	 * so that the receiving end does not have to hold the whole transmission in
+	 * a single transaction, and reports the progress to the sending end.
+	 */
+	private void entityStored() throws IOException, FrameworkException {
+
+		storedCount++;
+
+		if (tx != null && commitInterval > 0 && (storedCount % commitInterval) == 0) {
+
+			try {
+
+				tx.success();
+				tx.close();
+
+			} finally {
+
+				tx = app.tx();
+			}
+
+			send(new Checkpoint(storedCount));
+		}
+	}
+
 	public Principal getUser(String userName) {
 
 		try {
@@ -480,7 +577,7 @@ public class CloudConnection<T> extends Thread {
 		fileMap.put(container.getSourceNodeId(), container);
 	}
 
-	public void finishFile(final FileNodeEndChunk endChunk) throws FrameworkException {
+	public void finishFile(final FileNodeEndChunk endChunk) throws IOException, FrameworkException {
 
 		final FileNodeDataContainer container = fileMap.get(endChunk.getContainerId());
 		if (container == null) {
@@ -491,7 +588,7 @@ public class CloudConnection<T> extends Thread {
 
 			container.flushAndCloseTemporaryFile();
 
-			final NodeInterface newNode = storeNode(container);
+			final NodeInterface newNode = createOrUpdateNode(container);
 			final String filesPath = StructrApp.getConfigurationValue(Services.FILES_PATH);
 			final String relativePath = newNode.getProperty(File.relativeFilePath);
 			String newPath = null;
@@ -515,6 +612,10 @@ public class CloudConnection<T> extends Thread {
 				// interrupted here
 				t.printStackTrace();
 			}
+
+			fileMap.remove(endChunk.getContainerId());
+
+			entityStored();
 		}
 	}
 
@@ -613,6 +714,20 @@ public class CloudConnection<T> extends Thread {
 		context.increaseTotal(total);
 	}
 
+	public void setCheckpoint(final int checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	/**
+	 * Returns the number of entities the remote end has committed
+	 * so far, as reported by the last {@link Checkpoint} message.
+	 *
+	 * @return the number of committed entities
+	 */
+	public int getCheckpoint() {
+		return checkpoint;
+	}
+
 	public void setError(final int errorCode, final String errorMessage) {
 
 		this.errorMessage = errorMessage;
@@ -49,6 +49,9 @@ public class CloudService extends Thread implements RunnableService {
 	public static final int LIVE_PACKET_COUNT = 200;
 	public static final long DEFAULT_TIMEOUT  = 2000;
 
+	public static final String WINDOW_SIZE     = "CloudService.window.size";
+	public static final String COMMIT_INTERVAL = "CloudService.commit.interval";
+
 	public static final boolean DEBUG         = false;
 	public static final String STREAM_CIPHER  = "RC4";
 
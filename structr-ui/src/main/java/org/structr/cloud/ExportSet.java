@@ -43,12 +43,7 @@ public class ExportSet {
 
 			if (nodes.add(data.getSyncNode())) {
 
-				size++;
-
-				if (data.getSyncNode() instanceof File) {
-
-					size += (((File)data.getSyncNode()).getSize().intValue() / CloudService.CHUNK_SIZE) + 2;
-				}
+				size += getSize(data.getSyncNode());
 
 				// node was new (added), return true
 				return true;
@@ -82,6 +77,22 @@ public class ExportSet {
 	}
 
 	// ----- public static methods -----
+	/**
+	 * Returns the number of messages needed to transmit the given node.
+	 *
+	 * @param node
+	 * @return the number of messages
+	 */
+	public static int getSize(final NodeInterface node) {
+
+		if (node instanceof File) {
+
+			return (((File)node).getSize().intValue() / CloudService.CHUNK_SIZE) + 3;
+		}
+
+		return 1;
+	}
+
 	public static ExportSet getInstance() {
 		return new ExportSet();
 	}
@@ -20,8 +20,9 @@ package org.structr.cloud;
 
 import org.structr.cloud.message.Message;
 import java.io.ObjectInputStream;
-import java.util.Queue;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
@@ -29,9 +30,9 @@ import java.util.concurrent.ArrayBlockingQueue;
  */
 public class Receiver extends Thread {
 
-	private final Queue<Message> inputQueue = new ArrayBlockingQueue<>(10000);
-	private ObjectInputStream inputStream   = null;
-	private CloudConnection connection      = null;
+	private final BlockingQueue<Message> inputQueue = new ArrayBlockingQueue<>(10000);
+	private ObjectInputStream inputStream           = null;
+	private CloudConnection connection              = null;
 
 	public Receiver(final CloudConnection connection, final ObjectInputStream inputStream) {
 
@@ -52,7 +53,9 @@ public class Receiver extends Thread {
 				final Message message = (Message)inputStream.readObject();
 				if (message != null) {
 
-					inputQueue.add(message);
+					// block instead of failing when the connection
+					// thread cannot keep up with the remote end
+					inputQueue.put(message);
 				}
 
 			} catch (Throwable t) {
@@ -63,6 +66,12 @@ public class Receiver extends Thread {
 	}
 
 	public Message receive() {
-		return inputQueue.poll();
+
+		try {
+			return inputQueue.poll(10, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException iex) {
+			return null;
+		}
 	}
 }
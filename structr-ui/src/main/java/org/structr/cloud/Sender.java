@@ -21,27 +21,47 @@ package org.structr.cloud;
 import org.structr.cloud.message.Message;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Writes outgoing messages of a {@link CloudConnection} to the wire. Data
+ * messages ({@link Message#isWindowed()}) are sent as long as less than the
+ * configured number of them are awaiting their acknowledgement, so that the
+ * transmission is pipelined instead of bound by the round trip of every single
+ * message. The stream is only flushed when the queue runs empty or the window
+ * is exhausted.
  *
  * @author Christian Morgner
  */
 public class Sender extends Thread {
 
-	private final Queue<Message> outputQueue = new ArrayBlockingQueue<>(10000);
-	private ObjectOutputStream outputStream  = null;
-	private CloudConnection connection       = null;
-	private int messagesInFlight             = 0;
+	private static final int FLUSH_INTERVAL   = 64;
+	private static final int RESET_INTERVAL   = 1000;
 
-	public Sender(final CloudConnection connection, final ObjectOutputStream outputStream) {
+	private final BlockingQueue<Message> outputQueue = new LinkedBlockingQueue<>();
+	private final Set<String> outstanding            = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private ObjectOutputStream outputStream          = null;
+	private CloudConnection connection               = null;
+	private Semaphore window                         = null;
+	private int windowSize                           = 0;
+	private int unflushed                            = 0;
+	private int written                              = 0;
+
+	public Sender(final CloudConnection connection, final ObjectOutputStream outputStream, final int windowSize) {
 
 		super("Sender of " + connection.getName());
 		this.setDaemon(true);
 
 		this.outputStream = outputStream;
 		this.connection   = connection;
+		this.windowSize   = windowSize;
+		this.window       = new Semaphore(windowSize);
 
 		// flush stream to avoid ObjectInputStream to be waiting indefinitely
 		try {
@@ -56,40 +76,122 @@ public class Sender extends Thread {
 	@Override
 	public void run() {
 
-		while (connection.isConnected()) {
+		try {
+
+			while (connection.isConnected()) {
 
-			if (messagesInFlight < CloudService.LIVE_PACKET_COUNT) {
+				final Message message = outputQueue.poll(10, TimeUnit.MILLISECONDS);
+				if (message != null) {
+
+					// wake up producers waiting for queue capacity
+					synchronized (outputQueue) {
+						outputQueue.notifyAll();
+					}
 
-				try {
+					if (message.isWindowed()) {
 
-					final Message message = outputQueue.poll();
-					if (message != null) {
+						// make sure the remote end sees everything that is to be
+						// acknowledged before we start waiting for acknowledgements
+						if (window.availablePermits() == 0) {
+							flush();
+						}
 
-						outputStream.writeObject(message);
-						outputStream.flush();
+						while (!window.tryAcquire(10, TimeUnit.MILLISECONDS)) {
 
-						messagesInFlight++;
+							if (!connection.isConnected()) {
+								return;
+							}
+						}
 
-						message.afterSend(connection);
+						outstanding.add(message.getId());
 					}
 
-				} catch (Throwable t) {
+					outputStream.writeObject(message);
+					unflushed++;
 
-					connection.close();
-				}
+					message.afterSend(connection);
+
+					if (outputQueue.isEmpty() || unflushed >= FLUSH_INTERVAL) {
+						flush();
+					}
 
-			} else {
+				} else if (unflushed > 0) {
 
-				Thread.yield();
+					flush();
+				}
 			}
+
+		} catch (Throwable t) {
+
+			connection.close();
 		}
 	}
 
-	public void send(final Message message) {
+	/**
+	 * Enqueues the given message. Callers other than the connection thread
+	 * itself should set <code>block</code> so that they are throttled to the
+	 * speed of the remote end instead of filling the heap with messages.
+	 *
+	 * @param message
+	 * @param block
+	 */
+	public void send(final Message message, final boolean block) {
+
+		if (block) {
+
+			synchronized (outputQueue) {
+
+				while (outputQueue.size() >= windowSize && connection.isConnected()) {
+
+					try {
+						outputQueue.wait(10);
+
+					} catch (InterruptedException iex) {
+						break;
+					}
+				}
+			}
+		}
+
 		outputQueue.add(message);
 	}
 
-	public void messageReceived() {
-		messagesInFlight--;
+	/**
+	 * Notifies this sender that the given message has arrived, releasing
+	 * a slot of the window if it acknowledges a windowed message.
+	 *
+	 * @param message
+	 */
+	public void messageReceived(final Message message) {
+
+		if (outstanding.remove(message.getId())) {
+			window.release();
+		}
+	}
+
+	public int getQueueSize() {
+		return outputQueue.size();
+	}
+
+	public int getOutstandingCount() {
+		return outstanding.size();
+	}
+
+	// ----- private methods -----
+	private void flush() throws IOException {
+
+		written += unflushed;
+		unflushed = 0;
+
+		// ObjectOutputStream keeps a reference to every object written
+		// until it is reset, which makes long transmissions run out of heap
+		// on both ends of the connection
+		if (written >= RESET_INTERVAL) {
+
+			outputStream.reset();
+			written = 0;
+		}
+
+		outputStream.flush();
 	}
 }
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud;
+
+import java.lang.reflect.Array;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.neo4j.graphdb.PropertyContainer;
+import org.structr.common.Syncable;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.RelationshipInterface;
+
+/**
+ * Computes a version hash of a syncable entity from the properties that are
+ * transmitted by the cloud service, so that two instances can find out which
+ * entities differ without transferring them. Files are covered by their
+ * stored checksum, their content is never read. Properties that are
+ * maintained locally by each instance are ignored.
+ *
+ * @author Christian Morgner
+ */
+public class SyncHash {
+
+	private static final Charset UTF8          = Charset.forName("utf-8");
+	private static final Set<String> localKeys = new HashSet<>(Arrays.asList(new String[] {
+		GraphObject.createdDate.dbName(),
+		GraphObject.lastModifiedDate.dbName(),
+		NodeInterface.createdBy.dbName()
+	}));
+
+	public static String get(final Syncable syncable) {
+
+		if (syncable.isNode()) {
+
+			return get(syncable.getSyncNode());
+		}
+
+		return get(syncable.getSyncRelationship());
+	}
+
+	public static String get(final GraphObject obj) {
+
+		final MessageDigest digest = DigestUtils.getMd5Digest();
+
+		if (obj instanceof RelationshipInterface) {
+
+			final RelationshipInterface rel = (RelationshipInterface)obj;
+
+			update(digest, rel.getSourceNode().getUuid());
+			update(digest, rel.getTargetNode().getUuid());
+		}
+
+		update(digest, obj.getClass().getName());
+
+		final PropertyContainer propertyContainer = obj.getPropertyContainer();
+		final Set<String> keys                    = new TreeSet<>();
+
+		for (final String key : propertyContainer.getPropertyKeys()) {
+			keys.add(key);
+		}
+
+		for (final String key : keys) {
+
+			if (!localKeys.contains(key)) {
+
+				update(digest, key);
+				update(digest, propertyContainer.getProperty(key));
+			}
+		}
+
+		return Hex.encodeHexString(digest.digest());
+	}
+
+	// ----- private methods -----
+	private static void update(final MessageDigest digest, final Object value) {
+
+		if (value != null && value.getClass().isArray()) {
+
+			final int length = Array.getLength(value);
+
+			update(digest, "[" + length);
+
+			for (int i=0; i<length; i++) {
+				update(digest, Array.get(value, i));
+			}
+
+		} else {
+
+			digest.update(String.valueOf(value).getBytes(UTF8));
+
+			// separator, so that adjacent values cannot be confused
+			digest.update((byte)0);
+		}
+	}
+}
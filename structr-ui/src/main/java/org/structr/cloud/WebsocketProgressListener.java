@@ -22,13 +22,21 @@ import org.structr.websocket.StructrWebSocket;
 import org.structr.websocket.message.MessageBuilder;
 
 /**
+ * Reports the progress of a transmission to a websocket client, including
+ * the elapsed time, the throughput in messages per second and an estimate
+ * of the remaining time. Progress updates are sent at most every
+ * {@link #UPDATE_INTERVAL} milliseconds.
  *
  * @author Christian Morgner
  */
 public class WebsocketProgressListener implements CloudListener {
 
+	public static final long UPDATE_INTERVAL = 250;
+
 	private StructrWebSocket websocket = null;
 	private String key                 = null;
+	private long startTime             = 0L;
+	private long lastUpdate            = 0L;
 
 	public WebsocketProgressListener(final StructrWebSocket websocket, final String key) {
 		this.websocket = websocket;
@@ -37,6 +45,9 @@ public class WebsocketProgressListener implements CloudListener {
 
 	@Override
 	public void transmissionStarted() {
+
+		startTime = System.currentTimeMillis();
+
 		websocket.send(MessageBuilder.status().code(200).message("Transmission started").build(), true);
 	}
 
@@ -52,6 +63,19 @@ public class WebsocketProgressListener implements CloudListener {
 
 	@Override
 	public void transmissionProgress(int current, int total) {
-		websocket.send(MessageBuilder.progress().code(200).message("{\"key\":\"" + key + "\", \"current\":" + current + ", \"total\":" + total + "}").build(), true);
+
+		final long now = System.currentTimeMillis();
+
+		if (current < total && now - lastUpdate < UPDATE_INTERVAL) {
+			return;
+		}
+
+		final long elapsed   = startTime > 0L ? now - startTime : 0L;
+		final long rate      = elapsed > 0L ? (current * 1000L) / elapsed : 0L;
+		final long remaining = rate > 0L ? (Math.max(0, total - current) * 1000L) / rate : -1L;
+
+		lastUpdate = now;
+
+		websocket.send(MessageBuilder.progress().code(200).message("{\"key\":\"" + key + "\", \"current\":" + current + ", \"total\":" + total + ", \"elapsed\":" + elapsed + ", \"rate\":" + rate + ", \"remaining\":" + remaining + "}").build(), true);
 	}
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.message;
+
+import java.io.IOException;
+import org.structr.cloud.CloudConnection;
+import org.structr.cloud.ExportContext;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Sent by the receiving end of a transmission after an intermediate commit,
+ * containing the number of entities that are safely stored on that side.
+ *
+ * @author Christian Morgner
+ */
+public class Checkpoint extends Message {
+
+	private int count = 0;
+
+	public Checkpoint() {}
+
+	public Checkpoint(final int count) {
+		this.count = count;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "Checkpoint(" + count + ")";
+	}
+
+	@Override
+	public void onRequest(CloudConnection serverConnection, ExportContext context) throws IOException, FrameworkException {
+		serverConnection.setCheckpoint(count);
+	}
+
+	@Override
+	public void onResponse(CloudConnection clientConnection, ExportContext context) throws IOException, FrameworkException {
+	}
+
+	@Override
+	public void afterSend(CloudConnection connection) {
+	}
+
+	@Override
+	public Object getPayload() {
+		return null;
+	}
+}
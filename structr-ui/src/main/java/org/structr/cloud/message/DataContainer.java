@@ -56,6 +56,11 @@ public abstract class DataContainer extends Message {
 		return null;
 	}
 
+	@Override
+	public boolean isWindowed() {
+		return true;
+	}
+
 	// ----- protected methods -----
 	protected void collectProperties(final PropertyContainer propertyContainer) {
 
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud.message;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import org.structr.cloud.CloudConnection;
+import org.structr.cloud.ExportContext;
+import org.structr.cloud.SyncHash;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.App;
+
+/**
+ * Contains the version hashes of a part of an incremental transmission. The
+ * remote end answers with the IDs of all entities that it already has in the
+ * same version, so that only the changed ones need to be transmitted.
+ *
+ * @author Christian Morgner
+ */
+public class Manifest extends Message<Set<String>> {
+
+	private Map<String, String> hashes = new LinkedHashMap<>();
+	private Set<String> unchanged      = new LinkedHashSet<>();
+
+	public Manifest() {}
+
+	public void add(final String id, final String hash) {
+		hashes.put(id, hash);
+	}
+
+	public int size() {
+		return hashes.size();
+	}
+
+	@Override
+	public void onRequest(CloudConnection serverConnection, ExportContext context) throws IOException, FrameworkException {
+
+		final App app = serverConnection.getApplicationContext();
+
+		for (final Map.Entry<String, String> entry : hashes.entrySet()) {
+
+			final String id      = entry.getKey();
+			GraphObject existing = app.nodeQuery().and(GraphObject.id, id).includeDeletedAndHidden().getFirst();
+
+			if (existing == null) {
+				existing = app.relationshipQuery().and(GraphObject.id, id).includeDeletedAndHidden().getFirst();
+			}
+
+			if (existing != null && entry.getValue().equals(SyncHash.get(existing))) {
+				unchanged.add(id);
+			}
+		}
+
+		// no need to send the hashes back
+		hashes.clear();
+
+		serverConnection.send(this);
+	}
+
+	@Override
+	public void onResponse(CloudConnection clientConnection, ExportContext context) throws IOException, FrameworkException {
+
+		context.progress();
+		clientConnection.storeValue(getId(), unchanged);
+	}
+
+	@Override
+	public void afterSend(CloudConnection connection) {
+	}
+
+	@Override
+	public Set<String> getPayload() {
+		return unchanged;
+	}
+}
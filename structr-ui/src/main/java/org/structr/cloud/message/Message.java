@@ -43,6 +43,16 @@ public abstract class Message<T> implements Serializable {
 		return id;
 	}
 
+	/**
+	 * Indicates whether this message is acknowledged by the remote end
+	 * with a message of the same ID and counts against the send window.
+	 *
+	 * @return whether this message is subject to flow control
+	 */
+	public boolean isWindowed() {
+		return false;
+	}
+
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "(" + getId() + ")";
@@ -61,6 +61,13 @@ public class PullChunk extends FileNodeChunk {
 	public void onResponse(CloudConnection clientConnection, ExportContext context) throws IOException, FrameworkException {
 	}
 
+	@Override
+	public boolean isWindowed() {
+
+		// the response to this request has a different ID
+		return false;
+	}
+
 	@Override
 	public void afterSend(CloudConnection conn) {
 	}
@@ -75,6 +75,13 @@ public class PullFile extends FileNodeDataContainer {
 		}
 	}
 
+	@Override
+	public boolean isWindowed() {
+
+		// the response to this request has a different ID
+		return false;
+	}
+
 	@Override
 	public void afterSend(CloudConnection connection) {
 	}
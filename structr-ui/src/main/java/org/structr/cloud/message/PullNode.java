@@ -76,6 +76,13 @@ public class PullNode extends NodeDataContainer {
 		clientConnection.send(ack());
 	}
 
+	@Override
+	public boolean isWindowed() {
+
+		// the response to this request has a different ID
+		return false;
+	}
+
 	@Override
 	public void afterSend(CloudConnection conn) {
 	}
@@ -66,6 +66,13 @@ public class PullRelationship extends RelationshipDataContainer {
 		clientConnection.send(ack());
 	}
 
+	@Override
+	public boolean isWindowed() {
+
+		// the response to this request has a different ID
+		return false;
+	}
+
 	@Override
 	public void afterSend(CloudConnection conn) {
 	}
@@ -20,6 +20,7 @@ package org.structr.cloud.message;
 
 import java.io.Serializable;
 import java.util.Date;
+import org.structr.cloud.SyncHash;
 import org.structr.common.Syncable;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
@@ -37,6 +38,7 @@ public class SyncableInfo implements Serializable {
 	private String type       = null;
 	private Long size         = null;
 	private Date lastModified = null;
+	private String hash       = null;
 
 	public SyncableInfo(final Syncable syncable) {
 
@@ -63,6 +65,8 @@ public class SyncableInfo implements Serializable {
 				this.type         = rel.getClass().getSimpleName();
 				this.node         = false;
 			}
+
+			this.hash = SyncHash.get(syncable);
 		}
 	}
 
@@ -93,4 +97,14 @@ public class SyncableInfo implements Serializable {
 	public Date getLastModified() {
 		return lastModified;
 	}
+
+	/**
+	 * Returns the version hash of the syncable, which can be compared with
+	 * the hash of a local entity to find out whether they differ.
+	 *
+	 * @return the version hash
+	 */
+	public String getHash() {
+		return hash;
+	}
 }
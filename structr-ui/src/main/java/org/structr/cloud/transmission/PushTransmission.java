@@ -19,18 +19,36 @@
 package org.structr.cloud.transmission;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.structr.cloud.CloudConnection;
 import org.structr.cloud.CloudService;
 import org.structr.cloud.ExportSet;
+import org.structr.cloud.SyncHash;
 import org.structr.cloud.message.FileNodeChunk;
 import org.structr.cloud.message.FileNodeDataContainer;
 import org.structr.cloud.message.FileNodeEndChunk;
+import org.structr.cloud.message.Manifest;
 import org.structr.cloud.message.NodeDataContainer;
 import org.structr.cloud.message.PushNodeRequestContainer;
 import org.structr.cloud.message.RelationshipDataContainer;
 import org.structr.common.Syncable;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
 import org.structr.dynamic.File;
@@ -41,13 +59,33 @@ import org.structr.dynamic.File;
  */
 public class PushTransmission extends AbstractTransmission<Boolean> {
 
-	private ExportSet exportSet = null;
-	private int sequenceNumber  = 0;
+	private static final Logger logger = Logger.getLogger(PushTransmission.class.getName());
+
+	// directory (relative to the base path) that contains the IDs of the
+	// entities that are known to be committed on the remote end, for each
+	// push that was interrupted, so it can be resumed later, even after a
+	// restart
+	private static final String CHECKPOINT_DIRECTORY = "checkpoints";
+
+	// number of version hashes per manifest message
+	public static final int MANIFEST_SIZE = 500;
+
+	private final List<String> sentIds  = new ArrayList<>();
+	private final Set<String> unchanged = new HashSet<>();
+	private Set<String> committedIds    = new HashSet<>();
+	private ExportSet exportSet         = null;
+	private String rootId               = "*";
+	private boolean incremental         = false;
+	private boolean recursive           = false;
+	private int sequenceNumber          = 0;
 
 	public PushTransmission(final Syncable sourceNode, final boolean recursive, final String userName, final String password, final String remoteHost, final int port) {
 
 		super(userName, password, remoteHost, port);
 
+		this.rootId    = sourceNode.getUuid();
+		this.recursive = recursive;
+
 		// create export set before first progress callback is called
 		// so the client gets the correct total from the beginning
 		exportSet = ExportSet.getInstance(sourceNode, recursive);
@@ -64,48 +102,291 @@ public class PushTransmission extends AbstractTransmission<Boolean> {
 		return exportSet;
 	}
 
+	/**
+	 * Sets the incremental mode of this transmission. In incremental mode,
+	 * the version hashes of all entities are sent to the remote end first,
+	 * and only the entities that differ on the remote end are transmitted.
+	 *
+	 * @param incremental
+	 */
+	public void setIncremental(final boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
 	@Override
 	public int getTotalSize() {
-		return exportSet.getTotalSize() + 1;
+
+		int totalSize = exportSet.getTotalSize() + 1;
+
+		// resume an interrupted push to the same target
+		final Set<String> checkpoint = readCheckpoint(getCheckpointKey());
+		if (checkpoint != null) {
+
+			committedIds = new HashSet<>(checkpoint);
+
+			for (final NodeInterface node : exportSet.getNodes()) {
+
+				if (committedIds.contains(node.getUuid())) {
+					totalSize -= ExportSet.getSize(node);
+				}
+			}
+
+			for (final RelationshipInterface rel : exportSet.getRelationships()) {
+
+				if (committedIds.contains(rel.getUuid())) {
+					totalSize--;
+				}
+			}
+		}
+
+		if (incremental) {
+
+			// manifest messages
+			totalSize += (getPending().size() + MANIFEST_SIZE - 1) / MANIFEST_SIZE;
+		}
+
+		return totalSize;
 	}
 
 	@Override
 	public Boolean doRemote(final CloudConnection client) throws IOException, FrameworkException {
 
+		boolean finished = false;
+
 		// send type of request
 		client.send(new PushNodeRequestContainer());
 
 		// reset sequence number
 		sequenceNumber = 0;
 
-		// send child nodes when recursive sending is requested
-		final Set<NodeInterface> nodes = exportSet.getNodes();
-		for (final NodeInterface n : nodes) {
+		try {
+
+			if (incremental) {
+				compareVersions(client);
+			}
+
+			// send child nodes when recursive sending is requested
+			final Set<NodeInterface> nodes = exportSet.getNodes();
+			for (final NodeInterface n : nodes) {
+
+				if (committedIds.contains(n.getUuid()) || unchanged.contains(n.getUuid())) {
+					continue;
+				}
+
+				sentIds.add(n.getUuid());
 
-			if (n instanceof File) {
-				sendFile(client, (File)n, CloudService.CHUNK_SIZE);
+				if (n instanceof File) {
+					sendFile(client, (File)n, CloudService.CHUNK_SIZE);
+
+				} else {
+
+					client.send(new NodeDataContainer(n, sequenceNumber++));
+				}
+			}
+
+			// send relationships
+			Set<RelationshipInterface> rels = exportSet.getRelationships();
+			for (RelationshipInterface r : rels) {
+
+				if (committedIds.contains(r.getUuid()) || unchanged.contains(r.getUuid())) {
+					continue;
+				}
+
+				if (nodes.contains(r.getSourceNode()) && nodes.contains(r.getTargetNode())) {
+
+					sentIds.add(r.getUuid());
+					client.send(new RelationshipDataContainer(r, sequenceNumber++));
+				}
+			}
+
+			// wait for end of transmission
+			client.waitForTransmission();
+
+			finished = true;
+
+		} finally {
+
+			final String key = getCheckpointKey();
+
+			if (finished) {
+
+				removeCheckpoint(key);
 
 			} else {
 
-				client.send(new NodeDataContainer(n, sequenceNumber++));
+				// the remote end stores the entities in the order they were
+				// sent, so the checkpoint marks the committed part of sentIds
+				final int count = Math.min(client.getCheckpoint(), sentIds.size());
+				if (count > 0) {
+
+					committedIds.addAll(sentIds.subList(0, count));
+				}
+
+				if (!committedIds.isEmpty()) {
+					writeCheckpoint(key, committedIds);
+				}
 			}
 		}
 
-		// send relationships
-		Set<RelationshipInterface> rels = exportSet.getRelationships();
-		for (RelationshipInterface r : rels) {
+		return true;
+	}
+
+	// ----- private methods -----
+	/**
+	 * Sends the version hashes of all pending entities to the remote end
+	 * and collects the IDs of the entities that are already up to date.
+	 */
+	private void compareVersions(final CloudConnection client) throws IOException, FrameworkException {
+
+		final List<Manifest> manifests = new ArrayList<>();
+		Manifest manifest              = null;
+
+		for (final GraphObject obj : getPending().values()) {
 
-			if (nodes.contains(r.getSourceNode()) && nodes.contains(r.getTargetNode())) {
-				client.send(new RelationshipDataContainer(r, sequenceNumber++));
+			if (manifest == null || manifest.size() >= MANIFEST_SIZE) {
+
+				manifest = new Manifest();
+				manifests.add(manifest);
 			}
+
+			manifest.add(obj.getUuid(), SyncHash.get(obj));
 		}
 
-		// wait for end of transmission
-		client.waitForTransmission();
+		// send all manifests before waiting for the first response
+		for (final Manifest m : manifests) {
+			client.send(m);
+		}
 
-		return true;
+		for (final Manifest m : manifests) {
+
+			unchanged.addAll((Set<String>)client.waitForValue(m.getId()));
+			client.removeValue(m.getId());
+		}
+
+		// adjust total size
+		int unchangedSize = 0;
+
+		for (final NodeInterface node : exportSet.getNodes()) {
+
+			if (unchanged.contains(node.getUuid())) {
+				unchangedSize += ExportSet.getSize(node);
+			}
+		}
+
+		for (final RelationshipInterface rel : exportSet.getRelationships()) {
+
+			if (unchanged.contains(rel.getUuid())) {
+				unchangedSize++;
+			}
+		}
+
+		client.increaseTotal(-unchangedSize);
+	}
+
+	/**
+	 * Returns the entities of the export set that are to be sent, i.e. all
+	 * nodes and the relationships between them that are not committed yet.
+	 */
+	private Map<String, GraphObject> getPending() {
+
+		final Map<String, GraphObject> pending = new LinkedHashMap<>();
+		final Set<NodeInterface> nodes         = exportSet.getNodes();
+
+		for (final NodeInterface node : nodes) {
+
+			if (!committedIds.contains(node.getUuid())) {
+				pending.put(node.getUuid(), node);
+			}
+		}
+
+		for (final RelationshipInterface rel : exportSet.getRelationships()) {
+
+			if (!committedIds.contains(rel.getUuid()) && nodes.contains(rel.getSourceNode()) && nodes.contains(rel.getTargetNode())) {
+				pending.put(rel.getUuid(), rel);
+			}
+		}
+
+		return pending;
+	}
+
+	private String getCheckpointKey() {
+		return getUserName() + "@" + getRemoteHost() + ":" + getRemotePort() + "/" + rootId + (recursive ? "/recursive" : "");
+	}
+
+	private static Set<String> readCheckpoint(final String key) {
+
+		final Path file = getCheckpointFile(key);
+		if (file != null && Files.isRegularFile(file)) {
+
+			try {
+				return new HashSet<>(Files.readAllLines(file, StandardCharsets.UTF_8));
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to read checkpoint file {0}: {1}", new Object[] { file, ioex.getMessage() });
+			}
+		}
+
+		return null;
+	}
+
+	private static void writeCheckpoint(final String key, final Set<String> ids) {
+
+		final Path file = getCheckpointFile(key);
+		if (file != null) {
+
+			final Path tmpFile = file.resolveSibling(file.getFileName().toString().concat(".tmp"));
+
+			try {
+				Files.write(tmpFile, ids, StandardCharsets.UTF_8);
+				Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to write checkpoint file {0}: {1}", new Object[] { file, ioex.getMessage() });
+			}
+		}
+	}
+
+	private static void removeCheckpoint(final String key) {
+
+		final Path file = getCheckpointFile(key);
+		if (file != null) {
+
+			try {
+				Files.deleteIfExists(file);
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to remove checkpoint file {0}: {1}", new Object[] { file, ioex.getMessage() });
+			}
+		}
+	}
+
+	private static Path getCheckpointFile(final String key) {
+
+		final String basePath = Services.getInstance().getConfigurationValue(Services.BASE_PATH);
+		if (StringUtils.isNotBlank(basePath)) {
+
+			final Path directory = Paths.get(basePath, CHECKPOINT_DIRECTORY);
+
+			try {
+				return Files.createDirectories(directory).resolve(DigestUtils.sha1Hex(key));
+
+			} catch (IOException ioex) {
+
+				logger.log(Level.WARNING, "Unable to create checkpoint directory {0}: {1}", new Object[] { directory, ioex.getMessage() });
+			}
+		}
+
+		return null;
 	}
 
+	// ----- public static methods -----
 	/**
 	 * Splits the given file and sends it over the client connection. This method first creates a <code>FileNodeDataContainer</code> and sends it to the remote end. The file from disk is then
 	 * split into multiple instances of <code>FileChunkContainer</code> while being sent. To finalize the transfer, a <code>FileNodeEndChunk</code> is sent to notify the receiving end of the
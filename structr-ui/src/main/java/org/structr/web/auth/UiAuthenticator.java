@@ -68,6 +68,7 @@ public class UiAuthenticator implements Authenticator {
 
 		methods.put("GET", Method.GET);
 		methods.put("PUT", Method.PUT);
+		methods.put("PATCH", Method.PUT);
 		methods.put("POST", Method.POST);
 		methods.put("DELETE", Method.DELETE);
 		methods.put("OPTIONS", Method.OPTIONS);
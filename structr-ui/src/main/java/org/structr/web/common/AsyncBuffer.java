@@ -26,10 +26,11 @@ import java.util.Queue;
  *
  * @author Axel Morgner
  */
-public class AsyncBuffer {
+public class AsyncBuffer implements RenderBuffer {
 
 	private final Queue<String> queue = new LinkedList<>();
 
+	@Override
 	public AsyncBuffer append(final String s) {
 
 		try {
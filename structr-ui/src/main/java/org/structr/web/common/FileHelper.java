@@ -18,12 +18,16 @@
  */
 package org.structr.web.common;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.CRC32;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.activation.MimetypesFileTypeMap;
@@ -59,6 +63,8 @@ import org.structr.web.entity.Folder;
 public class FileHelper {
 
 	private static final String UNKNOWN_MIME_TYPE = "application/octet-stream";
+	private static final int BUFFER_SIZE = 65536;
+	private static final int SNIFF_SIZE = 8192;
 	private static final Logger logger = Logger.getLogger(FileHelper.class.getName());
 	private static final MimetypesFileTypeMap mimeTypeMap = new MimetypesFileTypeMap(FileHelper.class.getResourceAsStream("/mime.types"));
 
@@ -127,9 +133,15 @@ public class FileHelper {
 	public static <T extends org.structr.dynamic.File> T createFile(final SecurityContext securityContext, final InputStream fileStream, final String contentType, final Class<T> fileType, final String name)
 		throws FrameworkException, IOException {
 
-		final byte[] data = IOUtils.toByteArray(fileStream);
-		return createFile(securityContext, data, contentType, fileType, name);
+		PropertyMap props = new PropertyMap();
+
+		props.put(AbstractNode.name, name);
+
+		T newFile = (T) StructrApp.getInstance(securityContext).create(fileType, props);
 
+		setFileData(newFile, fileStream, contentType);
+
+		return newFile;
 	}
 
 	/**
@@ -215,6 +227,28 @@ public class FileHelper {
 
 	}
 
+	/**
+	 * Stream data to the given file node and set checksum, size and content
+	 * type, which are computed while the data is written to disk.
+	 *
+	 * @param file
+	 * @param fileStream
+	 * @param contentType if null, try to auto-detect content type
+	 * @throws FrameworkException
+	 * @throws IOException
+	 */
+	public static void setFileData(final org.structr.dynamic.File file, final InputStream fileStream, final String contentType)
+		throws FrameworkException, IOException {
+
+		final StreamedFile streamedFile = streamToFile(file, fileStream);
+
+		file.setProperty(org.structr.dynamic.File.contentType, contentType != null ? contentType : getContentMimeType(streamedFile.header, streamedFile.fileOnDisk, file.getProperty(AbstractNode.name)));
+		file.unlockReadOnlyPropertiesOnce();
+		file.setProperty(org.structr.dynamic.File.checksum, streamedFile.checksum);
+		file.unlockReadOnlyPropertiesOnce();
+		file.setProperty(org.structr.dynamic.File.size, streamedFile.size);
+	}
+
 	//~--- get methods ----------------------------------------------------
 	public static String getBase64String(final org.structr.dynamic.File file) {
 
@@ -230,6 +264,18 @@ public class FileHelper {
 	}
 
 	//~--- inner classes --------------------------------------------------
+	private static class StreamedFile {
+
+		private File fileOnDisk = null;
+		private byte[] header   = null;
+		private long checksum   = 0L;
+		private long size       = 0L;
+
+		public StreamedFile(final File fileOnDisk) {
+			this.fileOnDisk = fileOnDisk;
+		}
+	}
+
 	public static class Base64URIData {
 
 		private final String contentType;
@@ -277,7 +323,12 @@ public class FileHelper {
 	 */
 	public static void writeToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
 
-		writeToFile(fileNode, IOUtils.toByteArray(inStream));
+		final StreamedFile streamedFile = streamToFile(fileNode, inStream);
+
+		fileNode.unlockReadOnlyPropertiesOnce();
+		fileNode.setProperty(org.structr.dynamic.File.checksum, streamedFile.checksum);
+		fileNode.unlockReadOnlyPropertiesOnce();
+		fileNode.setProperty(org.structr.dynamic.File.size, streamedFile.size);
 
 	}
 
@@ -294,6 +345,24 @@ public class FileHelper {
 	 */
 	public static File writeToFile(final org.structr.dynamic.File fileNode, final byte[] data) throws FrameworkException, IOException {
 
+		final java.io.File fileOnDisk = prepareFileOnDisk(fileNode);
+
+		FileUtils.writeByteArrayToFile(fileOnDisk, data);
+
+		return fileOnDisk;
+
+	}
+
+	/**
+	 * Assign the path on disk to the given file node and create the parent
+	 * directories of that path.
+	 *
+	 * @param fileNode
+	 * @return the file on disk
+	 * @throws FrameworkException
+	 */
+	private static File prepareFileOnDisk(final org.structr.dynamic.File fileNode) throws FrameworkException {
+
 		String id = fileNode.getProperty(GraphObject.id);
 		if (id == null) {
 
@@ -312,12 +381,47 @@ public class FileHelper {
 		java.io.File fileOnDisk = new java.io.File(filesPath + "/" + fileNode.getRelativeFilePath());
 
 		fileOnDisk.getParentFile().mkdirs();
-		FileUtils.writeByteArrayToFile(fileOnDisk, data);
 
 		return fileOnDisk;
 
 	}
 
+	/**
+	 * Copy the given stream to the file on disk, computing the CRC32 checksum
+	 * and the size and keeping the first bytes for content type detection.
+	 * The stream is not closed.
+	 */
+	private static StreamedFile streamToFile(final org.structr.dynamic.File fileNode, final InputStream inStream) throws FrameworkException, IOException {
+
+		final StreamedFile streamedFile          = new StreamedFile(prepareFileOnDisk(fileNode));
+		final ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream(SNIFF_SIZE);
+		final byte[] buffer                      = new byte[BUFFER_SIZE];
+		final CRC32 crc                          = new CRC32();
+		long size                                = 0L;
+		int count                                = 0;
+
+		try (final OutputStream out = new FileOutputStream(streamedFile.fileOnDisk)) {
+
+			while ((count = inStream.read(buffer)) != -1) {
+
+				if (headerBuffer.size() < SNIFF_SIZE) {
+					headerBuffer.write(buffer, 0, Math.min(count, SNIFF_SIZE - headerBuffer.size()));
+				}
+
+				crc.update(buffer, 0, count);
+				out.write(buffer, 0, count);
+
+				size += count;
+			}
+		}
+
+		streamedFile.header   = headerBuffer.toByteArray();
+		streamedFile.checksum = crc.getValue();
+		streamedFile.size     = size;
+
+		return streamedFile;
+	}
+
 	//~--- get methods ----------------------------------------------------
 	/**
 	 * Return mime type of given file
@@ -368,33 +472,46 @@ public class FileHelper {
 	}
 
 	/**
-	 * Return mime type of given byte array.
+	 * Return mime type of a file, using the first bytes of its content
+	 * instead of reading the whole file.
 	 *
-	 * Use on streams.
-	 *
-	 * @param bytes
-	 * @param fileName
+	 * @param header the first bytes of the file
+	 * @param file the file on disk
+	 * @param name
 	 * @return
-	public static String getContentMimeType(final byte[] bytes, final String fileName) {
+	 */
+	public static String getContentMimeType(final byte[] header, final java.io.File file, final String name) throws IOException {
 
-		MagicMatch match;
+		// try name first
+		String mimeType = mimeTypeMap.getContentType(name);
+		if (mimeType != null && !UNKNOWN_MIME_TYPE.equals(mimeType)) {
+			return mimeType;
+		}
 
-		try {
+		// then file content
+		mimeType = Files.probeContentType(file.toPath());
+		if (mimeType != null && !UNKNOWN_MIME_TYPE.equals(mimeType)) {
 
-			match = Magic.getMagicMatch(bytes, true);
+			return mimeType;
+		}
 
-			return match.getMimeType();
+		// fallback: jmimemagic on the header
+		if (header != null && header.length > 0) {
 
-		} catch (MagicParseException | MagicMatchNotFoundException | MagicException e) {
+			try {
+				final MagicMatch match = Magic.getMagicMatch(header, true);
+				if (match != null) {
 
-			logger.log(Level.FINE, "Could not determine content type", e);
+					return match.getMimeType();
+				}
 
+			} catch (MagicParseException | MagicMatchNotFoundException | MagicException ignore) {
+			}
 		}
 
+		// no success :(
 		return UNKNOWN_MIME_TYPE;
-
 	}
-	 */
 
 	/**
 	 * Return mime type of given file
@@ -530,48 +647,7 @@ public class FileHelper {
 	 * @return
 	 */
 	public static AbstractFile getFileByAbsolutePath(final SecurityContext securityContext, final String absolutePath) {
-
-		String[] parts = PathHelper.getParts(absolutePath);
-
-		if (parts == null || parts.length == 0) {
-			return null;
-		}
-
-		// Find root folder
-		if (parts[0].length() == 0) {
-			return null;
-		}
-
-		AbstractFile currentFile = getFirstRootFileByName(securityContext, parts[0]);
-		if (currentFile == null) {
-			return null;
-		}
-
-		for (int i = 1; i < parts.length; i++) {
-
-			List<AbstractFile> children = currentFile.getProperty(AbstractFile.children);
-
-			currentFile = null;
-
-			for (AbstractFile child : children) {
-
-				if (child.getProperty(AbstractFile.name).equals(parts[i])) {
-
-					// Child with matching name found
-					currentFile = child;
-					break;
-				}
-
-			}
-
-			if (currentFile == null) {
-				return null;
-			}
-
-		}
-
-		return currentFile;
-
+		return FilePathIndex.getFile(securityContext, absolutePath);
 	}
 
 	public static AbstractFile getFileByUuid(final SecurityContext securityContext, final String uuid) {
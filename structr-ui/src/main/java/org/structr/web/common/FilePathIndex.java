@@ -0,0 +1,359 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.structr.common.PathHelper;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrCache;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.relationship.AbstractChildren;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.relation.FileChildren;
+
+/**
+ * Index for the resolution of absolute file paths.
+ *
+ * The index maps absolute paths to node ids, and (parent id, name) pairs to
+ * the node ids of the children of a folder. Entries are verified against the
+ * database before they are used, so a path can be resolved with one lookup
+ * per path element instead of one instantiation and security check for each
+ * sibling of each path element. The index is shared by all users, so every
+ * element of a path is instantiated in the security context of the caller.
+ *
+ * The children of a folder are read once, without instantiating them. Files
+ * that are created, renamed or moved are added to the children of their new
+ * parent after commit; entries of files that were renamed, moved or deleted
+ * no longer match and are discarded. A name that is missing from the known
+ * children of a folder causes one re-read of the folder, and the index is
+ * cleared after imports, which create files without notifications.
+ *
+ * @author Christian Morgner
+ */
+public class FilePathIndex implements StructrTransactionListener, StructrCache {
+
+	private static final int MAX_PATHS   = 100000;
+	private static final int MAX_FOLDERS = 10000;
+
+	private static final Map<String, Long> paths                 = Collections.synchronizedMap(new LRUMap(MAX_PATHS));
+	private static final Map<Long, Map<String, Long>> children = Collections.synchronizedMap(new LRUMap(MAX_FOLDERS));
+	private static final RelationshipType childType              = DynamicRelationshipType.withName(new FileChildren().name());
+	private static final String nameKey                          = AbstractNode.name.dbName();
+	private static final AtomicLong modificationCount            = new AtomicLong();
+	private static volatile GraphDatabaseService graphDb         = null;
+
+	static {
+
+		final FilePathIndex index = new FilePathIndex();
+
+		TransactionCommand.registerTransactionListener(index);
+		TransactionCommand.registerCache(index);
+	}
+
+	/**
+	 * Resolves the given absolute path.
+	 *
+	 * @param securityContext
+	 * @param absolutePath
+	 * @return the file or folder with the given path, or null
+	 */
+	public static AbstractFile getFile(final SecurityContext securityContext, final String absolutePath) {
+
+		final String[] parts = PathHelper.getParts(absolutePath);
+
+		if (parts == null || parts.length == 0 || parts[0].length() == 0) {
+			return null;
+		}
+
+		checkDatabase();
+
+		final String path = "/".concat(StringUtils.join(parts, "/"));
+		final Long id     = paths.get(path);
+
+		if (id != null) {
+
+			final Node node        = getNode(id);
+			final Node[] pathNodes = node != null ? getPathNodes(node, parts) : null;
+
+			if (pathNodes != null) {
+
+				// the index is shared by all users, so each element of the path
+				// must be visible to the caller, just like in the resolution below
+				AbstractFile file = null;
+
+				for (final Node pathNode : pathNodes) {
+
+					file = instantiate(securityContext, pathNode);
+					if (file == null) {
+
+						// not visible to the caller
+						return null;
+					}
+				}
+
+				return file;
+			}
+
+			paths.remove(path);
+		}
+
+		AbstractFile currentFile = FileHelper.getFirstRootFileByName(securityContext, parts[0]);
+		if (currentFile == null) {
+			return null;
+		}
+
+		for (int i = 1; i < parts.length; i++) {
+
+			currentFile = getChild(securityContext, currentFile, parts[i]);
+			if (currentFile == null) {
+				return null;
+			}
+		}
+
+		paths.put(path, currentFile.getId());
+
+		return currentFile;
+	}
+
+	/**
+	 * Returns the child with the given name.
+	 *
+	 * @param securityContext
+	 * @param parent
+	 * @param name
+	 * @return the child with the given name, or null
+	 */
+	public static AbstractFile getChild(final SecurityContext securityContext, final AbstractFile parent, final String name) {
+
+		checkDatabase();
+
+		return getChild(securityContext, parent, name, true);
+	}
+
+	/**
+	 * Adds the given file to the children of its parent folder.
+	 *
+	 * @param file
+	 */
+	public static void update(final AbstractFile file) {
+
+		modificationCount.incrementAndGet();
+
+		final Node parent = getParent(file.getNode());
+		final String name = file.getName();
+
+		if (parent != null && name != null) {
+
+			final Map<String, Long> folder = children.get(parent.getId());
+			if (folder != null) {
+
+				folder.put(name, file.getId());
+			}
+		}
+	}
+
+	public static void clear() {
+
+		paths.clear();
+		children.clear();
+	}
+
+	// ----- interface StructrCache -----
+	@Override
+	public void clearCache() {
+		clear();
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void transactionCommited(final SecurityContext securityContext, final List<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			if (event.isDeleted()) {
+				continue;
+			}
+
+			if (obj instanceof AbstractFile) {
+
+				update((AbstractFile)obj);
+
+			} else if (obj instanceof AbstractChildren) {
+
+				final Object target = ((AbstractChildren)obj).getTargetNode();
+				if (target instanceof AbstractFile) {
+
+					update((AbstractFile)target);
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private static AbstractFile getChild(final SecurityContext securityContext, final AbstractFile parent, final String name, final boolean retry) {
+
+		final Node parentNode    = parent.getNode();
+		final long parentId      = parentNode.getId();
+		final boolean modified   = TransactionCommand.isModified(parent);
+		Map<String, Long> folder = modified ? null : children.get(parentId);
+		final boolean cached     = folder != null;
+
+		if (folder == null) {
+
+			final long count = modificationCount.get();
+
+			folder = new ConcurrentHashMap<>();
+
+			for (final Relationship rel : parentNode.getRelationships(childType, Direction.OUTGOING)) {
+
+				final Node node        = rel.getEndNode();
+				final Object childName = node.getProperty(nameKey, null);
+
+				if (childName != null) {
+					folder.put(childName.toString(), node.getId());
+				}
+			}
+
+			// children that were added in the current transaction, or while
+			// the children were read, must not end up in the index
+			if (!modified && modificationCount.get() == count) {
+				children.put(parentId, folder);
+			}
+		}
+
+		final Long id = folder.get(name);
+		if (id != null) {
+
+			final Node node = getNode(id);
+			if (node != null && name.equals(node.getProperty(nameKey, null)) && parentNode.equals(getParent(node))) {
+
+				return instantiate(securityContext, node);
+			}
+
+			// the file was renamed, moved or deleted, another child may have the same name
+			children.remove(parentId);
+
+			if (retry) {
+				return getChild(securityContext, parent, name, false);
+			}
+
+		} else if (cached && retry) {
+
+			// the child may have been created without a notification, e.g. by an import
+			children.remove(parentId);
+
+			return getChild(securityContext, parent, name, false);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the nodes of the elements of the given path, or null if the
+	 * given node is not at the end of the path.
+	 */
+	private static Node[] getPathNodes(final Node node, final String[] parts) {
+
+		final Node[] pathNodes = new Node[parts.length];
+		Node current           = node;
+
+		for (int i = parts.length - 1; i >= 0; i--) {
+
+			if (current == null || !parts[i].equals(current.getProperty(nameKey, null))) {
+				return null;
+			}
+
+			pathNodes[i] = current;
+			current      = getParent(current);
+		}
+
+		// the first path element must be a root file
+		return current == null ? pathNodes : null;
+	}
+
+	private static Node getParent(final Node node) {
+
+		for (final Relationship rel : node.getRelationships(childType, Direction.INCOMING)) {
+			return rel.getStartNode();
+		}
+
+		return null;
+	}
+
+	private static Node getNode(final long id) {
+
+		try {
+			return graphDb.getNodeById(id);
+
+		} catch (NotFoundException nfex) {}
+
+		return null;
+	}
+
+	/**
+	 * Node ids are only valid for the database they were read from.
+	 */
+	private static void checkDatabase() {
+
+		final GraphDatabaseService current = Services.getInstance().getService(NodeService.class).getGraphDb();
+		if (current != graphDb) {
+
+			clear();
+			graphDb = current;
+		}
+	}
+
+	private static AbstractFile instantiate(final SecurityContext securityContext, final Node node) {
+
+		try {
+			final NodeInterface file = new NodeFactory<>(securityContext).instantiate(node);
+			if (file instanceof AbstractFile) {
+
+				return (AbstractFile)file;
+			}
+
+		} catch (FrameworkException fex) {}
+
+		return null;
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedList;
+import java.util.List;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.servlets.gzip.CompressedResponseWrapper;
+
+/**
+ * Serves a file from disk, with support for single and multiple byte ranges
+ * (RFC 7233), <code>If-Range</code> and strong entity tags. The content is
+ * transferred by the file channel (or the container, if possible) without
+ * being copied into the heap.
+ *
+ * @author Christian Morgner
+ */
+public class FileStreamer {
+
+	public static final int MAX_RANGES = 16;
+
+	private static final Charset ISO_8859_1 = Charset.forName("iso-8859-1");
+
+	/**
+	 * Creates a strong entity tag from the given checksum and size.
+	 *
+	 * @param checksum
+	 * @param size
+	 * @return the entity tag, or null if no checksum is available
+	 */
+	public static String getETag(final Long checksum, final long size) {
+
+		if (checksum != null) {
+
+			return "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size) + "\"";
+		}
+
+		return null;
+	}
+
+	/**
+	 * Indicates whether the value of an <code>If-None-Match</code> or
+	 * <code>If-Match</code> header matches the given entity tag.
+	 *
+	 * @param header
+	 * @param etag
+	 * @return whether the header matches
+	 */
+	public static boolean matches(final String header, final String etag) {
+
+		if (header != null && etag != null) {
+
+			for (final String candidate : StringUtils.split(header, ",")) {
+
+				final String trimmed = candidate.trim();
+
+				if ("*".equals(trimmed) || etag.equals(trimmed) || etag.equals(StringUtils.removeStart(trimmed, "W/"))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Parses the value of a <code>Range</code> header.
+	 *
+	 * @param header
+	 * @param length the length of the file
+	 * @return a list of ranges (start and end, both inclusive), an empty list
+	 * if no range can be satisfied, or null if the header is to be ignored
+	 */
+	public static List<long[]> parseRanges(final String header, final long length) {
+
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+
+		final List<long[]> ranges = new LinkedList<>();
+
+		for (final String part : StringUtils.split(header.substring(6), ",")) {
+
+			final String spec = part.trim();
+			final int dash    = spec.indexOf('-');
+
+			if (dash < 0) {
+				return null;
+			}
+
+			try {
+
+				final String first = spec.substring(0, dash).trim();
+				final String last  = spec.substring(dash + 1).trim();
+				long start         = 0L;
+				long end           = length - 1;
+
+				if (first.isEmpty()) {
+
+					// suffix range: the last n bytes
+					final long suffix = Long.parseLong(last);
+					if (suffix <= 0) {
+						continue;
+					}
+
+					start = Math.max(0L, length - suffix);
+
+				} else {
+
+					start = Long.parseLong(first);
+
+					if (!last.isEmpty()) {
+
+						end = Long.parseLong(last);
+
+						if (end < start) {
+							return null;
+						}
+
+						end = Math.min(end, length - 1);
+					}
+				}
+
+				if (start < length) {
+					ranges.add(new long[] { start, end });
+				}
+
+			} catch (NumberFormatException nfex) {
+				return null;
+			}
+		}
+
+		// serve the whole file instead of a large number of parts
+		if (ranges.size() > MAX_RANGES) {
+			return null;
+		}
+
+		return ranges;
+	}
+
+	/**
+	 * Streams the given file to the response, honoring the <code>Range</code>
+	 * and <code>If-Range</code> headers of the request.
+	 *
+	 * @param request
+	 * @param response
+	 * @param file the file on disk
+	 * @param contentType
+	 * @param etag the strong entity tag of the file, or null
+	 * @param lastModified the last modification date as sent in the Last-Modified header, or null
+	 * @throws IOException
+	 */
+	public static void stream(final HttpServletRequest request, final HttpServletResponse response, final File file, final String contentType, final String etag, final String lastModified) throws IOException {
+
+		final long length   = file.length();
+		List<long[]> ranges = null;
+
+		// byte ranges refer to the identity encoding, and most files are compressed already
+		if (response instanceof CompressedResponseWrapper) {
+			((CompressedResponseWrapper)response).noCompression();
+		}
+
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified)) {
+
+			ranges = parseRanges(request.getHeader("Range"), length);
+			if (ranges != null && ranges.isEmpty()) {
+
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+				return;
+			}
+		}
+
+		try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+
+			final ServletOutputStream out = response.getOutputStream();
+
+			if (ranges == null) {
+
+				response.setStatus(HttpServletResponse.SC_OK);
+				response.setContentType(contentType);
+				setContentLength(response, length);
+
+				send(out, channel, 0L, length);
+
+			} else if (ranges.size() == 1) {
+
+				final long[] range = ranges.get(0);
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType(contentType);
+				response.setHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+				setContentLength(response, range[1] - range[0] + 1);
+
+				send(out, channel, range[0], range[1] - range[0] + 1);
+
+			} else {
+
+				final String boundary      = "STRUCTR_" + Long.toHexString(System.nanoTime());
+				final List<byte[]> headers = new LinkedList<>();
+				final byte[] trailer       = ("\r\n--" + boundary + "--\r\n").getBytes(ISO_8859_1);
+				long contentLength         = trailer.length;
+
+				for (final long[] range : ranges) {
+
+					final byte[] header = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes(ISO_8859_1);
+
+					contentLength += header.length + range[1] - range[0] + 1;
+					headers.add(header);
+				}
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType("multipart/byteranges; boundary=" + boundary);
+				setContentLength(response, contentLength);
+
+				final WritableByteChannel target = Channels.newChannel(out);
+				int i                            = 0;
+
+				for (final long[] range : ranges) {
+
+					out.write(headers.get(i++));
+					transfer(channel, range[0], range[1] - range[0] + 1, target);
+				}
+
+				out.write(trailer);
+				out.flush();
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private static void setContentLength(final HttpServletResponse response, final long length) {
+
+		// response wrappers written against servlet 3.0 only intercept the int variant
+		if (length <= Integer.MAX_VALUE) {
+
+			response.setContentLength((int)length);
+
+		} else {
+
+			response.setContentLengthLong(length);
+		}
+	}
+
+	private static void send(final ServletOutputStream out, final FileChannel channel, final long position, final long count) throws IOException {
+
+		if (out instanceof HttpOutput && count <= Integer.MAX_VALUE) {
+
+			// let the container write the mapped file region to the socket
+			((HttpOutput)out).sendContent(channel.map(FileChannel.MapMode.READ_ONLY, position, count));
+
+		} else {
+
+			transfer(channel, position, count, Channels.newChannel(out));
+			out.flush();
+		}
+	}
+
+	private static void transfer(final FileChannel channel, final long position, final long count, final WritableByteChannel target) throws IOException {
+
+		long offset    = position;
+		long remaining = count;
+
+		while (remaining > 0) {
+
+			final long transferred = channel.transferTo(offset, remaining, target);
+			if (transferred <= 0) {
+				break;
+			}
+
+			offset    += transferred;
+			remaining -= transferred;
+		}
+	}
+}
@@ -79,7 +79,17 @@ public abstract class ImageHelper extends FileHelper {
 	public static Image createImage(final SecurityContext securityContext, final InputStream imageStream, final String contentType, final Class<? extends Image> imageType, final String name, final boolean markAsThumbnail)
 		throws FrameworkException, IOException {
 
-		return createImage(securityContext, IOUtils.toByteArray(imageStream), contentType, imageType, name, markAsThumbnail);
+		PropertyMap props                          = new PropertyMap();
+
+		props.put(AbstractNode.type, imageType == null ? Image.class.getSimpleName() : imageType.getSimpleName());
+		props.put(Image.isThumbnail, markAsThumbnail);
+		props.put(AbstractNode.name, name);
+
+		Image newImage = StructrApp.getInstance(securityContext).create(imageType, props);
+
+		setFileData(newImage, imageStream, contentType);
+
+		return newImage;
 
 	}
 
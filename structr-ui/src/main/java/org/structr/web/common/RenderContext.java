@@ -62,7 +62,7 @@ public class RenderContext extends ActionContext {
 	private final long renderStartTime = System.currentTimeMillis();
 	private Locale locale = Locale.getDefault();
 	private EditMode editMode = EditMode.NONE;
-	private AsyncBuffer buffer = new AsyncBuffer();
+	private RenderBuffer buffer = new AsyncBuffer();
 	private int depth = 0;
 	private boolean inBody = false;
 	private boolean appLibRendered = false;
@@ -77,6 +77,7 @@ public class RenderContext extends ActionContext {
 	private ResourceProvider resourceProvider = null;
 	private Result result = null;
 	private boolean anyChildNodeCreatesNewLine = false;
+	private RenderFragmentCache.Recording recording = null;
 
 	public enum EditMode {
 
@@ -109,6 +110,7 @@ public class RenderContext extends ActionContext {
 		this.resourceProvider = other.resourceProvider;
 		this.result = other.result;
 		this.anyChildNodeCreatesNewLine = other.anyChildNodeCreatesNewLine;
+		this.recording = other.recording;
 
 		this.tmpStore = other.tmpStore;
 		this.counters = other.counters;
@@ -272,14 +274,22 @@ public class RenderContext extends ActionContext {
 		return depth;
 	}
 
-	public void setBuffer(final AsyncBuffer buffer) {
+	public void setBuffer(final RenderBuffer buffer) {
 		this.buffer = buffer;
 	}
 
-	public AsyncBuffer getBuffer() {
+	public RenderBuffer getBuffer() {
 		return buffer;
 	}
 
+	public void setRecording(final RenderFragmentCache.Recording recording) {
+		this.recording = recording;
+	}
+
+	public RenderFragmentCache.Recording getRecording() {
+		return recording;
+	}
+
 	public void setInBody(final boolean inBody) {
 		this.inBody = inBody;
 	}
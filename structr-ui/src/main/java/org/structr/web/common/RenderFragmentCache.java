@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.collections.map.LRUMap;
+import org.apache.commons.lang3.StringUtils;
+import org.neo4j.graphdb.Node;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrCache;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.RelationshipInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.entity.dom.DOMElement;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Template;
+import org.structr.web.servlet.HtmlServlet;
+
+/**
+ * Bounded cache for the rendered output of static DOM subtrees.
+ *
+ * A subtree is static if none of its nodes is data-bound (dataKey or one of
+ * the query properties), has show/hide conditions or contains a template
+ * expression in any of its properties. The output of such a subtree depends
+ * only on the node properties and on the rendering parameters that make up
+ * the cache key (page, node, locale, edit mode, user, detail mode, depth and
+ * body / app lib state). Each entry records the ids of all nodes that were
+ * rendered into it, so a modification of any of these nodes (or of a
+ * relationship between them) evicts the entry. Changes to principals and
+ * groups clear the whole cache, since they can change node visibility.
+ *
+ * Subtrees that turn out not to be static are remembered as well, so they
+ * are not captured again until one of their nodes changes.
+ *
+ * @author Christian Morgner
+ */
+public class RenderFragmentCache implements StructrTransactionListener, StructrCache {
+
+	private static final int MAX_FRAGMENTS                                = 10000;
+
+	private static final ConcurrentMap<String, PageStatistics> statistics = new ConcurrentHashMap<>();
+	private static final Map<String, Set<String>> dependencies            = new HashMap<>();
+	private static final Map<String, Fragment> fragments                  = new DependencyLRUMap(MAX_FRAGMENTS);
+	private static final Object lock                                      = new Object();
+	private static Boolean enabled                                        = null;
+
+	static {
+
+		final RenderFragmentCache cache = new RenderFragmentCache();
+
+		TransactionCommand.registerTransactionListener(cache);
+		TransactionCommand.registerCache(cache);
+	}
+
+	/**
+	 * Renders the given node, either by appending a cached fragment or by
+	 * rendering the node and capturing its output for later requests.
+	 *
+	 * @param node
+	 * @param securityContext
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	public static void render(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final Recording parent = renderContext.getRecording();
+		final String uuid      = node.getUuid();
+
+		if (!isEnabled() || uuid == null) {
+
+			markDynamic(renderContext);
+			node.renderNode(securityContext, renderContext, depth);
+
+			return;
+		}
+
+		final PageStatistics stats = getStatistics(renderContext.getPageId());
+		final String key           = getKey(node, securityContext, renderContext, depth);
+		final Fragment cached      = get(key);
+
+		if (cached != null) {
+
+			if (cached.content != null) {
+
+				renderContext.getBuffer().append(cached.content);
+				stats.hits.incrementAndGet();
+				stats.savedTime.addAndGet(cached.renderTime);
+
+				if (parent != null) {
+					parent.add(cached.dependencies, true);
+				}
+
+				return;
+			}
+
+			// known to be dynamic, render without capturing
+			if (parent != null) {
+				parent.add(cached.dependencies, false);
+			}
+
+			stats.uncacheable.incrementAndGet();
+			node.renderNode(securityContext, renderContext, depth);
+
+			return;
+		}
+
+		final RenderBuffer buffer      = renderContext.getBuffer();
+		final AsyncBuffer capture      = new AsyncBuffer();
+		final Recording recording      = new Recording(parent);
+		final boolean inBody           = renderContext.inBody();
+		final boolean appLibRendered   = renderContext.appLibRendered();
+		final long t0                  = System.nanoTime();
+
+		recording.add(uuid, isStatic(node));
+
+		renderContext.setBuffer(capture);
+		renderContext.setRecording(recording);
+
+		try {
+
+			node.renderNode(securityContext, renderContext, depth);
+
+		} finally {
+
+			renderContext.setBuffer(buffer);
+			renderContext.setRecording(parent);
+		}
+
+		final String content = StringUtils.join(capture.getQueue(), "");
+		final long renderTime = System.nanoTime() - t0;
+
+		buffer.append(content);
+
+		// side effects on the render context can not be replayed from the cache
+		if (inBody != renderContext.inBody() || appLibRendered != renderContext.appLibRendered() || renderContext.hasTimeout(DOMElement.RENDER_TIMEOUT)) {
+			recording.cacheable = false;
+		}
+
+		stats.misses.incrementAndGet();
+
+		put(key, new Fragment(recording.cacheable ? content : null, recording.dependencies, renderTime));
+	}
+
+	/**
+	 * Marks the current recording (if any) as not cacheable. Renderables
+	 * that do not render through {@link DOMNode#render} must call this
+	 * method so that enclosing fragments are not cached.
+	 *
+	 * @param renderContext
+	 */
+	public static void markDynamic(final RenderContext renderContext) {
+
+		final Recording recording = renderContext.getRecording();
+		if (recording != null) {
+
+			recording.add(Collections.<String>emptySet(), false);
+		}
+	}
+
+	/**
+	 * Removes all fragments that depend on the node with the given id.
+	 *
+	 * @param uuid
+	 */
+	public static void invalidate(final String uuid) {
+
+		synchronized (lock) {
+
+			final Set<String> keys = dependencies.remove(uuid);
+			if (keys != null) {
+
+				for (final String key : keys) {
+					removeEntry(key);
+				}
+			}
+		}
+	}
+
+	public static void clear() {
+
+		synchronized (lock) {
+
+			fragments.clear();
+			dependencies.clear();
+		}
+	}
+
+	public static int size() {
+
+		synchronized (lock) {
+			return fragments.size();
+		}
+	}
+
+	public static boolean isEnabled() {
+
+		if (enabled == null) {
+
+			enabled = !"false".equalsIgnoreCase(StructrApp.getConfigurationValue(HtmlServlet.FRAGMENT_CACHE, "true"));
+		}
+
+		return enabled;
+	}
+
+	public static void setEnabled(final boolean enable) {
+
+		enabled = enable;
+
+		if (!enable) {
+			clear();
+		}
+	}
+
+	/**
+	 * Returns the hit statistics for the page with the given id.
+	 *
+	 * @param pageId
+	 * @return the statistics
+	 */
+	public static PageStatistics getStatistics(final String pageId) {
+
+		final String key     = pageId != null ? pageId : "";
+		PageStatistics stats = statistics.get(key);
+
+		if (stats == null) {
+
+			final PageStatistics newStats = new PageStatistics();
+
+			stats = statistics.putIfAbsent(key, newStats);
+			if (stats == null) {
+
+				stats = newStats;
+			}
+		}
+
+		return stats;
+	}
+
+	public static Map<String, PageStatistics> getStatistics() {
+		return Collections.unmodifiableMap(statistics);
+	}
+
+	public static void resetStatistics() {
+		statistics.clear();
+	}
+
+	// ----- interface StructrCache -----
+	@Override
+	public void clearCache() {
+		clear();
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void transactionCommited(final SecurityContext securityContext, final List<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			final GraphObject obj = event.getGraphObject();
+
+			if (obj instanceof Principal && affectsVisibility(event)) {
+
+				clear();
+				return;
+			}
+
+			if (event.isNode()) {
+
+				invalidate(event.getUuid());
+
+			} else if (obj instanceof RelationshipInterface) {
+
+				final RelationshipInterface rel = (RelationshipInterface) obj;
+
+				try {
+					invalidate(rel.getSourceNodeId());
+					invalidate(rel.getTargetNodeId());
+
+				} catch (Throwable t) {
+
+					// endpoints of deleted relationships can not be
+					// resolved, but they are reported as modified nodes
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	/**
+	 * Principals are modified on every login, only changes to their group
+	 * memberships, their existence or their flags affect what they can see.
+	 */
+	private static boolean affectsVisibility(final ModificationEvent event) {
+
+		if (event.isCreated() || event.isDeleted()) {
+			return true;
+		}
+
+		final PropertyMap modifiedProperties = event.getModifiedProperties();
+
+		return modifiedProperties == null || modifiedProperties.isEmpty() || modifiedProperties.containsKey(Principal.isAdmin) || modifiedProperties.containsKey(Principal.blocked);
+	}
+
+	private static String getKey(final DOMNode node, final SecurityContext securityContext, final RenderContext renderContext, final int depth) {
+
+		final Principal user      = securityContext.getUser(false);
+		final EditMode editMode   = renderContext.getEditMode(user);
+		final StringBuilder buf   = new StringBuilder();
+
+		buf.append(renderContext.getPageId()).append("/");
+		buf.append(node.getUuid()).append("/");
+		buf.append(renderContext.getLocale()).append("/");
+		buf.append(editMode).append("/");
+		buf.append(user != null ? user.getUuid() : securityContext.isSuperUser() ? "superuser" : "anonymous").append("/");
+		buf.append(renderContext.getDetailsDataObject() != null).append("/");
+		buf.append(depth).append("/");
+		buf.append(renderContext.inBody()).append("/");
+		buf.append(renderContext.appLibRendered());
+
+		return buf.toString();
+	}
+
+	/**
+	 * Indicates whether the output of the given node (not including its
+	 * children) is fully determined by its properties and the cache key.
+	 */
+	private static boolean isStatic(final DOMNode node) {
+
+		if (node instanceof Template) {
+			return false;
+		}
+
+		if (StringUtils.isNotBlank(node.getProperty(DOMNode.dataKey))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.restQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.cypherQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.xpathQuery))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.showConditions))
+			|| StringUtils.isNotBlank(node.getProperty(DOMNode.hideConditions))) {
+
+			return false;
+		}
+
+		// content, html attributes and data-* attributes are all evaluated as templates
+		final Node dbNode = node.getNode();
+		for (final String key : dbNode.getPropertyKeys()) {
+
+			final Object value = dbNode.getProperty(key);
+			if (value instanceof String && ((String) value).contains("${")) {
+
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static Fragment get(final String key) {
+
+		synchronized (lock) {
+			return fragments.get(key);
+		}
+	}
+
+	private static void put(final String key, final Fragment entry) {
+
+		synchronized (lock) {
+
+			removeEntry(key);
+			fragments.put(key, entry);
+
+			for (final String uuid : entry.dependencies) {
+
+				Set<String> keys = dependencies.get(uuid);
+				if (keys == null) {
+
+					keys = new HashSet<>();
+					dependencies.put(uuid, keys);
+				}
+
+				keys.add(key);
+			}
+		}
+	}
+
+	private static void removeEntry(final String key) {
+
+		final Fragment entry = fragments.remove(key);
+		if (entry != null) {
+
+			unregister(key, entry);
+		}
+	}
+
+	private static void unregister(final String key, final Fragment entry) {
+
+		for (final String uuid : entry.dependencies) {
+
+			final Set<String> keys = dependencies.get(uuid);
+			if (keys != null) {
+
+				keys.remove(key);
+
+				if (keys.isEmpty()) {
+					dependencies.remove(uuid);
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Collects the ids of all nodes rendered into a fragment, and whether
+	 * all of them were static. Recordings are nested along the render
+	 * tree, every node is reported to all enclosing recordings.
+	 */
+	public static class Recording {
+
+		private final Set<String> dependencies = new HashSet<>();
+		private Recording parent               = null;
+		private boolean cacheable              = true;
+
+		private Recording(final Recording parent) {
+			this.parent = parent;
+		}
+
+		private void add(final String uuid, final boolean isStatic) {
+			add(Collections.singleton(uuid), isStatic);
+		}
+
+		private void add(final Set<String> uuids, final boolean isStatic) {
+
+			Recording current = this;
+
+			while (current != null) {
+
+				current.dependencies.addAll(uuids);
+				current.cacheable &= isStatic;
+
+				current = current.parent;
+			}
+		}
+	}
+
+	public static class PageStatistics {
+
+		private final AtomicLong hits        = new AtomicLong(0);
+		private final AtomicLong misses      = new AtomicLong(0);
+		private final AtomicLong uncacheable = new AtomicLong(0);
+		private final AtomicLong savedTime   = new AtomicLong(0);
+
+		/**
+		 * @return the number of fragments served from the cache
+		 */
+		public long getHits() {
+			return hits.get();
+		}
+
+		/**
+		 * @return the number of fragments that were rendered and captured
+		 */
+		public long getMisses() {
+			return misses.get();
+		}
+
+		/**
+		 * @return the number of renderings of subtrees known to be dynamic
+		 */
+		public long getUncacheable() {
+			return uncacheable.get();
+		}
+
+		/**
+		 * @return the accumulated render time of all cache hits, in milliseconds
+		 */
+		public long getSavedTime() {
+			return savedTime.get() / 1000000L;
+		}
+
+		public double getHitRate() {
+
+			final long h     = hits.get();
+			final long total = h + misses.get() + uncacheable.get();
+
+			return total > 0 ? (double) h / (double) total : 0.0;
+		}
+
+		public Map<String, Object> toMap() {
+
+			final Map<String, Object> map = new LinkedHashMap<>();
+
+			map.put("hits", getHits());
+			map.put("misses", getMisses());
+			map.put("uncacheable", getUncacheable());
+			map.put("hitRate", getHitRate());
+			map.put("savedTime", getSavedTime());
+
+			return map;
+		}
+	}
+
+	private static class Fragment {
+
+		private Set<String> dependencies = null;
+		private String content           = null;
+		private long renderTime          = 0L;
+
+		public Fragment(final String content, final Set<String> dependencies, final long renderTime) {
+
+			this.dependencies = dependencies;
+			this.renderTime   = renderTime;
+			this.content      = content;
+		}
+	}
+
+	private static class DependencyLRUMap extends LRUMap {
+
+		public DependencyLRUMap(final int maxSize) {
+			super(maxSize);
+		}
+
+		@Override
+		protected boolean removeLRU(final LinkEntry entry) {
+
+			unregister((String) entry.getKey(), (Fragment) entry.getValue());
+			return true;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+/**
+ * Bounded producer/consumer pipe between a render thread and the servlet
+ * container's non-blocking output stream.
+ *
+ * Appended fragments are collected until they exceed the chunk size and are
+ * then handed to the writer as UTF-8 encoded byte chunks. The render thread
+ * blocks when the maximum number of chunks is queued (i.e. when the client
+ * reads slower than the page is rendered), and the writer is woken up via
+ * {@link AsyncContext#start(Runnable)} when a chunk arrives while it is idle,
+ * so no thread needs to poll the queue.
+ *
+ * @author Axel Morgner
+ */
+public class RenderPipe implements RenderBuffer, WriteListener {
+
+	private static final Logger logger            = Logger.getLogger(RenderPipe.class.getName());
+	private static final Charset UTF8             = Charset.forName("utf-8");
+
+	public static final int DEFAULT_CHUNK_SIZE    = 8192;
+	public static final int DEFAULT_MAX_CHUNKS    = 64;
+
+	private static final AtomicLong producerWaits = new AtomicLong(0);
+	private static final AtomicLong writerWakeups = new AtomicLong(0);
+
+	private final ReentrantLock lock              = new ReentrantLock();
+	private final Condition notFull               = lock.newCondition();
+	private final Queue<byte[]> chunks            = new ArrayDeque<>();
+	private final StringBuilder pending           = new StringBuilder();
+	private final Object writeLock                = new Object();
+	private final Runnable drainTask              = new DrainTask();
+	private AsyncContext async                    = null;
+	private ServletOutputStream out               = null;
+	private boolean writerIdle                    = false;
+	private boolean finished                      = false;
+	private boolean closed                        = false;
+	private boolean completed                     = false;
+	private int chunkSize                         = DEFAULT_CHUNK_SIZE;
+	private int maxChunks                         = DEFAULT_MAX_CHUNKS;
+
+	public RenderPipe(final AsyncContext async, final ServletOutputStream out) {
+		this(async, out, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+	}
+
+	public RenderPipe(final AsyncContext async, final ServletOutputStream out, final int chunkSize, final int maxChunks) {
+
+		this.async     = async;
+		this.out       = out;
+		this.chunkSize = chunkSize;
+		this.maxChunks = maxChunks;
+	}
+
+	@Override
+	public RenderPipe append(final String s) {
+
+		if (s != null) {
+
+			pending.append(s);
+
+			if (pending.length() >= chunkSize) {
+				flushPending();
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Signals that rendering is done. The response is completed once all
+	 * queued chunks have been written.
+	 */
+	public void finish() {
+
+		flushPending();
+
+		lock.lock();
+		try {
+
+			finished = true;
+
+		} finally {
+			lock.unlock();
+		}
+
+		wakeWriter();
+	}
+
+	/**
+	 * Queues the given, completely rendered output and signals that
+	 * rendering is done. Unlike {@link #append(String)}, this method never
+	 * waits for the writer, so it can be called on the container thread,
+	 * which must return before any output can be written.
+	 *
+	 * @param output the rendered output
+	 */
+	public void finish(final String output) {
+
+		if (output != null) {
+
+			pending.append(output);
+		}
+
+		final int length = pending.length();
+
+		for (int start=0; start<length; start+=chunkSize) {
+
+			enqueue(pending.substring(start, Math.min(length, start + chunkSize)).getBytes(UTF8), false);
+		}
+
+		pending.setLength(0);
+
+		lock.lock();
+		try {
+
+			finished = true;
+
+		} finally {
+			lock.unlock();
+		}
+
+		wakeWriter();
+	}
+
+	/**
+	 * Closes this pipe after a write error or client abort, discarding any
+	 * queued output and releasing a blocked render thread.
+	 */
+	public void close() {
+
+		lock.lock();
+		try {
+
+			closed   = true;
+			finished = true;
+			chunks.clear();
+			notFull.signalAll();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public boolean isClosed() {
+
+		lock.lock();
+		try {
+
+			return closed;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getQueuedChunks() {
+
+		lock.lock();
+		try {
+
+			return chunks.size();
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return the number of times a render thread had to wait for a slow client
+	 */
+	public static long getProducerWaits() {
+		return producerWaits.get();
+	}
+
+	/**
+	 * @return the number of times an idle writer was woken up by a render thread
+	 */
+	public static long getWriterWakeups() {
+		return writerWakeups.get();
+	}
+
+	// ----- interface WriteListener -----
+	@Override
+	public void onWritePossible() throws IOException {
+		drain();
+	}
+
+	@Override
+	public void onError(final Throwable t) {
+
+		logger.log(Level.WARNING, "Unable to write response: {0}", t.getMessage());
+
+		close();
+		complete();
+	}
+
+	// ----- private methods -----
+	private void flushPending() {
+
+		if (pending.length() == 0) {
+			return;
+		}
+
+		final byte[] chunk = pending.toString().getBytes(UTF8);
+		pending.setLength(0);
+
+		enqueue(chunk, true);
+	}
+
+	private void enqueue(final byte[] chunk, final boolean bounded) {
+
+		lock.lock();
+		try {
+
+			while (bounded && !closed && chunks.size() >= maxChunks) {
+
+				producerWaits.incrementAndGet();
+
+				try {
+					notFull.await(1, TimeUnit.SECONDS);
+
+				} catch (InterruptedException iex) {
+
+					closed = true;
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if (closed) {
+				return;
+			}
+
+			chunks.add(chunk);
+
+		} finally {
+			lock.unlock();
+		}
+
+		wakeWriter();
+	}
+
+	private void wakeWriter() {
+
+		boolean wake = false;
+
+		lock.lock();
+		try {
+
+			if (writerIdle) {
+
+				writerIdle = false;
+				wake       = true;
+			}
+
+		} finally {
+			lock.unlock();
+		}
+
+		if (wake) {
+
+			writerWakeups.incrementAndGet();
+			async.start(drainTask);
+		}
+	}
+
+	private void drain() throws IOException {
+
+		synchronized (writeLock) {
+
+			while (out.isReady()) {
+
+				byte[] chunk    = null;
+				boolean done    = false;
+
+				lock.lock();
+				try {
+
+					chunk = chunks.poll();
+					if (chunk != null) {
+
+						notFull.signal();
+
+					} else if (finished) {
+
+						done = true;
+
+					} else {
+
+						// nothing to write, wait for the next chunk
+						writerIdle = true;
+					}
+
+				} finally {
+					lock.unlock();
+				}
+
+				if (chunk != null) {
+
+					out.write(chunk);
+
+				} else {
+
+					if (done) {
+						complete();
+					}
+
+					return;
+				}
+			}
+		}
+	}
+
+	private void complete() {
+
+		synchronized (writeLock) {
+
+			if (!completed) {
+
+				completed = true;
+				async.complete();
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private class DrainTask implements Runnable {
+
+		@Override
+		public void run() {
+
+			try {
+				drain();
+
+			} catch (Throwable t) {
+
+				onError(t);
+			}
+		}
+	}
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
+import org.structr.common.ThumbnailParameters;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.dynamic.File;
+import org.structr.rest.service.HttpService;
+import org.structr.web.entity.Image;
+import org.structr.web.property.ThumbnailProperty;
+
+/**
+ * Creates thumbnails in a bounded pool of background threads.
+ *
+ * Thumbnails that do not exist yet are scheduled for creation, and the
+ * original image is returned until the thumbnail is available. There is
+ * at most one job for each combination of image, size and crop mode. New
+ * images (and images whose content changed) are registered after commit
+ * so that all declared thumbnail sizes are created ahead of the first
+ * request. Code that commits without notifying the transaction listeners
+ * (like the upload servlet) submits its new images explicitly.
+ *
+ * Images created in the current transaction are scaled synchronously,
+ * since they are not visible to the worker threads yet.
+ *
+ * @author Christian Morgner
+ */
+public class ThumbnailGenerator implements StructrTransactionListener {
+
+	private static final Logger logger = Logger.getLogger(ThumbnailGenerator.class.getName());
+
+	public static final String ASYNC      = "ThumbnailGenerator.async";
+	public static final String THREADS    = "ThumbnailGenerator.threads";
+	public static final String QUEUE_SIZE = "ThumbnailGenerator.queue";
+
+	private static final ConcurrentMap<String, Job> pending                        = new ConcurrentHashMap<>();
+	private static final Map<Class, List<ThumbnailParameters>> declaredThumbnails = new ConcurrentHashMap<>();
+	private static final AtomicLong completed                                      = new AtomicLong();
+	private static final AtomicLong failed                                         = new AtomicLong();
+	private static final AtomicLong rejected                                       = new AtomicLong();
+	private static final AtomicLong totalWaitTime                                  = new AtomicLong();
+	private static final AtomicLong totalProcessingTime                            = new AtomicLong();
+	private static ThreadPoolExecutor executor                                     = null;
+	private static Boolean async                                                   = null;
+
+	/**
+	 * Returns the scaled image of the given size, or the original image
+	 * if the scaled image is still being created.
+	 *
+	 * @param image
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 * @return the scaled image, or the original image
+	 */
+	public static Image getScaledImage(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		if (!isAsync() || TransactionCommand.isCreated(image)) {
+			return image.getScaledImage(maxWidth, maxHeight, cropToFit);
+		}
+
+		final Image thumbnail = image.getExistingScaledImage(maxWidth, maxHeight);
+		if (thumbnail != null) {
+
+			return thumbnail;
+		}
+
+		submit(image, maxWidth, maxHeight, cropToFit);
+
+		return image;
+	}
+
+	/**
+	 * Schedules the creation of a scaled image, unless the same scaled
+	 * image is already scheduled.
+	 *
+	 * @param image
+	 * @param maxWidth
+	 * @param maxHeight
+	 * @param cropToFit
+	 * @return whether a new job was scheduled
+	 */
+	public static boolean submit(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final String uuid = image.getUuid();
+		final String key  = uuid + "/" + maxWidth + "x" + maxHeight + (cropToFit ? "/crop" : "");
+		final Job job     = new Job(key, uuid, maxWidth, maxHeight, cropToFit);
+
+		if (pending.putIfAbsent(key, job) == null) {
+
+			try {
+				getExecutor().execute(job);
+				return true;
+
+			} catch (RejectedExecutionException rex) {
+
+				// queue is full, the next request will try again
+				pending.remove(key);
+				rejected.incrementAndGet();
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Schedules the creation of all declared thumbnails of the given
+	 * images. Must be called after the images were committed, since the
+	 * worker threads cannot see them otherwise.
+	 *
+	 * @param images
+	 */
+	public static void submitDeclaredThumbnails(final List<Image> images) {
+
+		if (!isAsync() || images.isEmpty()) {
+			return;
+		}
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final Image image : images) {
+				submitDeclaredThumbnails(image);
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to schedule thumbnails: {0}", t.getMessage());
+		}
+	}
+
+	// ----- metrics -----
+	/**
+	 * @return the number of jobs waiting for a worker thread
+	 */
+	public static int getQueueSize() {
+		return executor != null ? executor.getQueue().size() : 0;
+	}
+
+	/**
+	 * @return the number of worker threads currently scaling an image
+	 */
+	public static int getActiveCount() {
+		return executor != null ? executor.getActiveCount() : 0;
+	}
+
+	/**
+	 * @return the number of jobs that are queued or running
+	 */
+	public static int getPendingCount() {
+		return pending.size();
+	}
+
+	public static long getCompletedCount() {
+		return completed.get();
+	}
+
+	public static long getFailedCount() {
+		return failed.get();
+	}
+
+	/**
+	 * @return the number of jobs that were dropped because the queue was full
+	 */
+	public static long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return the average time in milliseconds a job spent in the queue
+	 */
+	public static long getAverageWaitTime() {
+		return totalWaitTime.get() / Math.max(1, completed.get() + failed.get());
+	}
+
+	/**
+	 * @return the average time in milliseconds it took to create a scaled image
+	 */
+	public static long getAverageProcessingTime() {
+		return totalProcessingTime.get() / Math.max(1, completed.get() + failed.get());
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void transactionCommited(final SecurityContext securityContext, final List<ModificationEvent> modificationEvents) {
+
+		if (!isAsync()) {
+			return;
+		}
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode() && !event.isDeleted() && (event.isCreated() || event.getModifiedProperties().containsKey(File.checksum))) {
+
+				final GraphObject obj = event.getGraphObject();
+				if (obj instanceof Image) {
+
+					submitDeclaredThumbnails((Image)obj);
+				}
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private static void submitDeclaredThumbnails(final Image image) {
+
+		if (!Boolean.TRUE.equals(image.getProperty(Image.isThumbnail))) {
+
+			for (final ThumbnailParameters params : getDeclaredThumbnails(image.getClass())) {
+
+				submit(image, params.getMaxWidth(), params.getMaxHeight(), params.getCropToFit());
+			}
+		}
+	}
+
+	private static boolean isAsync() {
+
+		if (async == null) {
+			async = !"false".equals(Services.getBaseConfiguration().getProperty(ASYNC));
+		}
+
+		return async;
+	}
+
+	private static List<ThumbnailParameters> getDeclaredThumbnails(final Class type) {
+
+		List<ThumbnailParameters> thumbnails = declaredThumbnails.get(type);
+		if (thumbnails == null) {
+
+			thumbnails = new LinkedList<>();
+
+			for (final PropertyKey key : StructrApp.getConfiguration().getPropertySet(type, PropertyView.All)) {
+
+				if (key instanceof ThumbnailProperty) {
+					thumbnails.add(((ThumbnailProperty)key).getThumbnailParameters());
+				}
+			}
+
+			declaredThumbnails.put(type, thumbnails);
+		}
+
+		return thumbnails;
+	}
+
+	/**
+	 * Returns the bounded executor for thumbnail creation. When the queue
+	 * is full, new jobs are rejected.
+	 */
+	private static synchronized ThreadPoolExecutor getExecutor() {
+
+		if (executor == null) {
+
+			final int threads   = HttpService.parseInt(Services.getBaseConfiguration().getProperty(THREADS), Runtime.getRuntime().availableProcessors());
+			final int queueSize = HttpService.parseInt(Services.getBaseConfiguration().getProperty(QUEUE_SIZE), 1000);
+
+			executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new WorkerThreadFactory());
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		return executor;
+	}
+
+	// ----- nested classes -----
+	private static class Job implements Runnable {
+
+		private final long queued = System.currentTimeMillis();
+		private final String key;
+		private final String uuid;
+		private final int maxWidth;
+		private final int maxHeight;
+		private final boolean crop;
+
+		public Job(final String key, final String uuid, final int maxWidth, final int maxHeight, final boolean crop) {
+
+			this.key       = key;
+			this.uuid      = uuid;
+			this.maxWidth  = maxWidth;
+			this.maxHeight = maxHeight;
+			this.crop      = crop;
+		}
+
+		@Override
+		public void run() {
+
+			final long start = System.currentTimeMillis();
+			final App app    = StructrApp.getInstance();
+
+			totalWaitTime.addAndGet(start - queued);
+
+			try {
+
+				try (final Tx tx = app.tx()) {
+
+					final Image image = app.get(Image.class, uuid);
+					if (image != null) {
+
+						image.getScaledImage(maxWidth, maxHeight, crop);
+					}
+
+					tx.success();
+				}
+
+				completed.incrementAndGet();
+
+			} catch (Throwable t) {
+
+				failed.incrementAndGet();
+				logger.log(Level.WARNING, "Unable to create thumbnail for image {0}: {1}", new Object[] { uuid, t.getMessage() });
+
+			} finally {
+
+				totalProcessingTime.addAndGet(System.currentTimeMillis() - start);
+				pending.remove(key);
+			}
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			final Thread thread = new Thread(runnable, "ThumbnailGenerator-" + count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
+}
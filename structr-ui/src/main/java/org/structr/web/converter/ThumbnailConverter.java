@@ -27,6 +27,7 @@ import java.util.logging.Logger;
 import org.structr.common.SecurityContext;
 import org.structr.core.GraphObject;
 import org.structr.core.converter.PropertyConverter;
+import org.structr.web.common.ThumbnailGenerator;
 
 //~--- classes ----------------------------------------------------------------
 
@@ -63,6 +64,6 @@ public class ThumbnailConverter extends PropertyConverter {
 			return null;
 		}
 		
-		return ((Image) currentObject).getScaledImage(parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit());
+		return ThumbnailGenerator.getScaledImage((Image) currentObject, parameters.getMaxWidth(), parameters.getMaxHeight(), parameters.getCropToFit());
 	}
 }
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -46,6 +47,7 @@ import org.structr.rest.ResourceProvider;
 import org.structr.rest.resource.Resource;
 import org.structr.rest.servlet.JsonRestServlet;
 import org.structr.rest.servlet.ResourceHelper;
+import org.structr.rest.servlet.ResourceRouter;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.UiResourceProvider;
@@ -60,7 +62,8 @@ import org.structr.web.entity.dom.DOMNode;
  */
 public class RestDataSource implements GraphDataSource<List<GraphObject>> {
 
-	private static final Logger logger = Logger.getLogger(RestDataSource.class.getName());
+	private static final Logger logger                      = Logger.getLogger(RestDataSource.class.getName());
+	private static final Map<Class, ResourceRouter> routers = new ConcurrentHashMap<>();
 
 	@Override
 	public List<GraphObject> getData(final SecurityContext securityContext, final RenderContext renderContext, AbstractNode referenceNode) throws FrameworkException {
@@ -76,8 +79,6 @@ public class RestDataSource implements GraphDataSource<List<GraphObject>> {
 	@Override
 	public List<GraphObject> getData(final SecurityContext securityContext, final RenderContext renderContext, final String restQuery) throws FrameworkException {
 
-		Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
-
 		ResourceProvider resourceProvider = renderContext == null ? null : renderContext.getResourceProvider();
 		if (resourceProvider == null) {
 			try {
@@ -88,8 +89,18 @@ public class RestDataSource implements GraphDataSource<List<GraphObject>> {
 			}
 		}
 
-		// inject resources
-		resourceMap.putAll(resourceProvider.getResources());
+		// resource routers are cached per provider type
+		ResourceRouter router = routers.get(resourceProvider.getClass());
+		if (router == null) {
+
+			final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
+
+			// inject resources
+			resourceMap.putAll(resourceProvider.getResources());
+
+			router = new ResourceRouter(resourceMap);
+			routers.put(resourceProvider.getClass(), router);
+		}
 
 		Value<String> propertyView = new ThreadLocalPropertyView();
 		propertyView.set(securityContext, PropertyView.Ui);
@@ -142,7 +153,7 @@ public class RestDataSource implements GraphDataSource<List<GraphObject>> {
 		securityContext.setRequest(request);
 
 		//HttpServletResponse response = renderContext.getResponse();
-		Resource resource = ResourceHelper.applyViewTransformation(request, securityContext, ResourceHelper.optimizeNestedResourceChain(ResourceHelper.parsePath(securityContext, request, resourceMap, propertyView, GraphObject.id), GraphObject.id), propertyView);
+		Resource resource = ResourceHelper.applyViewTransformation(request, securityContext, router.resolve(securityContext, request, propertyView, GraphObject.id), propertyView);
 
 		// TODO: decide if we need to rest the REST request here
 		//securityContext.checkResourceAccess(request, resource.getResourceSignature(), resource.getGrant(request, response), PropertyView.Ui);
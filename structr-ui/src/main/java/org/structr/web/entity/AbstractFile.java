@@ -31,7 +31,9 @@ import org.structr.core.property.EndNode;
 import org.structr.core.property.EndNodes;
 import org.structr.core.property.EntityIdProperty;
 import org.structr.core.property.Property;
+import org.structr.core.property.PropertyKey;
 import org.structr.core.property.StartNode;
+import org.structr.web.common.FilePathIndex;
 import org.structr.web.entity.relation.FileChildren;
 import org.structr.web.entity.relation.FileSiblings;
 import org.structr.web.entity.relation.Folders;
@@ -76,6 +78,17 @@ public class AbstractFile extends LinkedTreeNode<FileChildren, FileSiblings, Abs
 		return super.onCreation(securityContext, errorBuffer);
 	}
 
+	@Override
+	public <T> void setProperty(final PropertyKey<T> key, final T value) throws FrameworkException {
+
+		super.setProperty(key, value);
+
+		// make the new name resolvable before the transaction is committed
+		if (name.equals(key)) {
+			FilePathIndex.update(this);
+		}
+	}
+
 	@Override
 	public Class<FileChildren> getChildLinkType() {
 		return FileChildren.class;
@@ -32,6 +32,7 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
 import org.structr.core.entity.Relation;
+import org.structr.core.graph.TransactionCommand;
 import static org.structr.core.graph.NodeInterface.deleted;
 import static org.structr.core.graph.NodeInterface.name;
 import static org.structr.core.graph.NodeInterface.owner;
@@ -43,6 +44,7 @@ import org.structr.dynamic.File;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ThumbnailGenerator;
 import static org.structr.web.entity.FileBase.relativeFilePath;
 import static org.structr.web.entity.FileBase.size;
 import org.structr.web.entity.relation.Thumbnails;
@@ -75,6 +77,12 @@ public class Image extends File {
 	public static final org.structr.common.View uiView              = new org.structr.common.View(Image.class, PropertyView.Ui, type, name, contentType, size, relativeFilePath, width, height, tnSmall, tnMid, isThumbnail, owner, parent, path, isImage);
 	public static final org.structr.common.View publicView          = new org.structr.common.View(Image.class, PropertyView.Public, type, name, width, height, tnSmall, tnMid, isThumbnail, owner, parent, path, isImage);
 
+	static {
+
+		// create the declared thumbnails of new images in the background
+		TransactionCommand.registerTransactionListener(new ThumbnailGenerator());
+	}
+
 	@Override
 	public void setProperty(final PropertyKey key, final Object value) throws FrameworkException {
 
@@ -198,32 +206,22 @@ public class Image extends File {
 
 			for (final Thumbnails r : thumbnailRelationships) {
 
-				Integer w = r.getProperty(Image.width);
-				Integer h = r.getProperty(Image.height);
-
-				if ((w != null) && (h != null)) {
-
-					if (((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight))
-					|| ((origWidth <= w) && (origHeight <= h)))    // orginal image is equal or smaller than requested size
-					{
+				if (matches(r, origWidth, origHeight, maxWidth, maxHeight)) {
 
-						thumbnail = (Image) r.getTargetNode();
+					thumbnail = (Image) r.getTargetNode();
 
-						// Use thumbnail only if checksum of original image matches with stored checksum
-						Long storedChecksum = r.getProperty(Image.checksum);
+					// Use thumbnail only if checksum of original image matches with stored checksum
+					Long storedChecksum = r.getProperty(Image.checksum);
 
-						if (storedChecksum != null && storedChecksum.equals(newChecksum)) {
+					if (storedChecksum != null && storedChecksum.equals(newChecksum)) {
 
-							return thumbnail;
+						return thumbnail;
 
-						} else {
+					} else {
 
-							oldThumbnails.add(thumbnail);
-						}
+						oldThumbnails.add(thumbnail);
 					}
-
 				}
-
 			}
 
 
@@ -235,7 +233,9 @@ public class Image extends File {
 		final App app = StructrApp.getInstance(securityContext);
 
 		try {
-			originalImage.setProperty(File.checksum, newChecksum);
+			if (!newChecksum.equals(currentChecksum)) {
+				originalImage.setProperty(File.checksum, newChecksum);
+			}
 
 			Thumbnail thumbnailData = ImageHelper.createThumbnail(originalImage, maxWidth, maxHeight, cropToFit);
 			if (thumbnailData != null) {
@@ -307,6 +307,39 @@ public class Image extends File {
 
 	}
 
+	/**
+	 * Get an existing, up-to-date (down-)scaled image of this image
+	 *
+	 * Unlike {@link #getScaledImage(int, int, boolean)}, this method never creates
+	 * a thumbnail or computes the checksum of the original image, so it is cheap
+	 * enough to be called on a request thread.
+	 *
+	 * @param maxWidth
+	 * @param maxHeight
+	 *
+	 * @return the scaled image, or null if no up-to-date scaled image exists
+	 */
+	public Image getExistingScaledImage(final int maxWidth, final int maxHeight) {
+
+		final Integer origWidth = getWidth();
+		final Integer origHeight = getHeight();
+		final Long checksum = getProperty(Image.checksum);
+
+		if (origWidth != null && origHeight != null && checksum != null && checksum != 0) {
+
+			for (final Thumbnails r : getThumbnailRelationships()) {
+
+				if (matches(r, origWidth, origHeight, maxWidth, maxHeight) && checksum.equals(r.getProperty(Image.checksum))) {
+
+					return (Image) r.getTargetNode();
+				}
+			}
+		}
+
+		return null;
+
+	}
+
 	public boolean isNotThumbnail() {
 
 		return !isThumbnail();
@@ -326,4 +359,19 @@ public class Image extends File {
 
 	}
 
+	private boolean matches(final Thumbnails r, final int origWidth, final int origHeight, final int maxWidth, final int maxHeight) {
+
+		Integer w = r.getProperty(Image.width);
+		Integer h = r.getProperty(Image.height);
+
+		if ((w != null) && (h != null)) {
+
+			return ((w == maxWidth) && (h <= maxHeight)) || ((w <= maxWidth) && (h == maxHeight))
+				|| ((origWidth <= w) && (origHeight <= h));    // orginal image is equal or smaller than requested size
+		}
+
+		return false;
+
+	}
+
 }
@@ -27,6 +27,7 @@ import org.structr.core.graph.CypherQueryCommand;
 import org.structr.core.property.Property;
 import org.structr.core.property.StringProperty;
 import org.structr.web.common.RenderContext;
+import org.structr.web.common.RenderFragmentCache;
 import org.structr.web.entity.dom.DOMElement;
 
 //~--- JDK imports ------------------------------------------------------------
@@ -116,6 +117,9 @@ public class View extends DOMElement {
 		final HttpServletRequest request = renderContext.getRequest();
 		final List<GraphObject> results  = getGraphObjects(request);
 
+		// query results can not be cached
+		RenderFragmentCache.markDynamic(renderContext);
+
 		for (GraphObject result : results) {
 
 			if (result instanceof DOMNode) {
@@ -44,7 +44,7 @@ import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
-import org.structr.web.common.AsyncBuffer;
+import org.structr.web.common.RenderBuffer;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
 import static org.structr.web.entity.dom.DOMNode.hideOnDetail;
@@ -314,7 +314,7 @@ public class Content extends DOMNode implements Text {
 		String id            = getUuid();
 		EditMode edit        = renderContext.getEditMode(securityContext.getUser(false));
 		boolean inBody       = renderContext.inBody();
-		AsyncBuffer out       = renderContext.getBuffer();
+		RenderBuffer out     = renderContext.getBuffer();
 
 		String _contentType = getProperty(contentType);
 
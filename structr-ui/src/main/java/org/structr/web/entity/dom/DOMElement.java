@@ -48,7 +48,7 @@ import org.structr.core.property.Property;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
-import org.structr.web.common.AsyncBuffer;
+import org.structr.web.common.RenderBuffer;
 import org.structr.web.common.HtmlProperty;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
@@ -292,7 +292,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 
 	}
 
-	public void openingTag(final SecurityContext securityContext, final AsyncBuffer out, final String tag, final EditMode editMode, final RenderContext renderContext, final int depth) throws FrameworkException {
+	public void openingTag(final SecurityContext securityContext, final RenderBuffer out, final String tag, final EditMode editMode, final RenderContext renderContext, final int depth) throws FrameworkException {
 
 		out.append("<").append(tag);
 
@@ -365,7 +365,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 		}
 
 		// final variables
-		final AsyncBuffer out    = renderContext.getBuffer();
+		final RenderBuffer out   = renderContext.getBuffer();
 		final EditMode editMode  = renderContext.getEditMode(securityContext.getUser(false));
 		final boolean isVoid     = isVoidElement();
 		final String _tag        = getProperty(DOMElement.tag);
@@ -899,7 +899,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	 * @param securityContext
 	 * @param renderContext
 	 */
-	private void renderCustomAttributes(final AsyncBuffer out, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
+	private void renderCustomAttributes(final RenderBuffer out, final SecurityContext securityContext, final RenderContext renderContext) throws FrameworkException {
 
 		dbNode = this.getNode();
 		EditMode editMode = renderContext.getEditMode(securityContext.getUser(false));
@@ -980,7 +980,7 @@ public class DOMElement extends DOMNode implements Element, NamedNodeMap {
 	 *
 	 * @param out
 	 */
-	private void renderStructrAppLib(final AsyncBuffer out, final SecurityContext securityContext, final RenderContext renderContext, final int depth) throws FrameworkException {
+	private void renderStructrAppLib(final RenderBuffer out, final SecurityContext securityContext, final RenderContext renderContext, final int depth) throws FrameworkException {
 
 		EditMode editMode = renderContext.getEditMode(securityContext.getUser(false));
 		
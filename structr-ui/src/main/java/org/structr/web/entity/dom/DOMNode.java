@@ -67,8 +67,10 @@ import org.structr.core.property.StartNode;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
+import org.structr.web.common.AsyncBuffer;
 import org.structr.web.common.GraphDataSource;
 import org.structr.web.common.RenderContext;
+import org.structr.web.common.RenderFragmentCache;
 import org.structr.web.common.RenderContext.EditMode;
 import org.structr.web.datasource.CypherGraphDataSource;
 import org.structr.web.datasource.IdRequestParameterGraphDataSource;
@@ -170,7 +172,10 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 				if (sources != null && sources.length == 1) {
 
-					RenderContext innerCtx = new RenderContext((RenderContext) ctx);
+					RenderContext innerCtx  = new RenderContext((RenderContext) ctx);
+					AsyncBuffer innerBuffer = new AsyncBuffer();
+
+					innerCtx.setBuffer(innerBuffer);
 
 					if (sources[0] instanceof DOMNode) {
 
@@ -188,7 +193,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 					}
 
-					return StringUtils.join(innerCtx.getBuffer().getQueue(), "");
+					return StringUtils.join(innerBuffer.getQueue(), "");
 				}
 
 				return usage();
@@ -214,7 +219,10 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 					final SecurityContext securityContext = entity.getSecurityContext();
 					final App app = StructrApp.getInstance(securityContext);
 
-					final RenderContext innerCtx = new RenderContext((RenderContext) ctx);
+					final RenderContext innerCtx  = new RenderContext((RenderContext) ctx);
+					final AsyncBuffer innerBuffer = new AsyncBuffer();
+
+					innerCtx.setBuffer(innerBuffer);
 
 					final DOMNode node = app.nodeQuery(DOMNode.class).andName((String) sources[0]).getFirst();
 
@@ -273,7 +281,7 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 
 					}
 
-					return StringUtils.join(innerCtx.getBuffer().getQueue(), "");
+					return StringUtils.join(innerBuffer.getQueue(), "");
 				}
 
 				return usage();
@@ -497,6 +505,22 @@ public abstract class DOMNode extends LinkedTreeNode<DOMChildren, DOMSiblings, D
 			return;
 		}
 
+		RenderFragmentCache.render(this, securityContext, renderContext, depth);
+	}
+
+	/**
+	 * Render the node including data binding, without consulting the
+	 * render fragment cache.
+	 *
+	 * @param securityContext
+	 * @param renderContext
+	 * @param depth
+	 * @throws FrameworkException
+	 */
+	public void renderNode(final SecurityContext securityContext, final RenderContext renderContext, final int depth) throws FrameworkException {
+
+		final GraphObject details = renderContext.getDetailsDataObject();
+		final boolean detailMode = details != null;
 		final EditMode editMode  = renderContext.getEditMode(securityContext.getUser(false));
 
 		if (EditMode.RAW.equals(editMode) || EditMode.WIDGET.equals(editMode)) {
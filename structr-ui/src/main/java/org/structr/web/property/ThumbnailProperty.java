@@ -72,6 +72,10 @@ public class ThumbnailProperty extends AbstractReadOnlyProperty<Image> {
 		return null;
 	}
 	
+	public ThumbnailParameters getThumbnailParameters() {
+		return tnParams;
+	}
+
 	@Override
 	public Class relatedType() {
 		return Image.class;
@@ -19,7 +19,6 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -29,22 +28,21 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Locale;
-import java.util.Queue;
 import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
-import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.LocaleUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.time.DateUtils;
@@ -71,9 +69,13 @@ import org.structr.rest.service.HttpService;
 import org.structr.rest.service.HttpServiceServlet;
 import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.web.auth.UiAuthenticator;
+import org.structr.web.common.FileHelper;
+import org.structr.web.common.FileStreamer;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.RenderContext.EditMode;
+import org.structr.web.common.RenderPipe;
 import org.structr.web.common.StringRenderBuffer;
+import org.structr.web.entity.AbstractFile;
 import org.structr.web.entity.Linkable;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.DOMNode;
@@ -101,8 +103,13 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	public static final String ERROR_PAGE_KEY = "onerror";
 	public static final String LOCALE_KEY = "locale";
 
+	public static final String RENDER_THREADS = "HtmlServlet.render.threads";
+	public static final String RENDER_QUEUE_SIZE = "HtmlServlet.render.queue";
+	public static final String FRAGMENT_CACHE = "HtmlServlet.fragment.cache";
+
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-zA-Z0-9]{32}");
-	private static final ExecutorService threadPool = Executors.newCachedThreadPool();
+	private static ThreadPoolExecutor renderExecutor = null;
+	private static final AtomicLong synchronousRenders = new AtomicLong(0);
 
 	private final StructrHttpServiceConfig config = new StructrHttpServiceConfig();
 
@@ -333,88 +340,70 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 							final AsyncContext async      = request.startAsync();
 							final ServletOutputStream out = async.getResponse().getOutputStream();
-							final AtomicBoolean finished  = new AtomicBoolean(false);
+							final RenderPipe pipe         = new RenderPipe(async, out);
 							final DOMNode rootNode        = rootElement;
 
-							threadPool.submit(new Runnable() {
-
-								@Override
-								public void run() {
+							renderContext.setBuffer(pipe);
 
-									try (final Tx tx = app.tx()) {
+							// start output write listener before rendering, the render
+							// thread blocks when the pipe is full and relies on the
+							// listener to drain it
+							out.setWriteListener(pipe);
 
-										//final long start = System.currentTimeMillis();
+							try {
 
-										// render
-										rootNode.render(securityContext, renderContext, 0);
-										finished.set(true);
+								getRenderExecutor().submit(new Runnable() {
 
-										//final long end = System.currentTimeMillis();
-										//System.out.println("Done in " + (end-start) + " ms");
+									@Override
+									public void run() {
 
-										tx.success();
+										try (final Tx tx = app.tx()) {
 
-									} catch (Throwable t) {
-										t.printStackTrace();
-										final String errorMsg = t.getMessage();
-										try {
-											//response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-											response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
-											finished.set(true);
-										} catch (IOException ex) {
-											ex.printStackTrace();
-										}
-									}
-								}
+											// render
+											rootNode.render(securityContext, renderContext, 0);
+											tx.success();
 
-							});
+										} catch (Throwable t) {
 
-							// start output write listener
-							out.setWriteListener(new WriteListener() {
+											t.printStackTrace();
+											final String errorMsg = t.getMessage();
+											try {
 
-								@Override
-								public void onWritePossible() throws IOException {
-
-									try {
-
-										final Queue<String> queue = renderContext.getBuffer().getQueue();
-										while (out.isReady()) {
-
-											String buffer = null;
+												if (!response.isCommitted()) {
+													response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, errorMsg);
+												}
 
-											synchronized(queue) {
-												buffer = queue.poll();
+											} catch (IOException ex) {
+												ex.printStackTrace();
 											}
 
-											if (buffer != null) {
+										} finally {
 
-												out.print(buffer);
+											pipe.finish();
+										}
+									}
 
-											} else {
+								});
 
-												if (finished.get()) {
+							} catch (RejectedExecutionException rex) {
 
-													async.complete();
-													response.setStatus(HttpServletResponse.SC_OK);
+								// all render threads are busy, render into a buffer on this
+								// thread, the pipe can only be drained after this thread has
+								// returned to the container, so it must not block on the pipe
+								final StringRenderBuffer buffer = new StringRenderBuffer();
+								renderContext.setBuffer(buffer);
 
-													// prevent this block from being called again
-													break;
-												}
+								synchronousRenders.incrementAndGet();
 
-												Thread.sleep(1);
-											}
-										}
+								try {
 
-									} catch (Throwable t) {
-										t.printStackTrace();
-									}
-								}
+									rootElement.render(securityContext, renderContext, 0);
 
-								@Override
-								public void onError(Throwable t) {
-									t.printStackTrace();
+								} finally {
+
+									pipe.finish(buffer.getBuffer().toString());
 								}
-							});
+							}
 
 						} else {
 
@@ -543,6 +532,12 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	 */
 	private File findFile(final SecurityContext securityContext, HttpServletRequest request, final String path) throws FrameworkException {
 
+		final AbstractFile file = FileHelper.getFileByAbsolutePath(securityContext, path);
+		if (file instanceof File) {
+
+			return (File) file;
+		}
+
 		List<Linkable> entryPoints = findPossibleEntryPoints(securityContext, request, path);
 
 		// If no results were found, try to replace whitespace by '+' or '%20'
@@ -807,6 +802,54 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 	}
 
 	//~--- set methods ----------------------------------------------------
+	/**
+	 * @return the number of render tasks waiting for a render thread
+	 */
+	public static int getRenderQueueDepth() {
+		return renderExecutor != null ? renderExecutor.getQueue().size() : 0;
+	}
+
+	/**
+	 * @return the number of render threads currently rendering a page
+	 */
+	public static int getActiveRenderThreads() {
+		return renderExecutor != null ? renderExecutor.getActiveCount() : 0;
+	}
+
+	/**
+	 * @return the total number of completed async render tasks
+	 */
+	public static long getCompletedRenderTasks() {
+		return renderExecutor != null ? renderExecutor.getCompletedTaskCount() : 0;
+	}
+
+	/**
+	 * @return the number of pages that were rendered on the request thread
+	 * because all render threads were busy
+	 */
+	public static long getSynchronousRenders() {
+		return synchronousRenders.get();
+	}
+
+	/**
+	 * Returns the bounded executor for async page rendering. When all
+	 * render threads are busy and the queue is full, the executor rejects
+	 * the page, which is then rendered into a buffer on the request thread.
+	 */
+	private static synchronized ThreadPoolExecutor getRenderExecutor() {
+
+		if (renderExecutor == null) {
+
+			final int threads   = HttpService.parseInt(Services.getBaseConfiguration().getProperty(RENDER_THREADS), Runtime.getRuntime().availableProcessors() * 4);
+			final int queueSize = HttpService.parseInt(Services.getBaseConfiguration().getProperty(RENDER_QUEUE_SIZE), 1000);
+
+			renderExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueSize), new ThreadPoolExecutor.AbortPolicy());
+			renderExecutor.allowCoreThreadTimeOut(true);
+		}
+
+		return renderExecutor;
+	}
+
 	public static void setNoCacheHeaders(final HttpServletResponse response) {
 
 		response.setHeader("Cache-Control", "private, max-age=0, s-maxage=0, no-cache, no-store, must-revalidate"); // HTTP 1.1.
@@ -894,55 +937,59 @@ public class HtmlServlet extends HttpServlet implements HttpServiceServlet {
 
 		}
 
-		ServletOutputStream out = response.getOutputStream();
+		final java.io.File fileOnDisk = file.getFileOnDisk();
+		if (fileOnDisk == null || !fileOnDisk.exists()) {
 
-		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, false)) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 
-			out.flush();
-			out.close();
+		final String etag = FileStreamer.getETag(file.getProperty(File.checksum), fileOnDisk.length());
+		boolean notModified = false;
 
-		} else {
+		if (!EditMode.WIDGET.equals(edit)) {
 
-			// 2b: stream file to response
-			InputStream in = file.getInputStream();
-			String contentType = file.getContentType();
+			notModified = notModifiedSince(request, response, file, false);
 
-			if (contentType != null) {
+			// If-None-Match takes precedence over If-Modified-Since
+			final String ifNoneMatch = request.getHeader("If-None-Match");
+			if (etag != null && ifNoneMatch != null) {
 
-				response.setContentType(contentType);
+				notModified = FileStreamer.matches(ifNoneMatch, etag);
+				response.setStatus(notModified ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+			}
+		}
 
-			} else {
+		if (notModified) {
 
-				// Default
-				response.setContentType("application/octet-stream");
+			if (etag != null) {
+				response.setHeader("ETag", etag);
 			}
 
-			response.setStatus(HttpServletResponse.SC_OK);
+			ServletOutputStream out = response.getOutputStream();
 
-			try {
+			out.flush();
+			out.close();
 
-				IOUtils.copy(in, out);
+		} else {
 
-			} catch (Throwable t) {
+			// 2b: stream file to response
+			String contentType = file.getContentType();
 
-			} finally {
+			if (contentType == null) {
 
-				if (out != null) {
+				// Default
+				contentType = "application/octet-stream";
+			}
 
-					try {
-						// 3: output content
-						out.flush();
-						out.close();
+			try {
 
-					} catch (Throwable t) {
-					}
-				}
+				FileStreamer.stream(request, response, fileOnDisk, contentType, etag, response.getHeader("Last-Modified"));
 
-				if (in != null) {
-					in.close();
-				}
+			} catch (IOException ioex) {
 
-				response.setStatus(HttpServletResponse.SC_OK);
+				// client closed the connection
+				logger.log(Level.FINE, "Unable to stream file {0}: {1}", new Object[] { file.getUuid(), ioex.getMessage() });
 			}
 		}
 	}
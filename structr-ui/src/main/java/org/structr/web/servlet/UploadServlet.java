@@ -20,8 +20,9 @@ package org.structr.web.servlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
-import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -29,11 +30,10 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemIterator;
+import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.apache.commons.io.IOUtils;
 import org.structr.common.AccessMode;
 import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
@@ -42,10 +42,12 @@ import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.graph.Tx;
+import org.structr.rest.service.HttpService;
 import org.structr.rest.service.HttpServiceServlet;
 import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.common.FileHelper;
+import org.structr.web.common.ThumbnailGenerator;
 import org.structr.web.entity.Image;
 
 //~--- classes ----------------------------------------------------------------
@@ -58,9 +60,10 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 	private static final Logger logger = Logger.getLogger(UploadServlet.class.getName());
 
-	private static final int MEMORY_THRESHOLD = 1024 * 1024 * 10;  // above 10 MB, files are stored on disk
-	private static final int MAX_FILE_SIZE = 1024 * 1024 * 100; // 100 MB
-	private static final int MAX_REQUEST_SIZE = 1024 * 1024 * 120; // 120 MB
+	public static final String MAX_FILE_SIZE = "UploadServlet.maxFileSize";
+	public static final String MAX_REQUEST_SIZE = "UploadServlet.maxRequestSize";
+
+	private static final long MEGABYTE = 1024 * 1024;
 
 	// non-static fields
 	private ServletFileUpload uploader = null;
@@ -80,16 +83,15 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 	public void init() {
 
 		try (final Tx tx = StructrApp.getInstance().tx()) {
-			DiskFileItemFactory fileFactory = new DiskFileItemFactory();
-			fileFactory.setSizeThreshold(MEMORY_THRESHOLD);
 
 			filesDir = new File(Services.getInstance().getConfigurationValue(Services.TMP_PATH)); // new File(Services.getInstance().getTmpPath());
 			if (!filesDir.exists()) {
 				filesDir.mkdir();
 			}
 
-			fileFactory.setRepository(filesDir);
-			uploader = new ServletFileUpload(fileFactory);
+			// uploads are streamed directly into the files directory,
+			// so no item factory (and no temporary files) are needed
+			uploader = new ServletFileUpload();
 
 			tx.success();
 
@@ -110,6 +112,8 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 			throw new ServletException("Content type is not multipart/form-data");
 		}
 
+		final List<Image> images = new LinkedList<>();
+
 		try (final Tx tx = StructrApp.getInstance().tx(false, false, false)) {
 
 			final SecurityContext securityContext = getConfig().getAuthenticator().initializeAndExamineRequest(request, response);
@@ -127,20 +131,23 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 				return;
 			}
 
-			uploader.setFileSizeMax(MAX_FILE_SIZE);
-			uploader.setSizeMax(MAX_REQUEST_SIZE);
+			uploader.setFileSizeMax(HttpService.parseInt(Services.getBaseConfiguration().getProperty(MAX_FILE_SIZE), 100) * MEGABYTE);
+			uploader.setSizeMax(HttpService.parseInt(Services.getBaseConfiguration().getProperty(MAX_REQUEST_SIZE), 120) * MEGABYTE);
 
 			response.setContentType("text/html");
 			final PrintWriter out = response.getWriter();
 
-			List<FileItem> fileItemsList = uploader.parseRequest(request);
-			Iterator<FileItem> fileItemsIterator = fileItemsList.iterator();
+			final FileItemIterator fileItemsIterator = uploader.getItemIterator(request);
 
 			while (fileItemsIterator.hasNext()) {
 
-				final FileItem fileItem = fileItemsIterator.next();
+				final FileItemStream fileItem = fileItemsIterator.next();
+
+				if (fileItem.isFormField()) {
+					continue;
+				}
 
-				try {
+				try (final InputStream in = fileItem.openStream()) {
 
 					String contentType = fileItem.getContentType();
 					boolean isImage = (contentType != null && contentType.startsWith("image"));
@@ -149,11 +156,14 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 
 					String name = fileItem.getName().replaceAll("\\\\", "/");
 
-					org.structr.dynamic.File newFile = FileHelper.createFile(securityContext, IOUtils.toByteArray(fileItem.getInputStream()), contentType, type);
-					newFile.setProperty(AbstractNode.name, PathHelper.getName(name));
+					org.structr.dynamic.File newFile = FileHelper.createFile(securityContext, in, contentType, type, PathHelper.getName(name));
 					newFile.setProperty(AbstractNode.visibleToPublicUsers, true);
 					newFile.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
 
+					if (newFile instanceof Image) {
+						images.add((Image)newFile);
+					}
+
 					// Just write out the uuids of the new files
 					out.write(newFile.getUuid());
 
@@ -170,6 +180,12 @@ public class UploadServlet extends HttpServlet implements HttpServiceServlet {
 			t.printStackTrace();
 			logger.log(Level.SEVERE, "Exception while processing request", t);
 			UiAuthenticator.writeInternalServerError(response);
+
+			return;
 		}
+
+		// this transaction does not notify the transaction listeners,
+		// so the declared thumbnails are scheduled after commit here
+		ThumbnailGenerator.submitDeclaredThumbnails(images);
 	}
 }
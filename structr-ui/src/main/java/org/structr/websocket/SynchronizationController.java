@@ -20,30 +20,46 @@ package org.structr.websocket;
 
 import com.google.gson.Gson;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.eclipse.jetty.util.ConcurrentHashSet;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
 import org.eclipse.jetty.websocket.api.WebSocketException;
 import org.neo4j.graphdb.RelationshipType;
 import org.structr.common.AccessMode;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.Services;
 import org.structr.core.StructrTransactionListener;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Principal;
 import org.structr.core.graph.ModificationEvent;
 import org.structr.core.graph.NodeInterface;
 import org.structr.core.graph.RelationshipInterface;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
+import org.structr.rest.service.HttpService;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.DOMNode;
 import org.structr.websocket.message.WebSocketMessage;
@@ -56,18 +72,36 @@ public class SynchronizationController implements StructrTransactionListener {
 
 	private static final Logger logger = Logger.getLogger(SynchronizationController.class.getName());
 
-	private final Set<StructrWebSocket> clients = new ConcurrentHashSet<>();
-	private Gson gson = null;
+	public static final String BROADCAST_WINDOW      = "WebSocketServlet.broadcast.window";
+	public static final String BROADCAST_THREADS     = "WebSocketServlet.broadcast.threads";
+	public static final String BROADCAST_QUEUE_SIZE  = "WebSocketServlet.broadcast.queue";
+
+	private static final int MAX_MESSAGES_PER_RUN    = 100;
+	private static final long SEND_TIMEOUT           = TimeUnit.SECONDS.toMillis(10);
+
+	private final Map<StructrWebSocket, ClientQueue> clients = new ConcurrentHashMap<>();
+	private final Map<String, WebSocketMessage> pending      = new LinkedHashMap<>();
+	private final AtomicLong sequence                        = new AtomicLong(0);
+	private ScheduledExecutorService dispatcher              = null;
+	private ExecutorService senderPool                       = null;
+	private boolean flushScheduled                           = false;
+	private int window                                       = 0;
+	private int queueSize                                    = 0;
+	private Gson gson                                        = null;
 
 	public SynchronizationController(final Gson gson) {
 
-		this.gson = gson;
+		this.gson       = gson;
+		this.window     = HttpService.parseInt(Services.getBaseConfiguration().getProperty(BROADCAST_WINDOW), 50);
+		this.queueSize  = HttpService.parseInt(Services.getBaseConfiguration().getProperty(BROADCAST_QUEUE_SIZE), 1000);
+		this.dispatcher = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("WebSocketBroadcastDispatcher"));
+		this.senderPool = Executors.newFixedThreadPool(HttpService.parseInt(Services.getBaseConfiguration().getProperty(BROADCAST_THREADS), 2), new DaemonThreadFactory("WebSocketBroadcastSender"));
 
 	}
 
 	public void registerClient(final StructrWebSocket client) {
 
-		clients.add(client);
+		clients.put(client, new ClientQueue(client));
 
 	}
 
@@ -77,92 +111,262 @@ public class SynchronizationController implements StructrTransactionListener {
 
 	}
 
+	/**
+	 * Returns the age of the oldest message that is waiting to be sent
+	 * to the given client, i.e. how far the client lags behind.
+	 *
+	 * @param client
+	 * @return the lag in milliseconds, or 0 if the client is up to date
+	 */
+	public long getLag(final StructrWebSocket client) {
+
+		final ClientQueue queue = clients.get(client);
+		if (queue != null) {
+
+			return queue.getLag();
+		}
+
+		return 0L;
+	}
+
+	/**
+	 * @return the lag of the client that lags behind most, in milliseconds
+	 */
+	public long getMaxLag() {
+
+		long maxLag = 0L;
+
+		for (final ClientQueue queue : clients.values()) {
+			maxLag = Math.max(maxLag, queue.getLag());
+		}
+
+		return maxLag;
+	}
+
+	/**
+	 * @param client
+	 * @return the number of messages waiting to be sent to the given client
+	 */
+	public int getQueueSize(final StructrWebSocket client) {
+
+		final ClientQueue queue = clients.get(client);
+		if (queue != null) {
+
+			return queue.messages.size();
+		}
+
+		return 0;
+	}
+
 	// ----- private methods -----
+	/**
+	 * Adds the given message to the set of pending messages. Node messages
+	 * are coalesced with pending messages for the same node, so a node that
+	 * is modified repeatedly within a broadcast window is sent only once.
+	 */
+	private void enqueue(final WebSocketMessage message) {
+
+		synchronized (pending) {
+
+			final String key                = getCoalescingKey(message);
+			final WebSocketMessage existing = pending.get(key);
+
+			if (existing != null) {
+
+				final String command = message.getCommand();
+
+				if ("UPDATE".equals(command) && "CREATE".equals(existing.getCommand())) {
+
+					// the created node is serialized with its current state anyway
+					return;
+				}
+
+				if ("UPDATE".equals(command) && "UPDATE".equals(existing.getCommand())) {
+
+					existing.getModifiedProperties().addAll(message.getModifiedProperties());
+					existing.getRemovedProperties().addAll(message.getRemovedProperties());
+					existing.getNodeData().putAll(message.getNodeData());
+					existing.getRelData().putAll(message.getRelData());
+
+					// move to the end to keep the order of modifications
+					pending.remove(key);
+					pending.put(key, existing);
+
+					return;
+				}
+
+				pending.remove(key);
+			}
+
+			pending.put(key, message);
+
+			if (!flushScheduled) {
+
+				flushScheduled = true;
+
+				dispatcher.schedule(new Runnable() {
+
+					@Override
+					public void run() {
+						flush();
+					}
+
+				}, window, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	private String getCoalescingKey(final WebSocketMessage message) {
+
+		final GraphObject obj = message.getGraphObject();
+		final String command  = message.getCommand();
+		final String id       = message.getId() != null ? message.getId() : obj != null ? obj.getUuid() : null;
+
+		if (id != null && ("CREATE".equals(command) || "UPDATE".equals(command) || "DELETE".equals(command))) {
+
+			return id;
+		}
+
+		// structural changes are never coalesced
+		return "#" + sequence.incrementAndGet();
+	}
+
+	/**
+	 * Serializes all pending messages and distributes them to the client
+	 * queues. Each message is serialized once per distinct security view
+	 * and page path filter instead of once per client.
+	 */
+	private void flush() {
+
+		final List<WebSocketMessage> messages = new LinkedList<>();
+
+		synchronized (pending) {
+
+			messages.addAll(pending.values());
+			pending.clear();
+
+			flushScheduled = false;
+		}
+
+		if (messages.isEmpty() || clients.isEmpty()) {
+			return;
+		}
+
+		try (final Tx tx = StructrApp.getInstance().tx()) {
+
+			for (final WebSocketMessage message : messages) {
+
+				try {
+					broadcast(message);
+
+				} catch (Throwable t) {
+
+					// node might have been deleted in the meantime
+					logger.log(Level.FINE, "Unable to broadcast message.", t);
+				}
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.log(Level.WARNING, "Unable to broadcast messages", t);
+		}
+	}
+
 	private void broadcast(final WebSocketMessage webSocketData) {
 
 		//logger.log(Level.FINE, "Broadcasting message to {0} clients..", clients.size());
 		// session must be valid to be received by the client
 		webSocketData.setSessionValid(true);
 
-		String message;
-		String pagePath = (String) webSocketData.getNodeData().get("pagePath");
-
-		List<StructrWebSocket> clientsToRemove = new LinkedList<>();
+		final Map<String, String> messagesByView = new HashMap<>();
+		final String pagePath                    = (String) webSocketData.getNodeData().get("pagePath");
+		final List<? extends GraphObject> result = webSocketData.getResult();
+		final String command                     = webSocketData.getCommand();
+		final boolean filterResult               = (result != null) && (result.size() > 0) && ("UPDATE".equals(command) || "ADD".equals(command) || "CREATE".equals(command));
 
 		// create message
-		for (StructrWebSocket socket : clients) {
+		for (final ClientQueue queue : clients.values()) {
+
+			final StructrWebSocket socket = queue.socket;
+			final String clientPagePath   = socket.getPagePath();
 
-			String clientPagePath = socket.getPagePath();
 			if (clientPagePath != null && !clientPagePath.equals(URIUtil.encodePath(pagePath))) {
 				continue;
 			}
 
-			Session session = socket.getSession();
+			if (socket.getSession() == null) {
+				continue;
+			}
 
-			webSocketData.setCallback(socket.getCallback());
+			SecurityContext securityContext = socket.getSecurityContext();
+			String message                  = null;
 
-			if ((session != null)) { //&& socket.isAuthenticated()) {
+			if (filterResult) {
 
-				List<? extends GraphObject> result = webSocketData.getResult();
+				// For non-authenticated clients, construct a security context without user
+				if (securityContext == null) {
 
-				if ((result != null) && (result.size() > 0)
-					&& (webSocketData.getCommand().equals("UPDATE") || webSocketData.getCommand().equals("ADD") || webSocketData.getCommand().equals("CREATE"))) {
+					try {
 
-					WebSocketMessage clientData = webSocketData.copy();
-					SecurityContext securityContext = socket.getSecurityContext();
+						securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
 
-					// For non-authenticated clients, construct a security context without user
-					if (securityContext == null) {
+					} catch (FrameworkException ex) {
 
-						try {
+						continue;
+					}
+				}
 
-							securityContext = SecurityContext.getInstance(null, AccessMode.Frontend);
+				final String viewKey = getViewKey(securityContext);
 
-						} catch (FrameworkException ex) {
+				message = messagesByView.get(viewKey);
+				if (message == null) {
 
-							continue;
-						}
-					}
+					final WebSocketMessage clientData = webSocketData.copy();
 
+					clientData.setCallback(null);
 					clientData.setResult(filter(securityContext, result));
 
 					message = gson.toJson(clientData, WebSocketMessage.class);
-
-				} else {
-
-					message = gson.toJson(webSocketData, WebSocketMessage.class);
+					messagesByView.put(viewKey, message);
 				}
 
-				//logger.log(Level.INFO, "############################################################ SENDING \n{0}", message);
-				try {
+			} else {
 
-					session.getRemote().sendString(message);
+				message = messagesByView.get("");
+				if (message == null) {
 
-				} catch (Throwable t) {
-
-					if (t instanceof WebSocketException) {
-
-						WebSocketException wse = (WebSocketException) t;
-
-						if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
-							clientsToRemove.add(socket);
-						}
-					}
+					webSocketData.setCallback(null);
 
-					logger.log(Level.FINE, "Error sending message to client.", t);
+					message = gson.toJson(webSocketData, WebSocketMessage.class);
+					messagesByView.put("", message);
 				}
-
 			}
 
+			queue.offer(withCallback(message, socket.getCallback()));
 		}
+	}
 
-		for (StructrWebSocket s : clientsToRemove) {
+	private String getViewKey(final SecurityContext securityContext) {
+
+		final Principal user = securityContext.getUser(false);
+		final String userKey = user != null ? user.getUuid() : securityContext.isSuperUser() ? "superuser" : "anonymous";
+
+		return userKey + "/" + securityContext.getAccessMode();
+	}
 
-			unregisterClient(s);
+	/**
+	 * Adds the client's callback to a serialized message. The callback is
+	 * the only client-specific part of a broadcast message.
+	 */
+	private String withCallback(final String message, final String callback) {
 
-			logger.log(Level.WARNING, "Client removed from broadcast list: {0}", s);
+		if (callback == null || !message.startsWith("{")) {
+			return message;
 		}
 
+		return "{\"callback\":" + gson.toJson(callback) + "," + message.substring(1);
 	}
 
 	private <T extends GraphObject> List<T> filter(final SecurityContext securityContext, final List<T> all) {
@@ -192,7 +396,7 @@ public class SynchronizationController implements StructrTransactionListener {
 					final WebSocketMessage message = getMessageForEvent(securityContext, event);
 					if (message != null) {
 						logger.log(Level.FINE, "################### Broadcast message: {0}", message.getCommand());
-						broadcast(message);
+						enqueue(message);
 					}
 
 				} catch (FrameworkException ignore) {
@@ -332,4 +536,174 @@ public class SynchronizationController implements StructrTransactionListener {
 
 		return newMessage;
 	}
+
+	// ----- nested classes -----
+	/**
+	 * Bounded outbound queue of a single client. The queue is drained by the
+	 * sender pool, a client that exceeds the queue limit or does not accept
+	 * a message within the send timeout is disconnected.
+	 */
+	private class ClientQueue implements Runnable {
+
+		private final AtomicBoolean scheduled        = new AtomicBoolean(false);
+		private BlockingQueue<Outbound> messages     = null;
+		private StructrWebSocket socket              = null;
+
+		public ClientQueue(final StructrWebSocket socket) {
+
+			this.messages = new ArrayBlockingQueue<>(queueSize);
+			this.socket   = socket;
+		}
+
+		public void offer(final String message) {
+
+			if (!messages.offer(new Outbound(message))) {
+
+				logger.log(Level.WARNING, "Client {0} exceeded broadcast queue limit of {1} messages, disconnecting.", new Object[] { socket, queueSize });
+				disconnect(StatusCode.POLICY_VIOLATION, "Broadcast queue limit exceeded");
+
+				return;
+			}
+
+			schedule();
+		}
+
+		public long getLag() {
+
+			final Outbound head = messages.peek();
+			if (head != null) {
+
+				return System.currentTimeMillis() - head.timestamp;
+			}
+
+			return 0L;
+		}
+
+		@Override
+		public void run() {
+
+			Outbound next = null;
+			int count     = 0;
+
+			while (count++ < MAX_MESSAGES_PER_RUN && (next = messages.poll()) != null) {
+
+				if (!send(next.message)) {
+					return;
+				}
+			}
+
+			scheduled.set(false);
+
+			// messages added after the last poll, or limit reached
+			if (!messages.isEmpty()) {
+				schedule();
+			}
+		}
+
+		// ----- private methods -----
+		private void schedule() {
+
+			if (scheduled.compareAndSet(false, true)) {
+
+				senderPool.execute(this);
+			}
+		}
+
+		private boolean send(final String message) {
+
+			final Session session = socket.getSession();
+			if (session == null) {
+
+				unregisterClient(socket);
+				messages.clear();
+
+				return false;
+			}
+
+			//logger.log(Level.INFO, "############################################################ SENDING \n{0}", message);
+			try {
+
+				session.getRemote().sendStringByFuture(message).get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+
+			} catch (TimeoutException tex) {
+
+				logger.log(Level.WARNING, "Client {0} did not accept message within {1} ms, disconnecting.", new Object[] { socket, SEND_TIMEOUT });
+				disconnect(StatusCode.POLICY_VIOLATION, "Send timeout");
+
+				return false;
+
+			} catch (Throwable t) {
+
+				final Throwable cause = t instanceof ExecutionException ? t.getCause() : t;
+
+				if (cause instanceof WebSocketException) {
+
+					WebSocketException wse = (WebSocketException) cause;
+
+					if ("RemoteEndpoint unavailable, current state [CLOSED], expecting [OPEN or CONNECTED]".equals(wse.getMessage())) {
+
+						unregisterClient(socket);
+						messages.clear();
+
+						logger.log(Level.WARNING, "Client removed from broadcast list: {0}", socket);
+
+						return false;
+					}
+				}
+
+				logger.log(Level.FINE, "Error sending message to client.", t);
+			}
+
+			return true;
+		}
+
+		private void disconnect(final int statusCode, final String reason) {
+
+			unregisterClient(socket);
+			messages.clear();
+
+			final Session session = socket.getSession();
+			if (session != null) {
+
+				try {
+					session.close(statusCode, reason);
+
+				} catch (Throwable t) {
+					logger.log(Level.FINE, "Unable to close session.", t);
+				}
+			}
+		}
+	}
+
+	private static class Outbound {
+
+		private long timestamp = 0L;
+		private String message = null;
+
+		public Outbound(final String message) {
+
+			this.timestamp = System.currentTimeMillis();
+			this.message   = message;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final AtomicLong count = new AtomicLong(0);
+		private String name            = null;
+
+		public DaemonThreadFactory(final String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+
+			final Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		}
+	}
 }
@@ -51,6 +51,7 @@ public class PushNodesCommand extends AbstractCommand {
 		final Map<String, Object> properties = webSocketData.getNodeData();
 		final String sourceId                = webSocketData.getId();
 		final Object recursiveSource         = properties.get("recursive");
+		final Object incrementalSource       = properties.get("incremental");
 		final String username                = (String)properties.get("username");
 		final String password                = (String)properties.get("password");
 		final String host                    = (String)properties.get("host");
@@ -73,7 +74,14 @@ public class PushNodesCommand extends AbstractCommand {
 							recursive = "true".equals(recursiveSource.toString());
 						}
 
-						CloudService.doRemote(new PushTransmission((Syncable)root, recursive, username, password, host, port.intValue()), new WebsocketProgressListener(getWebSocket(), key));
+						final PushTransmission transmission = new PushTransmission((Syncable)root, recursive, username, password, host, port.intValue());
+
+						if (incrementalSource != null) {
+
+							transmission.setIncremental("true".equals(incrementalSource.toString()));
+						}
+
+						CloudService.doRemote(transmission, new WebsocketProgressListener(getWebSocket(), key));
 
 					} else {
 
@@ -29,6 +29,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.LinkedTreeNode;
 import org.structr.core.entity.Principal;
 import org.structr.core.graph.Tx;
+import org.structr.web.common.RenderFragmentCache;
 import org.structr.websocket.StructrWebSocket;
 import org.structr.websocket.message.MessageBuilder;
 import org.structr.websocket.message.WebSocketMessage;
@@ -111,6 +112,9 @@ public class SetPermissionCommand extends AbstractCommand {
 				tx.close();
 				tx = null;
 
+				// permission changes are committed without notifications
+				RenderFragmentCache.clear();
+
 				webSocketData.setResult(Arrays.asList(principal));
 
 				// send only over local connection (no broadcast)
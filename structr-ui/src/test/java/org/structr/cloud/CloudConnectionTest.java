@@ -0,0 +1,344 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.cloud;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import org.structr.cloud.message.Begin;
+import org.structr.cloud.message.End;
+import org.structr.cloud.message.Manifest;
+import org.structr.cloud.message.Message;
+import org.structr.cloud.message.NodeDataContainer;
+import org.structr.cloud.transmission.PushTransmission;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.entity.SchemaNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.StructrUiTest;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class CloudConnectionTest extends StructrUiTest {
+
+	public void testWindowedTransmissionWithIntermediateCommits() {
+
+		Services.getBaseConfiguration().setProperty(CloudService.WINDOW_SIZE, "3");
+		Services.getBaseConfiguration().setProperty(CloudService.COMMIT_INTERVAL, "2");
+
+		final List<NodeDataContainer> containers = new LinkedList<>();
+		CloudConnection client                   = null;
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<6; i++) {
+					containers.add(new NodeDataContainer(app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "CloudItem" + i)), i));
+				}
+
+				tx.success();
+			}
+
+			try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+
+				// total: begin + 6 containers
+				final ExportContext context = new ExportContext(null, 7);
+
+				client = connect(serverSocket, context);
+
+				client.send(new Begin());
+				context.progress();
+
+				for (final NodeDataContainer container : containers) {
+					client.send(container);
+				}
+
+				client.waitForTransmission();
+
+				// three intermediate commits of two entities each
+				final long abortTime = System.currentTimeMillis() + 2000;
+				while (client.getCheckpoint() < 6 && System.currentTimeMillis() < abortTime) {
+					Thread.sleep(10);
+				}
+
+				assertEquals("Invalid checkpoint after intermediate commits", 6, client.getCheckpoint());
+				assertEquals("Invalid progress", context.getTotalSize(), context.getCurrentProgress());
+
+				client.send(new End());
+				client.waitForClose(2000);
+
+				assertTrue("Connection should be closed by the remote end", !client.isConnected());
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			if (client != null) {
+				client.close();
+			}
+
+			Services.getBaseConfiguration().remove(CloudService.WINDOW_SIZE);
+			Services.getBaseConfiguration().remove(CloudService.COMMIT_INTERVAL);
+		}
+	}
+
+	public void testIncrementalManifest() {
+
+		CloudConnection client = null;
+
+		try {
+
+			final List<SchemaNode> nodes = new LinkedList<>();
+			final Manifest manifest      = new Manifest();
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<3; i++) {
+					nodes.add(app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "ManifestItem" + i)));
+				}
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final String hash = SyncHash.get(nodes.get(0));
+
+				// locally maintained properties must not change the hash
+				nodes.get(0).unlockReadOnlyPropertiesOnce();
+				nodes.get(0).setProperty(SchemaNode.lastModifiedDate, new Date(0L));
+
+				assertEquals("Version hash should ignore local properties", hash, SyncHash.get(nodes.get(0)));
+
+				for (final SchemaNode node : nodes) {
+					manifest.add(node.getUuid(), SyncHash.get(node));
+				}
+
+				// simulate a modified entity and an entity that does not exist remotely
+				manifest.add(nodes.get(1).getUuid(), "modified");
+				manifest.add("0123456789abcdef0123456789abcdef", "missing");
+
+				tx.success();
+			}
+
+			try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+
+				final ExportContext context = new ExportContext(null, 2);
+
+				client = connect(serverSocket, context);
+				client.send(new Begin());
+				client.send(manifest);
+
+				final Set<String> unchanged = (Set<String>)client.waitForValue(manifest.getId());
+
+				assertEquals("Invalid number of unchanged entities", 2, unchanged.size());
+				assertTrue("Unchanged entity not detected", unchanged.contains(nodes.get(0).getUuid()));
+				assertTrue("Unchanged entity not detected", unchanged.contains(nodes.get(2).getUuid()));
+			}
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			if (client != null) {
+				client.close();
+			}
+		}
+	}
+
+	public void testInterruptedPushIsResumed() {
+
+		Services.getBaseConfiguration().setProperty(CloudService.COMMIT_INTERVAL, "2");
+
+		final List<SchemaNode> nodes = new LinkedList<>();
+		CloudConnection client       = null;
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<6; i++) {
+					nodes.add(app.create(SchemaNode.class, new NodeAttribute(SchemaNode.name, "ResumeItem" + i)));
+				}
+
+				tx.success();
+			}
+
+			// 6 nodes + push request
+			final PushTransmission first = createPush(nodes);
+			assertEquals("Invalid total size", 7, first.getTotalSize());
+
+			try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+
+				final ExportContext context = new ExportContext(null, first.getTotalSize() + 1);
+
+				// interrupt the push after four entities were committed remotely
+				client = connect(serverSocket, context, 4);
+				client.send(new Begin());
+				context.progress();
+
+				try (final Tx tx = app.tx()) {
+
+					first.doRemote(client);
+					fail("Push should be interrupted");
+
+				} catch (IOException expected) {}
+			}
+
+			client.close();
+
+			// the same push skips the committed entities
+			final PushTransmission second = createPush(nodes);
+			assertEquals("Committed entities should be skipped on resume", 3, second.getTotalSize());
+
+			try (final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+
+				final ExportContext context = new ExportContext(null, second.getTotalSize() + 1);
+
+				client = connect(serverSocket, context);
+				client.send(new Begin());
+				context.progress();
+
+				try (final Tx tx = app.tx()) {
+
+					assertTrue(second.doRemote(client));
+				}
+
+				assertEquals("Invalid progress", context.getTotalSize(), context.getCurrentProgress());
+
+				client.send(new End());
+				client.waitForClose(2000);
+			}
+
+			// a finished push is not resumed again
+			assertEquals("Finished push should be sent completely", 7, createPush(nodes).getTotalSize());
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			if (client != null) {
+				client.close();
+			}
+
+			Services.getBaseConfiguration().remove(CloudService.COMMIT_INTERVAL);
+		}
+	}
+
+	// ----- private methods -----
+	private PushTransmission createPush(final List<SchemaNode> nodes) throws FrameworkException {
+
+		final PushTransmission push = new PushTransmission("admin", "admin", "localhost", 54555);
+
+		try (final Tx tx = app.tx()) {
+
+			for (final SchemaNode node : nodes) {
+				push.getExportSet().add(node);
+			}
+
+			push.getTotalSize();
+
+			tx.success();
+		}
+
+		return push;
+	}
+
+	private CloudConnection connect(final ServerSocket serverSocket, final ExportContext context) throws Exception {
+		return connect(serverSocket, context, -1);
+	}
+
+	/**
+	 * Connects to the given server socket. If <code>interruptAfter</code> is
+	 * not negative, the connection fails when it is asked to send more nodes,
+	 * after that many of them are committed on the remote end.
+	 */
+	private CloudConnection connect(final ServerSocket serverSocket, final ExportContext context, final int interruptAfter) throws Exception {
+
+		final Thread acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+
+				try {
+					new CloudConnection(serverSocket.accept(), new ExportContext(null, 0)).start();
+
+				} catch (Throwable t) {
+					t.printStackTrace();
+				}
+			}
+		});
+
+		acceptor.start();
+
+		final CloudConnection client = new CloudConnection(new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()), context) {
+
+			private int sent = 0;
+
+			@Override
+			public void send(final Message message) throws IOException, FrameworkException {
+
+				if (message instanceof NodeDataContainer && interruptAfter >= 0 && sent++ == interruptAfter) {
+
+					final long abortTime = System.currentTimeMillis() + 2000;
+					while (getCheckpoint() < interruptAfter && System.currentTimeMillis() < abortTime) {
+
+						try { Thread.sleep(10); } catch (InterruptedException iex) {}
+					}
+
+					throw new IOException("Connection interrupted");
+				}
+
+				super.send(message);
+			}
+		};
+		client.start();
+
+		acceptor.join();
+
+		return client;
+	}
+}
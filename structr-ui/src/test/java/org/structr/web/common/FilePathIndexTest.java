@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.structr.common.AccessMode;
+import org.structr.common.SecurityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.NodeService;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.Folder;
+import org.structr.web.entity.User;
+import org.structr.web.entity.relation.FileChildren;
+
+/**
+ * Tests path resolution through the file path index.
+ *
+ * @author Christian Morgner
+ */
+public class FilePathIndexTest extends StructrTest {
+
+	public void testPathResolution() {
+
+		final SecurityContext superUser = SecurityContext.getSuperUserInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final Folder folder = FileHelper.createFolderPath(superUser, "/a/b");
+
+			for (int i=0; i<100; i++) {
+
+				final File file = app.create(File.class, "file" + i);
+				file.setProperty(File.parent, folder);
+			}
+
+			// files created in this transaction must be found
+			assertEquals("file42", FileHelper.getFileByAbsolutePath(superUser, "/a/b/file42").getName());
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("file17", FileHelper.getFileByAbsolutePath(superUser, "/a/b/file17").getName());
+			assertEquals("file17", FileHelper.getFileByAbsolutePath(superUser, "a/b/file17/").getName());
+			assertEquals("b", FileHelper.getFileByAbsolutePath(superUser, "/a/b").getName());
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file100"));
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/b/file17"));
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/"));
+
+			// rename a file in a folder whose children are known
+			final AbstractFile file = FileHelper.getFileByAbsolutePath(superUser, "/a/b/file17");
+			file.setProperty(AbstractFile.name, "renamed");
+
+			assertEquals(file, FileHelper.getFileByAbsolutePath(superUser, "/a/b/renamed"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file17"));
+			assertEquals("renamed", FileHelper.getFileByAbsolutePath(superUser, "/a/b/renamed").getName());
+
+			// create, move and delete files
+			final Folder a    = (Folder) FileHelper.getFileByAbsolutePath(superUser, "/a");
+			final File moved  = (File) FileHelper.getFileByAbsolutePath(superUser, "/a/b/file23");
+			final File added  = app.create(File.class, "added");
+
+			added.setProperty(File.parent, (Folder) FileHelper.getFileByAbsolutePath(superUser, "/a/b"));
+			moved.setProperty(File.parent, a);
+
+			app.delete(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file5"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUser, "/a/b/added"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUser, "/a/file23"));
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file23"));
+			assertNull(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file5"));
+			assertEquals("file6", FileHelper.getFileByAbsolutePath(superUser, "/a/b/file6").getName());
+
+			// a new file with the name of a moved file
+			final File replacement = app.create(File.class, "file23");
+			replacement.setProperty(File.parent, (Folder) FileHelper.getFileByAbsolutePath(superUser, "/a/b"));
+
+			assertEquals(replacement, FileHelper.getFileByAbsolutePath(superUser, "/a/b/file23"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertFalse(FileHelper.getFileByAbsolutePath(superUser, "/a/file23").equals(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file23")));
+			assertEquals("/a/b/file23", FileHelper.getFolderPath(FileHelper.getFileByAbsolutePath(superUser, "/a/b/file23")));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testPathResolutionIsSecure() {
+
+		final SecurityContext superUser = SecurityContext.getSuperUserInstance();
+		SecurityContext userContext     = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final User tester    = app.create(User.class, "tester");
+			final Folder inner   = FileHelper.createFolderPath(superUser, "/secret/inner");
+			final Folder secret  = (Folder) FileHelper.getFileByAbsolutePath(superUser, "/secret");
+			final File file      = app.create(File.class, "doc");
+
+			file.setProperty(File.parent, inner);
+
+			// the folder in the middle of the path is not visible to the user
+			secret.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+			file.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+
+			userContext = SecurityContext.getInstance(tester, AccessMode.Frontend);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull(FileHelper.getFileByAbsolutePath(userContext, "/secret/inner/doc"));
+
+			// the path is now in the index
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUser, "/secret/inner/doc"));
+
+			assertNull(FileHelper.getFileByAbsolutePath(userContext, "/secret/inner/doc"));
+			assertNull(FileHelper.getFileByAbsolutePath(userContext, "/secret/inner"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(userContext, "/secret"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	public void testChildCreatedWithoutNotification() {
+
+		final SecurityContext superUser = SecurityContext.getSuperUserInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = app.create(File.class, "file");
+			file.setProperty(File.parent, FileHelper.createFolderPath(superUser, "/c"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			// the children of the folder are now in the index
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUser, "/c/file"));
+
+			// create a file directly in the database, like an import does
+			final GraphDatabaseService graphDb = Services.getInstance().getService(NodeService.class).getGraphDb();
+			final Folder folder                = (Folder) FileHelper.getFileByAbsolutePath(superUser, "/c");
+			final Node node                    = graphDb.createNode();
+
+			node.setProperty(GraphObject.id.dbName(), "00000000000000000000000000000001");
+			node.setProperty(GraphObject.type.dbName(), File.class.getSimpleName());
+			node.setProperty(NodeInterface.name.dbName(), "imported");
+
+			folder.getNode().createRelationshipTo(node, DynamicRelationshipType.withName(new FileChildren().name()));
+
+			assertEquals("imported", FileHelper.getFileByAbsolutePath(superUser, "/c/imported").getName());
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.dynamic.File;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class FileStreamerTest extends StructrUiTest {
+
+	private static final String CONTENT = "0123456789abcdefghij";
+
+	public void testParseRanges() {
+
+		assertNull(FileStreamer.parseRanges(null, 20));
+		assertNull(FileStreamer.parseRanges("items=0-1", 20));
+		assertNull(FileStreamer.parseRanges("bytes=5-2", 20));
+		assertNull(FileStreamer.parseRanges("bytes=a-b", 20));
+
+		final List<long[]> ranges = FileStreamer.parseRanges("bytes=0-1, 18-, -3, 10-100", 20);
+
+		assertEquals(4, ranges.size());
+		assertRange(ranges.get(0), 0, 1);
+		assertRange(ranges.get(1), 18, 19);
+		assertRange(ranges.get(2), 17, 19);
+		assertRange(ranges.get(3), 10, 19);
+
+		assertTrue("Range beyond end of file should not be satisfiable", FileStreamer.parseRanges("bytes=20-30", 20).isEmpty());
+	}
+
+	public void testStreamedUploadAndRangeRequests() {
+
+		final byte[] data = CONTENT.getBytes(Charset.forName("utf-8"));
+		final CRC32 crc   = new CRC32();
+		String etag       = null;
+
+		crc.update(data);
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, new ByteArrayInputStream(data), "text/plain", File.class, "range.txt");
+			file.setProperty(File.visibleToPublicUsers, true);
+
+			assertEquals("Checksum should be computed while streaming", Long.valueOf(crc.getValue()), file.getProperty(File.checksum));
+			assertEquals("Size should be computed while streaming", Long.valueOf(data.length), file.getProperty(File.size));
+
+			etag = FileStreamer.getETag(file.getProperty(File.checksum), data.length);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		RestAssured.basePath = htmlUrl;
+
+		// full content
+		final Response full = RestAssured.given().expect().statusCode(200).header("Accept-Ranges", "bytes").header("ETag", etag).when().get("/range.txt");
+		assertEquals(CONTENT, full.asString());
+
+		// single ranges
+		assertEquals("2345", RestAssured.given().header("Range", "bytes=2-5").expect().statusCode(206).header("Content-Range", "bytes 2-5/20").when().get("/range.txt").asString());
+		assertEquals("hij",  RestAssured.given().header("Range", "bytes=-3").expect().statusCode(206).header("Content-Range", "bytes 17-19/20").when().get("/range.txt").asString());
+
+		// multiple ranges
+		final Response multi = RestAssured.given().header("Range", "bytes=0-1,18-").expect().statusCode(206).when().get("/range.txt");
+		final String body    = multi.asString();
+
+		assertTrue(multi.getContentType().startsWith("multipart/byteranges"));
+		assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+		assertTrue(body.contains("Content-Range: bytes 18-19/20\r\n\r\nij\r\n"));
+
+		// compression must not interfere with range requests
+		final Response gzip = RestAssured.given().header("Accept-Encoding", "gzip").header("Range", "bytes=2-5").expect().statusCode(206).header("ETag", etag).when().get("/range.txt");
+		assertNull(gzip.getHeader("Content-Encoding"));
+		assertEquals("2345", gzip.asString());
+
+		// unsatisfiable range
+		RestAssured.given().header("Range", "bytes=30-40").expect().statusCode(416).header("Content-Range", "bytes */20").when().get("/range.txt");
+
+		// conditional requests
+		RestAssured.given().header("If-None-Match", etag).expect().statusCode(304).when().get("/range.txt");
+		RestAssured.given().header("If-None-Match", "\"other\"").expect().statusCode(200).when().get("/range.txt");
+		assertEquals(CONTENT, RestAssured.given().header("Range", "bytes=2-5").header("If-Range", "\"other\"").expect().statusCode(200).when().get("/range.txt").asString());
+		assertEquals("2345", RestAssured.given().header("Range", "bytes=2-5").header("If-Range", etag).expect().statusCode(206).when().get("/range.txt").asString());
+	}
+
+	// ----- private methods -----
+	private void assertRange(final long[] range, final long start, final long end) {
+
+		assertEquals(start, range[0]);
+		assertEquals(end, range[1]);
+	}
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.graph.Tx;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class RenderFragmentCacheTest extends StructrUiTest {
+
+	public void testStaticFragmentInvalidation() {
+
+		String pageId      = null;
+		Content staticText = null;
+
+		try (final Tx tx = app.tx()) {
+
+			final Page page = Page.createNewPage(securityContext, "fragment-cache");
+
+			final DOMNode html = (DOMNode) page.createElement("html");
+			final DOMNode body = (DOMNode) page.createElement("body");
+			final DOMNode div1 = (DOMNode) page.createElement("div");
+			final DOMNode div2 = (DOMNode) page.createElement("div");
+
+			staticText = (Content) page.createTextNode("static");
+
+			page.appendChild(html);
+			html.appendChild(body);
+			body.appendChild(div1);
+			body.appendChild(div2);
+			div1.appendChild(staticText);
+			div2.appendChild(page.createTextNode("${this.name}"));
+
+			pageId = page.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		RenderFragmentCache.clear();
+		RenderFragmentCache.resetStatistics();
+
+		try (final Tx tx = app.tx()) {
+
+			final String first  = render(pageId);
+			final String second = render(pageId);
+
+			assertEquals(first, second);
+			assertTrue(first.contains("static"));
+
+			final RenderFragmentCache.PageStatistics stats = RenderFragmentCache.getStatistics(pageId);
+
+			assertTrue(stats.getHits() > 0);
+			assertTrue(stats.getUncacheable() > 0);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// modification must evict all fragments containing the node
+		try (final Tx tx = app.tx()) {
+
+			staticText.setProperty(Content.content, "modified");
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final String output = render(pageId);
+
+			assertTrue(output.contains("modified"));
+			assertTrue(!output.contains("static"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	private String render(final String pageId) throws FrameworkException {
+
+		final Page page                   = (Page) app.get(pageId);
+		final RenderContext renderContext = new RenderContext();
+		final AsyncBuffer buffer          = new AsyncBuffer();
+
+		renderContext.setBuffer(buffer);
+		page.render(securityContext, renderContext, 0);
+
+		return StringUtils.join(buffer.getQueue(), "");
+	}
+}
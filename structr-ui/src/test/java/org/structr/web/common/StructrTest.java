@@ -92,6 +92,7 @@ public class StructrTest extends TestCase {
 		config.setProperty(Services.DATABASE_PATH, "/tmp/structr-test-" + timestamp + "/db");
 		config.setProperty(Services.FILES_PATH, "/tmp/structr-test-" + timestamp + "/files");
 		config.setProperty(Services.LOG_DATABASE_PATH, "/tmp/structr-test-" + timestamp + "/logDb.dat");
+		config.setProperty(Services.SCHEMA_CACHE_PATH, "/tmp/structr-test-" + timestamp + "/schema");
 		config.setProperty(Services.TCP_PORT, "13465");
 		config.setProperty(Services.SERVER_IP, "127.0.0.1");
 		config.setProperty(Services.UDP_PORT, "13466");
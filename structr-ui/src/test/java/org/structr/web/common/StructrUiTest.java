@@ -58,6 +58,7 @@ import org.structr.rest.service.HttpService;
 import org.structr.rest.servlet.JsonRestServlet;
 import org.structr.web.auth.UiAuthenticator;
 import org.structr.web.servlet.HtmlServlet;
+import org.structr.web.servlet.UploadServlet;
 import org.structr.websocket.servlet.WebSocketServlet;
 
 //~--- classes ----------------------------------------------------------------
@@ -90,6 +91,7 @@ public class StructrUiTest extends TestCase {
 	protected static final String restUrl = "/structr/rest";
 	protected static final String htmlUrl = "/structr/html";
 	protected static final String wsUrl = "/structr/ws";
+	protected static final String uploadUrl = "/structr/upload";
 	protected static final String host = "localhost";
 	protected static final int httpPort = 8875;
 	protected static final int ftpPort = 8876;
@@ -134,6 +136,7 @@ public class StructrUiTest extends TestCase {
 		config.setProperty(Services.DATABASE_PATH, basePath + "/db");
 		config.setProperty(Services.FILES_PATH, basePath + "/files");
 		config.setProperty(Services.LOG_DATABASE_PATH, basePath + "/logDb.dat");
+		config.setProperty(Services.SCHEMA_CACHE_PATH, basePath + "/schema");
 		config.setProperty(Services.TCP_PORT, "13465");
 		config.setProperty(Services.UDP_PORT, "13466");
 		config.setProperty(Services.SUPERUSER_USERNAME, "superadmin");
@@ -145,7 +148,7 @@ public class StructrUiTest extends TestCase {
 		config.setProperty(HttpService.APPLICATION_TITLE, "structr unit test app" + timestamp);
 		config.setProperty(HttpService.APPLICATION_HOST, host);
 		config.setProperty(HttpService.APPLICATION_HTTP_PORT, Integer.toString(httpPort));
-		config.setProperty(HttpService.SERVLETS, "JsonRestServlet WebSocketServlet CsvServlet HtmlServlet");
+		config.setProperty(HttpService.SERVLETS, "JsonRestServlet WebSocketServlet CsvServlet HtmlServlet UploadServlet");
 
 		config.setProperty("JsonRestServlet.class", JsonRestServlet.class.getName());
 		config.setProperty("JsonRestServlet.path", restUrl);
@@ -182,6 +185,15 @@ public class StructrUiTest extends TestCase {
 		config.setProperty("HtmlServlet.defaultview", PropertyView.Public);
 		config.setProperty("HtmlServlet.outputdepth", "3");
 
+		config.setProperty("UploadServlet.class", UploadServlet.class.getName());
+		config.setProperty("UploadServlet.path", uploadUrl);
+		config.setProperty("UploadServlet.resourceprovider", UiResourceProvider.class.getName());
+		config.setProperty("UploadServlet.authenticator", UiAuthenticator.class.getName());
+		config.setProperty("UploadServlet.user.class", "");
+		config.setProperty("UploadServlet.user.autocreate", "false");
+		config.setProperty("UploadServlet.defaultview", PropertyView.Public);
+		config.setProperty("UploadServlet.outputdepth", "3");
+
 		// Configure resource handlers
 		config.setProperty(HttpService.RESOURCE_HANDLERS, "StructrUiHandler");
 
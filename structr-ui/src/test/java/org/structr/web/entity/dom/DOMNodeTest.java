@@ -21,12 +21,17 @@ package org.structr.web.entity.dom;
 import java.util.LinkedList;
 import java.util.List;
 import static junit.framework.TestCase.fail;
+import org.structr.common.AccessMode;
+import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
+import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.relationship.AbstractChildren;
 import org.structr.core.graph.Tx;
 import org.structr.web.common.DOMTest;
+import org.structr.web.entity.User;
 import org.structr.web.entity.dom.relationship.DOMChildren;
 import org.w3c.dom.DOMException;
 import org.w3c.dom.Document;
@@ -74,7 +79,7 @@ public class DOMNodeTest extends DOMTest {
 			divRels = toList(div.getOutgoingRelationships(DOMChildren.class));
 			assertEquals(2, divRels.size());
 			assertEquals(Integer.valueOf(0), divRels.get(0).getProperty(AbstractChildren.position));
-			assertEquals(Integer.valueOf(1), divRels.get(1).getProperty(AbstractChildren.position));
+			assertEquals(Integer.valueOf(1024), divRels.get(1).getProperty(AbstractChildren.position));
 
 			// third step: test removal of old parent when appending an existing node
 			div.appendChild(content3);
@@ -495,6 +500,196 @@ public class DOMNodeTest extends DOMTest {
 
 	}
 
+	public void testInsertBeforeWithSparsePositions() {
+
+		try (final Tx tx = app.tx()) {
+
+			Document document = getDocument();
+			assertNotNull(document);
+
+			DOMElement div = (DOMElement) document.createElement("div");
+			assertNotNull(div);
+
+			DOMNode first = (DOMNode) document.createTextNode("first");
+			DOMNode last  = (DOMNode) document.createTextNode("last");
+
+			div.appendChild(first);
+			div.appendChild(last);
+
+			// insert many nodes between two adjacent children, this
+			// exhausts the room between the positions several times
+			final List<DOMNode> inserted = new LinkedList<>();
+			for (int i=0; i<50; i++) {
+
+				final DOMNode node = (DOMNode) document.createTextNode("test" + i);
+
+				div.insertBefore(node, last);
+				inserted.add(node);
+			}
+
+			// examine children
+			NodeList children = div.getChildNodes();
+			assertEquals(52, children.getLength());
+			assertEquals(first, children.item(0));
+			assertEquals(last, children.item(51));
+
+			for (int i=0; i<50; i++) {
+
+				assertEquals(inserted.get(i), children.item(i + 1));
+				assertEquals(i + 1, div.treeGetChildPosition(inserted.get(i)));
+			}
+
+			// an insert with room between the neighbours only writes the new relationship
+			final Integer firstPosition = getPosition(first);
+			final Integer lastPosition  = getPosition(last);
+			final DOMNode node          = (DOMNode) document.createTextNode("test");
+
+			div.insertBefore(node, inserted.get(0));
+
+			assertEquals(firstPosition, getPosition(first));
+			assertEquals(lastPosition, getPosition(last));
+			assertEquals(node, div.getChildNodes().item(1));
+			assertEquals(1, div.treeGetChildPosition(node));
+
+			// removal does not change the positions of the remaining children
+			div.removeChild(node);
+
+			assertEquals(firstPosition, getPosition(first));
+			assertEquals(lastPosition, getPosition(last));
+			assertEquals(inserted.get(0), div.getChildNodes().item(1));
+			assertEquals(51, div.treeGetChildPosition(last));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("unexpected exception");
+		}
+
+	}
+
+	public void testInsertBeforeAfterAppends() {
+
+		try (final Tx tx = app.tx()) {
+
+			Document document = getDocument();
+			assertNotNull(document);
+
+			DOMElement div = (DOMElement) document.createElement("div");
+			assertNotNull(div);
+
+			final List<DOMNode> appended = new LinkedList<>();
+			for (int i=0; i<20; i++) {
+
+				final DOMNode node = (DOMNode) document.createTextNode("test" + i);
+
+				div.appendChild(node);
+				appended.add(node);
+			}
+
+			final List<Integer> positions = new LinkedList<>();
+			for (final DOMNode child : appended) {
+				positions.add(getPosition(child));
+			}
+
+			// appended children leave room, so an insert in the middle only writes the new relationship
+			final DOMNode node = (DOMNode) document.createTextNode("test");
+
+			div.insertBefore(node, appended.get(10));
+
+			for (int i=0; i<20; i++) {
+				assertEquals(positions.get(i), getPosition(appended.get(i)));
+			}
+
+			assertEquals(21, toList(div.getOutgoingRelationships(DOMChildren.class)).size());
+			assertEquals(node, div.getChildNodes().item(10));
+			assertEquals(10, div.treeGetChildPosition(node));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("unexpected exception");
+		}
+
+	}
+
+	public void testChildPositionIsIndependentOfVisibility() {
+
+		String divId    = null;
+		String hiddenId = null;
+		String lastId   = null;
+		User tester     = null;
+
+		try (final Tx tx = app.tx()) {
+
+			Document document = getDocument();
+			assertNotNull(document);
+
+			DOMElement div = (DOMElement) document.createElement("div");
+			DOMNode hidden = (DOMNode) document.createTextNode("hidden");
+			DOMNode middle = (DOMNode) document.createTextNode("middle");
+			DOMNode last   = (DOMNode) document.createTextNode("last");
+
+			div.appendChild(hidden);
+			div.appendChild(middle);
+			div.appendChild(last);
+
+			// the first child is not visible to the user
+			div.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+			middle.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+			last.setProperty(AbstractNode.visibleToAuthenticatedUsers, true);
+
+			tester   = app.create(User.class, "tester");
+			divId    = div.getUuid();
+			hiddenId = hidden.getUuid();
+			lastId   = last.getUuid();
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("unexpected exception");
+		}
+
+		try {
+
+			final App userApp = StructrApp.getInstance(SecurityContext.getInstance(tester, AccessMode.Frontend));
+
+			try (final Tx tx = userApp.tx()) {
+
+				// the user sorts the children first
+				final DOMElement div = (DOMElement) userApp.get(divId);
+				final DOMNode last   = (DOMNode) userApp.get(lastId);
+
+				assertEquals(2, div.treeGetChildRelationships().size());
+				assertEquals(last, div.treeGetLastChild());
+				assertEquals(2, div.treeGetChildPosition(last));
+
+				tx.success();
+			}
+
+		} catch (FrameworkException fex) {
+
+			fail("unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final DOMElement div = (DOMElement) app.get(divId);
+
+			assertEquals(3, div.treeGetChildRelationships().size());
+			assertEquals(0, div.treeGetChildPosition((DOMNode) app.get(hiddenId)));
+			assertEquals(2, div.treeGetChildPosition((DOMNode) app.get(lastId)));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			fail("unexpected exception");
+		}
+	}
+
 	public void testReplaceChildWithFragment() {
 
 		try (final Tx tx = app.tx()) {
@@ -828,4 +1023,8 @@ public class DOMNodeTest extends DOMTest {
 		return list;
 	}
 
+	private Integer getPosition(final DOMNode node) {
+		return node.getIncomingRelationship(DOMChildren.class).getProperty(AbstractChildren.position);
+	}
+
 }
@@ -0,0 +1,183 @@
+/**
+ * Copyright (C) 2010-2014 Morgner UG (haftungsbeschränkt)
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.websocket;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import javax.servlet.http.HttpServletRequest;
+import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertTrue;
+import static junit.framework.TestCase.fail;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
+import org.structr.web.common.StructrUiTest;
+import org.structr.web.entity.Folder;
+import org.structr.websocket.message.WebSocketMessage;
+
+/**
+ *
+ * @author Christian Morgner
+ */
+public class SynchronizationControllerTest extends StructrUiTest {
+
+	public void testCoalescedBroadcast() {
+
+		final List<String> sent     = new CopyOnWriteArrayList<>();
+		final String previousWindow = Services.getBaseConfiguration().getProperty(SynchronizationController.BROADCAST_WINDOW);
+
+		Services.getBaseConfiguration().setProperty(SynchronizationController.BROADCAST_WINDOW, "500");
+
+		final Gson gson                               = new GsonBuilder().registerTypeAdapter(WebSocketMessage.class, new WebSocketDataGSONAdapter(GraphObject.id, 3)).create();
+		final SynchronizationController syncController = new SynchronizationController(gson);
+		final StructrWebSocket client                  = new StructrWebSocket(syncController, gson, GraphObject.id, null);
+
+		client.setRequest(proxy(HttpServletRequest.class, null));
+		client.onWebSocketConnect(proxy(Session.class, sent));
+
+		TransactionCommand.registerTransactionListener(syncController);
+
+		try {
+
+			Folder folder = null;
+
+			try (final Tx tx = app.tx()) {
+
+				folder = app.create(Folder.class, new NodeAttribute(AbstractNode.name, "folder"), new NodeAttribute(AbstractNode.visibleToPublicUsers, true));
+				tx.success();
+			}
+
+			for (int i=0; i<5; i++) {
+
+				try (final Tx tx = app.tx()) {
+
+					folder.setProperty(AbstractNode.name, "folder" + i);
+					tx.success();
+				}
+			}
+
+			final String uuid = folder.getUuid();
+			final long start  = System.currentTimeMillis();
+
+			// wait for the broadcast window to close
+			while (countMessagesFor(sent, uuid) == 0 && System.currentTimeMillis() - start < 5000) {
+				Thread.sleep(100);
+			}
+
+			Thread.sleep(600);
+
+			assertEquals("Modifications within the broadcast window should be coalesced", 1, countMessagesFor(sent, uuid));
+			assertEquals(0, syncController.getQueueSize(client));
+			assertEquals(0L, syncController.getLag(client));
+
+			for (final String message : sent) {
+
+				if (message.contains(uuid)) {
+
+					assertTrue(message.contains("CREATE"));
+					assertTrue(message.contains("folder4"));
+				}
+			}
+
+		} catch (FrameworkException | InterruptedException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			TransactionCommand.removeTransactionListener(syncController);
+
+			// restore the global configuration for other tests
+			if (previousWindow != null) {
+
+				Services.getBaseConfiguration().setProperty(SynchronizationController.BROADCAST_WINDOW, previousWindow);
+
+			} else {
+
+				Services.getBaseConfiguration().remove(SynchronizationController.BROADCAST_WINDOW);
+			}
+		}
+	}
+
+	// ----- private methods -----
+	private int countMessagesFor(final List<String> messages, final String uuid) {
+
+		int count = 0;
+
+		for (final String message : messages) {
+
+			if (message.contains(uuid)) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Creates a minimal implementation of the given interface. Sessions
+	 * record all messages sent to their remote endpoint in the given list.
+	 */
+	private <T> T proxy(final Class<T> type, final List<String> sent) {
+
+		return (T) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { type }, new InvocationHandler() {
+
+			@Override
+			public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+				switch (method.getName()) {
+
+					case "getRemote":
+						return proxy(RemoteEndpoint.class, sent);
+
+					case "sendStringByFuture":
+						sent.add((String) args[0]);
+						return proxy(Future.class, sent);
+
+					case "getProtocolVersion":
+						return "13";
+
+					case "toString":
+						return type.getSimpleName();
+
+					case "hashCode":
+						return System.identityHashCode(proxy);
+
+					case "equals":
+						return proxy == args[0];
+				}
+
+				return null;
+			}
+		});
+	}
+}